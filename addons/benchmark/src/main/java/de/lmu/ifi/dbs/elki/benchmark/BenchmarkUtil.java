@@ -0,0 +1,187 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2017
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.lmu.ifi.dbs.elki.benchmark;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Random;
+
+import de.lmu.ifi.dbs.elki.algorithm.clustering.kmeans.KMeans;
+import de.lmu.ifi.dbs.elki.algorithm.clustering.kmeans.initialization.FarthestPointsInitialMeans;
+import de.lmu.ifi.dbs.elki.data.DoubleVector;
+import de.lmu.ifi.dbs.elki.database.Database;
+import de.lmu.ifi.dbs.elki.database.StaticArrayDatabase;
+import de.lmu.ifi.dbs.elki.datasource.ArrayAdapterDatabaseConnection;
+import de.lmu.ifi.dbs.elki.distance.distancefunction.minkowski.EuclideanDistanceFunction;
+import de.lmu.ifi.dbs.elki.index.IndexFactory;
+import de.lmu.ifi.dbs.elki.index.graph.HNSWIndex;
+import de.lmu.ifi.dbs.elki.index.idistance.InMemoryIDistanceIndex;
+import de.lmu.ifi.dbs.elki.index.lsh.InMemoryLSHIndex;
+import de.lmu.ifi.dbs.elki.index.lsh.hashfamilies.AbstractProjectedHashFunctionFamily;
+import de.lmu.ifi.dbs.elki.index.lsh.hashfamilies.EuclideanHashFunctionFamily;
+import de.lmu.ifi.dbs.elki.index.tree.metrical.covertree.CoverTree;
+import de.lmu.ifi.dbs.elki.index.tree.metrical.mtreevariants.mtree.MTreeFactory;
+import de.lmu.ifi.dbs.elki.index.tree.spatial.kd.PackedKDTree;
+import de.lmu.ifi.dbs.elki.index.tree.spatial.kd.SmallMemoryKDTree;
+import de.lmu.ifi.dbs.elki.index.tree.spatial.rstarvariants.rstar.RStarTreeFactory;
+import de.lmu.ifi.dbs.elki.index.tree.spatial.rstarvariants.strategies.bulk.SortTileRecursiveBulkSplit;
+import de.lmu.ifi.dbs.elki.index.vafile.ProductQuantizationIndex;
+import de.lmu.ifi.dbs.elki.index.vafile.VAFile;
+import de.lmu.ifi.dbs.elki.persistent.AbstractPageFileFactory;
+import de.lmu.ifi.dbs.elki.utilities.ELKIBuilder;
+
+/**
+ * Shared setup code for the benchmarks: synthetic data sets of controlled
+ * size and dimensionality, and index configurations.
+ *
+ * @author Erich Schubert
+ * @since 0.7.2
+ */
+public final class BenchmarkUtil {
+  /**
+   * Fixed random seed, for reproducible data sets.
+   */
+  public static final long SEED = 0L;
+
+  /**
+   * Names of the index configurations, for use with {@code @Param}.
+   */
+  public static final String[] INDEXES = { "linear", "rstar", "mtree", "covertree", "kdtree", "packedkd", "vafile", "lsh", "idistance", "hnsw", "pq" };
+
+  /**
+   * Fake constructor: do not instantiate.
+   */
+  private BenchmarkUtil() {
+    // Do not instantiate.
+  }
+
+  /**
+   * Generate uniform random data in the unit cube.
+   *
+   * @param random Random generator
+   * @param size Number of points
+   * @param dim Dimensionality
+   * @return Data
+   */
+  public static double[][] uniform(Random random, int size, int dim) {
+    double[][] data = new double[size][dim];
+    for(double[] row : data) {
+      for(int d = 0; d < dim; d++) {
+        row[d] = random.nextDouble();
+      }
+    }
+    return data;
+  }
+
+  /**
+   * Generate random vectors in the unit cube.
+   *
+   * @param random Random generator
+   * @param size Number of vectors
+   * @param dim Dimensionality
+   * @return Vectors
+   */
+  public static DoubleVector[] uniformVectors(Random random, int size, int dim) {
+    double[][] data = uniform(random, size, dim);
+    DoubleVector[] vecs = new DoubleVector[size];
+    for(int i = 0; i < size; i++) {
+      vecs[i] = DoubleVector.wrap(data[i]);
+    }
+    return vecs;
+  }
+
+  /**
+   * Build an in-memory database, including the index.
+   *
+   * @param data Data
+   * @param index Index name, see {@link #INDEXES}
+   * @return Initialized database
+   */
+  public static Database makeDatabase(double[][] data, String index) {
+    Collection<IndexFactory<?, ?>> factories = new ArrayList<>(1);
+    IndexFactory<?, ?> factory = makeIndexFactory(index);
+    if(factory != null) {
+      factories.add(factory);
+    }
+    Database db = new StaticArrayDatabase(new ArrayAdapterDatabaseConnection(data), factories);
+    db.initialize();
+    return db;
+  }
+
+  /**
+   * Index configurations, with settings suitable for Euclidean queries on
+   * data in the unit cube.
+   *
+   * @param index Index name, see {@link #INDEXES}
+   * @return Index factory, {@code null} for a linear scan
+   */
+  public static IndexFactory<?, ?> makeIndexFactory(String index) {
+    switch(index){
+    case "linear":
+      return null;
+    case "rstar":
+      return new ELKIBuilder<>(RStarTreeFactory.class) //
+          .with(AbstractPageFileFactory.Parameterizer.PAGE_SIZE_ID, 4096) //
+          .with(RStarTreeFactory.Parameterizer.BULK_SPLIT_ID, SortTileRecursiveBulkSplit.class) //
+          .build();
+    case "mtree":
+      return new ELKIBuilder<>(MTreeFactory.class) //
+          .with(AbstractPageFileFactory.Parameterizer.PAGE_SIZE_ID, 4096) //
+          .build();
+    case "covertree":
+      return new ELKIBuilder<>(CoverTree.Factory.class) //
+          .with(CoverTree.Factory.Parameterizer.DISTANCE_FUNCTION_ID, EuclideanDistanceFunction.class) //
+          .build();
+    case "kdtree":
+      return new ELKIBuilder<>(SmallMemoryKDTree.Factory.class).build();
+    case "packedkd":
+      return new ELKIBuilder<>(PackedKDTree.Factory.class).build();
+    case "vafile":
+      return new ELKIBuilder<>(VAFile.Factory.class) //
+          .with(VAFile.Factory.PARTITIONS_ID, 8) //
+          .build();
+    case "lsh":
+      return new ELKIBuilder<>(InMemoryLSHIndex.class) //
+          .with(InMemoryLSHIndex.Parameterizer.FAMILY_ID, EuclideanHashFunctionFamily.class) //
+          .with(InMemoryLSHIndex.Parameterizer.L_ID, 10) //
+          .with(AbstractProjectedHashFunctionFamily.Parameterizer.WIDTH_ID, .2) //
+          .with(AbstractProjectedHashFunctionFamily.Parameterizer.NUMPROJ_ID, 3) //
+          .with(AbstractProjectedHashFunctionFamily.Parameterizer.RANDOM_ID, SEED) //
+          .build();
+    case "idistance":
+      return new ELKIBuilder<>(InMemoryIDistanceIndex.Factory.class) //
+          .with(InMemoryIDistanceIndex.Factory.Parameterizer.K_ID, 16) //
+          .with(InMemoryIDistanceIndex.Factory.Parameterizer.DISTANCE_ID, EuclideanDistanceFunction.class) //
+          .with(InMemoryIDistanceIndex.Factory.Parameterizer.REFERENCE_ID, FarthestPointsInitialMeans.class) //
+          .build();
+    case "hnsw":
+      return new ELKIBuilder<>(HNSWIndex.Factory.class) //
+          .with(HNSWIndex.Factory.Parameterizer.SEED_ID, SEED) //
+          .build();
+    case "pq":
+      return new ELKIBuilder<>(ProductQuantizationIndex.Factory.class) //
+          .with(KMeans.SEED_ID, SEED) //
+          .build();
+    default:
+      throw new IllegalArgumentException("Unknown index: " + index);
+    }
+  }
+}
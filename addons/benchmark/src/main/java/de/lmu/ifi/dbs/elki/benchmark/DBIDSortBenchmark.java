@@ -0,0 +1,102 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2017
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.lmu.ifi.dbs.elki.benchmark;
+
+import java.util.Comparator;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import de.lmu.ifi.dbs.elki.database.ids.ArrayModifiableDBIDs;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDRange;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDRef;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDUtil;
+
+/**
+ * Benchmark sorting of DBID arrays (which uses the integer DBID quicksort).
+ *
+ * Every invocation includes copying the shuffled input, which is cheap
+ * compared to sorting.
+ *
+ * @author Erich Schubert
+ * @since 0.7.2
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class DBIDSortBenchmark {
+  /**
+   * Number of DBIDs to sort.
+   */
+  @Param({ "1000", "100000" })
+  public int size;
+
+  /**
+   * Shuffled DBIDs.
+   */
+  private ArrayModifiableDBIDs shuffled;
+
+  /**
+   * Comparator by a random score.
+   */
+  private Comparator<DBIDRef> byScore;
+
+  @Setup
+  public void setup() {
+    final DBIDRange range = DBIDUtil.generateStaticDBIDRange(size);
+    final Random random = new Random(BenchmarkUtil.SEED);
+    final double[] scores = new double[size];
+    for(int i = 0; i < size; i++) {
+      scores[i] = random.nextDouble();
+    }
+    byScore = (a, b) -> Double.compare(scores[range.getOffset(a)], scores[range.getOffset(b)]);
+    shuffled = DBIDUtil.newArray(range);
+    DBIDUtil.randomShuffle(shuffled, random);
+  }
+
+  @Benchmark
+  public ArrayModifiableDBIDs sortNatural() {
+    ArrayModifiableDBIDs ids = DBIDUtil.newArray(shuffled);
+    ids.sort();
+    return ids;
+  }
+
+  @Benchmark
+  public ArrayModifiableDBIDs sortComparator() {
+    ArrayModifiableDBIDs ids = DBIDUtil.newArray(shuffled);
+    ids.sort(byScore);
+    return ids;
+  }
+}
@@ -0,0 +1,158 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2017
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.lmu.ifi.dbs.elki.benchmark;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import de.lmu.ifi.dbs.elki.data.DoubleVector;
+import de.lmu.ifi.dbs.elki.data.FloatVector;
+import de.lmu.ifi.dbs.elki.data.NumberVector;
+import de.lmu.ifi.dbs.elki.distance.distancefunction.PrimitiveDistanceFunction;
+import de.lmu.ifi.dbs.elki.distance.distancefunction.minkowski.EuclideanDistanceFunction;
+import de.lmu.ifi.dbs.elki.distance.distancefunction.minkowski.ManhattanDistanceFunction;
+import de.lmu.ifi.dbs.elki.distance.distancefunction.minkowski.SquaredEuclideanDistanceFunction;
+
+/**
+ * Benchmark the vector distance functions, for the different vector types.
+ *
+ * The "generic" benchmarks use mixed vector types, and thus do not use the
+ * specialized array code paths.
+ *
+ * @author Erich Schubert
+ * @since 0.7.2
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class DistanceFunctionBenchmark {
+  /**
+   * Number of vectors.
+   */
+  private static final int SIZE = 1024;
+
+  /**
+   * Dimensionality.
+   */
+  @Param({ "2", "8", "32", "128" })
+  public int dim;
+
+  /**
+   * Vectors, as double vectors.
+   */
+  private DoubleVector[] dvecs;
+
+  /**
+   * Vectors, as float vectors.
+   */
+  private FloatVector[] fvecs;
+
+  /**
+   * Threshold for early abandoning (about the median distance).
+   */
+  private double threshold;
+
+  @Setup
+  public void setup() {
+    dvecs = BenchmarkUtil.uniformVectors(new Random(BenchmarkUtil.SEED), SIZE, dim);
+    fvecs = new FloatVector[SIZE];
+    for(int i = 0; i < SIZE; i++) {
+      fvecs[i] = FloatVector.FACTORY.newNumberVector(dvecs[i]);
+    }
+    // Expected Euclidean distance of uniform data is about sqrt(dim / 6)
+    threshold = Math.sqrt(dim / 6.);
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(SIZE)
+  public double squaredEuclideanDouble() {
+    return sumDistances(SquaredEuclideanDistanceFunction.STATIC, dvecs, dvecs);
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(SIZE)
+  public double squaredEuclideanFloat() {
+    return sumDistances(SquaredEuclideanDistanceFunction.STATIC, fvecs, fvecs);
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(SIZE)
+  public double squaredEuclideanGeneric() {
+    return sumDistances(SquaredEuclideanDistanceFunction.STATIC, dvecs, fvecs);
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(SIZE)
+  public double euclideanDouble() {
+    return sumDistances(EuclideanDistanceFunction.STATIC, dvecs, dvecs);
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(SIZE)
+  public double euclideanDoubleBounded() {
+    double sum = 0.;
+    for(int i = 0, j = SIZE - 1; i < SIZE; i++, j--) {
+      sum += EuclideanDistanceFunction.STATIC.distance(dvecs[i], dvecs[j], threshold);
+    }
+    return sum;
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(SIZE)
+  public double manhattanDouble() {
+    return sumDistances(ManhattanDistanceFunction.STATIC, dvecs, dvecs);
+  }
+
+  /**
+   * Sum the distances of pairs of vectors.
+   *
+   * Note: every benchmark runs in its own fork, so this call site does not
+   * become megamorphic.
+   *
+   * @param df Distance function
+   * @param a First vectors
+   * @param b Second vectors
+   * @return Sum of distances
+   */
+  private static double sumDistances(PrimitiveDistanceFunction<? super NumberVector> df, NumberVector[] a, NumberVector[] b) {
+    double sum = 0.;
+    for(int i = 0, j = SIZE - 1; i < SIZE; i++, j--) {
+      sum += df.distance(a[i], b[j]);
+    }
+    return sum;
+  }
+}
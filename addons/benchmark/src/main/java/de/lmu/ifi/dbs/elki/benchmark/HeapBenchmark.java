@@ -0,0 +1,147 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2017
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.lmu.ifi.dbs.elki.benchmark;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import de.lmu.ifi.dbs.elki.database.ids.DBIDIter;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDRange;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDUtil;
+import de.lmu.ifi.dbs.elki.database.ids.KNNHeap;
+import de.lmu.ifi.dbs.elki.utilities.datastructures.heap.ComparableMinHeap;
+import de.lmu.ifi.dbs.elki.utilities.datastructures.heap.DoubleMinHeap;
+
+/**
+ * Benchmark the heap data structures used by the kNN queries and best-first
+ * index traversal.
+ *
+ * @author Erich Schubert
+ * @since 0.7.2
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class HeapBenchmark {
+  /**
+   * Number of elements to insert.
+   */
+  @Param({ "10000" })
+  public int size;
+
+  /**
+   * Number of neighbors for the kNN heap.
+   */
+  @Param({ "10", "100" })
+  public int k;
+
+  /**
+   * Object identifiers.
+   */
+  private DBIDRange ids;
+
+  /**
+   * Random distances.
+   */
+  private double[] dists;
+
+  /**
+   * Boxed random distances.
+   */
+  private Double[] boxed;
+
+  @Setup
+  public void setup() {
+    ids = DBIDUtil.generateStaticDBIDRange(size);
+    Random random = new Random(BenchmarkUtil.SEED);
+    dists = new double[size];
+    boxed = new Double[size];
+    for(int i = 0; i < size; i++) {
+      boxed[i] = dists[i] = random.nextDouble();
+    }
+  }
+
+  /**
+   * kNN heap, as used by every kNN query.
+   *
+   * @return kNN distance
+   */
+  @Benchmark
+  public double knnHeap() {
+    KNNHeap heap = DBIDUtil.newHeap(k);
+    int i = 0;
+    for(DBIDIter it = ids.iter(); it.valid(); it.advance(), i++) {
+      heap.insert(dists[i], it);
+    }
+    return heap.toKNNList().getKNNDistance();
+  }
+
+  /**
+   * Object heap, fill and drain completely.
+   *
+   * @return Last element
+   */
+  @Benchmark
+  public Double comparableMinHeap() {
+    ComparableMinHeap<Double> heap = new ComparableMinHeap<>();
+    for(Double d : boxed) {
+      heap.add(d);
+    }
+    Double last = null;
+    while(!heap.isEmpty()) {
+      last = heap.poll();
+    }
+    return last;
+  }
+
+  /**
+   * Primitive heap, fill and drain completely.
+   *
+   * @return Last element
+   */
+  @Benchmark
+  public double doubleMinHeap() {
+    DoubleMinHeap heap = new DoubleMinHeap();
+    for(double d : dists) {
+      heap.add(d);
+    }
+    double last = Double.NaN;
+    while(!heap.isEmpty()) {
+      last = heap.poll();
+    }
+    return last;
+  }
+}
@@ -0,0 +1,86 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2017
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.lmu.ifi.dbs.elki.benchmark;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import de.lmu.ifi.dbs.elki.database.Database;
+
+/**
+ * Benchmark the construction of the different index structures (including
+ * loading the data into the database) on uniform data.
+ *
+ * @author Erich Schubert
+ * @since 0.7.2
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class IndexBuildBenchmark {
+  /**
+   * Index to benchmark, see {@link BenchmarkUtil#INDEXES}.
+   */
+  @Param({ "linear", "rstar", "mtree", "covertree", "kdtree", "packedkd", "vafile", "lsh", "idistance", "hnsw", "pq" })
+  public String index;
+
+  /**
+   * Data set size.
+   */
+  @Param({ "10000", "100000" })
+  public int size;
+
+  /**
+   * Dimensionality.
+   */
+  @Param({ "2", "8", "32" })
+  public int dim;
+
+  /**
+   * Data set.
+   */
+  private double[][] data;
+
+  @Setup
+  public void setup() {
+    data = BenchmarkUtil.uniform(new Random(BenchmarkUtil.SEED), size, dim);
+  }
+
+  @Benchmark
+  public Database build() {
+    return BenchmarkUtil.makeDatabase(data, index);
+  }
+}
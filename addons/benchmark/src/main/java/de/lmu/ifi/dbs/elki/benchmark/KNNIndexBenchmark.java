@@ -0,0 +1,149 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2017
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.lmu.ifi.dbs.elki.benchmark;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import de.lmu.ifi.dbs.elki.data.DoubleVector;
+import de.lmu.ifi.dbs.elki.data.NumberVector;
+import de.lmu.ifi.dbs.elki.data.type.TypeUtil;
+import de.lmu.ifi.dbs.elki.database.Database;
+import de.lmu.ifi.dbs.elki.database.QueryUtil;
+import de.lmu.ifi.dbs.elki.database.query.knn.KNNQuery;
+import de.lmu.ifi.dbs.elki.database.query.range.RangeQuery;
+import de.lmu.ifi.dbs.elki.database.relation.Relation;
+import de.lmu.ifi.dbs.elki.distance.distancefunction.minkowski.EuclideanDistanceFunction;
+
+/**
+ * Benchmark the kNN and range queries of the different index structures on
+ * uniform data of controlled size and dimensionality.
+ *
+ * The linear scan is included as baseline.
+ *
+ * @author Erich Schubert
+ * @since 0.7.2
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class KNNIndexBenchmark {
+  /**
+   * Number of queries per invocation.
+   */
+  private static final int QUERIES = 100;
+
+  /**
+   * Index to benchmark, see {@link BenchmarkUtil#INDEXES}.
+   */
+  @Param({ "linear", "rstar", "mtree", "covertree", "kdtree", "packedkd", "vafile", "lsh", "idistance", "hnsw", "pq" })
+  public String index;
+
+  /**
+   * Data set size.
+   */
+  @Param({ "10000", "100000" })
+  public int size;
+
+  /**
+   * Dimensionality.
+   */
+  @Param({ "2", "8", "32" })
+  public int dim;
+
+  /**
+   * Number of neighbors.
+   */
+  @Param({ "10" })
+  public int k;
+
+  /**
+   * kNN query.
+   */
+  private KNNQuery<NumberVector> knnq;
+
+  /**
+   * Range query.
+   */
+  private RangeQuery<NumberVector> rangeq;
+
+  /**
+   * Query points, not contained in the data set.
+   */
+  private DoubleVector[] queries;
+
+  /**
+   * Query radius, chosen to yield about k results on average.
+   */
+  private double radius;
+
+  @Setup
+  public void setup() {
+    Random random = new Random(BenchmarkUtil.SEED);
+    Database db = BenchmarkUtil.makeDatabase(BenchmarkUtil.uniform(random, size, dim), index);
+    Relation<NumberVector> rel = db.getRelation(TypeUtil.NUMBER_VECTOR_FIELD);
+    knnq = QueryUtil.getKNNQuery(rel, EuclideanDistanceFunction.STATIC, k);
+    rangeq = QueryUtil.getRangeQuery(rel, EuclideanDistanceFunction.STATIC);
+    queries = BenchmarkUtil.uniformVectors(random, QUERIES, dim);
+    // Use the average kNN distance as query radius:
+    double sum = 0.;
+    for(DoubleVector q : queries) {
+      sum += knnq.getKNNForObject(q, k).getKNNDistance();
+    }
+    radius = sum / QUERIES;
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(QUERIES)
+  public int knnQuery() {
+    int total = 0;
+    for(DoubleVector q : queries) {
+      total += knnq.getKNNForObject(q, k).size();
+    }
+    return total;
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(QUERIES)
+  public int rangeQuery() {
+    int total = 0;
+    for(DoubleVector q : queries) {
+      total += rangeq.getRangeForObject(q, radius).size();
+    }
+    return total;
+  }
+}
@@ -44,6 +44,7 @@ import de.lmu.ifi.dbs.elki.index.tree.spatial.rstarvariants.NonFlatRStarTree;
 import de.lmu.ifi.dbs.elki.index.tree.spatial.rstarvariants.xtree.XTreeSettings.Overlap;
 import de.lmu.ifi.dbs.elki.index.tree.spatial.rstarvariants.xtree.util.SplitHistory;
 import de.lmu.ifi.dbs.elki.index.tree.spatial.rstarvariants.xtree.util.XSplitter;
+import de.lmu.ifi.dbs.elki.logging.statistics.QueryCounters;
 import de.lmu.ifi.dbs.elki.persistent.PageFile;
 import de.lmu.ifi.dbs.elki.persistent.PersistentPageFile;
 import de.lmu.ifi.dbs.elki.utilities.documentation.Reference;
@@ -195,6 +196,7 @@ public abstract class AbstractXTree<N extends AbstractXTreeNode<N>> extends Abst
   public N getNode(int nodeID) {
     N nID = supernodes.get(new Long(nodeID));
     if(nID != null) {
+      QueryCounters.countNodeVisit();
       return nID;
     }
     N n = super.getNode(nodeID);
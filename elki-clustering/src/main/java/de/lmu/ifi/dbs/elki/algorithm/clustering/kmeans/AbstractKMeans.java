@@ -33,6 +33,7 @@ import de.lmu.ifi.dbs.elki.data.Clustering;
 import de.lmu.ifi.dbs.elki.data.DoubleVector;
 import de.lmu.ifi.dbs.elki.data.NumberVector;
 import de.lmu.ifi.dbs.elki.data.SparseNumberVector;
+import de.lmu.ifi.dbs.elki.data.VectorStore;
 import de.lmu.ifi.dbs.elki.data.VectorUtil.SortDBIDsBySingleDimension;
 import de.lmu.ifi.dbs.elki.data.model.Model;
 import de.lmu.ifi.dbs.elki.data.type.CombinedTypeInformation;
@@ -41,6 +42,7 @@ import de.lmu.ifi.dbs.elki.data.type.TypeUtil;
 import de.lmu.ifi.dbs.elki.database.datastore.WritableIntegerDataStore;
 import de.lmu.ifi.dbs.elki.database.ids.*;
 import de.lmu.ifi.dbs.elki.database.relation.Relation;
+import de.lmu.ifi.dbs.elki.database.relation.VectorStoreRelation;
 import de.lmu.ifi.dbs.elki.distance.distancefunction.NumberVectorDistanceFunction;
 import de.lmu.ifi.dbs.elki.distance.distancefunction.PrimitiveDistanceFunction;
 import de.lmu.ifi.dbs.elki.distance.distancefunction.minkowski.EuclideanDistanceFunction;
@@ -52,6 +54,8 @@ import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameterization.Parameteriz
 import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameters.IntParameter;
 import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameters.ObjectParameter;
 
+import net.jafama.FastMath;
+
 /**
  * Abstract base class for k-means implementations.
  *
@@ -114,6 +118,11 @@ public abstract class AbstractKMeans<V extends NumberVector, M extends Model> ex
       cluster.clear();
     }
     final NumberVectorDistanceFunction<?> df = getDistanceFunction();
+    if(relation instanceof VectorStoreRelation) {
+      if(SquaredEuclideanDistanceFunction.STATIC.equals(df) || EuclideanDistanceFunction.STATIC.equals(df)) {
+        return assignToNearestCluster((VectorStoreRelation) relation, EuclideanDistanceFunction.STATIC.equals(df), means, clusters, assignment, varsum);
+      }
+    }
     for(DBIDIter iditer = relation.iterDBIDs(); iditer.valid(); iditer.advance()) {
       double mindist = Double.POSITIVE_INFINITY;
       NumberVector fv = relation.get(iditer);
@@ -132,6 +141,39 @@ public abstract class AbstractKMeans<V extends NumberVector, M extends Model> ex
     return changed;
   }
 
+  /**
+   * Assign each object to the nearest cluster, reading the vectors from the
+   * store of the relation.
+   *
+   * @param relation the database to cluster
+   * @param sqrt Use Euclidean instead of squared Euclidean distance
+   * @param means a list of k means
+   * @param clusters cluster assignment
+   * @param assignment Current cluster assignment
+   * @param varsum Variance sum output
+   * @return true when the object was reassigned
+   */
+  private boolean assignToNearestCluster(VectorStoreRelation relation, boolean sqrt, double[][] means, List<? extends ModifiableDBIDs> clusters, WritableIntegerDataStore assignment, double[] varsum) {
+    final VectorStore store = relation.getStore();
+    boolean changed = false;
+    for(DBIDIter iditer = relation.iterDBIDs(); iditer.valid(); iditer.advance()) {
+      final int row = relation.getOffset(iditer);
+      double mindist = Double.POSITIVE_INFINITY;
+      int minIndex = 0;
+      for(int i = 0; i < k; i++) {
+        final double dist = sqrt ? FastMath.sqrt(store.squaredEuclidean(row, means[i])) : store.squaredEuclidean(row, means[i]);
+        if(dist < mindist) {
+          minIndex = i;
+          mindist = dist;
+        }
+      }
+      varsum[minIndex] += mindist;
+      clusters.get(minIndex).add(iditer);
+      changed |= assignment.putInt(iditer, minIndex) != minIndex;
+    }
+    return changed;
+  }
+
   @Override
   public TypeInformation[] getInputTypeRestriction() {
     return TypeUtil.array(new CombinedTypeInformation(TypeUtil.NUMBER_VECTOR_FIELD, getDistanceFunction().getInputTypeRestriction()));
@@ -20,6 +20,11 @@
  */
 package de.lmu.ifi.dbs.elki.database.query.range;
 
+import java.util.ArrayList;
+import java.util.List;
+
+import de.lmu.ifi.dbs.elki.database.ids.ArrayDBIDs;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDIter;
 import de.lmu.ifi.dbs.elki.database.ids.DBIDRef;
 import de.lmu.ifi.dbs.elki.database.ids.DoubleDBIDList;
 import de.lmu.ifi.dbs.elki.database.ids.ModifiableDoubleDBIDList;
@@ -76,4 +81,22 @@ public interface RangeQuery<O> extends DatabaseQuery {
    * @param result Neighbors output set
    */
   void getRangeForObject(O obj, double range, ModifiableDoubleDBIDList result);
+
+  /**
+   * Bulk query method.
+   *
+   * The default implementation runs one query after the other; index
+   * implementations may override this to share work across the queries.
+   *
+   * @param ids query object IDs
+   * @param range Query range
+   * @return neighbors, in the same order as the query IDs
+   */
+  default List<? extends DoubleDBIDList> getRangeForBulkDBIDs(ArrayDBIDs ids, double range) {
+    List<DoubleDBIDList> result = new ArrayList<>(ids.size());
+    for(DBIDIter iter = ids.iter(); iter.valid(); iter.advance()) {
+      result.add(getRangeForDBID(iter, range));
+    }
+    return result;
+  }
 }
@@ -47,6 +47,26 @@ public interface PrimitiveDistanceFunction<O> extends DistanceFunction<O> {
    */
   double distance(O o1, O o2);
 
+  /**
+   * Computes the distance between two given objects, but allow the
+   * computation to stop early once the distance is known to exceed the given
+   * threshold ("early abandoning").
+   *
+   * If the distance is at most the threshold, the result must be the same as
+   * {@link #distance(Object, Object)}. Otherwise, any value larger than the
+   * threshold may be returned, usually a lower bound of the distance.
+   *
+   * The default implementation computes the full distance.
+   *
+   * @param o1 first DatabaseObject
+   * @param o2 second DatabaseObject
+   * @param threshold Distance threshold, e.g. the current kNN distance
+   * @return the distance, or a value larger than the threshold
+   */
+  default double distance(O o1, O o2, double threshold) {
+    return distance(o1, o2);
+  }
+
   @Override
   SimpleTypeInformation<? super O> getInputTypeRestriction();
 
@@ -103,6 +103,15 @@ public class DoubleVector implements NumberVector {
     return values.clone();
   }
 
+  /**
+   * Low-level access to the element array. Do not modify!
+   *
+   * @return Array access
+   */
+  public double[] getArrayRef() {
+    return values;
+  }
+
   @Override
   public String toString() {
     StringBuilder featureLine = new StringBuilder();
@@ -116,6 +116,15 @@ public class FloatVector implements NumberVector {
     return data;
   }
 
+  /**
+   * Low-level access to the element array. Do not modify!
+   *
+   * @return Array access
+   */
+  public float[] getArrayRef() {
+    return values;
+  }
+
   @Override
   public String toString() {
     StringBuilder featureLine = new StringBuilder();
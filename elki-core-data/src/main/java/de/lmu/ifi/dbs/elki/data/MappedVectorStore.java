@@ -0,0 +1,250 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2017
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.lmu.ifi.dbs.elki.data;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.util.AbstractList;
+import java.util.RandomAccess;
+
+import de.lmu.ifi.dbs.elki.utilities.io.ByteArrayUtil;
+
+/**
+ * Read-only storage of vectors of the same dimensionality in a memory mapped
+ * file, with fixed-width records. The data is not copied onto the Java heap;
+ * vectors are served as flyweight {@link View}s reading from the mapped
+ * buffers, so the operating system page cache can be shared across processes.
+ *
+ * Each record starts at {@code start + row * stride}, and the values of the
+ * vector begin {@code valueoffset} bytes into the record, stored as big-endian
+ * {@code double} or {@code float} values. This matches the layout of bundle
+ * files written with the dense vector serializers.
+ *
+ * As a single mapping is limited to 2 GB, large files are mapped in multiple
+ * chunks, each holding a whole number of records.
+ *
+ * This class is a {@link java.util.List} of vectors, so it can be used as
+ * column of a {@code MultipleObjectsBundle} without materializing the data,
+ * and a {@link VectorStore}, so the database can serve it as a vector store
+ * relation.
+ *
+ * @author Erich Schubert
+ * @since 0.7.2
+ *
+ * @apiviz.has View
+ */
+public class MappedVectorStore extends AbstractList<NumberVector> implements VectorStore, RandomAccess {
+  /**
+   * Mapped chunks of the file.
+   */
+  private final MappedByteBuffer[] chunks;
+
+  /**
+   * Number of records per chunk.
+   */
+  private final int perchunk;
+
+  /**
+   * Number of vectors.
+   */
+  private final int size;
+
+  /**
+   * Dimensionality.
+   */
+  private final int dim;
+
+  /**
+   * Record width in bytes.
+   */
+  private final int stride;
+
+  /**
+   * Offset of the first value within each record.
+   */
+  private final int valueoffset;
+
+  /**
+   * Size of each value: 8 for double, 4 for float.
+   */
+  private final int valuesize;
+
+  /**
+   * Constructor, mapping the file.
+   *
+   * @param channel File channel (may be closed afterwards)
+   * @param start Position of the first record in the file
+   * @param size Number of records
+   * @param dim Dimensionality
+   * @param stride Record width in bytes
+   * @param valueoffset Offset of the values within each record
+   * @param singleprecision Values are stored as {@code float}
+   * @throws IOException when mapping the file fails
+   */
+  public MappedVectorStore(FileChannel channel, long start, int size, int dim, int stride, int valueoffset, boolean singleprecision) throws IOException {
+    super();
+    this.size = size;
+    this.dim = dim;
+    this.stride = stride;
+    this.valueoffset = valueoffset;
+    this.valuesize = singleprecision ? ByteArrayUtil.SIZE_FLOAT : ByteArrayUtil.SIZE_DOUBLE;
+    if(stride <= 0 || valueoffset < 0 || valueoffset + dim * valuesize > stride) {
+      throw new IllegalArgumentException("Vector values do not fit into the record width.");
+    }
+    if(channel.size() < start + size * (long) stride) {
+      throw new IOException("File is too small for " + size + " records of " + stride + " bytes.");
+    }
+    this.perchunk = Math.max(1, Integer.MAX_VALUE / stride);
+    final int numchunks = size > 0 ? (size - 1) / perchunk + 1 : 0;
+    this.chunks = new MappedByteBuffer[numchunks];
+    for(int i = 0; i < numchunks; i++) {
+      final int rows = Math.min(perchunk, size - i * perchunk);
+      chunks[i] = channel.map(MapMode.READ_ONLY, start + i * (long) perchunk * stride, rows * (long) stride);
+    }
+  }
+
+  @Override
+  public double get(int row, int d) {
+    final ByteBuffer buf = chunks[row / perchunk];
+    final int p = (row % perchunk) * stride + valueoffset + d * valuesize;
+    return valuesize == ByteArrayUtil.SIZE_DOUBLE ? buf.getDouble(p) : buf.getFloat(p);
+  }
+
+  @Override
+  public View view(int row) {
+    return new View(row);
+  }
+
+  @Override
+  public void copy(int row, double[] buf, int off) {
+    final ByteBuffer chunk = chunks[row / perchunk];
+    int p = (row % perchunk) * stride + valueoffset;
+    if(valuesize == ByteArrayUtil.SIZE_DOUBLE) {
+      for(int d = 0; d < dim; d++, p += ByteArrayUtil.SIZE_DOUBLE) {
+        buf[off + d] = chunk.getDouble(p);
+      }
+    }
+    else {
+      for(int d = 0; d < dim; d++, p += ByteArrayUtil.SIZE_FLOAT) {
+        buf[off + d] = chunk.getFloat(p);
+      }
+    }
+  }
+
+  @Override
+  public View get(int row) {
+    if(row < 0 || row >= size) {
+      throw new IndexOutOfBoundsException("Row " + row + " not in [0;" + size + ")");
+    }
+    return new View(row);
+  }
+
+  @Override
+  public int size() {
+    return size;
+  }
+
+  @Override
+  public int getDimensionality() {
+    return dim;
+  }
+
+  /**
+   * Release the mapped buffers. The store must not be used afterwards.
+   */
+  public void close() {
+    for(int i = 0; i < chunks.length; i++) {
+      ByteArrayUtil.unmapByteBuffer(chunks[i]);
+      chunks[i] = null;
+    }
+  }
+
+  /**
+   * Flyweight view of a single vector in the store.
+   *
+   * @author Erich Schubert
+   */
+  public class View implements VectorStore.View {
+    /**
+     * Row number.
+     */
+    private final int row;
+
+    /**
+     * Constructor.
+     *
+     * @param row Row number
+     */
+    protected View(int row) {
+      super();
+      this.row = row;
+    }
+
+    @Override
+    public MappedVectorStore getStore() {
+      return MappedVectorStore.this;
+    }
+
+    @Override
+    public int getRow() {
+      return row;
+    }
+
+    @Override
+    public int getDimensionality() {
+      return dim;
+    }
+
+    @Override
+    public double doubleValue(int dimension) {
+      return get(row, dimension);
+    }
+
+    @Override
+    public float floatValue(int dimension) {
+      return (float) get(row, dimension);
+    }
+
+    @Override
+    public long longValue(int dimension) {
+      return (long) get(row, dimension);
+    }
+
+    @Override
+    public double[] toArray() {
+      double[] data = new double[dim];
+      copy(row, data, 0);
+      return data;
+    }
+
+    @Override
+    public String toString() {
+      StringBuilder buf = new StringBuilder(dim * 8);
+      for(int d = 0; d < dim; d++) {
+        buf.append(d > 0 ? ATTRIBUTE_SEPARATOR : "").append(doubleValue(d));
+      }
+      return buf.toString();
+    }
+  }
+}
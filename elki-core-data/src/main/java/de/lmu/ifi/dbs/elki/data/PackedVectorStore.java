@@ -0,0 +1,409 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2017
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.lmu.ifi.dbs.elki.data;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import de.lmu.ifi.dbs.elki.utilities.datastructures.arraylike.ArrayAdapter;
+import de.lmu.ifi.dbs.elki.utilities.datastructures.arraylike.NumberArrayAdapter;
+import de.lmu.ifi.dbs.elki.utilities.io.ByteArrayUtil;
+import de.lmu.ifi.dbs.elki.utilities.io.ByteBufferSerializer;
+
+/**
+ * Storage of many vectors of the same dimensionality in a single primitive
+ * array, in row-major or column-major layout, using {@code double} or
+ * {@code float} precision.
+ *
+ * Vectors are accessed using flyweight {@link View} objects. Performance
+ * critical code can use the row-based accessors of {@link VectorStore}, or
+ * access the underlying arrays directly using {@link #getDoubleData()} or
+ * {@link #getFloatData()}, with {@link #offset}, {@link #getRowStride()} and
+ * {@link #getColumnStride()}.
+ *
+ * @author Erich Schubert
+ * @since 0.7.2
+ *
+ * @apiviz.has View
+ */
+public class PackedVectorStore implements VectorStore {
+  /**
+   * Memory layout of the vectors.
+   *
+   * @author Erich Schubert
+   */
+  public enum Layout {
+    /**
+     * Store the values of each vector contiguously.
+     */
+    ROW_MAJOR,
+    /**
+     * Store the values of each dimension contiguously.
+     */
+    COLUMN_MAJOR
+  }
+
+  /**
+   * Factory for the type information of packed vectors. Created vectors are
+   * regular {@link DoubleVector}s.
+   */
+  public static final Factory FACTORY = new Factory();
+
+  /**
+   * Serializer, that deserializes into {@link DoubleVector}s.
+   */
+  public static final ByteBufferSerializer<NumberVector> VARIABLE_SERIALIZER = new VariableSerializer();
+
+  /**
+   * Double precision data, or {@code null}.
+   */
+  private final double[] ddata;
+
+  /**
+   * Single precision data, or {@code null}.
+   */
+  private final float[] fdata;
+
+  /**
+   * Number of vectors.
+   */
+  private final int size;
+
+  /**
+   * Dimensionality.
+   */
+  private final int dim;
+
+  /**
+   * Memory layout.
+   */
+  private final Layout layout;
+
+  /**
+   * Distance between consecutive vectors, and consecutive dimensions.
+   */
+  private final int rowstride, colstride;
+
+  /**
+   * Constructor.
+   *
+   * @param size Number of vectors
+   * @param dim Dimensionality
+   * @param layout Memory layout
+   * @param singleprecision Use {@code float} precision
+   */
+  public PackedVectorStore(int size, int dim, Layout layout, boolean singleprecision) {
+    super();
+    if((long) size * dim > Integer.MAX_VALUE) {
+      throw new IllegalArgumentException("Data set too large for a single array: " + size + " x " + dim);
+    }
+    this.size = size;
+    this.dim = dim;
+    this.layout = layout;
+    this.ddata = singleprecision ? null : new double[size * dim];
+    this.fdata = singleprecision ? new float[size * dim] : null;
+    this.rowstride = layout == Layout.ROW_MAJOR ? dim : 1;
+    this.colstride = layout == Layout.ROW_MAJOR ? 1 : size;
+  }
+
+  /**
+   * Store a vector.
+   *
+   * @param row Row number
+   * @param vec Vector
+   */
+  public void set(int row, NumberVector vec) {
+    assert (vec.getDimensionality() == dim) : "Vector has an incompatible dimensionality.";
+    final int off = row * rowstride;
+    if(ddata != null) {
+      for(int d = 0, p = off; d < dim; d++, p += colstride) {
+        ddata[p] = vec.doubleValue(d);
+      }
+    }
+    else {
+      for(int d = 0, p = off; d < dim; d++, p += colstride) {
+        fdata[p] = vec.floatValue(d);
+      }
+    }
+  }
+
+  /**
+   * Get a single value.
+   *
+   * @param row Row number
+   * @param d Dimension
+   * @return Value
+   */
+  @Override
+  public double get(int row, int d) {
+    final int p = row * rowstride + d * colstride;
+    return ddata != null ? ddata[p] : fdata[p];
+  }
+
+  @Override
+  public View view(int row) {
+    return new View(row);
+  }
+
+  @Override
+  public void copy(int row, double[] buf, int off) {
+    int p = row * rowstride;
+    if(ddata != null && colstride == 1) {
+      System.arraycopy(ddata, p, buf, off, dim);
+      return;
+    }
+    for(int d = 0; d < dim; d++, p += colstride) {
+      buf[off + d] = ddata != null ? ddata[p] : fdata[p];
+    }
+  }
+
+  @Override
+  public double squaredEuclidean(int r1, int r2) {
+    double agg = 0.;
+    int p1 = r1 * rowstride, p2 = r2 * rowstride;
+    if(ddata != null) {
+      for(int d = 0; d < dim; d++, p1 += colstride, p2 += colstride) {
+        final double delta = ddata[p1] - ddata[p2];
+        agg += delta * delta;
+      }
+    }
+    else {
+      for(int d = 0; d < dim; d++, p1 += colstride, p2 += colstride) {
+        final double delta = fdata[p1] - fdata[p2];
+        agg += delta * delta;
+      }
+    }
+    return agg;
+  }
+
+  @Override
+  public double squaredEuclidean(int row, double[] vec) {
+    double agg = 0.;
+    int p = row * rowstride;
+    if(ddata != null) {
+      for(int d = 0; d < dim; d++, p += colstride) {
+        final double delta = ddata[p] - vec[d];
+        agg += delta * delta;
+      }
+    }
+    else {
+      for(int d = 0; d < dim; d++, p += colstride) {
+        final double delta = fdata[p] - vec[d];
+        agg += delta * delta;
+      }
+    }
+    return agg;
+  }
+
+  /**
+   * Get the offset of the first value of a vector in the data array.
+   *
+   * @param row Row number
+   * @return Array offset
+   */
+  public int offset(int row) {
+    return row * rowstride;
+  }
+
+  /**
+   * Get the double precision data array.
+   *
+   * @return Data array, or {@code null} if single precision is used.
+   */
+  public double[] getDoubleData() {
+    return ddata;
+  }
+
+  /**
+   * Get the single precision data array.
+   *
+   * @return Data array, or {@code null} if double precision is used.
+   */
+  public float[] getFloatData() {
+    return fdata;
+  }
+
+  /**
+   * Distance of the same dimension of consecutive vectors in the array.
+   *
+   * @return Row stride
+   */
+  public int getRowStride() {
+    return rowstride;
+  }
+
+  /**
+   * Distance of consecutive dimensions of the same vector in the array.
+   *
+   * @return Column stride
+   */
+  public int getColumnStride() {
+    return colstride;
+  }
+
+  /**
+   * Get the memory layout.
+   *
+   * @return Layout
+   */
+  public Layout getLayout() {
+    return layout;
+  }
+
+  @Override
+  public int size() {
+    return size;
+  }
+
+  @Override
+  public int getDimensionality() {
+    return dim;
+  }
+
+  /**
+   * Flyweight view of a single vector in the store.
+   *
+   * @author Erich Schubert
+   */
+  public class View implements VectorStore.View {
+    /**
+     * Row number.
+     */
+    private final int row;
+
+    /**
+     * Constructor.
+     *
+     * @param row Row number
+     */
+    protected View(int row) {
+      super();
+      this.row = row;
+    }
+
+    @Override
+    public PackedVectorStore getStore() {
+      return PackedVectorStore.this;
+    }
+
+    @Override
+    public int getRow() {
+      return row;
+    }
+
+    @Override
+    public int getDimensionality() {
+      return dim;
+    }
+
+    @Override
+    public double doubleValue(int dimension) {
+      final int p = row * rowstride + dimension * colstride;
+      return ddata != null ? ddata[p] : fdata[p];
+    }
+
+    @Override
+    public float floatValue(int dimension) {
+      final int p = row * rowstride + dimension * colstride;
+      return ddata != null ? (float) ddata[p] : fdata[p];
+    }
+
+    @Override
+    public long longValue(int dimension) {
+      return (long) doubleValue(dimension);
+    }
+
+    @Override
+    public double[] toArray() {
+      double[] data = new double[dim];
+      for(int d = 0, p = row * rowstride; d < dim; d++, p += colstride) {
+        data[d] = ddata != null ? ddata[p] : fdata[p];
+      }
+      return data;
+    }
+
+    @Override
+    public String toString() {
+      StringBuilder buf = new StringBuilder(dim * 8);
+      for(int d = 0; d < dim; d++) {
+        buf.append(d > 0 ? ATTRIBUTE_SEPARATOR : "").append(doubleValue(d));
+      }
+      return buf.toString();
+    }
+  }
+
+  /**
+   * Factory for the type information of packed vectors. As views cannot exist
+   * without a store, new vectors are produced as {@link DoubleVector}.
+   *
+   * @author Erich Schubert
+   */
+  public static class Factory implements NumberVector.Factory<NumberVector> {
+    @Override
+    public <A> NumberVector newFeatureVector(A array, ArrayAdapter<? extends Number, A> adapter) {
+      return DoubleVector.FACTORY.newFeatureVector(array, adapter);
+    }
+
+    @Override
+    public <A> NumberVector newNumberVector(A array, NumberArrayAdapter<?, ? super A> adapter) {
+      return DoubleVector.FACTORY.newNumberVector(array, adapter);
+    }
+
+    @Override
+    public ByteBufferSerializer<NumberVector> getDefaultSerializer() {
+      return VARIABLE_SERIALIZER;
+    }
+
+    @Override
+    public Class<? super NumberVector> getRestrictionClass() {
+      return NumberVector.class;
+    }
+  }
+
+  /**
+   * Serialization class using VarInt encodings, compatible with
+   * {@link DoubleVector#VARIABLE_SERIALIZER}.
+   *
+   * @author Erich Schubert
+   */
+  private static class VariableSerializer implements ByteBufferSerializer<NumberVector> {
+    @Override
+    public NumberVector fromByteBuffer(ByteBuffer buffer) throws IOException {
+      return DoubleVector.VARIABLE_SERIALIZER.fromByteBuffer(buffer);
+    }
+
+    @Override
+    public void toByteBuffer(ByteBuffer buffer, NumberVector vec) throws IOException {
+      final int dim = vec.getDimensionality();
+      assert (buffer.remaining() >= ByteArrayUtil.SIZE_DOUBLE * dim) : "Not enough space remaining in buffer to write " + dim + " doubles";
+      ByteArrayUtil.writeUnsignedVarint(buffer, dim);
+      for(int i = 0; i < dim; i++) {
+        buffer.putDouble(vec.doubleValue(i));
+      }
+    }
+
+    @Override
+    public int getByteSize(NumberVector vec) {
+      final int dim = vec.getDimensionality();
+      return ByteArrayUtil.getUnsignedVarintSize(dim) + ByteArrayUtil.SIZE_DOUBLE * dim;
+    }
+  }
+}
@@ -0,0 +1,133 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2017
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.lmu.ifi.dbs.elki.data;
+
+/**
+ * Storage of many vectors of the same dimensionality outside of individual
+ * vector objects, such as in a single primitive array or a memory mapped file.
+ *
+ * Vectors are served as flyweight {@link View}s. Code that knows the store can
+ * instead use the row-based accessors, which avoid the per-value virtual calls
+ * of the {@link NumberVector} interface.
+ *
+ * @author Erich Schubert
+ * @since 0.7.2
+ *
+ * @apiviz.has View
+ */
+public interface VectorStore {
+  /**
+   * Get the number of vectors.
+   *
+   * @return Size
+   */
+  int size();
+
+  /**
+   * Get the dimensionality.
+   *
+   * @return Dimensionality
+   */
+  int getDimensionality();
+
+  /**
+   * Get a single value.
+   *
+   * @param row Row number
+   * @param d Dimension
+   * @return Value
+   */
+  double get(int row, int d);
+
+  /**
+   * Get a flyweight view of a vector.
+   *
+   * @param row Row number
+   * @return View
+   */
+  View view(int row);
+
+  /**
+   * Copy a vector into a buffer.
+   *
+   * @param row Row number
+   * @param buf Output buffer
+   * @param off Offset in the output buffer
+   */
+  default void copy(int row, double[] buf, int off) {
+    for(int d = 0, dim = getDimensionality(); d < dim; d++) {
+      buf[off + d] = get(row, d);
+    }
+  }
+
+  /**
+   * Squared Euclidean distance of two vectors in the store.
+   *
+   * @param r1 First row
+   * @param r2 Second row
+   * @return Squared Euclidean distance
+   */
+  default double squaredEuclidean(int r1, int r2) {
+    double agg = 0.;
+    for(int d = 0, dim = getDimensionality(); d < dim; d++) {
+      final double delta = get(r1, d) - get(r2, d);
+      agg += delta * delta;
+    }
+    return agg;
+  }
+
+  /**
+   * Squared Euclidean distance of a vector in the store to a dense vector.
+   *
+   * @param row Row number
+   * @param vec Vector, of the same dimensionality
+   * @return Squared Euclidean distance
+   */
+  default double squaredEuclidean(int row, double[] vec) {
+    double agg = 0.;
+    for(int d = 0, dim = getDimensionality(); d < dim; d++) {
+      final double delta = get(row, d) - vec[d];
+      agg += delta * delta;
+    }
+    return agg;
+  }
+
+  /**
+   * Flyweight view of a single vector in a store.
+   *
+   * @author Erich Schubert
+   */
+  interface View extends NumberVector {
+    /**
+     * Get the store this vector is a view of.
+     *
+     * @return Store
+     */
+    VectorStore getStore();
+
+    /**
+     * Get the row number in the store.
+     *
+     * @return Row number
+     */
+    int getRow();
+  }
+}
@@ -26,6 +26,7 @@ import de.lmu.ifi.dbs.elki.database.ids.DBIDRef;
 import de.lmu.ifi.dbs.elki.database.ids.DoubleDBIDListIter;
 import de.lmu.ifi.dbs.elki.database.ids.DoubleDBIDPair;
 import de.lmu.ifi.dbs.elki.database.ids.KNNHeap;
+import de.lmu.ifi.dbs.elki.logging.statistics.QueryCounters;
 import de.lmu.ifi.dbs.elki.utilities.datastructures.heap.DoubleIntegerHeap;
 import de.lmu.ifi.dbs.elki.utilities.datastructures.heap.DoubleIntegerMaxHeap;
 import net.jafama.FastMath;
@@ -96,6 +97,7 @@ class DoubleIntegerDBIDKNNHeap implements KNNHeap {
   @Override
   public final double insert(final double distance, final DBIDRef id) {
     if(heap.size() < k) {
+      QueryCounters.countHeapInsert();
       heap.add(distance, id.internalGetIndex());
       // Update kdist if size == k!
       return (heap.size() >= k) ? kdist = heap.peekKey() : kdist;
@@ -108,6 +110,7 @@ class DoubleIntegerDBIDKNNHeap implements KNNHeap {
       return kdist;
     }
     // Old top element: (kdist, previd)
+    QueryCounters.countHeapInsert();
     updateHeap(distance, id.internalGetIndex());
     return kdist;
   }
@@ -117,6 +120,7 @@ class DoubleIntegerDBIDKNNHeap implements KNNHeap {
     final double distance = e.doubleValue();
     final int iid = e.internalGetIndex();
     if(heap.size() < k) {
+      QueryCounters.countHeapInsert();
       heap.add(distance, iid);
       if(heap.size() >= k) {
         kdist = heap.peekKey();
@@ -131,6 +135,7 @@ class DoubleIntegerDBIDKNNHeap implements KNNHeap {
       return;
     }
     // Old top element: (kdist, previd)
+    QueryCounters.countHeapInsert();
     updateHeap(distance, iid);
   }
 
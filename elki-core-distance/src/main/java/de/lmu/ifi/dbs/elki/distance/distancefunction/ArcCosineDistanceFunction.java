@@ -75,6 +75,10 @@ public class ArcCosineDistanceFunction implements SpatialPrimitiveDistanceFuncti
    */
   @Override
   public double distance(NumberVector v1, NumberVector v2) {
+    final double sim = ArrayDistanceKernels.Kernel.COSINE.apply(v1, v2, 0., 0.);
+    if(!Double.isNaN(sim)) {
+      return Math.acos(sim);
+    }
     double d = Math.acos(VectorUtil.cosAngle(v1, v2));
     return (d > 0) ? d : 0;
   }
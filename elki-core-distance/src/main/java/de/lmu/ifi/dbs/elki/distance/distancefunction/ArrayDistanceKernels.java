@@ -0,0 +1,1231 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2017
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.lmu.ifi.dbs.elki.distance.distancefunction;
+
+import de.lmu.ifi.dbs.elki.data.DoubleVector;
+import de.lmu.ifi.dbs.elki.data.FloatVector;
+import de.lmu.ifi.dbs.elki.data.NumberVector;
+import de.lmu.ifi.dbs.elki.math.MathUtil;
+
+import net.jafama.FastMath;
+
+/**
+ * Distance kernels on primitive {@code double[]} and {@code float[]} arrays.
+ *
+ * The distance functions use these kernels via {@link Kernel} when both
+ * vectors are {@link DoubleVector}s or {@link FloatVector}s. Reading the arrays
+ * directly avoids the interface call on every dimension, and the loops are
+ * manually unrolled, such that the JIT compiler can eliminate bounds checks and
+ * vectorize the element-wise operations. The summation order is the same as in
+ * the generic implementations, so that the results are identical (in
+ * particular, consistent with the {@code minDist} of the spatial distance
+ * functions); only the maximum and minimum use independent accumulators.
+ *
+ * Float values are converted to double precision before computing, as in
+ * {@link NumberVector#doubleValue}.
+ *
+ * The variants with a {@code bound} parameter stop early, once the partial
+ * sum exceeds the bound, and then return this partial sum. Otherwise, they
+ * return the same result as the variants without a bound.
+ *
+ * Vectors of different length are handled as in the generic implementations:
+ * the Minkowski kernels treat missing dimensions as 0, while the kernels
+ * requiring equal length take the common length as parameter.
+ *
+ * @author Erich Schubert
+ * @since 0.7.2
+ */
+public final class ArrayDistanceKernels {
+  /**
+   * Fake constructor: do not instantiate.
+   */
+  private ArrayDistanceKernels() {
+    // Do not instantiate.
+  }
+
+  /**
+   * Squared Euclidean distance.
+   *
+   * @param a First vector
+   * @param b Second vector
+   * @return Squared Euclidean distance
+   */
+  public static double squaredEuclidean(double[] a, double[] b) {
+    final int dim1 = a.length, dim2 = b.length;
+    final int mindim = (dim1 < dim2) ? dim1 : dim2;
+    final double agg = squaredEuclidean(a, 0, b, 0, mindim);
+    return (dim1 > mindim) ? agg + squaredNorm(a, mindim, dim1) : //
+        (dim2 > mindim) ? agg + squaredNorm(b, mindim, dim2) : agg;
+  }
+
+  /**
+   * Squared Euclidean distance of two array ranges, e.g. rows of a packed
+   * matrix.
+   *
+   * @param a First array
+   * @param aoff Offset in first array
+   * @param b Second array
+   * @param boff Offset in second array
+   * @param len Number of values
+   * @return Squared Euclidean distance
+   */
+  public static double squaredEuclidean(double[] a, int aoff, double[] b, int boff, int len) {
+    double agg = 0.;
+    int i = 0;
+    for(final int end = len & ~3; i < end; i += 4) {
+      final double d0 = a[aoff + i] - b[boff + i];
+      final double d1 = a[aoff + i + 1] - b[boff + i + 1];
+      final double d2 = a[aoff + i + 2] - b[boff + i + 2];
+      final double d3 = a[aoff + i + 3] - b[boff + i + 3];
+      agg += d0 * d0;
+      agg += d1 * d1;
+      agg += d2 * d2;
+      agg += d3 * d3;
+    }
+    for(; i < len; i++) {
+      final double d = a[aoff + i] - b[boff + i];
+      agg += d * d;
+    }
+    return agg;
+  }
+
+  /**
+   * Squared Euclidean norm of a range of an array.
+   *
+   * @param a Array
+   * @param start First index
+   * @param end End index (exclusive)
+   * @return Squared norm
+   */
+  public static double squaredNorm(double[] a, int start, int end) {
+    double agg = 0.;
+    int i = start;
+    for(final int uend = end - 3; i < uend; i += 4) {
+      final double x0 = a[i], x1 = a[i + 1], x2 = a[i + 2], x3 = a[i + 3];
+      agg += x0 * x0;
+      agg += x1 * x1;
+      agg += x2 * x2;
+      agg += x3 * x3;
+    }
+    for(; i < end; i++) {
+      final double x = a[i];
+      agg += x * x;
+    }
+    return agg;
+  }
+
+  /**
+   * Squared Euclidean distance.
+   *
+   * @param a First vector
+   * @param b Second vector
+   * @return Squared Euclidean distance
+   */
+  public static double squaredEuclidean(float[] a, float[] b) {
+    final int dim1 = a.length, dim2 = b.length;
+    final int mindim = (dim1 < dim2) ? dim1 : dim2;
+    double agg = 0.;
+    int i = 0;
+    for(final int end = mindim & ~3; i < end; i += 4) {
+      final double d0 = (double) a[i] - b[i], d1 = (double) a[i + 1] - b[i + 1];
+      final double d2 = (double) a[i + 2] - b[i + 2], d3 = (double) a[i + 3] - b[i + 3];
+      agg += d0 * d0;
+      agg += d1 * d1;
+      agg += d2 * d2;
+      agg += d3 * d3;
+    }
+    for(; i < mindim; i++) {
+      final double d = (double) a[i] - b[i];
+      agg += d * d;
+    }
+    return (dim1 > mindim) ? agg + squaredNorm(a, mindim, dim1) : //
+        (dim2 > mindim) ? agg + squaredNorm(b, mindim, dim2) : agg;
+  }
+
+  /**
+   * Squared Euclidean norm of a range of an array.
+   *
+   * @param a Array
+   * @param start First index
+   * @param end End index (exclusive)
+   * @return Squared norm
+   */
+  public static double squaredNorm(float[] a, int start, int end) {
+    double agg = 0.;
+    int i = start;
+    for(final int uend = end - 3; i < uend; i += 4) {
+      final double x0 = a[i], x1 = a[i + 1], x2 = a[i + 2], x3 = a[i + 3];
+      agg += x0 * x0;
+      agg += x1 * x1;
+      agg += x2 * x2;
+      agg += x3 * x3;
+    }
+    for(; i < end; i++) {
+      final double x = a[i];
+      agg += x * x;
+    }
+    return agg;
+  }
+
+  /**
+   * Manhattan distance.
+   *
+   * @param a First vector
+   * @param b Second vector
+   * @return Manhattan distance
+   */
+  public static double manhattan(double[] a, double[] b) {
+    final int dim1 = a.length, dim2 = b.length;
+    final int mindim = (dim1 < dim2) ? dim1 : dim2;
+    double agg = 0.;
+    int i = 0;
+    for(final int end = mindim & ~3; i < end; i += 4) {
+      agg += Math.abs(a[i] - b[i]);
+      agg += Math.abs(a[i + 1] - b[i + 1]);
+      agg += Math.abs(a[i + 2] - b[i + 2]);
+      agg += Math.abs(a[i + 3] - b[i + 3]);
+    }
+    for(; i < mindim; i++) {
+      agg += Math.abs(a[i] - b[i]);
+    }
+    return (dim1 > mindim) ? agg + manhattanNorm(a, mindim, dim1) : //
+        (dim2 > mindim) ? agg + manhattanNorm(b, mindim, dim2) : agg;
+  }
+
+  /**
+   * Manhattan norm of a range of an array.
+   *
+   * @param a Array
+   * @param start First index
+   * @param end End index (exclusive)
+   * @return Norm
+   */
+  public static double manhattanNorm(double[] a, int start, int end) {
+    double agg = 0.;
+    int i = start;
+    for(final int uend = end - 3; i < uend; i += 4) {
+      agg += Math.abs(a[i]);
+      agg += Math.abs(a[i + 1]);
+      agg += Math.abs(a[i + 2]);
+      agg += Math.abs(a[i + 3]);
+    }
+    for(; i < end; i++) {
+      agg += Math.abs(a[i]);
+    }
+    return agg;
+  }
+
+  /**
+   * Manhattan distance.
+   *
+   * @param a First vector
+   * @param b Second vector
+   * @return Manhattan distance
+   */
+  public static double manhattan(float[] a, float[] b) {
+    final int dim1 = a.length, dim2 = b.length;
+    final int mindim = (dim1 < dim2) ? dim1 : dim2;
+    double agg = 0.;
+    int i = 0;
+    for(final int end = mindim & ~3; i < end; i += 4) {
+      agg += Math.abs((double) a[i] - b[i]);
+      agg += Math.abs((double) a[i + 1] - b[i + 1]);
+      agg += Math.abs((double) a[i + 2] - b[i + 2]);
+      agg += Math.abs((double) a[i + 3] - b[i + 3]);
+    }
+    for(; i < mindim; i++) {
+      agg += Math.abs((double) a[i] - b[i]);
+    }
+    return (dim1 > mindim) ? agg + manhattanNorm(a, mindim, dim1) : //
+        (dim2 > mindim) ? agg + manhattanNorm(b, mindim, dim2) : agg;
+  }
+
+  /**
+   * Manhattan norm of a range of an array.
+   *
+   * @param a Array
+   * @param start First index
+   * @param end End index (exclusive)
+   * @return Norm
+   */
+  public static double manhattanNorm(float[] a, int start, int end) {
+    double agg = 0.;
+    int i = start;
+    for(final int uend = end - 3; i < uend; i += 4) {
+      agg += Math.abs((double) a[i]);
+      agg += Math.abs((double) a[i + 1]);
+      agg += Math.abs((double) a[i + 2]);
+      agg += Math.abs((double) a[i + 3]);
+    }
+    for(; i < end; i++) {
+      agg += Math.abs((double) a[i]);
+    }
+    return agg;
+  }
+
+  /**
+   * Maximum distance.
+   *
+   * @param a First vector
+   * @param b Second vector
+   * @return Maximum distance
+   */
+  public static double maximum(double[] a, double[] b) {
+    final int dim1 = a.length, dim2 = b.length;
+    final int mindim = (dim1 < dim2) ? dim1 : dim2;
+    double m0 = 0., m1 = 0.;
+    int i = 0;
+    for(final int end = mindim & ~1; i < end; i += 2) {
+      final double d0 = Math.abs(a[i] - b[i]), d1 = Math.abs(a[i + 1] - b[i + 1]);
+      m0 = (d0 < m0) ? m0 : d0;
+      m1 = (d1 < m1) ? m1 : d1;
+    }
+    if(i < mindim) {
+      final double d = Math.abs(a[i] - b[i]);
+      m0 = (d < m0) ? m0 : d;
+    }
+    double agg = (m0 < m1) ? m1 : m0;
+    for(int d = mindim; d < dim1; d++) {
+      final double v = Math.abs(a[d]);
+      agg = (v < agg) ? agg : v;
+    }
+    for(int d = mindim; d < dim2; d++) {
+      final double v = Math.abs(b[d]);
+      agg = (v < agg) ? agg : v;
+    }
+    return agg;
+  }
+
+  /**
+   * Maximum distance.
+   *
+   * @param a First vector
+   * @param b Second vector
+   * @return Maximum distance
+   */
+  public static double maximum(float[] a, float[] b) {
+    final int dim1 = a.length, dim2 = b.length;
+    final int mindim = (dim1 < dim2) ? dim1 : dim2;
+    double m0 = 0., m1 = 0.;
+    int i = 0;
+    for(final int end = mindim & ~1; i < end; i += 2) {
+      final double d0 = Math.abs((double) a[i] - b[i]), d1 = Math.abs((double) a[i + 1] - b[i + 1]);
+      m0 = (d0 < m0) ? m0 : d0;
+      m1 = (d1 < m1) ? m1 : d1;
+    }
+    if(i < mindim) {
+      final double d = Math.abs((double) a[i] - b[i]);
+      m0 = (d < m0) ? m0 : d;
+    }
+    double agg = (m0 < m1) ? m1 : m0;
+    for(int d = mindim; d < dim1; d++) {
+      final double v = Math.abs(a[d]);
+      agg = (v < agg) ? agg : v;
+    }
+    for(int d = mindim; d < dim2; d++) {
+      final double v = Math.abs(b[d]);
+      agg = (v < agg) ? agg : v;
+    }
+    return agg;
+  }
+
+  /**
+   * Minimum distance, on the first {@code dim} dimensions.
+   *
+   * @param a First vector
+   * @param b Second vector
+   * @param dim Dimensionality
+   * @return Minimum distance
+   */
+  public static double minimum(double[] a, double[] b, int dim) {
+    double m0 = Double.POSITIVE_INFINITY, m1 = Double.POSITIVE_INFINITY;
+    int i = 0;
+    for(final int end = dim & ~1; i < end; i += 2) {
+      final double d0 = Math.abs(a[i] - b[i]), d1 = Math.abs(a[i + 1] - b[i + 1]);
+      m0 = (d0 > m0) ? m0 : d0;
+      m1 = (d1 > m1) ? m1 : d1;
+    }
+    if(i < dim) {
+      final double d = Math.abs(a[i] - b[i]);
+      m0 = (d > m0) ? m0 : d;
+    }
+    return (m0 > m1) ? m1 : m0;
+  }
+
+  /**
+   * Minimum distance, on the first {@code dim} dimensions.
+   *
+   * @param a First vector
+   * @param b Second vector
+   * @param dim Dimensionality
+   * @return Minimum distance
+   */
+  public static double minimum(float[] a, float[] b, int dim) {
+    double m0 = Double.POSITIVE_INFINITY, m1 = Double.POSITIVE_INFINITY;
+    int i = 0;
+    for(final int end = dim & ~1; i < end; i += 2) {
+      final double d0 = Math.abs((double) a[i] - b[i]), d1 = Math.abs((double) a[i + 1] - b[i + 1]);
+      m0 = (d0 > m0) ? m0 : d0;
+      m1 = (d1 > m1) ? m1 : d1;
+    }
+    if(i < dim) {
+      final double d = Math.abs((double) a[i] - b[i]);
+      m0 = (d > m0) ? m0 : d;
+    }
+    return (m0 > m1) ? m1 : m0;
+  }
+
+  /**
+   * Unscaled L<sub>p</sub> distance, i.e. the sum of the p-th powers.
+   *
+   * As the cost of {@code pow} dominates, this loop is not unrolled.
+   *
+   * @param a First vector
+   * @param b Second vector
+   * @param p Exponent
+   * @return Sum of powers
+   */
+  public static double lpNormSum(double[] a, double[] b, double p) {
+    final int dim1 = a.length, dim2 = b.length;
+    final int mindim = (dim1 < dim2) ? dim1 : dim2;
+    double agg = 0.;
+    for(int d = 0; d < mindim; d++) {
+      agg += FastMath.pow(Math.abs(a[d] - b[d]), p);
+    }
+    double tail = 0.;
+    for(int d = mindim; d < dim1; d++) {
+      tail += FastMath.pow(Math.abs(a[d]), p);
+    }
+    for(int d = mindim; d < dim2; d++) {
+      tail += FastMath.pow(Math.abs(b[d]), p);
+    }
+    return agg + tail;
+  }
+
+  /**
+   * Unscaled L<sub>p</sub> distance, i.e. the sum of the p-th powers.
+   *
+   * As the cost of {@code pow} dominates, this loop is not unrolled.
+   *
+   * @param a First vector
+   * @param b Second vector
+   * @param p Exponent
+   * @return Sum of powers
+   */
+  public static double lpNormSum(float[] a, float[] b, double p) {
+    final int dim1 = a.length, dim2 = b.length;
+    final int mindim = (dim1 < dim2) ? dim1 : dim2;
+    double agg = 0.;
+    for(int d = 0; d < mindim; d++) {
+      agg += FastMath.pow(Math.abs((double) a[d] - b[d]), p);
+    }
+    double tail = 0.;
+    for(int d = mindim; d < dim1; d++) {
+      tail += FastMath.pow(Math.abs((double) a[d]), p);
+    }
+    for(int d = mindim; d < dim2; d++) {
+      tail += FastMath.pow(Math.abs((double) b[d]), p);
+    }
+    return agg + tail;
+  }
+
+  /**
+   * Unscaled L<sub>p</sub> distance for integer p, i.e. the sum of the p-th
+   * powers.
+   *
+   * @param a First vector
+   * @param b Second vector
+   * @param p Exponent
+   * @return Sum of powers
+   */
+  public static double lpIntegerNormSum(double[] a, double[] b, int p) {
+    final int dim1 = a.length, dim2 = b.length;
+    final int mindim = (dim1 < dim2) ? dim1 : dim2;
+    double agg = 0.;
+    int i = 0;
+    for(final int end = mindim & ~1; i < end; i += 2) {
+      agg += MathUtil.powi(Math.abs(a[i] - b[i]), p);
+      agg += MathUtil.powi(Math.abs(a[i + 1] - b[i + 1]), p);
+    }
+    if(i < mindim) {
+      agg += MathUtil.powi(Math.abs(a[i] - b[i]), p);
+    }
+    double tail = 0.;
+    for(int d = mindim; d < dim1; d++) {
+      tail += MathUtil.powi(Math.abs(a[d]), p);
+    }
+    for(int d = mindim; d < dim2; d++) {
+      tail += MathUtil.powi(Math.abs(b[d]), p);
+    }
+    return agg + tail;
+  }
+
+  /**
+   * Unscaled L<sub>p</sub> distance for integer p, i.e. the sum of the p-th
+   * powers.
+   *
+   * @param a First vector
+   * @param b Second vector
+   * @param p Exponent
+   * @return Sum of powers
+   */
+  public static double lpIntegerNormSum(float[] a, float[] b, int p) {
+    final int dim1 = a.length, dim2 = b.length;
+    final int mindim = (dim1 < dim2) ? dim1 : dim2;
+    double agg = 0.;
+    int i = 0;
+    for(final int end = mindim & ~1; i < end; i += 2) {
+      agg += MathUtil.powi(Math.abs((double) a[i] - b[i]), p);
+      agg += MathUtil.powi(Math.abs((double) a[i + 1] - b[i + 1]), p);
+    }
+    if(i < mindim) {
+      agg += MathUtil.powi(Math.abs((double) a[i] - b[i]), p);
+    }
+    double tail = 0.;
+    for(int d = mindim; d < dim1; d++) {
+      tail += MathUtil.powi(Math.abs((double) a[d]), p);
+    }
+    for(int d = mindim; d < dim2; d++) {
+      tail += MathUtil.powi(Math.abs((double) b[d]), p);
+    }
+    return agg + tail;
+  }
+
+  /**
+   * Cosine of the angle between two vectors, with the same conventions as
+   * {@link de.lmu.ifi.dbs.elki.data.VectorUtil#angleDense}.
+   *
+   * @param a First vector
+   * @param b Second vector
+   * @return Cosine similarity, in [0;1] for non-negative data
+   */
+  public static double cosine(double[] a, double[] b) {
+    final int dim1 = a.length, dim2 = b.length;
+    final int mindim = (dim1 < dim2) ? dim1 : dim2;
+    double cross = 0., l1 = 0., l2 = 0.;
+    int i = 0;
+    for(final int end = mindim & ~1; i < end; i += 2) {
+      final double x0 = a[i], x1 = a[i + 1], y0 = b[i], y1 = b[i + 1];
+      cross += x0 * y0;
+      l1 += x0 * x0;
+      l2 += y0 * y0;
+      cross += x1 * y1;
+      l1 += x1 * x1;
+      l2 += y1 * y1;
+    }
+    if(i < mindim) {
+      final double x = a[i], y = b[i];
+      cross += x * y;
+      l1 += x * x;
+      l2 += y * y;
+    }
+    for(int d = mindim; d < dim1; d++) {
+      final double x = a[d];
+      l1 += x * x;
+    }
+    for(int d = mindim; d < dim2; d++) {
+      final double y = b[d];
+      l2 += y * y;
+    }
+    return cosine(cross, l1, l2);
+  }
+
+  /**
+   * Cosine of the angle between two vectors, with the same conventions as
+   * {@link de.lmu.ifi.dbs.elki.data.VectorUtil#angleDense}.
+   *
+   * @param a First vector
+   * @param b Second vector
+   * @return Cosine similarity, in [0;1] for non-negative data
+   */
+  public static double cosine(float[] a, float[] b) {
+    final int dim1 = a.length, dim2 = b.length;
+    final int mindim = (dim1 < dim2) ? dim1 : dim2;
+    double cross = 0., l1 = 0., l2 = 0.;
+    int i = 0;
+    for(final int end = mindim & ~1; i < end; i += 2) {
+      final double x0 = a[i], x1 = a[i + 1], y0 = b[i], y1 = b[i + 1];
+      cross += x0 * y0;
+      l1 += x0 * x0;
+      l2 += y0 * y0;
+      cross += x1 * y1;
+      l1 += x1 * x1;
+      l2 += y1 * y1;
+    }
+    if(i < mindim) {
+      final double x = a[i], y = b[i];
+      cross += x * y;
+      l1 += x * x;
+      l2 += y * y;
+    }
+    for(int d = mindim; d < dim1; d++) {
+      final double x = a[d];
+      l1 += x * x;
+    }
+    for(int d = mindim; d < dim2; d++) {
+      final double y = b[d];
+      l2 += y * y;
+    }
+    return cosine(cross, l1, l2);
+  }
+
+  /**
+   * Finish the cosine computation.
+   *
+   * @param cross Scalar product
+   * @param l1 Squared length of the first vector
+   * @param l2 Squared length of the second vector
+   * @return Cosine
+   */
+  private static double cosine(double cross, double l1, double l2) {
+    final double a = (cross == 0.) ? 0. : //
+        (l1 == 0. || l2 == 0.) ? 1. : //
+            FastMath.sqrt((cross / l1) * (cross / l2));
+    return (a < 1.) ? a : 1.;
+  }
+
+  /**
+   * Histogram intersection distance, on the first {@code dim} dimensions.
+   *
+   * @param a First vector
+   * @param b Second vector
+   * @param dim Dimensionality
+   * @return Histogram intersection distance
+   */
+  public static double histogramIntersection(double[] a, double[] b, int dim) {
+    double agg = 0., norm1 = 0., norm2 = 0.;
+    int i = 0;
+    for(final int end = dim & ~1; i < end; i += 2) {
+      final double x0 = a[i], x1 = a[i + 1], y0 = b[i], y1 = b[i + 1];
+      agg += Math.min(x0, y0);
+      norm1 += x0;
+      norm2 += y0;
+      agg += Math.min(x1, y1);
+      norm1 += x1;
+      norm2 += y1;
+    }
+    if(i < dim) {
+      final double x = a[i], y = b[i];
+      agg += Math.min(x, y);
+      norm1 += x;
+      norm2 += y;
+    }
+    return 1. - agg / Math.min(norm1, norm2);
+  }
+
+  /**
+   * Histogram intersection distance, on the first {@code dim} dimensions.
+   *
+   * @param a First vector
+   * @param b Second vector
+   * @param dim Dimensionality
+   * @return Histogram intersection distance
+   */
+  public static double histogramIntersection(float[] a, float[] b, int dim) {
+    double agg = 0., norm1 = 0., norm2 = 0.;
+    int i = 0;
+    for(final int end = dim & ~1; i < end; i += 2) {
+      final double x0 = a[i], x1 = a[i + 1], y0 = b[i], y1 = b[i + 1];
+      agg += Math.min(x0, y0);
+      norm1 += x0;
+      norm2 += y0;
+      agg += Math.min(x1, y1);
+      norm1 += x1;
+      norm2 += y1;
+    }
+    if(i < dim) {
+      final double x = a[i], y = b[i];
+      agg += Math.min(x, y);
+      norm1 += x;
+      norm2 += y;
+    }
+    return 1. - agg / Math.min(norm1, norm2);
+  }
+
+  /**
+   * Squared Euclidean distance, with early abandoning.
+   *
+   * If the result is at most {@code bound}, it is the same as
+   * {@link #squaredEuclidean(double[], double[])}; otherwise a partial sum
+   * larger than {@code bound} is returned.
+   *
+   * @param a First vector
+   * @param b Second vector
+   * @param bound Bound for early abandoning
+   * @return Squared Euclidean distance, or a partial sum exceeding the bound
+   */
+  public static double squaredEuclidean(double[] a, double[] b, double bound) {
+    final int dim1 = a.length, dim2 = b.length;
+    final int mindim = (dim1 < dim2) ? dim1 : dim2;
+    double agg = 0.;
+    int i = 0;
+    for(final int end = mindim & ~3; i < end; i += 4) {
+      final double d0 = a[i] - b[i], d1 = a[i + 1] - b[i + 1];
+      final double d2 = a[i + 2] - b[i + 2], d3 = a[i + 3] - b[i + 3];
+      agg += d0 * d0;
+      agg += d1 * d1;
+      agg += d2 * d2;
+      agg += d3 * d3;
+      if(agg > bound) {
+        return agg;
+      }
+    }
+    for(; i < mindim; i++) {
+      final double d = a[i] - b[i];
+      agg += d * d;
+    }
+    return (dim1 > mindim) ? agg + squaredNorm(a, mindim, dim1) : //
+        (dim2 > mindim) ? agg + squaredNorm(b, mindim, dim2) : agg;
+  }
+
+  /**
+   * Squared Euclidean distance, with early abandoning.
+   *
+   * If the result is at most {@code bound}, it is the same as
+   * {@link #squaredEuclidean(float[], float[])}; otherwise a partial sum
+   * larger than {@code bound} is returned.
+   *
+   * @param a First vector
+   * @param b Second vector
+   * @param bound Bound for early abandoning
+   * @return Squared Euclidean distance, or a partial sum exceeding the bound
+   */
+  public static double squaredEuclidean(float[] a, float[] b, double bound) {
+    final int dim1 = a.length, dim2 = b.length;
+    final int mindim = (dim1 < dim2) ? dim1 : dim2;
+    double agg = 0.;
+    int i = 0;
+    for(final int end = mindim & ~3; i < end; i += 4) {
+      final double d0 = (double) a[i] - b[i], d1 = (double) a[i + 1] - b[i + 1];
+      final double d2 = (double) a[i + 2] - b[i + 2], d3 = (double) a[i + 3] - b[i + 3];
+      agg += d0 * d0;
+      agg += d1 * d1;
+      agg += d2 * d2;
+      agg += d3 * d3;
+      if(agg > bound) {
+        return agg;
+      }
+    }
+    for(; i < mindim; i++) {
+      final double d = (double) a[i] - b[i];
+      agg += d * d;
+    }
+    return (dim1 > mindim) ? agg + squaredNorm(a, mindim, dim1) : //
+        (dim2 > mindim) ? agg + squaredNorm(b, mindim, dim2) : agg;
+  }
+
+  /**
+   * Manhattan distance, with early abandoning.
+   *
+   * If the result is at most {@code bound}, it is the same as
+   * {@link #manhattan(double[], double[])}; otherwise a partial sum larger
+   * than {@code bound} is returned.
+   *
+   * @param a First vector
+   * @param b Second vector
+   * @param bound Bound for early abandoning
+   * @return Manhattan distance, or a partial sum exceeding the bound
+   */
+  public static double manhattan(double[] a, double[] b, double bound) {
+    final int dim1 = a.length, dim2 = b.length;
+    final int mindim = (dim1 < dim2) ? dim1 : dim2;
+    double agg = 0.;
+    int i = 0;
+    for(final int end = mindim & ~3; i < end; i += 4) {
+      agg += Math.abs(a[i] - b[i]);
+      agg += Math.abs(a[i + 1] - b[i + 1]);
+      agg += Math.abs(a[i + 2] - b[i + 2]);
+      agg += Math.abs(a[i + 3] - b[i + 3]);
+      if(agg > bound) {
+        return agg;
+      }
+    }
+    for(; i < mindim; i++) {
+      agg += Math.abs(a[i] - b[i]);
+    }
+    return (dim1 > mindim) ? agg + manhattanNorm(a, mindim, dim1) : //
+        (dim2 > mindim) ? agg + manhattanNorm(b, mindim, dim2) : agg;
+  }
+
+  /**
+   * Manhattan distance, with early abandoning.
+   *
+   * If the result is at most {@code bound}, it is the same as
+   * {@link #manhattan(float[], float[])}; otherwise a partial sum larger than
+   * {@code bound} is returned.
+   *
+   * @param a First vector
+   * @param b Second vector
+   * @param bound Bound for early abandoning
+   * @return Manhattan distance, or a partial sum exceeding the bound
+   */
+  public static double manhattan(float[] a, float[] b, double bound) {
+    final int dim1 = a.length, dim2 = b.length;
+    final int mindim = (dim1 < dim2) ? dim1 : dim2;
+    double agg = 0.;
+    int i = 0;
+    for(final int end = mindim & ~3; i < end; i += 4) {
+      agg += Math.abs((double) a[i] - b[i]);
+      agg += Math.abs((double) a[i + 1] - b[i + 1]);
+      agg += Math.abs((double) a[i + 2] - b[i + 2]);
+      agg += Math.abs((double) a[i + 3] - b[i + 3]);
+      if(agg > bound) {
+        return agg;
+      }
+    }
+    for(; i < mindim; i++) {
+      agg += Math.abs((double) a[i] - b[i]);
+    }
+    return (dim1 > mindim) ? agg + manhattanNorm(a, mindim, dim1) : //
+        (dim2 > mindim) ? agg + manhattanNorm(b, mindim, dim2) : agg;
+  }
+
+  /**
+   * Maximum distance, with early abandoning.
+   *
+   * @param a First vector
+   * @param b Second vector
+   * @param bound Bound for early abandoning
+   * @return Maximum distance, or a partial maximum exceeding the bound
+   */
+  public static double maximum(double[] a, double[] b, double bound) {
+    final int mindim = (a.length < b.length) ? a.length : b.length;
+    double agg = 0.;
+    for(int i = 0; i < mindim; i++) {
+      final double d = Math.abs(a[i] - b[i]);
+      if(d > agg) {
+        if(d > bound) {
+          return d;
+        }
+        agg = d;
+      }
+    }
+    for(int d = mindim; d < a.length; d++) {
+      final double v = Math.abs(a[d]);
+      agg = (v < agg) ? agg : v;
+    }
+    for(int d = mindim; d < b.length; d++) {
+      final double v = Math.abs(b[d]);
+      agg = (v < agg) ? agg : v;
+    }
+    return agg;
+  }
+
+  /**
+   * Maximum distance, with early abandoning.
+   *
+   * @param a First vector
+   * @param b Second vector
+   * @param bound Bound for early abandoning
+   * @return Maximum distance, or a partial maximum exceeding the bound
+   */
+  public static double maximum(float[] a, float[] b, double bound) {
+    final int mindim = (a.length < b.length) ? a.length : b.length;
+    double agg = 0.;
+    for(int i = 0; i < mindim; i++) {
+      final double d = Math.abs((double) a[i] - b[i]);
+      if(d > agg) {
+        if(d > bound) {
+          return d;
+        }
+        agg = d;
+      }
+    }
+    for(int d = mindim; d < a.length; d++) {
+      final double v = Math.abs((double) a[d]);
+      agg = (v < agg) ? agg : v;
+    }
+    for(int d = mindim; d < b.length; d++) {
+      final double v = Math.abs((double) b[d]);
+      agg = (v < agg) ? agg : v;
+    }
+    return agg;
+  }
+
+  /**
+   * Unscaled L<sub>p</sub> distance, with early abandoning.
+   *
+   * @param a First vector
+   * @param b Second vector
+   * @param p Exponent
+   * @param bound Bound for early abandoning
+   * @return Sum of powers, or a partial sum exceeding the bound
+   */
+  public static double lpNormSum(double[] a, double[] b, double p, double bound) {
+    final int dim1 = a.length, dim2 = b.length;
+    final int mindim = (dim1 < dim2) ? dim1 : dim2;
+    double agg = 0.;
+    for(int d = 0; d < mindim; d++) {
+      agg += FastMath.pow(Math.abs(a[d] - b[d]), p);
+      if(agg > bound) {
+        return agg;
+      }
+    }
+    double tail = 0.;
+    for(int d = mindim; d < dim1; d++) {
+      tail += FastMath.pow(Math.abs(a[d]), p);
+    }
+    for(int d = mindim; d < dim2; d++) {
+      tail += FastMath.pow(Math.abs(b[d]), p);
+    }
+    return agg + tail;
+  }
+
+  /**
+   * Unscaled L<sub>p</sub> distance, with early abandoning.
+   *
+   * @param a First vector
+   * @param b Second vector
+   * @param p Exponent
+   * @param bound Bound for early abandoning
+   * @return Sum of powers, or a partial sum exceeding the bound
+   */
+  public static double lpNormSum(float[] a, float[] b, double p, double bound) {
+    final int dim1 = a.length, dim2 = b.length;
+    final int mindim = (dim1 < dim2) ? dim1 : dim2;
+    double agg = 0.;
+    for(int d = 0; d < mindim; d++) {
+      agg += FastMath.pow(Math.abs((double) a[d] - b[d]), p);
+      if(agg > bound) {
+        return agg;
+      }
+    }
+    double tail = 0.;
+    for(int d = mindim; d < dim1; d++) {
+      tail += FastMath.pow(Math.abs((double) a[d]), p);
+    }
+    for(int d = mindim; d < dim2; d++) {
+      tail += FastMath.pow(Math.abs((double) b[d]), p);
+    }
+    return agg + tail;
+  }
+
+  /**
+   * Unscaled L<sub>p</sub> distance for integer p, with early abandoning.
+   *
+   * @param a First vector
+   * @param b Second vector
+   * @param p Exponent
+   * @param bound Bound for early abandoning
+   * @return Sum of powers, or a partial sum exceeding the bound
+   */
+  public static double lpIntegerNormSum(double[] a, double[] b, int p, double bound) {
+    final int dim1 = a.length, dim2 = b.length;
+    final int mindim = (dim1 < dim2) ? dim1 : dim2;
+    double agg = 0.;
+    int i = 0;
+    for(final int end = mindim & ~1; i < end; i += 2) {
+      agg += MathUtil.powi(Math.abs(a[i] - b[i]), p);
+      agg += MathUtil.powi(Math.abs(a[i + 1] - b[i + 1]), p);
+      if(agg > bound) {
+        return agg;
+      }
+    }
+    if(i < mindim) {
+      agg += MathUtil.powi(Math.abs(a[i] - b[i]), p);
+    }
+    double tail = 0.;
+    for(int d = mindim; d < dim1; d++) {
+      tail += MathUtil.powi(Math.abs(a[d]), p);
+    }
+    for(int d = mindim; d < dim2; d++) {
+      tail += MathUtil.powi(Math.abs(b[d]), p);
+    }
+    return agg + tail;
+  }
+
+  /**
+   * Unscaled L<sub>p</sub> distance for integer p, with early abandoning.
+   *
+   * @param a First vector
+   * @param b Second vector
+   * @param p Exponent
+   * @param bound Bound for early abandoning
+   * @return Sum of powers, or a partial sum exceeding the bound
+   */
+  public static double lpIntegerNormSum(float[] a, float[] b, int p, double bound) {
+    final int dim1 = a.length, dim2 = b.length;
+    final int mindim = (dim1 < dim2) ? dim1 : dim2;
+    double agg = 0.;
+    int i = 0;
+    for(final int end = mindim & ~1; i < end; i += 2) {
+      agg += MathUtil.powi(Math.abs((double) a[i] - b[i]), p);
+      agg += MathUtil.powi(Math.abs((double) a[i + 1] - b[i + 1]), p);
+      if(agg > bound) {
+        return agg;
+      }
+    }
+    if(i < mindim) {
+      agg += MathUtil.powi(Math.abs((double) a[i] - b[i]), p);
+    }
+    double tail = 0.;
+    for(int d = mindim; d < dim1; d++) {
+      tail += MathUtil.powi(Math.abs((double) a[d]), p);
+    }
+    for(int d = mindim; d < dim2; d++) {
+      tail += MathUtil.powi(Math.abs((double) b[d]), p);
+    }
+    return agg + tail;
+  }
+
+  /**
+   * Dispatch of the kernels on {@link NumberVector}s: the kernels are used if
+   * both vectors are {@link DoubleVector}s, or both are {@link FloatVector}s.
+   *
+   * The kernel parameter is the exponent of the L<sub>p</sub> kernels, or the
+   * dimensionality for the kernels that take the common length; the bound is
+   * used by the early abandoning kernels. Other kernels ignore them.
+   *
+   * For other vectors, {@code NaN} is returned, and the caller uses its generic
+   * implementation. This is also the case for data containing {@code NaN}s,
+   * where the generic implementation then yields the same result.
+   *
+   * @author Erich Schubert
+   */
+  public enum Kernel {
+    /**
+     * Squared Euclidean distance.
+     */
+    SQUARED_EUCLIDEAN {
+      @Override
+      protected double apply(double[] a, double[] b, double param, double bound) {
+        return squaredEuclidean(a, b);
+      }
+
+      @Override
+      protected double apply(float[] a, float[] b, double param, double bound) {
+        return squaredEuclidean(a, b);
+      }
+    },
+    /**
+     * Squared Euclidean distance, with early abandoning.
+     */
+    SQUARED_EUCLIDEAN_BOUNDED {
+      @Override
+      protected double apply(double[] a, double[] b, double param, double bound) {
+        return squaredEuclidean(a, b, bound);
+      }
+
+      @Override
+      protected double apply(float[] a, float[] b, double param, double bound) {
+        return squaredEuclidean(a, b, bound);
+      }
+    },
+    /**
+     * Manhattan distance.
+     */
+    MANHATTAN {
+      @Override
+      protected double apply(double[] a, double[] b, double param, double bound) {
+        return manhattan(a, b);
+      }
+
+      @Override
+      protected double apply(float[] a, float[] b, double param, double bound) {
+        return manhattan(a, b);
+      }
+    },
+    /**
+     * Manhattan distance, with early abandoning.
+     */
+    MANHATTAN_BOUNDED {
+      @Override
+      protected double apply(double[] a, double[] b, double param, double bound) {
+        return manhattan(a, b, bound);
+      }
+
+      @Override
+      protected double apply(float[] a, float[] b, double param, double bound) {
+        return manhattan(a, b, bound);
+      }
+    },
+    /**
+     * Maximum distance.
+     */
+    MAXIMUM {
+      @Override
+      protected double apply(double[] a, double[] b, double param, double bound) {
+        return maximum(a, b);
+      }
+
+      @Override
+      protected double apply(float[] a, float[] b, double param, double bound) {
+        return maximum(a, b);
+      }
+    },
+    /**
+     * Maximum distance, with early abandoning.
+     */
+    MAXIMUM_BOUNDED {
+      @Override
+      protected double apply(double[] a, double[] b, double param, double bound) {
+        return maximum(a, b, bound);
+      }
+
+      @Override
+      protected double apply(float[] a, float[] b, double param, double bound) {
+        return maximum(a, b, bound);
+      }
+    },
+    /**
+     * Minimum distance, on the first {@code param} dimensions.
+     */
+    MINIMUM {
+      @Override
+      protected double apply(double[] a, double[] b, double param, double bound) {
+        return minimum(a, b, (int) param);
+      }
+
+      @Override
+      protected double apply(float[] a, float[] b, double param, double bound) {
+        return minimum(a, b, (int) param);
+      }
+    },
+    /**
+     * Unscaled L<sub>p</sub> distance, with exponent {@code param}.
+     */
+    LP_NORM_SUM {
+      @Override
+      protected double apply(double[] a, double[] b, double param, double bound) {
+        return lpNormSum(a, b, param);
+      }
+
+      @Override
+      protected double apply(float[] a, float[] b, double param, double bound) {
+        return lpNormSum(a, b, param);
+      }
+    },
+    /**
+     * Unscaled L<sub>p</sub> distance, with exponent {@code param} and early
+     * abandoning.
+     */
+    LP_NORM_SUM_BOUNDED {
+      @Override
+      protected double apply(double[] a, double[] b, double param, double bound) {
+        return lpNormSum(a, b, param, bound);
+      }
+
+      @Override
+      protected double apply(float[] a, float[] b, double param, double bound) {
+        return lpNormSum(a, b, param, bound);
+      }
+    },
+    /**
+     * Unscaled L<sub>p</sub> distance, with integer exponent {@code param}.
+     */
+    LP_INTEGER_NORM_SUM {
+      @Override
+      protected double apply(double[] a, double[] b, double param, double bound) {
+        return lpIntegerNormSum(a, b, (int) param);
+      }
+
+      @Override
+      protected double apply(float[] a, float[] b, double param, double bound) {
+        return lpIntegerNormSum(a, b, (int) param);
+      }
+    },
+    /**
+     * Unscaled L<sub>p</sub> distance, with integer exponent {@code param} and
+     * early abandoning.
+     */
+    LP_INTEGER_NORM_SUM_BOUNDED {
+      @Override
+      protected double apply(double[] a, double[] b, double param, double bound) {
+        return lpIntegerNormSum(a, b, (int) param, bound);
+      }
+
+      @Override
+      protected double apply(float[] a, float[] b, double param, double bound) {
+        return lpIntegerNormSum(a, b, (int) param, bound);
+      }
+    },
+    /**
+     * Cosine similarity.
+     */
+    COSINE {
+      @Override
+      protected double apply(double[] a, double[] b, double param, double bound) {
+        return cosine(a, b);
+      }
+
+      @Override
+      protected double apply(float[] a, float[] b, double param, double bound) {
+        return cosine(a, b);
+      }
+    },
+    /**
+     * Histogram intersection distance, on the first {@code param} dimensions.
+     */
+    HISTOGRAM_INTERSECTION {
+      @Override
+      protected double apply(double[] a, double[] b, double param, double bound) {
+        return histogramIntersection(a, b, (int) param);
+      }
+
+      @Override
+      protected double apply(float[] a, float[] b, double param, double bound) {
+        return histogramIntersection(a, b, (int) param);
+      }
+    };
+
+    /**
+     * Apply the kernel to two vectors, if they are backed by arrays of the same
+     * type.
+     *
+     * @param v1 First vector
+     * @param v2 Second vector
+     * @param param Kernel parameter
+     * @param bound Bound for early abandoning
+     * @return Kernel result, or {@code NaN} if the kernel is not applicable
+     */
+    public double apply(NumberVector v1, NumberVector v2, double param, double bound) {
+      if(v1 instanceof DoubleVector && v2 instanceof DoubleVector) {
+        return apply(((DoubleVector) v1).getArrayRef(), ((DoubleVector) v2).getArrayRef(), param, bound);
+      }
+      if(v1 instanceof FloatVector && v2 instanceof FloatVector) {
+        return apply(((FloatVector) v1).getArrayRef(), ((FloatVector) v2).getArrayRef(), param, bound);
+      }
+      return Double.NaN;
+    }
+
+    /**
+     * Apply the kernel to double arrays.
+     *
+     * @param a First vector
+     * @param b Second vector
+     * @param param Kernel parameter
+     * @param bound Bound for early abandoning
+     * @return Kernel result
+     */
+    protected abstract double apply(double[] a, double[] b, double param, double bound);
+
+    /**
+     * Apply the kernel to float arrays.
+     *
+     * @param a First vector
+     * @param b Second vector
+     * @param param Kernel parameter
+     * @param bound Bound for early abandoning
+     * @return Kernel result
+     */
+    protected abstract double apply(float[] a, float[] b, double param, double bound);
+  }
+}
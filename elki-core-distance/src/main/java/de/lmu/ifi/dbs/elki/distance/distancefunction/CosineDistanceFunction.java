@@ -75,6 +75,10 @@ public class CosineDistanceFunction implements SpatialPrimitiveDistanceFunction<
    */
   @Override
   public double distance(NumberVector v1, NumberVector v2) {
+    final double sim = ArrayDistanceKernels.Kernel.COSINE.apply(v1, v2, 0., 0.);
+    if(!Double.isNaN(sim)) {
+      return 1. - sim;
+    }
     double d = VectorUtil.cosAngle(v1, v2);
     return (d <= 1) ? 1 - d : 0;
   }
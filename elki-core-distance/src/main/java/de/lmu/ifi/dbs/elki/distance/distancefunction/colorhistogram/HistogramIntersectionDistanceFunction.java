@@ -23,6 +23,7 @@ package de.lmu.ifi.dbs.elki.distance.distancefunction.colorhistogram;
 import de.lmu.ifi.dbs.elki.data.NumberVector;
 import de.lmu.ifi.dbs.elki.data.spatial.SpatialComparable;
 import de.lmu.ifi.dbs.elki.distance.distancefunction.AbstractNumberVectorDistanceFunction;
+import de.lmu.ifi.dbs.elki.distance.distancefunction.ArrayDistanceKernels;
 import de.lmu.ifi.dbs.elki.distance.distancefunction.NumberVectorDistanceFunction;
 import de.lmu.ifi.dbs.elki.distance.distancefunction.SpatialPrimitiveDistanceFunction;
 import de.lmu.ifi.dbs.elki.utilities.documentation.Description;
@@ -64,6 +65,10 @@ public class HistogramIntersectionDistanceFunction extends AbstractNumberVectorD
   @Override
   public double distance(NumberVector v1, NumberVector v2) {
     final int dim = dimensionality(v1, v2);
+    final double dist = ArrayDistanceKernels.Kernel.HISTOGRAM_INTERSECTION.apply(v1, v2, dim, 0.);
+    if(!Double.isNaN(dist)) {
+      return dist;
+    }
     double agg = 0., norm1 = 0., norm2 = 0.;
     for(int i = 0; i < dim; i++) {
       final double val1 = v1.doubleValue(i);
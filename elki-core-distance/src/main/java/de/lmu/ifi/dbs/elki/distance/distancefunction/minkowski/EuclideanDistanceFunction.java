@@ -22,6 +22,7 @@ package de.lmu.ifi.dbs.elki.distance.distancefunction.minkowski;
 
 import de.lmu.ifi.dbs.elki.data.NumberVector;
 import de.lmu.ifi.dbs.elki.data.spatial.SpatialComparable;
+import de.lmu.ifi.dbs.elki.distance.distancefunction.ArrayDistanceKernels;
 import de.lmu.ifi.dbs.elki.utilities.Alias;
 import de.lmu.ifi.dbs.elki.utilities.Priority;
 import de.lmu.ifi.dbs.elki.utilities.optionhandling.AbstractParameterizer;
@@ -64,6 +65,18 @@ public class EuclideanDistanceFunction extends LPIntegerNormDistanceFunction {
     return agg;
   }
 
+  private final double preDistance(NumberVector v1, NumberVector v2, int start, int end, double bound) {
+    double agg = 0.;
+    for(int d = start; d < end; d++) {
+      final double delta = v1.doubleValue(d) - v2.doubleValue(d);
+      agg += delta * delta;
+      if(agg > bound) {
+        return agg;
+      }
+    }
+    return agg;
+  }
+
   private final double preDistanceVM(NumberVector v, SpatialComparable mbr, int start, int end) {
     double agg = 0.;
     for(int d = start; d < end; d++) {
@@ -112,6 +125,10 @@ public class EuclideanDistanceFunction extends LPIntegerNormDistanceFunction {
 
   @Override
   public double distance(NumberVector v1, NumberVector v2) {
+    final double dist = ArrayDistanceKernels.Kernel.SQUARED_EUCLIDEAN.apply(v1, v2, 0., 0.);
+    if(!Double.isNaN(dist)) {
+      return FastMath.sqrt(dist);
+    }
     final int dim1 = v1.getDimensionality(), dim2 = v2.getDimensionality();
     final int mindim = (dim1 < dim2) ? dim1 : dim2;
     double agg = preDistance(v1, v2, 0, mindim);
@@ -124,6 +141,28 @@ public class EuclideanDistanceFunction extends LPIntegerNormDistanceFunction {
     return FastMath.sqrt(agg);
   }
 
+  @Override
+  public double distance(NumberVector v1, NumberVector v2, double threshold) {
+    final double bound = threshold * threshold;
+    double agg = ArrayDistanceKernels.Kernel.SQUARED_EUCLIDEAN_BOUNDED.apply(v1, v2, 0., bound);
+    if(Double.isNaN(agg)) {
+      final int dim1 = v1.getDimensionality(), dim2 = v2.getDimensionality();
+      final int mindim = (dim1 < dim2) ? dim1 : dim2;
+      agg = preDistance(v1, v2, 0, mindim, bound);
+      if(agg <= bound) {
+        if(dim1 > mindim) {
+          agg += preNorm(v1, mindim, dim1);
+        }
+        else if(dim2 > mindim) {
+          agg += preNorm(v2, mindim, dim2);
+        }
+      }
+    }
+    final double dist = FastMath.sqrt(agg);
+    // Abandoned computations close to the threshold need to be completed:
+    return (agg <= bound || dist > threshold) ? dist : distance(v1, v2);
+  }
+
   @Override
   public double norm(NumberVector v) {
     return FastMath.sqrt(preNorm(v, 0, v.getDimensionality()));
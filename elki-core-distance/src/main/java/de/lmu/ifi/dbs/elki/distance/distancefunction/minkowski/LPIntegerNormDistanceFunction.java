@@ -22,6 +22,7 @@ package de.lmu.ifi.dbs.elki.distance.distancefunction.minkowski;
 
 import de.lmu.ifi.dbs.elki.data.NumberVector;
 import de.lmu.ifi.dbs.elki.data.spatial.SpatialComparable;
+import de.lmu.ifi.dbs.elki.distance.distancefunction.ArrayDistanceKernels;
 import de.lmu.ifi.dbs.elki.math.MathUtil;
 import de.lmu.ifi.dbs.elki.utilities.optionhandling.AbstractParameterizer;
 import de.lmu.ifi.dbs.elki.utilities.optionhandling.constraints.CommonConstraints;
@@ -72,6 +73,19 @@ public class LPIntegerNormDistanceFunction extends LPNormDistanceFunction {
     return agg;
   }
 
+  private final double preDistance(NumberVector v1, NumberVector v2, final int start, final int end, double bound) {
+    double agg = 0.;
+    for(int d = start; d < end; d++) {
+      final double xd = v1.doubleValue(d), yd = v2.doubleValue(d);
+      final double delta = (xd >= yd) ? xd - yd : yd - xd;
+      agg += MathUtil.powi(delta, intp);
+      if(agg > bound) {
+        return agg;
+      }
+    }
+    return agg;
+  }
+
   private final double preDistanceVM(NumberVector v, SpatialComparable mbr, final int start, final int end) {
     double agg = 0.;
     for(int d = start; d < end; d++) {
@@ -127,6 +141,10 @@ public class LPIntegerNormDistanceFunction extends LPNormDistanceFunction {
 
   @Override
   public double distance(NumberVector v1, NumberVector v2) {
+    final double dist = ArrayDistanceKernels.Kernel.LP_INTEGER_NORM_SUM.apply(v1, v2, intp, 0.);
+    if(!Double.isNaN(dist)) {
+      return FastMath.pow(dist, invp);
+    }
     final int dim1 = v1.getDimensionality(), dim2 = v2.getDimensionality();
     final int mindim = (dim1 < dim2) ? dim1 : dim2;
     double agg = preDistance(v1, v2, 0, mindim);
@@ -139,6 +157,28 @@ public class LPIntegerNormDistanceFunction extends LPNormDistanceFunction {
     return FastMath.pow(agg, invp);
   }
 
+  @Override
+  public double distance(NumberVector v1, NumberVector v2, double threshold) {
+    final double bound = MathUtil.powi(threshold, intp);
+    double agg = ArrayDistanceKernels.Kernel.LP_INTEGER_NORM_SUM_BOUNDED.apply(v1, v2, intp, bound);
+    if(Double.isNaN(agg)) {
+      final int dim1 = v1.getDimensionality(), dim2 = v2.getDimensionality();
+      final int mindim = (dim1 < dim2) ? dim1 : dim2;
+      agg = preDistance(v1, v2, 0, mindim, bound);
+      if(agg <= bound) {
+        if(dim1 > mindim) {
+          agg += preNorm(v1, mindim, dim1);
+        }
+        else if(dim2 > mindim) {
+          agg += preNorm(v2, mindim, dim2);
+        }
+      }
+    }
+    final double dist = FastMath.pow(agg, invp);
+    // Abandoned computations close to the threshold need to be completed:
+    return (agg <= bound || dist > threshold) ? dist : distance(v1, v2);
+  }
+
   @Override
   public double norm(NumberVector v) {
     return FastMath.pow(preNorm(v, 0, v.getDimensionality()), invp);
@@ -23,6 +23,7 @@ package de.lmu.ifi.dbs.elki.distance.distancefunction.minkowski;
 import de.lmu.ifi.dbs.elki.data.NumberVector;
 import de.lmu.ifi.dbs.elki.data.spatial.SpatialComparable;
 import de.lmu.ifi.dbs.elki.data.type.SimpleTypeInformation;
+import de.lmu.ifi.dbs.elki.distance.distancefunction.ArrayDistanceKernels;
 import de.lmu.ifi.dbs.elki.distance.distancefunction.Norm;
 import de.lmu.ifi.dbs.elki.distance.distancefunction.NumberVectorDistanceFunction;
 import de.lmu.ifi.dbs.elki.distance.distancefunction.SpatialPrimitiveDistanceFunction;
@@ -90,6 +91,19 @@ public class LPNormDistanceFunction implements SpatialPrimitiveDistanceFunction<
     return agg;
   }
 
+  private final double preDistance(NumberVector v1, NumberVector v2, final int start, final int end, double bound) {
+    double agg = 0.;
+    for(int d = start; d < end; d++) {
+      final double xd = v1.doubleValue(d), yd = v2.doubleValue(d);
+      final double delta = (xd >= yd) ? xd - yd : yd - xd;
+      agg += FastMath.pow(delta, p);
+      if(agg > bound) {
+        return agg;
+      }
+    }
+    return agg;
+  }
+
   /**
    * Compute unscaled distance in a range of dimensions.
    * 
@@ -173,6 +187,10 @@ public class LPNormDistanceFunction implements SpatialPrimitiveDistanceFunction<
 
   @Override
   public double distance(NumberVector v1, NumberVector v2) {
+    final double dist = ArrayDistanceKernels.Kernel.LP_NORM_SUM.apply(v1, v2, p, 0.);
+    if(!Double.isNaN(dist)) {
+      return FastMath.pow(dist, invp);
+    }
     final int dim1 = v1.getDimensionality(), dim2 = v2.getDimensionality();
     final int mindim = (dim1 < dim2) ? dim1 : dim2;
     double agg = preDistance(v1, v2, 0, mindim);
@@ -185,6 +203,28 @@ public class LPNormDistanceFunction implements SpatialPrimitiveDistanceFunction<
     return FastMath.pow(agg, invp);
   }
 
+  @Override
+  public double distance(NumberVector v1, NumberVector v2, double threshold) {
+    final double bound = FastMath.pow(threshold, p);
+    double agg = ArrayDistanceKernels.Kernel.LP_NORM_SUM_BOUNDED.apply(v1, v2, p, bound);
+    if(Double.isNaN(agg)) {
+      final int dim1 = v1.getDimensionality(), dim2 = v2.getDimensionality();
+      final int mindim = (dim1 < dim2) ? dim1 : dim2;
+      agg = preDistance(v1, v2, 0, mindim, bound);
+      if(agg <= bound) {
+        if(dim1 > mindim) {
+          agg += preNorm(v1, mindim, dim1);
+        }
+        else if(dim2 > mindim) {
+          agg += preNorm(v2, mindim, dim2);
+        }
+      }
+    }
+    final double dist = FastMath.pow(agg, invp);
+    // Abandoned computations close to the threshold need to be completed:
+    return (agg <= bound || dist > threshold) ? dist : distance(v1, v2);
+  }
+
   @Override
   public double norm(NumberVector v) {
     return FastMath.pow(preNorm(v, 0, v.getDimensionality()), invp);
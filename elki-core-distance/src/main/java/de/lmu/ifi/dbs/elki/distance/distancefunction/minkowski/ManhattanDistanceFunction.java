@@ -22,6 +22,7 @@ package de.lmu.ifi.dbs.elki.distance.distancefunction.minkowski;
 
 import de.lmu.ifi.dbs.elki.data.NumberVector;
 import de.lmu.ifi.dbs.elki.data.spatial.SpatialComparable;
+import de.lmu.ifi.dbs.elki.distance.distancefunction.ArrayDistanceKernels;
 import de.lmu.ifi.dbs.elki.utilities.Alias;
 import de.lmu.ifi.dbs.elki.utilities.optionhandling.AbstractParameterizer;
 
@@ -62,6 +63,19 @@ public class ManhattanDistanceFunction extends LPIntegerNormDistanceFunction {
     return agg;
   }
 
+  private final double preDistance(NumberVector v1, NumberVector v2, int start, int end, double bound) {
+    double agg = 0.;
+    for(int d = start; d < end; d++) {
+      final double xd = v1.doubleValue(d), yd = v2.doubleValue(d);
+      final double delta = (xd >= yd) ? xd - yd : yd - xd;
+      agg += delta;
+      if(agg > bound) {
+        return agg;
+      }
+    }
+    return agg;
+  }
+
   private final double preDistanceVM(NumberVector v, SpatialComparable mbr, int start, int end) {
     double agg = 0.;
     for(int d = start; d < end; d++) {
@@ -111,6 +125,10 @@ public class ManhattanDistanceFunction extends LPIntegerNormDistanceFunction {
 
   @Override
   public double distance(NumberVector v1, NumberVector v2) {
+    final double dist = ArrayDistanceKernels.Kernel.MANHATTAN.apply(v1, v2, 0., 0.);
+    if(!Double.isNaN(dist)) {
+      return dist;
+    }
     final int dim1 = v1.getDimensionality(), dim2 = v2.getDimensionality();
     final int mindim = (dim1 < dim2) ? dim1 : dim2;
     double agg = preDistance(v1, v2, 0, mindim);
@@ -123,6 +141,27 @@ public class ManhattanDistanceFunction extends LPIntegerNormDistanceFunction {
     return agg;
   }
 
+  @Override
+  public double distance(NumberVector v1, NumberVector v2, double threshold) {
+    final double dist = ArrayDistanceKernels.Kernel.MANHATTAN_BOUNDED.apply(v1, v2, 0., threshold);
+    if(!Double.isNaN(dist)) {
+      return dist;
+    }
+    final int dim1 = v1.getDimensionality(), dim2 = v2.getDimensionality();
+    final int mindim = (dim1 < dim2) ? dim1 : dim2;
+    double agg = preDistance(v1, v2, 0, mindim, threshold);
+    if(agg > threshold) {
+      return agg;
+    }
+    if(dim1 > mindim) {
+      agg += preNorm(v1, mindim, dim1);
+    }
+    else if(dim2 > mindim) {
+      agg += preNorm(v2, mindim, dim2);
+    }
+    return agg;
+  }
+
   @Override
   public double norm(NumberVector v) {
     return preNorm(v, 0, v.getDimensionality());
@@ -22,6 +22,7 @@ package de.lmu.ifi.dbs.elki.distance.distancefunction.minkowski;
 
 import de.lmu.ifi.dbs.elki.data.NumberVector;
 import de.lmu.ifi.dbs.elki.data.spatial.SpatialComparable;
+import de.lmu.ifi.dbs.elki.distance.distancefunction.ArrayDistanceKernels;
 import de.lmu.ifi.dbs.elki.utilities.Alias;
 import de.lmu.ifi.dbs.elki.utilities.optionhandling.AbstractParameterizer;
 
@@ -64,6 +65,21 @@ public class MaximumDistanceFunction extends LPNormDistanceFunction {
     return agg;
   }
 
+  private final double preDistance(NumberVector v1, NumberVector v2, int start, int end, double bound) {
+    double agg = 0.;
+    for(int d = start; d < end; d++) {
+      final double xd = v1.doubleValue(d), yd = v2.doubleValue(d);
+      final double delta = (xd >= yd) ? xd - yd : yd - xd;
+      if(delta > agg) {
+        if(delta > bound) {
+          return delta;
+        }
+        agg = delta;
+      }
+    }
+    return agg;
+  }
+
   private final double preDistanceVM(NumberVector v, SpatialComparable mbr, int start, int end) {
     double agg = 0.;
     for(int d = start; d < end; d++) {
@@ -107,6 +123,10 @@ public class MaximumDistanceFunction extends LPNormDistanceFunction {
 
   @Override
   public double distance(NumberVector v1, NumberVector v2) {
+    final double dist = ArrayDistanceKernels.Kernel.MAXIMUM.apply(v1, v2, 0., 0.);
+    if(!Double.isNaN(dist)) {
+      return dist;
+    }
     final int dim1 = v1.getDimensionality(), dim2 = v2.getDimensionality();
     final int mindim = (dim1 < dim2) ? dim1 : dim2;
     double agg = preDistance(v1, v2, 0, mindim);
@@ -121,6 +141,29 @@ public class MaximumDistanceFunction extends LPNormDistanceFunction {
     return agg;
   }
 
+  @Override
+  public double distance(NumberVector v1, NumberVector v2, double threshold) {
+    final double dist = ArrayDistanceKernels.Kernel.MAXIMUM_BOUNDED.apply(v1, v2, 0., threshold);
+    if(!Double.isNaN(dist)) {
+      return dist;
+    }
+    final int dim1 = v1.getDimensionality(), dim2 = v2.getDimensionality();
+    final int mindim = (dim1 < dim2) ? dim1 : dim2;
+    double agg = preDistance(v1, v2, 0, mindim, threshold);
+    if(agg > threshold) {
+      return agg;
+    }
+    if(dim1 > mindim) {
+      double b = preNorm(v1, mindim, dim1);
+      agg = agg >= b ? agg : b;
+    }
+    else if(dim2 > mindim) {
+      double b = preNorm(v2, mindim, dim2);
+      agg = agg >= b ? agg : b;
+    }
+    return agg;
+  }
+
   @Override
   public double norm(NumberVector v) {
     return preNorm(v, 0, v.getDimensionality());
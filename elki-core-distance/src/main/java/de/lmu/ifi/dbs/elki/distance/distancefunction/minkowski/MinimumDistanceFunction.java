@@ -23,6 +23,7 @@ package de.lmu.ifi.dbs.elki.distance.distancefunction.minkowski;
 import de.lmu.ifi.dbs.elki.data.NumberVector;
 import de.lmu.ifi.dbs.elki.data.spatial.SpatialComparable;
 import de.lmu.ifi.dbs.elki.distance.distancefunction.AbstractNumberVectorDistanceFunction;
+import de.lmu.ifi.dbs.elki.distance.distancefunction.ArrayDistanceKernels;
 import de.lmu.ifi.dbs.elki.distance.distancefunction.Norm;
 import de.lmu.ifi.dbs.elki.distance.distancefunction.SpatialPrimitiveDistanceFunction;
 import de.lmu.ifi.dbs.elki.utilities.Alias;
@@ -59,6 +60,10 @@ public class MinimumDistanceFunction extends AbstractNumberVectorDistanceFunctio
   @Override
   public double distance(NumberVector v1, NumberVector v2) {
     final int dim = dimensionality(v1, v2);
+    final double dist = ArrayDistanceKernels.Kernel.MINIMUM.apply(v1, v2, dim, 0.);
+    if(!Double.isNaN(dist)) {
+      return dist;
+    }
     double agg = Double.POSITIVE_INFINITY;
     for(int d = 0; d < dim; d++) {
       final double xd = v1.doubleValue(d), yd = v2.doubleValue(d);
@@ -120,6 +120,15 @@ public class SparseLPNormDistanceFunction implements PrimitiveDistanceFunction<S
     return (p >= 1.);
   }
 
+  /**
+   * Get the functions p parameter.
+   *
+   * @return p
+   */
+  public double getP() {
+    return p;
+  }
+
   /**
    * Parameterizer
    * 
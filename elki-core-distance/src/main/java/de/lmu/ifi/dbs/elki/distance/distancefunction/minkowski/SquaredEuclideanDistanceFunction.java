@@ -56,20 +56,23 @@ public class SquaredEuclideanDistanceFunction extends AbstractNumberVectorDistan
     super();
   }
 
-  private final double preDistance(double[] v1, double[] v2, int start, int end) {
+  private final double preDistance(NumberVector v1, NumberVector v2, int start, int end) {
     double agg = 0.;
     for(int d = start; d < end; d++) {
-      final double delta = v1[d] - v2[d];
+      final double delta = v1.doubleValue(d) - v2.doubleValue(d);
       agg += delta * delta;
     }
     return agg;
   }
 
-  private final double preDistance(NumberVector v1, NumberVector v2, int start, int end) {
+  private final double preDistance(NumberVector v1, NumberVector v2, int start, int end, double bound) {
     double agg = 0.;
     for(int d = start; d < end; d++) {
       final double delta = v1.doubleValue(d) - v2.doubleValue(d);
       agg += delta * delta;
+      if(agg > bound) {
+        return agg;
+      }
     }
     return agg;
   }
@@ -108,15 +111,6 @@ public class SquaredEuclideanDistanceFunction extends AbstractNumberVectorDistan
     return agg;
   }
 
-  private final double preNorm(double[] v, int start, int end) {
-    double agg = 0.;
-    for(int d = start; d < end; d++) {
-      final double xd = v[d];
-      agg += xd * xd;
-    }
-    return agg;
-  }
-
   private final double preNormMBR(SpatialComparable mbr, int start, int end) {
     double agg = 0.;
     for(int d = start; d < end; d++) {
@@ -131,6 +125,10 @@ public class SquaredEuclideanDistanceFunction extends AbstractNumberVectorDistan
 
   @Override
   public double distance(NumberVector v1, NumberVector v2) {
+    final double dist = ArrayDistanceKernels.Kernel.SQUARED_EUCLIDEAN.apply(v1, v2, 0., 0.);
+    if(!Double.isNaN(dist)) {
+      return dist;
+    }
     final int dim1 = v1.getDimensionality(), dim2 = v2.getDimensionality();
     final int mindim = (dim1 < dim2) ? dim1 : dim2;
     double agg = preDistance(v1, v2, 0, mindim);
@@ -143,13 +141,18 @@ public class SquaredEuclideanDistanceFunction extends AbstractNumberVectorDistan
     return agg;
   }
 
-  /**
-   * Special version for double arrays.
-   */
-  public double distance(double[] v1, double[] v2) {
-    final int dim1 = v1.length, dim2 = v2.length;
+  @Override
+  public double distance(NumberVector v1, NumberVector v2, double threshold) {
+    final double dist = ArrayDistanceKernels.Kernel.SQUARED_EUCLIDEAN_BOUNDED.apply(v1, v2, 0., threshold);
+    if(!Double.isNaN(dist)) {
+      return dist;
+    }
+    final int dim1 = v1.getDimensionality(), dim2 = v2.getDimensionality();
     final int mindim = (dim1 < dim2) ? dim1 : dim2;
-    double agg = preDistance(v1, v2, 0, mindim);
+    double agg = preDistance(v1, v2, 0, mindim, threshold);
+    if(agg > threshold) {
+      return agg;
+    }
     if(dim1 > mindim) {
       agg += preNorm(v1, mindim, dim1);
     }
@@ -159,6 +162,13 @@ public class SquaredEuclideanDistanceFunction extends AbstractNumberVectorDistan
     return agg;
   }
 
+  /**
+   * Special version for double arrays.
+   */
+  public double distance(double[] v1, double[] v2) {
+    return ArrayDistanceKernels.squaredEuclidean(v1, v2);
+  }
+
   @Override
   public double norm(NumberVector v) {
     return preNorm(v, 0, v.getDimensionality());
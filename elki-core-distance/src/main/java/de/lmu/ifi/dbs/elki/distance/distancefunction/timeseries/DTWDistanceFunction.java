@@ -69,6 +69,11 @@ public class DTWDistanceFunction extends AbstractEditDistanceFunction {
 
   @Override
   public double distance(NumberVector v1, NumberVector v2) {
+    return distance(v1, v2, Double.POSITIVE_INFINITY);
+  }
+
+  @Override
+  public double distance(NumberVector v1, NumberVector v2, double threshold) {
     // Dimensionality, and last valid value in second vector:
     final int dim1 = v1.getDimensionality(), dim2 = v2.getDimensionality();
     final int m2 = dim2 - 1;
@@ -83,6 +88,9 @@ public class DTWDistanceFunction extends AbstractEditDistanceFunction {
     double[] buf = new double[dim2 << 1];
     Arrays.fill(buf, Double.POSITIVE_INFINITY);
 
+    // Bound for early abandoning, on squared values:
+    final double bound = threshold * threshold;
+
     // Fill first row:
     firstRow(buf, band, v1, v2, dim2);
 
@@ -92,6 +100,8 @@ public class DTWDistanceFunction extends AbstractEditDistanceFunction {
     int i = 1, l = 0, r = Math.min(m2, i + band);
     while(i < dim1) {
       final double val1 = v1.doubleValue(i);
+      // Minimum of the current row, a lower bound for the result:
+      double rowmin = Double.POSITIVE_INFINITY;
       for(int j = l; j <= r; j++) {
         // Value in previous row (must exist, may be infinite):
         double min = buf[cur + j];
@@ -106,7 +116,15 @@ public class DTWDistanceFunction extends AbstractEditDistanceFunction {
           }
         }
         // Write:
-        buf[nxt + j] = min + delta(val1, v2.doubleValue(j));
+        final double v = min + delta(val1, v2.doubleValue(j));
+        buf[nxt + j] = v;
+        rowmin = (v < rowmin) ? v : rowmin;
+      }
+      if(rowmin > bound) {
+        final double d = FastMath.sqrt(rowmin);
+        if(d > threshold) {
+          return d;
+        }
       }
       // Swap buffer positions:
       cur = dim2 - cur;
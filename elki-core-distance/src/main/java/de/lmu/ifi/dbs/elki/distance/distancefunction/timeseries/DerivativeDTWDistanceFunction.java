@@ -65,6 +65,11 @@ public class DerivativeDTWDistanceFunction extends DTWDistanceFunction {
 
   @Override
   public double distance(NumberVector v1, NumberVector v2) {
+    return distance(v1, v2, Double.POSITIVE_INFINITY);
+  }
+
+  @Override
+  public double distance(NumberVector v1, NumberVector v2, double threshold) {
     // Dimensionality, and last valid value in second vector:
     final int dim1 = v1.getDimensionality(), dim2 = v2.getDimensionality();
     final int m2 = dim2 - 1;
@@ -79,6 +84,9 @@ public class DerivativeDTWDistanceFunction extends DTWDistanceFunction {
     double[] buf = new double[dim2 << 1];
     Arrays.fill(buf, Double.POSITIVE_INFINITY);
 
+    // Bound for early abandoning, on squared values:
+    final double bound = threshold * threshold;
+
     // Fill first row:
     firstRow(buf, band, v1, v2, dim2);
 
@@ -88,6 +96,8 @@ public class DerivativeDTWDistanceFunction extends DTWDistanceFunction {
     int i = 1, l = 0, r = Math.min(m2, i + band);
     while(i < dim1) {
       final double val1 = derivative(i, v1);
+      // Minimum of the current row, a lower bound for the result:
+      double rowmin = Double.POSITIVE_INFINITY;
       for(int j = l; j <= r; j++) {
         // Value in previous row (must exist, may be infinite):
         double min = buf[cur + j];
@@ -102,7 +112,15 @@ public class DerivativeDTWDistanceFunction extends DTWDistanceFunction {
           }
         }
         // Write:
-        buf[nxt + j] = min + delta(val1, derivative(j, v2));
+        final double v = min + delta(val1, derivative(j, v2));
+        buf[nxt + j] = v;
+        rowmin = (v < rowmin) ? v : rowmin;
+      }
+      if(rowmin > bound) {
+        final double d = FastMath.sqrt(rowmin);
+        if(d > threshold) {
+          return d;
+        }
       }
       // Swap buffer positions:
       cur = dim2 - cur;
@@ -68,6 +68,11 @@ public class EDRDistanceFunction extends DTWDistanceFunction {
 
   @Override
   public double distance(NumberVector v1, NumberVector v2) {
+    return distance(v1, v2, Double.POSITIVE_INFINITY);
+  }
+
+  @Override
+  public double distance(NumberVector v1, NumberVector v2, double threshold) {
     // Dimensionality, and last valid value in second vector:
     final int dim1 = v1.getDimensionality(), dim2 = v2.getDimensionality();
 
@@ -91,6 +96,8 @@ public class EDRDistanceFunction extends DTWDistanceFunction {
     int i = 1, l = 0, r = Math.min(m2, i + band);
     while(i < dim1) {
       final double val1 = v1.doubleValue(i);
+      // Minimum of the current row, a lower bound for the result:
+      double rowmin = Double.POSITIVE_INFINITY;
       for(int j = l; j <= r; j++) {
         // Value in previous row (must exist, may be infinite):
         double min = buf[cur + j];
@@ -105,7 +112,12 @@ public class EDRDistanceFunction extends DTWDistanceFunction {
           }
         }
         // Write:
-        buf[nxt + j] = min + delta(val1, v2.doubleValue(j));
+        final double v = min + delta(val1, v2.doubleValue(j));
+        buf[nxt + j] = v;
+        rowmin = (v < rowmin) ? v : rowmin;
+      }
+      if(rowmin > threshold) {
+        return rowmin;
       }
       // Swap buffer positions:
       cur = dim2 - cur;
@@ -68,6 +68,11 @@ public class ERPDistanceFunction extends DTWDistanceFunction {
 
   @Override
   public double distance(NumberVector v1, NumberVector v2) {
+    return distance(v1, v2, Double.POSITIVE_INFINITY);
+  }
+
+  @Override
+  public double distance(NumberVector v1, NumberVector v2, double threshold) {
     // Dimensionality, and last valid value in second vector:
     final int dim1 = v1.getDimensionality(), dim2 = v2.getDimensionality();
     final int m2 = dim2 - 1;
@@ -82,6 +87,9 @@ public class ERPDistanceFunction extends DTWDistanceFunction {
     double[] buf = new double[dim2 << 1];
     Arrays.fill(buf, Double.POSITIVE_INFINITY);
 
+    // Bound for early abandoning, on squared values:
+    final double bound = threshold * threshold;
+
     // Fill first row:
     firstRow(buf, band, v1, v2, dim2);
 
@@ -91,6 +99,8 @@ public class ERPDistanceFunction extends DTWDistanceFunction {
     int i = 1, l = 0, r = Math.min(m2, i + band);
     while(i < dim1) {
       final double val1 = v1.doubleValue(i);
+      // Minimum of the current row, a lower bound for the result:
+      double rowmin = Double.POSITIVE_INFINITY;
       for(int j = l; j <= r; j++) {
         // Value in previous row (must exist, may be infinite):
         double min = buf[cur + j] + delta(val1, g);
@@ -105,7 +115,15 @@ public class ERPDistanceFunction extends DTWDistanceFunction {
           }
         }
         // Write:
-        buf[nxt + j] = min;
+        final double v = min;
+        buf[nxt + j] = v;
+        rowmin = (v < rowmin) ? v : rowmin;
+      }
+      if(rowmin > bound) {
+        final double d = FastMath.sqrt(rowmin);
+        if(d > threshold) {
+          return d;
+        }
       }
       // Swap buffer positions:
       cur = dim2 - cur;
@@ -96,9 +96,14 @@ public class LCSSDistanceFunction extends AbstractNumberVectorDistanceFunction {
 
   @Override
   public double distance(NumberVector v1, NumberVector v2) {
+    return distance(v1, v2, Double.POSITIVE_INFINITY);
+  }
+
+  @Override
+  public double distance(NumberVector v1, NumberVector v2, double threshold) {
     final int dim1 = v1.getDimensionality(), dim2 = v2.getDimensionality();
     if(dim1 > dim2) {
-      return distance(v2, v1);
+      return distance(v2, v1, threshold);
     }
     final int delta = (int) Math.ceil(dim2 * pDelta);
 
@@ -108,6 +113,8 @@ public class LCSSDistanceFunction extends AbstractNumberVectorDistanceFunction {
     double[] curr = new double[dim2 + 1];
     double[] next = new double[dim2 + 1];
 
+    // Maximum of all entries; each row increases it by at most 1.
+    double maxSoFar = 0.;
     for(int i = 0; i < dim1; i++) {
       final double ai = v1.doubleValue(i);
       for(int j = Math.max(0, i - delta); j <= Math.min(dim2 - 1, i + delta); j++) {
@@ -121,6 +128,12 @@ public class LCSSDistanceFunction extends AbstractNumberVectorDistanceFunction {
         else { // del
           next[j + 1] = next[j];
         }
+        maxSoFar = (next[j + 1] > maxSoFar) ? next[j + 1] : maxSoFar;
+      }
+      // Early abandoning, if even matching all remaining values is not enough:
+      final double bound = 1. - (maxSoFar + (dim1 - 1 - i)) / dim1;
+      if(bound > threshold) {
+        return bound;
       }
       // Swap
       double[] tmp = curr;
@@ -0,0 +1,171 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2017
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.lmu.ifi.dbs.elki.distance.distancefunction;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+import de.lmu.ifi.dbs.elki.data.DoubleVector;
+import de.lmu.ifi.dbs.elki.data.FloatVector;
+import de.lmu.ifi.dbs.elki.data.NumberVector;
+import de.lmu.ifi.dbs.elki.distance.distancefunction.colorhistogram.HistogramIntersectionDistanceFunction;
+import de.lmu.ifi.dbs.elki.distance.distancefunction.minkowski.EuclideanDistanceFunction;
+import de.lmu.ifi.dbs.elki.distance.distancefunction.minkowski.LPIntegerNormDistanceFunction;
+import de.lmu.ifi.dbs.elki.distance.distancefunction.minkowski.LPNormDistanceFunction;
+import de.lmu.ifi.dbs.elki.distance.distancefunction.minkowski.ManhattanDistanceFunction;
+import de.lmu.ifi.dbs.elki.distance.distancefunction.minkowski.MaximumDistanceFunction;
+import de.lmu.ifi.dbs.elki.distance.distancefunction.minkowski.MinimumDistanceFunction;
+import de.lmu.ifi.dbs.elki.distance.distancefunction.minkowski.SquaredEuclideanDistanceFunction;
+
+/**
+ * Validate that the array kernels yield exactly the same results as the
+ * generic implementations, which are used for mixed vector types, also with
+ * early abandoning.
+ *
+ * @author Erich Schubert
+ * @since 0.7.2
+ */
+public class ArrayDistanceKernelsTest {
+  @Test
+  public void testSameDimensionality() {
+    List<PrimitiveDistanceFunction<? super NumberVector>> dists = new ArrayList<>();
+    dists.add(EuclideanDistanceFunction.STATIC);
+    dists.add(SquaredEuclideanDistanceFunction.STATIC);
+    dists.add(ManhattanDistanceFunction.STATIC);
+    dists.add(MaximumDistanceFunction.STATIC);
+    dists.add(MinimumDistanceFunction.STATIC);
+    dists.add(new LPIntegerNormDistanceFunction(3));
+    dists.add(new LPNormDistanceFunction(.5));
+    dists.add(CosineDistanceFunction.STATIC);
+    dists.add(ArcCosineDistanceFunction.STATIC);
+    dists.add(HistogramIntersectionDistanceFunction.STATIC);
+    final Random rnd = new Random(0);
+    for(int dim = 1; dim < 10; dim++) {
+      for(int i = 0; i < 100; i++) {
+        compareDistances(dists, randomFloats(rnd, dim), randomFloats(rnd, dim));
+      }
+    }
+  }
+
+  @Test
+  public void testDifferentDimensionality() {
+    List<PrimitiveDistanceFunction<? super NumberVector>> dists = new ArrayList<>();
+    dists.add(EuclideanDistanceFunction.STATIC);
+    dists.add(SquaredEuclideanDistanceFunction.STATIC);
+    dists.add(ManhattanDistanceFunction.STATIC);
+    dists.add(MaximumDistanceFunction.STATIC);
+    dists.add(new LPIntegerNormDistanceFunction(3));
+    dists.add(new LPNormDistanceFunction(.5));
+    dists.add(CosineDistanceFunction.STATIC);
+    dists.add(ArcCosineDistanceFunction.STATIC);
+    final Random rnd = new Random(0);
+    for(int dim1 = 0; dim1 < 10; dim1++) {
+      for(int dim2 = 0; dim2 < 10; dim2++) {
+        compareDistances(dists, randomFloats(rnd, dim1), randomFloats(rnd, dim2));
+      }
+    }
+  }
+
+  @Test
+  public void testEarlyAbandoning() {
+    List<PrimitiveDistanceFunction<? super NumberVector>> dists = new ArrayList<>();
+    dists.add(EuclideanDistanceFunction.STATIC);
+    dists.add(SquaredEuclideanDistanceFunction.STATIC);
+    dists.add(ManhattanDistanceFunction.STATIC);
+    dists.add(MaximumDistanceFunction.STATIC);
+    dists.add(new LPIntegerNormDistanceFunction(3));
+    dists.add(new LPNormDistanceFunction(.5));
+    final Random rnd = new Random(0);
+    for(int dim1 = 0; dim1 < 20; dim1++) {
+      for(int dim2 = dim1; dim2 < dim1 + 2; dim2++) {
+        float[] a = randomFloats(rnd, dim1), b = randomFloats(rnd, dim2);
+        FloatVector fa = new FloatVector(a), fb = new FloatVector(b);
+        DoubleVector da = DoubleVector.FACTORY.newNumberVector(fa);
+        DoubleVector db = DoubleVector.FACTORY.newNumberVector(fb);
+        for(PrimitiveDistanceFunction<? super NumberVector> df : dists) {
+          final double d = df.distance(da, db);
+          for(double t : new double[] { 0., d * .5, Math.nextDown(d), d, Math.nextUp(d), d * 2, Double.POSITIVE_INFINITY }) {
+            assertBounded(df + " (double)", d, t, df.distance(da, db, t));
+            assertBounded(df + " (float)", d, t, df.distance(fa, fb, t));
+            assertBounded(df + " (generic)", d, t, df.distance(da, fb, t));
+          }
+        }
+      }
+    }
+  }
+
+  /**
+   * Check the result of an early abandoning distance computation.
+   *
+   * @param msg Message prefix
+   * @param exact Exact distance
+   * @param threshold Threshold
+   * @param bounded Result of the early abandoning computation
+   */
+  public static void assertBounded(String msg, double exact, double threshold, double bounded) {
+    if(exact <= threshold) {
+      assertEquals(msg + " not exact below threshold", exact, bounded, 0.);
+    }
+    else {
+      assertTrue(msg + " not above threshold", bounded > threshold);
+    }
+  }
+
+  /**
+   * Compare the double, float and generic code paths.
+   *
+   * @param dists Distance functions
+   * @param a First vector
+   * @param b Second vector
+   */
+  private static void compareDistances(List<PrimitiveDistanceFunction<? super NumberVector>> dists, float[] a, float[] b) {
+    FloatVector fa = new FloatVector(a), fb = new FloatVector(b);
+    DoubleVector da = DoubleVector.FACTORY.newNumberVector(fa);
+    DoubleVector db = DoubleVector.FACTORY.newNumberVector(fb);
+    for(PrimitiveDistanceFunction<? super NumberVector> df : dists) {
+      // Mixed types use the generic code path:
+      final double expect = df.distance(da, fb);
+      assertEquals("Double kernel differs: " + df, expect, df.distance(da, db), 0.);
+      assertEquals("Float kernel differs: " + df, expect, df.distance(fa, fb), 0.);
+    }
+  }
+
+  /**
+   * Generate a random float array.
+   *
+   * @param rnd Random generator
+   * @param dim Dimensionality
+   * @return Array
+   */
+  private static float[] randomFloats(Random rnd, int dim) {
+    float[] ret = new float[dim];
+    for(int d = 0; d < dim; d++) {
+      ret[d] = rnd.nextFloat() * 10f;
+    }
+    return ret;
+  }
+}
@@ -20,8 +20,7 @@
  */
 package de.lmu.ifi.dbs.elki.math.spacefillingcurves;
 
-import java.util.ArrayList;
-import java.util.Collections;
+import java.util.Arrays;
 import java.util.List;
 
 import de.lmu.ifi.dbs.elki.data.spatial.SpatialComparable;
@@ -66,7 +65,7 @@ public class HilbertSpatialSorter implements SpatialSorter {
   @Override
   public void sort(List<? extends SpatialComparable> objs, int start, int end, double[] minmax, int[] dims) {
     final int dim = (dims != null) ? dims.length : (minmax.length >> 1);
-    List<HilbertRef> tmp = new ArrayList<>(end - start);
+    HilbertRef[] tmp = new HilbertRef[end - start];
     int[] buf = new int[dim];
     for(int i = start; i < end; i++) {
       SpatialComparable v = objs.get(i);
@@ -77,14 +76,14 @@ public class HilbertSpatialSorter implements SpatialSorter {
         val = Integer.MAX_VALUE * ((val - minmax[ed2]) / (minmax[ed2 + 1] - minmax[ed2]));
         buf[d] = (int) val;
       }
-      tmp.add(new HilbertRef(v, coordinatesToHilbert(buf, Integer.SIZE - 1, 1)));
+      tmp[i - start] = new HilbertRef(v, coordinatesToHilbert(buf, Integer.SIZE - 1, 1));
     }
-    // Sort and copy back
-    Collections.sort(tmp);
+    // Sort (stable, in parallel for large arrays) and copy back
+    Arrays.parallelSort(tmp);
     @SuppressWarnings("unchecked") // Hack, to allow reordering.
     List<SpatialComparable> cobjs = (List<SpatialComparable>) objs;
     for(int i = start; i < end; i++) {
-      cobjs.set(i, tmp.get(i - start).vec);
+      cobjs.set(i, tmp[i - start].vec);
     }
   }
 
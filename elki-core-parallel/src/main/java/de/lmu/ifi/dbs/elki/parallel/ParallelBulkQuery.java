@@ -0,0 +1,294 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2017
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.lmu.ifi.dbs.elki.parallel;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.RecursiveAction;
+
+import de.lmu.ifi.dbs.elki.database.ids.ArrayDBIDs;
+import de.lmu.ifi.dbs.elki.database.ids.DoubleDBIDList;
+import de.lmu.ifi.dbs.elki.database.ids.KNNList;
+import de.lmu.ifi.dbs.elki.database.query.knn.KNNQuery;
+import de.lmu.ifi.dbs.elki.database.query.range.RangeQuery;
+import de.lmu.ifi.dbs.elki.logging.statistics.QueryCounters;
+
+/**
+ * Run bulk kNN and range queries in parallel, on all available cores.
+ *
+ * The query IDs are split into batches, which are processed by the fork-join
+ * pool of {@link ParallelCore}. Each batch is passed to
+ * {@link KNNQuery#getKNNForBulkDBIDs} respectively
+ * {@link RangeQuery#getRangeForBulkDBIDs}, so that query implementations with
+ * batch optimizations (such as the R*-tree, the M-tree and linear scans)
+ * benefit from them within each batch. Query objects are assumed to be
+ * thread-safe, as they are for {@link ParallelExecutor}. Query costs counted
+ * by {@link QueryCounters} on the worker threads are merged into the counters
+ * of the calling thread.
+ *
+ * @author Erich Schubert
+ * @since 0.7.2
+ *
+ * @apiviz.uses ParallelCore
+ * @apiviz.uses KNNQuery
+ * @apiviz.uses RangeQuery
+ */
+public final class ParallelBulkQuery {
+  /**
+   * Maximum batch size.
+   */
+  private static final int MAX_BATCHSIZE = 256;
+
+  /**
+   * Number of batches per thread, for load balancing.
+   */
+  private static final int BATCHES_PER_THREAD = 8;
+
+  /**
+   * Private constructor. Static methods only.
+   */
+  private ParallelBulkQuery() {
+    // Do not use.
+  }
+
+  /**
+   * Compute the k nearest neighbors of all query objects in parallel.
+   *
+   * @param knnq kNN query
+   * @param ids Query object IDs
+   * @param k Number of neighbors requested
+   * @return neighbors, in the same order as the query IDs
+   */
+  public static List<KNNList> getKNNForBulkDBIDs(KNNQuery<?> knnq, ArrayDBIDs ids, int k) {
+    KNNList[] result = new KNNList[ids.size()];
+    ParallelCore.getCore().invoke(new KNNBatchTask(knnq, ids, k, 0, ids.size(), batchSize(ids.size()), result, QueryCounters.forTask()));
+    return Arrays.asList(result);
+  }
+
+  /**
+   * Compute the range query results of all query objects in parallel.
+   *
+   * @param rangeq Range query
+   * @param ids Query object IDs
+   * @param range Query radius
+   * @return neighbors, in the same order as the query IDs
+   */
+  public static List<DoubleDBIDList> getRangeForBulkDBIDs(RangeQuery<?> rangeq, ArrayDBIDs ids, double range) {
+    DoubleDBIDList[] result = new DoubleDBIDList[ids.size()];
+    ParallelCore.getCore().invoke(new RangeBatchTask(rangeq, ids, range, 0, ids.size(), batchSize(ids.size()), result, QueryCounters.forTask()));
+    return Arrays.asList(result);
+  }
+
+  /**
+   * Choose the batch size.
+   *
+   * @param size Number of queries
+   * @return Batch size
+   */
+  private static int batchSize(int size) {
+    final int parts = ParallelCore.getCore().getParallelism() * BATCHES_PER_THREAD;
+    return Math.max(1, Math.min(MAX_BATCHSIZE, (size + parts - 1) / parts));
+  }
+
+  /**
+   * Recursively split batch task for kNN queries.
+   *
+   * @author Erich Schubert
+   */
+  private static class KNNBatchTask extends RecursiveAction {
+    /**
+     * Serial version
+     */
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * kNN query
+     */
+    private KNNQuery<?> knnq;
+
+    /**
+     * Query IDs
+     */
+    private ArrayDBIDs ids;
+
+    /**
+     * Number of neighbors
+     */
+    private int k;
+
+    /**
+     * Range of query IDs to process
+     */
+    private int start, end;
+
+    /**
+     * Batch size
+     */
+    private int batchsize;
+
+    /**
+     * Output array
+     */
+    private KNNList[] result;
+
+    /**
+     * Counters of the calling thread
+     */
+    private QueryCounters counters;
+
+    /**
+     * Constructor.
+     *
+     * @param knnq kNN query
+     * @param ids Query IDs
+     * @param k Number of neighbors
+     * @param start Start offset
+     * @param end End offset
+     * @param batchsize Batch size
+     * @param result Output array
+     * @param counters Counters of the calling thread, may be {@code null}
+     */
+    KNNBatchTask(KNNQuery<?> knnq, ArrayDBIDs ids, int k, int start, int end, int batchsize, KNNList[] result, QueryCounters counters) {
+      super();
+      this.knnq = knnq;
+      this.ids = ids;
+      this.k = k;
+      this.start = start;
+      this.end = end;
+      this.batchsize = batchsize;
+      this.result = result;
+      this.counters = counters;
+    }
+
+    @Override
+    protected void compute() {
+      if(end - start > batchsize) {
+        final int mid = (start + end) >>> 1;
+        invokeAll(new KNNBatchTask(knnq, ids, k, start, mid, batchsize, result, counters), //
+            new KNNBatchTask(knnq, ids, k, mid, end, batchsize, result, counters));
+        return;
+      }
+      final QueryCounters previous = QueryCounters.beginTask(counters);
+      try {
+        int i = start;
+        for(KNNList knn : knnq.getKNNForBulkDBIDs(ids.slice(start, end), k)) {
+          result[i++] = knn;
+        }
+        assert (i == end);
+      }
+      finally {
+        QueryCounters.endTask(counters, previous);
+      }
+    }
+  }
+
+  /**
+   * Recursively split batch task for range queries.
+   *
+   * @author Erich Schubert
+   */
+  private static class RangeBatchTask extends RecursiveAction {
+    /**
+     * Serial version
+     */
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * Range query
+     */
+    private RangeQuery<?> rangeq;
+
+    /**
+     * Query IDs
+     */
+    private ArrayDBIDs ids;
+
+    /**
+     * Query radius
+     */
+    private double range;
+
+    /**
+     * Range of query IDs to process
+     */
+    private int start, end;
+
+    /**
+     * Batch size
+     */
+    private int batchsize;
+
+    /**
+     * Output array
+     */
+    private DoubleDBIDList[] result;
+
+    /**
+     * Counters of the calling thread
+     */
+    private QueryCounters counters;
+
+    /**
+     * Constructor.
+     *
+     * @param rangeq Range query
+     * @param ids Query IDs
+     * @param range Query radius
+     * @param start Start offset
+     * @param end End offset
+     * @param batchsize Batch size
+     * @param result Output array
+     * @param counters Counters of the calling thread, may be {@code null}
+     */
+    RangeBatchTask(RangeQuery<?> rangeq, ArrayDBIDs ids, double range, int start, int end, int batchsize, DoubleDBIDList[] result, QueryCounters counters) {
+      super();
+      this.rangeq = rangeq;
+      this.ids = ids;
+      this.range = range;
+      this.start = start;
+      this.end = end;
+      this.batchsize = batchsize;
+      this.result = result;
+      this.counters = counters;
+    }
+
+    @Override
+    protected void compute() {
+      if(end - start > batchsize) {
+        final int mid = (start + end) >>> 1;
+        invokeAll(new RangeBatchTask(rangeq, ids, range, start, mid, batchsize, result, counters), //
+            new RangeBatchTask(rangeq, ids, range, mid, end, batchsize, result, counters));
+        return;
+      }
+      final QueryCounters previous = QueryCounters.beginTask(counters);
+      try {
+        int i = start;
+        for(DoubleDBIDList res : rangeq.getRangeForBulkDBIDs(ids.slice(start, end), range)) {
+          result[i++] = res;
+        }
+        assert (i == end);
+      }
+      finally {
+        QueryCounters.endTask(counters, previous);
+      }
+    }
+  }
+}
@@ -21,6 +21,9 @@
 package de.lmu.ifi.dbs.elki.parallel;
 
 import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
 import java.util.concurrent.Future;
 import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.ThreadPoolExecutor;
@@ -28,7 +31,8 @@ import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
 
 /**
- * Core for parallel processing in ELKI, based on {@link ThreadPoolExecutor}.
+ * Core for parallel processing in ELKI, based on {@link ThreadPoolExecutor}
+ * for independent tasks, and {@link ForkJoinPool} for work-stealing tasks.
  * 
  * TODO: make configurable how many threads are used.
  * 
@@ -51,6 +55,11 @@ public class ParallelCore {
    */
   ThreadPoolExecutor executor;
 
+  /**
+   * Fork-join pool, for recursively split tasks.
+   */
+  ForkJoinPool forkjoin;
+
   /**
    * Number of connected submitters.
    */
@@ -98,6 +107,48 @@ public class ParallelCore {
     return executor.submit(task);
   }
 
+  /**
+   * Submit a fork-join task to the work-stealing pool.
+   * 
+   * @param task Submitted task
+   * 
+   * @return Future to observe completion
+   */
+  public <T> ForkJoinTask<T> submit(ForkJoinTask<T> task) {
+    return forkjoin.submit(task);
+  }
+
+  /**
+   * Run a fork-join task on the work-stealing pool, and wait for its result.
+   *
+   * This takes care of connecting and disconnecting.
+   *
+   * @param task Task to run
+   * @return Result of the task
+   */
+  public <T> T invoke(ForkJoinTask<T> task) {
+    connect();
+    try {
+      return submit(task).get();
+    }
+    catch(ExecutionException e) {
+      final Throwable cause = e.getCause();
+      if(cause instanceof RuntimeException) {
+        throw (RuntimeException) cause;
+      }
+      if(cause instanceof Error) {
+        throw (Error) cause;
+      }
+      throw new RuntimeException("Parallel execution failed.", cause);
+    }
+    catch(InterruptedException e) {
+      throw new RuntimeException("Parallel execution interrupted.");
+    }
+    finally {
+      disconnect();
+    }
+  }
+
   /**
    * Connect to the executor.
    */
@@ -110,6 +161,14 @@ public class ParallelCore {
         }
       }
     }
+    if(forkjoin == null) {
+      synchronized(this) {
+        if(forkjoin == null) {
+          // Idle workers of the fork-join pool terminate automatically.
+          forkjoin = new ForkJoinPool(processors);
+        }
+      }
+    }
     int c = this.connected.incrementAndGet();
     if(c == 1) {
       executor.allowCoreThreadTimeOut(false);
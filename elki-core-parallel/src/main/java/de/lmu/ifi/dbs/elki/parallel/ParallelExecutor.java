@@ -20,12 +20,10 @@
  */
 package de.lmu.ifi.dbs.elki.parallel;
 
-import java.util.ArrayList;
 import java.util.HashMap;
-import java.util.List;
 import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutionException;
-import java.util.concurrent.Future;
+import java.util.concurrent.RecursiveAction;
 
 import de.lmu.ifi.dbs.elki.database.ids.ArrayDBIDs;
 import de.lmu.ifi.dbs.elki.database.ids.DBIDArrayIter;
@@ -43,6 +41,7 @@ import de.lmu.ifi.dbs.elki.parallel.variables.SharedVariable.Instance;
  * @author Erich Schubert
  * @since 0.7.0
  *
+ * @apiviz.has BlockArrayTask
  * @apiviz.has BlockArrayRunner
  * @apiviz.uses ParallelCore
  */
@@ -54,35 +53,39 @@ public final class ParallelExecutor {
     // Do not use.
   }
 
+  /**
+   * Minimum number of objects per block; smaller blocks are not split further.
+   */
+  private static final int MIN_BLOCKSIZE = 16;
+
+  /**
+   * Number of queued tasks per worker, below which we keep splitting.
+   */
+  private static final int MAX_SURPLUS = 2;
+
   /**
    * Run a task on all available CPUs.
    *
+   * The work is split adaptively using fork-join: a worker keeps splitting its
+   * block in halves as long as not enough work is queued for idle workers to
+   * steal. This balances the load when the time per object varies a lot, such
+   * as for kNN queries on skewed data.
+   *
    * @param ids IDs to process
    * @param procs Processors to run
    */
   public static void run(DBIDs ids, Processor... procs) {
+    ArrayDBIDs aids = DBIDUtil.ensureArray(ids);
+    final int size = aids.size();
+    if(size == 0) {
+      return;
+    }
     ParallelCore core = ParallelCore.getCore();
     core.connect();
     try {
-      // TODO: try different strategies anyway!
-      ArrayDBIDs aids = DBIDUtil.ensureArray(ids);
-      final int size = aids.size();
-      int numparts = core.getParallelism();
-      // TODO: are there better heuristics for choosing this?
-      numparts = (size > numparts * numparts * 16) ? numparts * Math.max(1, numparts - 1) : numparts;
-
-      final int blocksize = (size + (numparts - 1)) / numparts;
-      List<Future<ArrayDBIDs>> parts = new ArrayList<>(numparts);
-      for(int i = 0; i < numparts; i++) {
-        final int start = i * blocksize;
-        final int end = Math.min(start + blocksize, size);
-        Callable<ArrayDBIDs> run = new BlockArrayRunner(aids, start, end, procs);
-        parts.add(core.submit(run));
-      }
-
-      for(Future<ArrayDBIDs> fut : parts) {
-        fut.get();
-      }
+      // Lower bound for the block size, to amortize instantiation costs.
+      final int minblock = Math.max(MIN_BLOCKSIZE, size / (core.getParallelism() << 8));
+      core.submit(new BlockArrayTask(aids, 0, size, procs, minblock, null)).get();
     }
     catch(ExecutionException e) {
       throw new RuntimeException("Processor execution failed.", e);
@@ -95,6 +98,93 @@ public final class ParallelExecutor {
     }
   }
 
+  /**
+   * Fork-join task, that recursively splits off the upper half of its block as
+   * long as other workers may be idle, then processes the remainder.
+   *
+   * @author Erich Schubert
+   *
+   * @apiviz.uses BlockArrayRunner
+   */
+  protected static class BlockArrayTask extends RecursiveAction {
+    /**
+     * Serial version
+     */
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * Array IDs to process
+     */
+    private ArrayDBIDs ids;
+
+    /**
+     * Start position
+     */
+    private int start;
+
+    /**
+     * End position
+     */
+    private int end;
+
+    /**
+     * The processor masters that own the instances.
+     */
+    private Processor[] procs;
+
+    /**
+     * Minimum block size.
+     */
+    private int minblock;
+
+    /**
+     * Next task forked by the same parent, for joining.
+     */
+    private BlockArrayTask next;
+
+    /**
+     * Constructor.
+     *
+     * @param ids IDs to process
+     * @param start Starting position
+     * @param end End position
+     * @param procs Processors to run
+     * @param minblock Minimum block size
+     * @param next Next forked task
+     */
+    protected BlockArrayTask(ArrayDBIDs ids, int start, int end, Processor[] procs, int minblock, BlockArrayTask next) {
+      super();
+      this.ids = ids;
+      this.start = start;
+      this.end = end;
+      this.procs = procs;
+      this.minblock = minblock;
+      this.next = next;
+    }
+
+    @Override
+    protected void compute() {
+      int hi = end;
+      BlockArrayTask forked = null;
+      // Split only while there is not enough work queued to be stolen.
+      while(hi - start > minblock && getSurplusQueuedTaskCount() <= MAX_SURPLUS) {
+        final int mid = (start + hi) >>> 1;
+        (forked = new BlockArrayTask(ids, mid, hi, procs, minblock, forked)).fork();
+        hi = mid;
+      }
+      new BlockArrayRunner(ids, start, hi, procs).call();
+      // Join in reverse order of forking; run unstolen tasks ourselves.
+      for(; forked != null; forked = forked.next) {
+        if(forked.tryUnfork()) {
+          forked.compute();
+        }
+        else {
+          forked.join();
+        }
+      }
+    }
+  }
+
   /**
    * Run for an array part, without step size.
    *
@@ -31,6 +31,7 @@ import de.lmu.ifi.dbs.elki.data.type.TypeUtil;
 import de.lmu.ifi.dbs.elki.database.ids.*;
 import de.lmu.ifi.dbs.elki.database.query.DatabaseQuery;
 import de.lmu.ifi.dbs.elki.database.query.distance.DistanceQuery;
+import de.lmu.ifi.dbs.elki.database.query.knn.CachedKNNQuery;
 import de.lmu.ifi.dbs.elki.database.query.knn.KNNQuery;
 import de.lmu.ifi.dbs.elki.database.query.knn.PreprocessorKNNQuery;
 import de.lmu.ifi.dbs.elki.database.relation.ConvertToStringView;
@@ -193,6 +194,11 @@ public final class DatabaseUtil {
     if(knnq instanceof PreprocessorKNNQuery) {
       return knnq;
     }
+    // Reuse the cached neighbors of previous runs, if they fit into the cache.
+    knnq = database.getKNNQuery(dq, k, DatabaseQuery.HINT_HEAVY_USE);
+    if(knnq instanceof CachedKNNQuery && ((CachedKNNQuery<O>) knnq).precompute(relation.getDBIDs())) {
+      return knnq;
+    }
     MaterializeKNNPreprocessor<O> preproc = new MaterializeKNNPreprocessor<>(relation, dq.getDistanceFunction(), k);
     preproc.initialize();
     // TODO: attach weakly persistent to the relation?
@@ -216,6 +222,11 @@ public final class DatabaseUtil {
     if(knnq instanceof PreprocessorKNNQuery) {
       return knnq;
     }
+    // Reuse the cached neighbors of previous runs, if they fit into the cache.
+    knnq = database.getKNNQuery(dq, k, DatabaseQuery.HINT_HEAVY_USE);
+    if(knnq instanceof CachedKNNQuery && ((CachedKNNQuery<O>) knnq).precompute(relation.getDBIDs())) {
+      return knnq;
+    }
     MaterializeKNNPreprocessor<O> preproc = new MaterializeKNNPreprocessor<>(relation, dq.getDistanceFunction(), k);
     preproc.initialize();
     // TODO: attach weakly persistent to the relation?
@@ -31,6 +31,7 @@ import de.lmu.ifi.dbs.elki.database.datastore.DataStoreListener;
 import de.lmu.ifi.dbs.elki.database.ids.DBIDRef;
 import de.lmu.ifi.dbs.elki.database.query.distance.DistanceQuery;
 import de.lmu.ifi.dbs.elki.database.query.knn.KNNQuery;
+import de.lmu.ifi.dbs.elki.database.query.knn.KNNQueryCache;
 import de.lmu.ifi.dbs.elki.database.query.range.RangeQuery;
 import de.lmu.ifi.dbs.elki.database.query.rknn.RKNNQuery;
 import de.lmu.ifi.dbs.elki.database.query.similarity.SimilarityQuery;
@@ -43,6 +44,9 @@ import de.lmu.ifi.dbs.elki.logging.Logging;
 import de.lmu.ifi.dbs.elki.result.AbstractHierarchicalResult;
 import de.lmu.ifi.dbs.elki.utilities.optionhandling.AbstractParameterizer;
 import de.lmu.ifi.dbs.elki.utilities.optionhandling.OptionID;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.constraints.CommonConstraints;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameterization.Parameterization;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameters.IntParameter;
 
 /**
  * Abstract base class for database API implementations. Provides default
@@ -224,6 +228,25 @@ public abstract class AbstractDatabase extends AbstractHierarchicalResult implem
      */
     public static final OptionID INDEX_ID = new OptionID("db.index", "Database indexes to add.");
 
+    /**
+     * Parameter to enable the cache of linear scan kNN results.
+     * <p>
+     * Key: {@code -db.knncache}
+     * </p>
+     */
+    public static final OptionID KNN_CACHE_ID = new OptionID("db.knncache", "Memory budget in megabytes for caching the kNN results of linear scans, shared by all databases. Disabled by default.");
+
+    @Override
+    protected void makeOptions(Parameterization config) {
+      super.makeOptions(config);
+      IntParameter knncacheP = new IntParameter(KNN_CACHE_ID) //
+          .addConstraint(CommonConstraints.GREATER_EQUAL_ZERO_INT);
+      knncacheP.setOptional(true);
+      if(config.grab(knncacheP)) {
+        KNNQueryCache.STATIC.setMemoryBudget(knncacheP.intValue() * (1L << 20));
+      }
+    }
+
     @Override
     protected abstract Database makeInstance();
   }
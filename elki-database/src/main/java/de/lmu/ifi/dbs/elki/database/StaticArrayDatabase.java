@@ -22,17 +22,24 @@ package de.lmu.ifi.dbs.elki.database;
 
 import java.util.Collection;
 
+import de.lmu.ifi.dbs.elki.data.NumberVector;
+import de.lmu.ifi.dbs.elki.data.PackedVectorStore;
+import de.lmu.ifi.dbs.elki.data.SparseNumberVector;
+import de.lmu.ifi.dbs.elki.data.VectorStore;
 import de.lmu.ifi.dbs.elki.data.type.SimpleTypeInformation;
+import de.lmu.ifi.dbs.elki.data.type.VectorFieldTypeInformation;
 import de.lmu.ifi.dbs.elki.database.datastore.DataStoreFactory;
 import de.lmu.ifi.dbs.elki.database.datastore.DataStoreUtil;
 import de.lmu.ifi.dbs.elki.database.datastore.WritableDataStore;
 import de.lmu.ifi.dbs.elki.database.ids.ArrayStaticDBIDs;
 import de.lmu.ifi.dbs.elki.database.ids.DBIDArrayIter;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDRange;
 import de.lmu.ifi.dbs.elki.database.ids.DBIDUtil;
 import de.lmu.ifi.dbs.elki.database.ids.DBIDs;
 import de.lmu.ifi.dbs.elki.database.relation.DBIDView;
 import de.lmu.ifi.dbs.elki.database.relation.MaterializedRelation;
 import de.lmu.ifi.dbs.elki.database.relation.Relation;
+import de.lmu.ifi.dbs.elki.database.relation.VectorStoreRelation;
 import de.lmu.ifi.dbs.elki.datasource.DatabaseConnection;
 import de.lmu.ifi.dbs.elki.datasource.FileBasedDatabaseConnection;
 import de.lmu.ifi.dbs.elki.datasource.bundle.MultipleObjectsBundle;
@@ -41,7 +48,10 @@ import de.lmu.ifi.dbs.elki.index.IndexFactory;
 import de.lmu.ifi.dbs.elki.logging.Logging;
 import de.lmu.ifi.dbs.elki.logging.statistics.Duration;
 import de.lmu.ifi.dbs.elki.utilities.documentation.Description;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.OptionID;
 import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameterization.Parameterization;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameters.EnumParameter;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameters.Flag;
 import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameters.ObjectListParameter;
 import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameters.ObjectParameter;
 
@@ -80,6 +90,16 @@ public class StaticArrayDatabase extends AbstractDatabase {
    */
   protected DatabaseConnection databaseConnection;
 
+  /**
+   * Layout for packed number vector storage, {@code null} to store objects.
+   */
+  protected PackedVectorStore.Layout packed;
+
+  /**
+   * Use single precision for packed vectors.
+   */
+  protected boolean packfloat;
+
   /**
    * Constructor.
    *
@@ -87,10 +107,25 @@ public class StaticArrayDatabase extends AbstractDatabase {
    * @param indexFactories Indexes to add
    */
   public StaticArrayDatabase(DatabaseConnection databaseConnection, Collection<IndexFactory<?, ?>> indexFactories) {
+    this(databaseConnection, indexFactories, null, false);
+  }
+
+  /**
+   * Constructor.
+   *
+   * @param databaseConnection Database connection to get the initial data from.
+   * @param indexFactories Indexes to add
+   * @param packed Layout for packed storage of number vectors, may be
+   *        {@code null}
+   * @param packfloat Use single precision for packed vectors
+   */
+  public StaticArrayDatabase(DatabaseConnection databaseConnection, Collection<IndexFactory<?, ?>> indexFactories, PackedVectorStore.Layout packed, boolean packfloat) {
     super();
     this.databaseConnection = databaseConnection;
     this.ids = null;
     this.idrep = null;
+    this.packed = packed;
+    this.packfloat = packfloat;
 
     // Add indexes.
     if(indexFactories != null) {
@@ -143,19 +178,26 @@ public class StaticArrayDatabase extends AbstractDatabase {
       int numrel = bundle.metaLength();
       for(int i = 0; i < numrel; i++) {
         SimpleTypeInformation<?> meta = bundle.meta(i);
-        @SuppressWarnings("unchecked")
-        SimpleTypeInformation<Object> ometa = (SimpleTypeInformation<Object>) meta;
-        WritableDataStore<Object> store = DataStoreUtil.makeStorage(ids, DataStoreFactory.HINT_DB, ometa.getRestrictionClass());
-        for(it.seek(0); it.valid(); it.advance()) {
-          store.put(it, bundle.data(it.getOffset(), i));
+        Relation<?> relation = packed != null ? makePackedRelation(bundle, i) : null;
+        relation = relation == null ? makeMappedRelation(bundle, i) : relation;
+        if(relation != null) {
+          meta = relation.getDataTypeInformation();
+        }
+        else {
+          @SuppressWarnings("unchecked")
+          SimpleTypeInformation<Object> ometa = (SimpleTypeInformation<Object>) meta;
+          WritableDataStore<Object> store = DataStoreUtil.makeStorage(ids, DataStoreFactory.HINT_DB, ometa.getRestrictionClass());
+          for(it.seek(0); it.valid(); it.advance()) {
+            store.put(it, bundle.data(it.getOffset(), i));
+          }
+          relation = new MaterializedRelation<>(ometa, ids, null, store);
         }
-        Relation<?> relation = new MaterializedRelation<>(ometa, ids, null, store);
         relations.add(relation);
         getHierarchy().add(this, relation);
 
         // Try to add indexes where appropriate
         for(IndexFactory<?, ?> factory : indexFactories) {
-          if(factory.getInputTypeRestriction().isAssignableFromType(ometa)) {
+          if(factory.getInputTypeRestriction().isAssignableFromType(meta)) {
             @SuppressWarnings("unchecked")
             final IndexFactory<Object, ?> ofact = (IndexFactory<Object, ?>) factory;
             @SuppressWarnings("unchecked")
@@ -176,6 +218,62 @@ public class StaticArrayDatabase extends AbstractDatabase {
     }
   }
 
+  /**
+   * Build a packed vector relation for a column of the bundle, if possible.
+   *
+   * @param bundle Data bundle
+   * @param col Column number
+   * @return Relation, or {@code null} if the column cannot be packed.
+   */
+  private Relation<?> makePackedRelation(MultipleObjectsBundle bundle, int col) {
+    SimpleTypeInformation<?> meta = bundle.meta(col);
+    if(!(meta instanceof VectorFieldTypeInformation) || !NumberVector.class.isAssignableFrom(meta.getRestrictionClass()) //
+        || SparseNumberVector.class.isAssignableFrom(meta.getRestrictionClass())) {
+      return null;
+    }
+    VectorFieldTypeInformation<?> vmeta = (VectorFieldTypeInformation<?>) meta;
+    if(vmeta.mindim() != vmeta.maxdim()) {
+      return null;
+    }
+    if(!(ids instanceof DBIDRange)) {
+      LOG.warning("Packed vector storage requires a DBID range, storing objects instead.");
+      return null;
+    }
+    final int dim = vmeta.getDimensionality();
+    PackedVectorStore store = new PackedVectorStore(ids.size(), dim, packed, packfloat);
+    for(int j = 0; j < ids.size(); j++) {
+      store.set(j, (NumberVector) bundle.data(j, col));
+    }
+    String[] labels = new String[dim];
+    boolean haslabels = false;
+    for(int d = 0; d < dim; d++) {
+      haslabels |= (labels[d] = vmeta.getLabel(d)) != null;
+    }
+    VectorFieldTypeInformation<NumberVector> type = new VectorFieldTypeInformation<>(PackedVectorStore.FACTORY, dim, haslabels ? labels : null, PackedVectorStore.VARIABLE_SERIALIZER);
+    return new VectorStoreRelation(type, (DBIDRange) ids, null, store);
+  }
+
+  /**
+   * Build a relation for a column that already is a {@link VectorStore}, such
+   * as a memory mapped file, without copying the data.
+   *
+   * @param bundle Data bundle
+   * @param col Column number
+   * @return Relation, or {@code null} if the column is not a vector store.
+   */
+  private Relation<?> makeMappedRelation(MultipleObjectsBundle bundle, int col) {
+    if(!(bundle.getColumn(col) instanceof VectorStore) || !(bundle.meta(col) instanceof VectorFieldTypeInformation)) {
+      return null;
+    }
+    if(!(ids instanceof DBIDRange)) {
+      LOG.warning("Memory mapped relations require a DBID range, storing references instead.");
+      return null;
+    }
+    @SuppressWarnings("unchecked")
+    VectorFieldTypeInformation<NumberVector> type = (VectorFieldTypeInformation<NumberVector>) bundle.meta(col);
+    return new VectorStoreRelation(type, (DBIDRange) ids, null, (VectorStore) bundle.getColumn(col));
+  }
+
   @Override
   protected Logging getLogger() {
     return LOG;
@@ -189,6 +287,17 @@ public class StaticArrayDatabase extends AbstractDatabase {
    * @apiviz.exclude
    */
   public static class Parameterizer extends AbstractDatabase.Parameterizer {
+    /**
+     * Store number vectors in a single primitive array, with the given layout.
+     */
+    public static final OptionID PACKED_ID = new OptionID("db.packed", "Store number vectors in a single primitive array, using the given memory layout. "
+        + "The relation then provides number vectors, but not double vectors.");
+
+    /**
+     * Use single precision for packed vectors.
+     */
+    public static final OptionID PACKED_FLOAT_ID = new OptionID("db.packed.float", "Use single precision for packed number vectors.");
+
     /**
      * Holds the database connection to get the initial data from.
      */
@@ -199,6 +308,16 @@ public class StaticArrayDatabase extends AbstractDatabase {
      */
     private Collection<IndexFactory<?, ?>> indexFactories;
 
+    /**
+     * Layout for packed vectors.
+     */
+    protected PackedVectorStore.Layout packed = null;
+
+    /**
+     * Use single precision for packed vectors.
+     */
+    protected boolean packfloat = false;
+
     @Override
     protected void makeOptions(Parameterization config) {
       super.makeOptions(config);
@@ -212,11 +331,20 @@ public class StaticArrayDatabase extends AbstractDatabase {
       if(config.grab(indexFactoryP)) {
         indexFactories = indexFactoryP.instantiateClasses(config);
       }
+      EnumParameter<PackedVectorStore.Layout> packedP = new EnumParameter<>(PACKED_ID, PackedVectorStore.Layout.class);
+      packedP.setOptional(true);
+      if(config.grab(packedP)) {
+        packed = packedP.getValue();
+      }
+      Flag packfloatF = new Flag(PACKED_FLOAT_ID);
+      if(config.grab(packfloatF)) {
+        packfloat = packfloatF.isTrue();
+      }
     }
 
     @Override
     protected StaticArrayDatabase makeInstance() {
-      return new StaticArrayDatabase(databaseConnection, indexFactories);
+      return new StaticArrayDatabase(databaseConnection, indexFactories, packed, packfloat);
     }
   }
 }
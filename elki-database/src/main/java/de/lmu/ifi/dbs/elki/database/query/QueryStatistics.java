@@ -0,0 +1,429 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2017
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.lmu.ifi.dbs.elki.database.query;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import de.lmu.ifi.dbs.elki.database.ids.DBIDRef;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDUtil;
+import de.lmu.ifi.dbs.elki.logging.Logging;
+import de.lmu.ifi.dbs.elki.logging.statistics.DoubleStatistic;
+import de.lmu.ifi.dbs.elki.logging.statistics.LongStatistic;
+import de.lmu.ifi.dbs.elki.logging.statistics.QueryCounters;
+import de.lmu.ifi.dbs.elki.logging.statistics.Statistic;
+import de.lmu.ifi.dbs.elki.logging.statistics.StringStatistic;
+import de.lmu.ifi.dbs.elki.result.Result;
+
+/**
+ * Aggregated per-query statistics of instrumented queries: number of queries,
+ * distance computations, node visits, heap insertions, result sizes, and a
+ * latency histogram with power-of-two buckets.
+ *
+ * The costs are attributed to queries using the per-thread
+ * {@link QueryCounters}, so they include all work done by the query, including
+ * work of parallel tasks that merge their counters into the calling thread.
+ *
+ * @author Erich Schubert
+ * @since 0.7.2
+ */
+public class QueryStatistics implements Result {
+  /**
+   * Number of histogram buckets.
+   */
+  private static final int BUCKETS = 64;
+
+  /**
+   * Statistics key prefix.
+   */
+  private final String key;
+
+  /**
+   * Number of queries.
+   */
+  private long queries;
+
+  /**
+   * Total number of distance computations.
+   */
+  private long distances;
+
+  /**
+   * Total number of nodes visited.
+   */
+  private long nodes;
+
+  /**
+   * Total number of heap insertions.
+   */
+  private long heapInserts;
+
+  /**
+   * Total number of results.
+   */
+  private long results;
+
+  /**
+   * Total query time.
+   */
+  private long totalNanos;
+
+  /**
+   * Maximum query time.
+   */
+  private long maxNanos;
+
+  /**
+   * Slowest query.
+   */
+  private String slowest;
+
+  /**
+   * Latency histogram, bucket i counts latencies below 2^i nanoseconds.
+   */
+  private final long[] histogram = new long[BUCKETS];
+
+  /**
+   * Constructor.
+   *
+   * @param key Statistics key prefix
+   */
+  public QueryStatistics(String key) {
+    super();
+    this.key = key;
+  }
+
+  /**
+   * Snapshot of the per-thread counters, to be passed to
+   * {@link #record(Snapshot, int, long, Object)} after the query.
+   *
+   * @return Snapshot
+   */
+  public Snapshot begin() {
+    return new Snapshot(QueryCounters.current());
+  }
+
+  /**
+   * Record the costs of one or more queries.
+   *
+   * @param before Snapshot taken before the queries
+   * @param n Number of queries
+   * @param nresults Total number of results
+   * @param query Query object or DBID, used to describe the slowest query
+   */
+  public void record(Snapshot before, int n, long nresults, Object query) {
+    final long nanos = System.nanoTime() - before.nanos;
+    final QueryCounters c = before.counters;
+    record(n, nanos, c.getDistances() - before.distances, c.getNodeVisits() - before.nodes, c.getHeapInserts() - before.heapInserts, nresults, query);
+  }
+
+  /**
+   * Record the costs of one or more queries.
+   *
+   * @param n Number of queries
+   * @param nanos Total time
+   * @param ndist Distance computations
+   * @param nnodes Nodes visited
+   * @param nheap Heap insertions
+   * @param nresults Number of results
+   * @param query Query object or DBID, used to describe the slowest query
+   */
+  public synchronized void record(int n, long nanos, long ndist, long nnodes, long nheap, long nresults, Object query) {
+    if(n <= 0) {
+      return;
+    }
+    queries += n;
+    distances += ndist;
+    nodes += nnodes;
+    heapInserts += nheap;
+    results += nresults;
+    totalNanos += nanos;
+    final long per = nanos / n;
+    histogram[bucket(per)] += n;
+    if(per > maxNanos) {
+      maxNanos = per;
+      slowest = query instanceof DBIDRef ? "DBID " + DBIDUtil.toString((DBIDRef) query) : String.valueOf(query);
+    }
+  }
+
+  /**
+   * Histogram bucket of a latency.
+   *
+   * @param nanos Latency
+   * @return Bucket
+   */
+  private static int bucket(long nanos) {
+    return nanos <= 0 ? 0 : Math.min(BUCKETS - 1, 64 - Long.numberOfLeadingZeros(nanos));
+  }
+
+  /**
+   * Reset all statistics.
+   */
+  public synchronized void reset() {
+    queries = distances = nodes = heapInserts = results = totalNanos = maxNanos = 0;
+    slowest = null;
+    Arrays.fill(histogram, 0);
+  }
+
+  /**
+   * Get the number of queries.
+   *
+   * @return Number of queries
+   */
+  public synchronized long getQueries() {
+    return queries;
+  }
+
+  /**
+   * Get the total number of distance computations.
+   *
+   * @return Number of distance computations
+   */
+  public synchronized long getDistances() {
+    return distances;
+  }
+
+  /**
+   * Get the total number of node visits.
+   *
+   * @return Number of nodes visited
+   */
+  public synchronized long getNodeVisits() {
+    return nodes;
+  }
+
+  /**
+   * Get the total number of heap insertions.
+   *
+   * @return Number of heap insertions
+   */
+  public synchronized long getHeapInserts() {
+    return heapInserts;
+  }
+
+  /**
+   * Get the total number of results.
+   *
+   * @return Number of results
+   */
+  public synchronized long getResults() {
+    return results;
+  }
+
+  /**
+   * Get the latency of the slowest query.
+   *
+   * @return Latency in nanoseconds
+   */
+  public synchronized long getMaxNanos() {
+    return maxNanos;
+  }
+
+  /**
+   * Get the slowest query.
+   *
+   * @return Description of the slowest query
+   */
+  public synchronized String getSlowest() {
+    return slowest;
+  }
+
+  /**
+   * Estimate a latency quantile from the histogram. This returns the upper
+   * bound of the bucket containing the quantile.
+   *
+   * @param q Quantile, in [0:1]
+   * @return Latency in nanoseconds
+   */
+  public synchronized long quantileNanos(double q) {
+    final long target = (long) Math.ceil(q * queries);
+    long cum = 0;
+    for(int i = 0; i < BUCKETS; i++) {
+      cum += histogram[i];
+      if(cum >= target && cum > 0) {
+        return Math.min(1L << i, maxNanos);
+      }
+    }
+    return maxNanos;
+  }
+
+  /**
+   * Get the statistics for logging.
+   *
+   * @return Statistics
+   */
+  public synchronized List<Statistic> getStatistics() {
+    List<Statistic> stats = new ArrayList<>();
+    stats.add(new LongStatistic(key + ".queries", queries));
+    stats.add(new LongStatistic(key + ".distance-computations", distances));
+    stats.add(new LongStatistic(key + ".node-visits", nodes));
+    stats.add(new LongStatistic(key + ".heap-inserts", heapInserts));
+    stats.add(new LongStatistic(key + ".results", results));
+    stats.add(new DoubleStatistic(key + ".latency.mean-us", queries > 0 ? totalNanos * 1e-3 / queries : 0.));
+    stats.add(new DoubleStatistic(key + ".latency.p50-us", quantileNanos(.5) * 1e-3));
+    stats.add(new DoubleStatistic(key + ".latency.p90-us", quantileNanos(.9) * 1e-3));
+    stats.add(new DoubleStatistic(key + ".latency.p99-us", quantileNanos(.99) * 1e-3));
+    stats.add(new DoubleStatistic(key + ".latency.max-us", maxNanos * 1e-3));
+    if(slowest != null) {
+      stats.add(new StringStatistic(key + ".slowest", slowest));
+    }
+    return stats;
+  }
+
+  /**
+   * Log the statistics.
+   *
+   * @param log Logger
+   */
+  public void logStatistics(Logging log) {
+    if(log.isStatistics()) {
+      for(Statistic s : getStatistics()) {
+        log.statistics(s);
+      }
+    }
+  }
+
+  /**
+   * Serialize the statistics as JSON.
+   *
+   * @return JSON string
+   */
+  public synchronized String toJSON() {
+    StringBuilder buf = new StringBuilder(500);
+    buf.append("{\"key\":");
+    appendJSONString(buf, key);
+    buf.append(",\"queries\":").append(queries) //
+        .append(",\"distanceComputations\":").append(distances) //
+        .append(",\"nodeVisits\":").append(nodes) //
+        .append(",\"heapInserts\":").append(heapInserts) //
+        .append(",\"results\":").append(results) //
+        .append(",\"latency\":{\"totalNanos\":").append(totalNanos) //
+        .append(",\"maxNanos\":").append(maxNanos) //
+        .append(",\"p50Nanos\":").append(quantileNanos(.5)) //
+        .append(",\"p90Nanos\":").append(quantileNanos(.9)) //
+        .append(",\"p99Nanos\":").append(quantileNanos(.99)) //
+        .append(",\"histogram\":[");
+    boolean first = true;
+    for(int i = 0; i < BUCKETS; i++) {
+      if(histogram[i] > 0) {
+        buf.append(first ? "" : ",").append("{\"upperNanos\":").append(1L << i).append(",\"count\":").append(histogram[i]).append('}');
+        first = false;
+      }
+    }
+    buf.append("]},\"slowest\":");
+    if(slowest != null) {
+      appendJSONString(buf, slowest);
+    }
+    else {
+      buf.append("null");
+    }
+    return buf.append('}').toString();
+  }
+
+  /**
+   * Append a quoted and escaped JSON string.
+   *
+   * @param buf Output buffer
+   * @param s String
+   */
+  private static void appendJSONString(StringBuilder buf, String s) {
+    buf.append('"');
+    for(int i = 0; i < s.length(); i++) {
+      final char c = s.charAt(i);
+      switch(c){
+      case '"':
+        buf.append("\\\"");
+        break;
+      case '\\':
+        buf.append("\\\\");
+        break;
+      case '\n':
+        buf.append("\\n");
+        break;
+      case '\r':
+        buf.append("\\r");
+        break;
+      case '\t':
+        buf.append("\\t");
+        break;
+      default:
+        if(c < 0x20) {
+          buf.append(String.format("\\u%04x", (int) c));
+        }
+        else {
+          buf.append(c);
+        }
+      }
+    }
+    buf.append('"');
+  }
+
+  @Override
+  public String getLongName() {
+    return "Query statistics: " + key;
+  }
+
+  @Override
+  public String getShortName() {
+    return "query-statistics";
+  }
+
+  @Override
+  public String toString() {
+    return toJSON();
+  }
+
+  /**
+   * Snapshot of the per-thread counters at the beginning of a query.
+   *
+   * @author Erich Schubert
+   */
+  public static class Snapshot {
+    /**
+     * Counters of the thread.
+     */
+    final QueryCounters counters;
+
+    /**
+     * Counter values.
+     */
+    final long distances, nodes, heapInserts;
+
+    /**
+     * Start time.
+     */
+    final long nanos;
+
+    /**
+     * Constructor.
+     *
+     * @param counters Counters of the current thread
+     */
+    Snapshot(QueryCounters counters) {
+      this.counters = counters;
+      this.distances = counters.getDistances();
+      this.nodes = counters.getNodeVisits();
+      this.heapInserts = counters.getHeapInserts();
+      this.nanos = System.nanoTime();
+    }
+  }
+}
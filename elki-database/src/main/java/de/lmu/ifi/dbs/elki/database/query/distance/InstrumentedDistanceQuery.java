@@ -0,0 +1,100 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2017
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.lmu.ifi.dbs.elki.database.query.distance;
+
+import de.lmu.ifi.dbs.elki.database.ids.DBIDRef;
+import de.lmu.ifi.dbs.elki.database.relation.Relation;
+import de.lmu.ifi.dbs.elki.distance.distancefunction.DistanceFunction;
+import de.lmu.ifi.dbs.elki.logging.statistics.QueryCounters;
+
+/**
+ * Distance query wrapper that counts every distance computation in the
+ * per-thread {@link QueryCounters}.
+ *
+ * This is useful to measure algorithms that compute distances directly rather
+ * than via a kNN or range query. Because it hides the specialized query
+ * interfaces of the inner query, the relation unwraps it before choosing an
+ * index.
+ *
+ * @author Erich Schubert
+ * @since 0.7.2
+ *
+ * @param <O> Object type
+ */
+public class InstrumentedDistanceQuery<O> implements DistanceQuery<O> {
+  /**
+   * Inner query.
+   */
+  private final DistanceQuery<O> inner;
+
+  /**
+   * Constructor.
+   *
+   * @param inner Inner query
+   */
+  public InstrumentedDistanceQuery(DistanceQuery<O> inner) {
+    super();
+    this.inner = inner;
+  }
+
+  @Override
+  public double distance(DBIDRef id1, DBIDRef id2) {
+    QueryCounters.countDistance();
+    return inner.distance(id1, id2);
+  }
+
+  @Override
+  public double distance(O o1, DBIDRef id2) {
+    QueryCounters.countDistance();
+    return inner.distance(o1, id2);
+  }
+
+  @Override
+  public double distance(DBIDRef id1, O o2) {
+    QueryCounters.countDistance();
+    return inner.distance(id1, o2);
+  }
+
+  @Override
+  public double distance(O o1, O o2) {
+    QueryCounters.countDistance();
+    return inner.distance(o1, o2);
+  }
+
+  @Override
+  public DistanceFunction<? super O> getDistanceFunction() {
+    return inner.getDistanceFunction();
+  }
+
+  @Override
+  public Relation<? extends O> getRelation() {
+    return inner.getRelation();
+  }
+
+  /**
+   * Get the wrapped query.
+   *
+   * @return Inner query
+   */
+  public DistanceQuery<O> getInner() {
+    return inner;
+  }
+}
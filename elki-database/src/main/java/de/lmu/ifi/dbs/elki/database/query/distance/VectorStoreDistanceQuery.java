@@ -0,0 +1,77 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2017
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.lmu.ifi.dbs.elki.database.query.distance;
+
+import de.lmu.ifi.dbs.elki.data.NumberVector;
+import de.lmu.ifi.dbs.elki.data.VectorStore;
+import de.lmu.ifi.dbs.elki.database.relation.VectorStoreRelation;
+import de.lmu.ifi.dbs.elki.distance.distancefunction.SpatialPrimitiveDistanceFunction;
+
+import net.jafama.FastMath;
+
+/**
+ * Euclidean distance query on a {@link VectorStoreRelation}, which computes
+ * the distances of stored vectors using the row accessors of the store.
+ *
+ * The relation chooses this query when the query is created, so the generic
+ * distance functions do not need to check for stored vectors on every call.
+ *
+ * @author Erich Schubert
+ * @since 0.7.2
+ *
+ * @apiviz.uses VectorStore
+ */
+public class VectorStoreDistanceQuery extends SpatialPrimitiveDistanceQuery<NumberVector> {
+  /**
+   * Vector storage.
+   */
+  private final VectorStore store;
+
+  /**
+   * Return squared distances.
+   */
+  private final boolean squared;
+
+  /**
+   * Constructor.
+   *
+   * @param relation Relation
+   * @param distanceFunction Euclidean or squared Euclidean distance
+   * @param squared {@code true} for squared Euclidean distance
+   */
+  public VectorStoreDistanceQuery(VectorStoreRelation relation, SpatialPrimitiveDistanceFunction<? super NumberVector> distanceFunction, boolean squared) {
+    super(relation, distanceFunction);
+    this.store = relation.getStore();
+    this.squared = squared;
+  }
+
+  @Override
+  public double distance(NumberVector o1, NumberVector o2) {
+    if(o1 instanceof VectorStore.View && o2 instanceof VectorStore.View) {
+      final VectorStore.View v1 = (VectorStore.View) o1, v2 = (VectorStore.View) o2;
+      if(v1.getStore() == store && v2.getStore() == store) {
+        final double d = store.squaredEuclidean(v1.getRow(), v2.getRow());
+        return squared ? d : FastMath.sqrt(d);
+      }
+    }
+    return distanceFunction.distance(o1, o2);
+  }
+}
@@ -0,0 +1,137 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2017
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.lmu.ifi.dbs.elki.database.query.knn;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import de.lmu.ifi.dbs.elki.database.ids.ArrayDBIDs;
+import de.lmu.ifi.dbs.elki.database.ids.ArrayModifiableDBIDs;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDArrayIter;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDIter;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDRef;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDUtil;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDs;
+import de.lmu.ifi.dbs.elki.database.ids.KNNList;
+import de.lmu.ifi.dbs.elki.database.query.LinearScanQuery;
+
+/**
+ * kNN query using the results stored in a {@link KNNQueryCache}, computing
+ * missing results with a linear scan query.
+ *
+ * @author Erich Schubert
+ * @since 0.7.2
+ *
+ * @param <O> Object type
+ */
+public class CachedKNNQuery<O> implements KNNQuery<O>, LinearScanQuery {
+  /**
+   * Query to compute missing results.
+   */
+  private final KNNQuery<O> inner;
+
+  /**
+   * Cache entry.
+   */
+  private final KNNQueryCache.Entry entry;
+
+  /**
+   * Constructor.
+   *
+   * @param inner Query to compute missing results
+   * @param entry Cache entry
+   */
+  protected CachedKNNQuery(KNNQuery<O> inner, KNNQueryCache.Entry entry) {
+    super();
+    this.inner = inner;
+    this.entry = entry;
+  }
+
+  @Override
+  public KNNList getKNNForDBID(DBIDRef id, int k) {
+    final int ck = entry.k;
+    if(k > ck) {
+      return inner.getKNNForDBID(id, k);
+    }
+    KNNList list = entry.get(id);
+    if(list == null) {
+      list = inner.getKNNForDBID(id, ck);
+      entry.put(id, list);
+    }
+    return k < ck ? DBIDUtil.subList(list, k) : list;
+  }
+
+  @Override
+  public List<? extends KNNList> getKNNForBulkDBIDs(ArrayDBIDs ids, int k) {
+    final int ck = entry.k;
+    if(k > ck) {
+      return inner.getKNNForBulkDBIDs(ids, k);
+    }
+    List<KNNList> ret = new ArrayList<>(ids.size());
+    ArrayModifiableDBIDs missing = null;
+    for(DBIDIter iter = ids.iter(); iter.valid(); iter.advance()) {
+      KNNList list = entry.get(iter);
+      if(list == null) {
+        missing = missing != null ? missing : DBIDUtil.newArray();
+        missing.add(iter);
+      }
+      ret.add(list);
+    }
+    if(missing != null) {
+      List<? extends KNNList> computed = inner.getKNNForBulkDBIDs(missing, ck);
+      DBIDArrayIter miter = missing.iter();
+      for(int i = 0; i < ret.size(); i++) {
+        if(ret.get(i) == null) {
+          KNNList list = computed.get(miter.getOffset());
+          entry.put(miter, list);
+          ret.set(i, list);
+          miter.advance();
+        }
+      }
+    }
+    if(k < ck) {
+      for(int i = 0; i < ret.size(); i++) {
+        ret.set(i, DBIDUtil.subList(ret.get(i), k));
+      }
+    }
+    return ret;
+  }
+
+  /**
+   * Compute and cache the neighbors of all given objects, if they fit into the
+   * memory budget of the cache.
+   *
+   * @param ids Objects
+   * @return {@code true} if the neighbors of all objects are cached
+   */
+  public boolean precompute(DBIDs ids) {
+    if(!entry.fits(ids.size())) {
+      return false;
+    }
+    getKNNForBulkDBIDs(DBIDUtil.ensureArray(ids), entry.k);
+    return entry.isComplete();
+  }
+
+  @Override
+  public KNNList getKNNForObject(O obj, int k) {
+    return inner.getKNNForObject(obj, k);
+  }
+}
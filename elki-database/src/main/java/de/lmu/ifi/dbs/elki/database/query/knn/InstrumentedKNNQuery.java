@@ -0,0 +1,107 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2017
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.lmu.ifi.dbs.elki.database.query.knn;
+
+import java.util.List;
+
+import de.lmu.ifi.dbs.elki.database.ids.ArrayDBIDs;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDRef;
+import de.lmu.ifi.dbs.elki.database.ids.KNNList;
+import de.lmu.ifi.dbs.elki.database.query.QueryStatistics;
+
+/**
+ * kNN query wrapper that records the costs of each query in a
+ * {@link QueryStatistics} object.
+ *
+ * @author Erich Schubert
+ * @since 0.7.2
+ *
+ * @param <O> Object type
+ */
+public class InstrumentedKNNQuery<O> implements KNNQuery<O> {
+  /**
+   * Inner query.
+   */
+  private final KNNQuery<O> inner;
+
+  /**
+   * Statistics collector.
+   */
+  private final QueryStatistics stats;
+
+  /**
+   * Constructor.
+   *
+   * @param inner Inner query
+   * @param stats Statistics collector
+   */
+  public InstrumentedKNNQuery(KNNQuery<O> inner, QueryStatistics stats) {
+    super();
+    this.inner = inner;
+    this.stats = stats;
+  }
+
+  @Override
+  public KNNList getKNNForDBID(DBIDRef id, int k) {
+    QueryStatistics.Snapshot before = stats.begin();
+    KNNList res = inner.getKNNForDBID(id, k);
+    stats.record(before, 1, res.size(), id);
+    return res;
+  }
+
+  @Override
+  public List<? extends KNNList> getKNNForBulkDBIDs(ArrayDBIDs ids, int k) {
+    QueryStatistics.Snapshot before = stats.begin();
+    List<? extends KNNList> res = inner.getKNNForBulkDBIDs(ids, k);
+    long total = 0;
+    for(KNNList l : res) {
+      total += l.size();
+    }
+    stats.record(before, ids.size(), total, "bulk of " + ids.size());
+    return res;
+  }
+
+  @Override
+  public KNNList getKNNForObject(O obj, int k) {
+    QueryStatistics.Snapshot before = stats.begin();
+    KNNList res = inner.getKNNForObject(obj, k);
+    stats.record(before, 1, res.size(), obj);
+    return res;
+  }
+
+  /**
+   * Get the wrapped query.
+   *
+   * @return Inner query
+   */
+  public KNNQuery<O> getInner() {
+    return inner;
+  }
+
+  /**
+   * Get the statistics collector.
+   *
+   * @return Statistics
+   */
+  public QueryStatistics getStatistics() {
+    return stats;
+  }
+}
@@ -0,0 +1,491 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2017
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.lmu.ifi.dbs.elki.database.query.knn;
+
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import de.lmu.ifi.dbs.elki.database.datastore.DataStoreFactory;
+import de.lmu.ifi.dbs.elki.database.datastore.DataStoreUtil;
+import de.lmu.ifi.dbs.elki.database.datastore.WritableDataStore;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDRef;
+import de.lmu.ifi.dbs.elki.database.ids.KNNList;
+import de.lmu.ifi.dbs.elki.database.query.DatabaseQuery;
+import de.lmu.ifi.dbs.elki.database.query.distance.DistanceQuery;
+import de.lmu.ifi.dbs.elki.database.relation.Relation;
+import de.lmu.ifi.dbs.elki.distance.distancefunction.DistanceFunction;
+import de.lmu.ifi.dbs.elki.logging.Logging;
+
+/**
+ * Cache for kNN query results, shared by all kNN queries on the same relation
+ * with the same distance function.
+ *
+ * Cached neighbor lists are keyed by relation, distance function and k;
+ * queries for a smaller k are answered from the cached lists using
+ * {@link de.lmu.ifi.dbs.elki.database.ids.DBIDUtil#subList}. A query for a
+ * larger k replaces the cached lists. Relations are only referenced weakly.
+ *
+ * The cache has a memory budget (an estimate, in bytes), which covers both the
+ * storage allocated for each relation and the cached lists. When it is
+ * exceeded, the least recently used cache entries are evicted; if a single
+ * entry exceeds the budget, it stops caching further lists.
+ *
+ * Only relations that invalidate the cache when modified use it, currently
+ * {@link de.lmu.ifi.dbs.elki.database.relation.MaterializedRelation}.
+ *
+ * Only queries that announce repeated use with the
+ * {@link DatabaseQuery#HINT_HEAVY_USE} or {@link DatabaseQuery#HINT_BULK}
+ * hints and give a maximum k are cached; the
+ * {@link DatabaseQuery#HINT_NO_CACHE} and {@link DatabaseQuery#HINT_SINGLE}
+ * hints disable caching.
+ *
+ * @author Erich Schubert
+ * @since 0.7.2
+ *
+ * @apiviz.has CachedKNNQuery
+ */
+public class KNNQueryCache {
+  /**
+   * Class logger.
+   */
+  private static final Logging LOG = Logging.getLogger(KNNQueryCache.class);
+
+  /**
+   * Static instance, disabled until a budget is set, e.g. with the
+   * {@code -db.knncache} parameter.
+   */
+  public static final KNNQueryCache STATIC = new KNNQueryCache(0);
+
+  /**
+   * Estimated memory overhead of a kNN list and its storage.
+   */
+  private static final long LIST_OVERHEAD = 64;
+
+  /**
+   * Estimated memory of each neighbor (DBID and distance).
+   */
+  private static final long NEIGHBOR_SIZE = 12;
+
+  /**
+   * Estimated memory of the storage slot of each object.
+   */
+  private static final long SLOT_SIZE = 8;
+
+  /**
+   * Memory budget in bytes.
+   */
+  private long budget;
+
+  /**
+   * Memory currently used.
+   */
+  private long used = 0;
+
+  /**
+   * Cache entries, in access order.
+   */
+  private final LinkedHashMap<Key, Entry> entries = new LinkedHashMap<>(16, .75f, true);
+
+  /**
+   * Queue of relations that have been garbage collected.
+   */
+  private final ReferenceQueue<Relation<?>> queue = new ReferenceQueue<>();
+
+  /**
+   * Constructor.
+   *
+   * @param budget Memory budget in bytes
+   */
+  public KNNQueryCache(long budget) {
+    super();
+    this.budget = budget;
+  }
+
+  /**
+   * Wrap a kNN query with the cache, if the hints allow caching.
+   *
+   * @param relation Relation
+   * @param distanceQuery Distance query
+   * @param inner kNN query to wrap
+   * @param hints Query hints
+   * @param <O> Object type
+   * @return Cached query, or the original query
+   */
+  public <O> KNNQuery<O> wrap(Relation<?> relation, DistanceQuery<O> distanceQuery, KNNQuery<O> inner, Object... hints) {
+    int k = -1;
+    boolean heavy = false;
+    for(Object hint : hints) {
+      if(hint == DatabaseQuery.HINT_NO_CACHE || hint == DatabaseQuery.HINT_SINGLE) {
+        return inner;
+      }
+      if(hint == DatabaseQuery.HINT_HEAVY_USE || hint == DatabaseQuery.HINT_BULK) {
+        heavy = true;
+      }
+      else if(hint instanceof Integer) {
+        k = Math.max(k, (Integer) hint);
+      }
+    }
+    if(!heavy || k <= 0 || getMemoryBudget() <= 0) {
+      return inner;
+    }
+    Entry entry = getEntry(relation, distanceQuery.getDistanceFunction(), k);
+    return entry != null ? new CachedKNNQuery<>(inner, entry) : inner;
+  }
+
+  /**
+   * Get or create the cache entry.
+   *
+   * @param relation Relation
+   * @param df Distance function
+   * @param k Maximum k needed
+   * @return Cache entry, or {@code null} if the storage exceeds the budget
+   */
+  protected synchronized Entry getEntry(Relation<?> relation, DistanceFunction<?> df, int k) {
+    expunge();
+    Key lookup = new Key(relation, df, null);
+    Entry entry = entries.get(lookup);
+    if(entry != null && entry.k >= k) {
+      return entry;
+    }
+    if(entry != null) {
+      remove(entries.remove(lookup));
+    }
+    final long cost = SLOT_SIZE * relation.size();
+    if(used + cost > budget) {
+      evict(null, used + cost - budget);
+      if(used + cost > budget) {
+        return null;
+      }
+    }
+    WritableDataStore<KNNList> store = DataStoreUtil.makeStorage(relation.getDBIDs(), DataStoreFactory.HINT_TEMP | DataStoreFactory.HINT_HOT, KNNList.class);
+    entry = new Entry(store, k, cost);
+    used += cost;
+    entries.put(new Key(relation, df, queue), entry);
+    return entry;
+  }
+
+  /**
+   * Store a list in an entry, accounting for its memory and evicting other
+   * entries if necessary. A list replaced by the new one is no longer
+   * charged.
+   *
+   * @param entry Entry
+   * @param id Object
+   * @param list New list
+   * @return {@code true} if the list was stored
+   */
+  protected synchronized boolean store(Entry entry, DBIDRef id, KNNList list) {
+    if(!entry.valid) {
+      return false;
+    }
+    final KNNList old;
+    synchronized(entry) {
+      old = entry.store.get(id);
+    }
+    final long size = listSize(list.size()) - (old != null ? listSize(old.size()) : 0);
+    if(size > 0 && used + size > budget) {
+      evict(entry, used + size - budget);
+      if(used + size > budget) {
+        if(LOG.isDebugging()) {
+          LOG.debug("kNN cache budget exhausted, no longer caching k=" + entry.k);
+        }
+        entry.full = true;
+        return false;
+      }
+    }
+    used += size;
+    entry.used += size;
+    synchronized(entry) {
+      entry.store.put(id, list);
+    }
+    return true;
+  }
+
+  /**
+   * Estimated memory of a cached list.
+   *
+   * @param size List size
+   * @return Memory in bytes
+   */
+  private static long listSize(int size) {
+    return LIST_OVERHEAD + NEIGHBOR_SIZE * size;
+  }
+
+  /**
+   * Test whether the lists of a number of objects fit into the budget.
+   *
+   * @param size Number of objects
+   * @param k Neighborhood size
+   * @param base Memory already used by the storage
+   * @return {@code true} if the lists are expected to fit
+   */
+  protected synchronized boolean fits(int size, int k, long base) {
+    return base + size * listSize(k) <= budget;
+  }
+
+  /**
+   * Evict least recently used entries.
+   *
+   * @param keep Entry to keep
+   * @param need Memory to free
+   */
+  private void evict(Entry keep, long need) {
+    for(Iterator<Map.Entry<Key, Entry>> it = entries.entrySet().iterator(); it.hasNext() && need > 0;) {
+      Entry entry = it.next().getValue();
+      if(entry != keep) {
+        need -= entry.used;
+        it.remove();
+        remove(entry);
+      }
+    }
+  }
+
+  /**
+   * Invalidate all cached results of a relation, e.g. because it was
+   * modified.
+   *
+   * @param relation Relation
+   */
+  public synchronized void invalidate(Relation<?> relation) {
+    if(entries.isEmpty()) {
+      return;
+    }
+    for(Iterator<Map.Entry<Key, Entry>> it = entries.entrySet().iterator(); it.hasNext();) {
+      Map.Entry<Key, Entry> e = it.next();
+      if(e.getKey().get() == relation) {
+        it.remove();
+        remove(e.getValue());
+      }
+    }
+  }
+
+  /**
+   * Remove all cached results.
+   */
+  public synchronized void clear() {
+    for(Entry entry : entries.values()) {
+      remove(entry);
+    }
+    entries.clear();
+  }
+
+  /**
+   * Set the memory budget. A budget of 0 disables caching.
+   *
+   * @param budget Memory budget in bytes
+   */
+  public synchronized void setMemoryBudget(long budget) {
+    this.budget = budget;
+    if(used > budget) {
+      evict(null, used - budget);
+    }
+  }
+
+  /**
+   * Get the memory budget.
+   *
+   * @return Memory budget in bytes
+   */
+  public synchronized long getMemoryBudget() {
+    return budget;
+  }
+
+  /**
+   * Get the estimated memory currently used.
+   *
+   * @return Memory used in bytes
+   */
+  public synchronized long getMemoryUsage() {
+    return used;
+  }
+
+  /**
+   * Release a removed entry.
+   *
+   * @param entry Entry
+   */
+  private void remove(Entry entry) {
+    entry.valid = false;
+    used -= entry.used;
+    entry.used = 0;
+  }
+
+  /**
+   * Remove the entries of garbage collected relations.
+   */
+  private void expunge() {
+    for(Reference<? extends Relation<?>> ref; (ref = queue.poll()) != null;) {
+      Entry entry = entries.remove(ref);
+      if(entry != null) {
+        remove(entry);
+      }
+    }
+  }
+
+  /**
+   * Cache key, referencing the relation weakly.
+   *
+   * @author Erich Schubert
+   */
+  private static class Key extends WeakReference<Relation<?>> {
+    /**
+     * Distance function.
+     */
+    private final DistanceFunction<?> df;
+
+    /**
+     * Hash code.
+     */
+    private final int hash;
+
+    /**
+     * Constructor.
+     *
+     * @param relation Relation
+     * @param df Distance function
+     * @param queue Reference queue, may be {@code null}
+     */
+    Key(Relation<?> relation, DistanceFunction<?> df, ReferenceQueue<Relation<?>> queue) {
+      super(relation, queue);
+      this.df = df;
+      this.hash = System.identityHashCode(relation) * 31 + df.hashCode();
+    }
+
+    @Override
+    public int hashCode() {
+      return hash;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+      if(this == obj) {
+        return true;
+      }
+      if(!(obj instanceof Key)) {
+        return false;
+      }
+      Key other = (Key) obj;
+      Relation<?> relation = get();
+      return relation != null && relation == other.get() && df.equals(other.df);
+    }
+  }
+
+  /**
+   * Cached neighbor lists for one relation and distance function.
+   *
+   * @author Erich Schubert
+   */
+  protected class Entry {
+    /**
+     * Stored neighbor lists.
+     */
+    private final WritableDataStore<KNNList> store;
+
+    /**
+     * Neighborhood size.
+     */
+    protected final int k;
+
+    /**
+     * Estimated memory of the storage itself.
+     */
+    private final long base;
+
+    /**
+     * Estimated memory used, including the storage.
+     */
+    private long used;
+
+    /**
+     * Flag when the entry exceeded the budget.
+     */
+    private volatile boolean full = false;
+
+    /**
+     * Flag, set to false when the entry was evicted or invalidated.
+     */
+    private volatile boolean valid = true;
+
+    /**
+     * Constructor.
+     *
+     * @param store Storage
+     * @param k Neighborhood size
+     * @param base Estimated memory of the storage
+     */
+    Entry(WritableDataStore<KNNList> store, int k, long base) {
+      this.store = store;
+      this.k = k;
+      this.base = base;
+      this.used = base;
+    }
+
+    /**
+     * Test whether the entry is still valid, and not limited by the budget.
+     *
+     * @return {@code true} if all lists put into the entry were stored
+     */
+    protected boolean isComplete() {
+      return valid && !full;
+    }
+
+    /**
+     * Test whether the lists of a number of objects fit into the budget.
+     *
+     * @param size Number of objects
+     * @return {@code true} if the lists are expected to fit
+     */
+    protected boolean fits(int size) {
+      return KNNQueryCache.this.fits(size, k, base);
+    }
+
+    /**
+     * Get a cached list.
+     *
+     * @param id Object
+     * @return List, or {@code null}
+     */
+    protected KNNList get(DBIDRef id) {
+      if(!valid) {
+        return null;
+      }
+      synchronized(this) {
+        return store.get(id);
+      }
+    }
+
+    /**
+     * Store a list in the cache, if within the memory budget.
+     *
+     * @param id Object
+     * @param list Neighbor list
+     */
+    protected void put(DBIDRef id, KNNList list) {
+      if(!full) {
+        KNNQueryCache.this.store(this, id, list);
+      }
+    }
+  }
+}
@@ -31,6 +31,7 @@ import de.lmu.ifi.dbs.elki.database.ids.KNNHeap;
 import de.lmu.ifi.dbs.elki.database.ids.KNNList;
 import de.lmu.ifi.dbs.elki.database.query.LinearScanQuery;
 import de.lmu.ifi.dbs.elki.database.query.distance.DistanceQuery;
+import de.lmu.ifi.dbs.elki.logging.statistics.QueryCounters;
 
 /**
  * Instance of this query for a particular database.
@@ -62,6 +63,7 @@ public class LinearScanDistanceKNNQuery<O> extends AbstractDistanceKNNQuery<O> i
         max = heap.insert(dist, iter);
       }
     }
+    QueryCounters.countDistances(getRelation().size());
     return heap.toKNNList();
   }
 
@@ -76,6 +78,7 @@ public class LinearScanDistanceKNNQuery<O> extends AbstractDistanceKNNQuery<O> i
         max = heap.insert(dist, iter);
       }
     }
+    QueryCounters.countDistances(getRelation().size());
     return heap.toKNNList();
   }
 
@@ -111,5 +114,6 @@ public class LinearScanDistanceKNNQuery<O> extends AbstractDistanceKNNQuery<O> i
         heap.insert(dq.distance(iter2, iter), iter);
       }
     }
+    QueryCounters.countDistances(ids.size() * (long) getRelation().size());
   }
 }
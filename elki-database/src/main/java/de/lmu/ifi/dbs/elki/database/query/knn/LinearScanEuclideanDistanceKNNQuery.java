@@ -24,7 +24,10 @@ import java.util.ArrayList;
 import java.util.List;
 
 import de.lmu.ifi.dbs.elki.data.NumberVector;
+import de.lmu.ifi.dbs.elki.data.SparseNumberVector;
+import de.lmu.ifi.dbs.elki.data.VectorStore;
 import de.lmu.ifi.dbs.elki.database.ids.ArrayDBIDs;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDArrayIter;
 import de.lmu.ifi.dbs.elki.database.ids.DBIDIter;
 import de.lmu.ifi.dbs.elki.database.ids.DBIDRef;
 import de.lmu.ifi.dbs.elki.database.ids.DBIDUtil;
@@ -33,8 +36,12 @@ import de.lmu.ifi.dbs.elki.database.ids.KNNList;
 import de.lmu.ifi.dbs.elki.database.query.LinearScanQuery;
 import de.lmu.ifi.dbs.elki.database.query.distance.PrimitiveDistanceQuery;
 import de.lmu.ifi.dbs.elki.database.relation.Relation;
+import de.lmu.ifi.dbs.elki.database.relation.RelationUtil;
+import de.lmu.ifi.dbs.elki.distance.distancefunction.ArrayDistanceKernels;
 import de.lmu.ifi.dbs.elki.distance.distancefunction.minkowski.EuclideanDistanceFunction;
 import de.lmu.ifi.dbs.elki.distance.distancefunction.minkowski.SquaredEuclideanDistanceFunction;
+import de.lmu.ifi.dbs.elki.logging.statistics.QueryCounters;
+import net.jafama.FastMath;
 
 /**
  * Instance of this query for a particular database.
@@ -50,6 +57,16 @@ import de.lmu.ifi.dbs.elki.distance.distancefunction.minkowski.SquaredEuclideanD
  * @apiviz.uses SquaredEuclideanDistanceFunction
  */
 public class LinearScanEuclideanDistanceKNNQuery<O extends NumberVector> extends LinearScanPrimitiveDistanceKNNQuery<O> implements LinearScanQuery {
+  /**
+   * Number of query vectors processed as one block in batch queries.
+   */
+  private static final int QUERY_BLOCK = 256;
+
+  /**
+   * Number of values per candidate tile (128 KB of doubles, for the L2 cache).
+   */
+  private static final int TILE_VALUES = 1 << 14;
+
   /**
    * Constructor.
    *
@@ -85,12 +102,13 @@ public class LinearScanEuclideanDistanceKNNQuery<O extends NumberVector> extends
     final SquaredEuclideanDistanceFunction squared = SquaredEuclideanDistanceFunction.STATIC;
     double max = Double.POSITIVE_INFINITY;
     while(iter.valid()) {
-      final double dist = squared.distance(obj, relation.get(iter));
+      final double dist = squared.distance(obj, relation.get(iter), max);
       if(dist <= max) {
         max = heap.insert(dist, iter);
       }
       iter.advance();
     }
+    QueryCounters.countDistances(relation.size());
     return heap;
   }
 
@@ -105,6 +123,7 @@ public class LinearScanEuclideanDistanceKNNQuery<O extends NumberVector> extends
       objs.add(relation.get(iter));
     }
     linearScanBatchKNN(objs, heaps);
+    QueryCounters.countDistances(size * (long) relation.size());
 
     List<KNNList> result = new ArrayList<>(heaps.size());
     for(KNNHeap heap : heaps) {
@@ -116,11 +135,135 @@ public class LinearScanEuclideanDistanceKNNQuery<O extends NumberVector> extends
   /**
    * Perform a linear scan batch kNN for primitive distance functions.
    *
+   * For dense vectors of known dimensionality, this performs a cache-blocked
+   * kNN join: blocks of query vectors and tiles of candidate vectors are
+   * copied into contiguous arrays, and each tile is pruned against the current
+   * kNN distances using the vector norms. The remaining candidates are
+   * filtered using a dot product kernel, and only the candidates that may
+   * enter the heap are refined with the exact distance.
+   *
    * @param objs Objects list
    * @param heaps Heaps array
    */
   @Override
   protected void linearScanBatchKNN(List<O> objs, List<KNNHeap> heaps) {
+    final Relation<? extends O> relation = getRelation();
+    final int dim = RelationUtil.dimensionality(relation);
+    if(dim <= 0 || objs.isEmpty() || !isDense(objs, dim)) {
+      linearScanBatchKNNSimple(objs, heaps);
+      return;
+    }
+    final ArrayDBIDs cids = DBIDUtil.ensureArray(relation.getDBIDs());
+    final double[] norms = candidateNorms(relation, cids, dim);
+    if(norms == null) {
+      linearScanBatchKNNSimple(objs, heaps);
+      return;
+    }
+    final int size = objs.size(), qblock = Math.min(QUERY_BLOCK, size);
+    final int ctile = Math.max(1, TILE_VALUES / dim);
+    final double[] qbuf = new double[qblock * dim], qnorm = new double[qblock];
+    final double[] cbuf = new double[ctile * dim], clen = new double[ctile];
+    final DBIDArrayIter citer = cids.iter();
+    final int numc = cids.size();
+    for(int qstart = 0; qstart < size; qstart += qblock) {
+      final int qn = Math.min(qblock, size - qstart);
+      for(int i = 0; i < qn; i++) {
+        qnorm[i] = norm(load(objs.get(qstart + i), qbuf, i * dim, dim), i * dim, dim);
+      }
+      for(int cstart = 0; cstart < numc; cstart += ctile) {
+        final int cn = Math.min(ctile, numc - cstart);
+        double minlen = Double.POSITIVE_INFINITY, maxlen = 0., maxnorm = 0.;
+        citer.seek(cstart);
+        for(int j = 0; j < cn; j++, citer.advance()) {
+          load(relation.get(citer), cbuf, j * dim, dim);
+          final double n = norms[cstart + j];
+          final double len = clen[j] = FastMath.sqrt(n);
+          minlen = len < minlen ? len : minlen;
+          maxlen = len > maxlen ? len : maxlen;
+          maxnorm = n > maxnorm ? n : maxnorm;
+        }
+        for(int i = 0; i < qn; i++) {
+          final KNNHeap heap = heaps.get(qstart + i);
+          final double qn2 = qnorm[i], qlen = FastMath.sqrt(qn2);
+          double kdist = heap.getKNNDistance();
+          // Prune the entire tile, using the triangle inequality on the norms.
+          final double lb = qlen < minlen ? minlen - qlen : qlen > maxlen ? qlen - maxlen : 0.;
+          if(lb * lb > kdist + slack(qn2, maxnorm, dim)) {
+            continue;
+          }
+          final int qoff = i * dim;
+          for(int j = 0, coff = 0; j < cn; j++, coff += dim) {
+            final double cn2 = norms[cstart + j], tol = slack(qn2, cn2, dim);
+            final double dlen = qlen - clen[j];
+            if(dlen * dlen > kdist + tol) {
+              continue;
+            }
+            // Squared Euclidean distance as |q|^2 + |c|^2 - 2 q*c
+            if(qn2 + cn2 - 2 * dot(qbuf, qoff, cbuf, coff, dim) > kdist + tol) {
+              continue;
+            }
+            // Refine with the exact distance, for numerical precision:
+            final double dist = ArrayDistanceKernels.squaredEuclidean(qbuf, qoff, cbuf, coff, dim);
+            if(dist <= kdist) {
+              kdist = heap.insert(dist, citer.seek(cstart + j));
+            }
+          }
+        }
+      }
+    }
+  }
+
+  /**
+   * Check that all vectors are dense and have the expected dimensionality.
+   *
+   * @param objs Vectors
+   * @param dim Dimensionality
+   * @return {@code true} when the tiled kernel can be used
+   */
+  private static boolean isDense(List<? extends NumberVector> objs, int dim) {
+    for(NumberVector v : objs) {
+      if(v instanceof SparseNumberVector || v.getDimensionality() != dim) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Get the squared norms of all candidates, checking that all vectors of the
+   * relation are dense and have the expected dimensionality.
+   *
+   * The norms are computed for every batch, as the relation may have been
+   * modified since the previous batch. This is linear in the relation size,
+   * whereas the batch itself is quadratic.
+   *
+   * @param relation Relation
+   * @param cids Candidate ids, in relation order
+   * @param dim Dimensionality
+   * @return Squared norms, or {@code null} if the relation is not dense
+   */
+  private static double[] candidateNorms(Relation<? extends NumberVector> relation, ArrayDBIDs cids, int dim) {
+    final double[] norms = new double[cids.size()];
+    final double[] buf = new double[dim];
+    int i = 0;
+    for(DBIDIter iter = cids.iter(); iter.valid(); iter.advance(), i++) {
+      final NumberVector v = relation.get(iter);
+      if(v instanceof SparseNumberVector || v.getDimensionality() != dim) {
+        return null;
+      }
+      norms[i] = norm(load(v, buf, 0, dim), 0, dim);
+    }
+    return norms;
+  }
+
+  /**
+   * Simple linear scan batch kNN, used for sparse vectors and relations of
+   * mixed dimensionality.
+   *
+   * @param objs Objects list
+   * @param heaps Heaps array
+   */
+  private void linearScanBatchKNNSimple(List<O> objs, List<KNNHeap> heaps) {
     final SquaredEuclideanDistanceFunction squared = SquaredEuclideanDistanceFunction.STATIC;
     final Relation<? extends O> relation = getRelation();
     final int size = objs.size();
@@ -129,11 +272,86 @@ public class LinearScanEuclideanDistanceKNNQuery<O extends NumberVector> extends
       O candidate = relation.get(iter);
       for(int index = 0; index < size; index++) {
         final KNNHeap heap = heaps.get(index);
-        final double dist = squared.distance(objs.get(index), candidate);
-        if(dist <= heap.getKNNDistance()) {
+        final double kdist = heap.getKNNDistance();
+        final double dist = squared.distance(objs.get(index), candidate, kdist);
+        if(dist <= kdist) {
           heap.insert(dist, iter);
         }
       }
     }
   }
-}
\ No newline at end of file
+
+  /**
+   * Copy a vector into a buffer.
+   *
+   * @param v Vector
+   * @param buf Output buffer
+   * @param off Offset in the buffer
+   * @param dim Dimensionality
+   * @return Buffer
+   */
+  private static double[] load(NumberVector v, double[] buf, int off, int dim) {
+    assert (v.getDimensionality() == dim) : "Dimensionality was checked by isDense.";
+    if(v instanceof VectorStore.View) {
+      ((VectorStore.View) v).getStore().copy(((VectorStore.View) v).getRow(), buf, off);
+    }
+    else {
+      for(int d = 0; d < dim; d++) {
+        buf[off + d] = v.doubleValue(d);
+      }
+    }
+    return buf;
+  }
+
+  /**
+   * Squared norm of a vector stored in a buffer.
+   *
+   * @param buf Buffer
+   * @param off Offset in the buffer
+   * @param dim Dimensionality
+   * @return Squared norm
+   */
+  private static double norm(double[] buf, int off, int dim) {
+    double agg = 0.;
+    for(int d = 0; d < dim; d++) {
+      final double x = buf[off + d];
+      agg += x * x;
+    }
+    return agg;
+  }
+
+  /**
+   * Tolerance for the rounding errors of the norm-based computations.
+   *
+   * @param n1 Squared norm of the first vector
+   * @param n2 Squared norm of the second vector
+   * @param dim Dimensionality
+   * @return Absolute tolerance
+   */
+  private static double slack(double n1, double n2, int dim) {
+    return (n1 + n2) * (dim + 2) * 0x1p-50;
+  }
+
+  /**
+   * Dot product of two vectors stored in buffers.
+   *
+   * @param a First buffer
+   * @param aoff Offset in first buffer
+   * @param b Second buffer
+   * @param boff Offset in second buffer
+   * @param dim Dimensionality
+   * @return Dot product
+   */
+  private static double dot(double[] a, int aoff, double[] b, int boff, int dim) {
+    double s0 = 0., s1 = 0.;
+    int d = 0;
+    for(final int end = dim & ~1; d < end; d += 2) {
+      s0 += a[aoff + d] * b[boff + d];
+      s1 += a[aoff + d + 1] * b[boff + d + 1];
+    }
+    if(d < dim) {
+      s0 += a[aoff + d] * b[boff + d];
+    }
+    return s0 + s1;
+  }
+}
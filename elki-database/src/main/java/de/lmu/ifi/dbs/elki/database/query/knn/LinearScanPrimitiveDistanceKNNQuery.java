@@ -33,6 +33,7 @@ import de.lmu.ifi.dbs.elki.database.query.LinearScanQuery;
 import de.lmu.ifi.dbs.elki.database.query.distance.PrimitiveDistanceQuery;
 import de.lmu.ifi.dbs.elki.database.relation.Relation;
 import de.lmu.ifi.dbs.elki.distance.distancefunction.PrimitiveDistanceFunction;
+import de.lmu.ifi.dbs.elki.logging.statistics.QueryCounters;
 
 /**
  * Instance of this query for a particular database.
@@ -87,12 +88,13 @@ public class LinearScanPrimitiveDistanceKNNQuery<O> extends AbstractDistanceKNNQ
     final PrimitiveDistanceFunction<? super O> rawdist = this.rawdist;
     double max = Double.POSITIVE_INFINITY;
     while(iter.valid()) {
-      final double dist = rawdist.distance(obj, relation.get(iter));
+      final double dist = rawdist.distance(obj, relation.get(iter), max);
       if(dist <= max) {
         max = heap.insert(dist, iter);
       }
       iter.advance();
     }
+    QueryCounters.countDistances(relation.size());
     return heap;
   }
 
@@ -107,6 +109,7 @@ public class LinearScanPrimitiveDistanceKNNQuery<O> extends AbstractDistanceKNNQ
       objs.add(relation.get(iter));
     }
     linearScanBatchKNN(objs, heaps);
+    QueryCounters.countDistances(size * (long) relation.size());
 
     List<KNNList> result = new ArrayList<>(heaps.size());
     for(KNNHeap heap : heaps) {
@@ -130,8 +133,9 @@ public class LinearScanPrimitiveDistanceKNNQuery<O> extends AbstractDistanceKNNQ
       O candidate = relation.get(iter);
       for(int index = 0; index < size; index++) {
         final KNNHeap heap = heaps.get(index);
-        final double dist = rawdist.distance(objs.get(index), candidate);
-        if(dist <= heap.getKNNDistance()) {
+        final double kdist = heap.getKNNDistance();
+        final double dist = rawdist.distance(objs.get(index), candidate, kdist);
+        if(dist <= kdist) {
           heap.insert(dist, iter);
         }
       }
@@ -0,0 +1,109 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2017
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.lmu.ifi.dbs.elki.database.query.range;
+
+import de.lmu.ifi.dbs.elki.database.ids.DBIDRef;
+import de.lmu.ifi.dbs.elki.database.ids.DoubleDBIDList;
+import de.lmu.ifi.dbs.elki.database.ids.ModifiableDoubleDBIDList;
+import de.lmu.ifi.dbs.elki.database.query.QueryStatistics;
+
+/**
+ * Range query wrapper that records the costs of each query in a
+ * {@link QueryStatistics} object.
+ *
+ * @author Erich Schubert
+ * @since 0.7.2
+ *
+ * @param <O> Object type
+ */
+public class InstrumentedRangeQuery<O> implements RangeQuery<O> {
+  /**
+   * Inner query.
+   */
+  private final RangeQuery<O> inner;
+
+  /**
+   * Statistics collector.
+   */
+  private final QueryStatistics stats;
+
+  /**
+   * Constructor.
+   *
+   * @param inner Inner query
+   * @param stats Statistics collector
+   */
+  public InstrumentedRangeQuery(RangeQuery<O> inner, QueryStatistics stats) {
+    super();
+    this.inner = inner;
+    this.stats = stats;
+  }
+
+  @Override
+  public DoubleDBIDList getRangeForDBID(DBIDRef id, double range) {
+    QueryStatistics.Snapshot before = stats.begin();
+    DoubleDBIDList res = inner.getRangeForDBID(id, range);
+    stats.record(before, 1, res.size(), id);
+    return res;
+  }
+
+  @Override
+  public DoubleDBIDList getRangeForObject(O obj, double range) {
+    QueryStatistics.Snapshot before = stats.begin();
+    DoubleDBIDList res = inner.getRangeForObject(obj, range);
+    stats.record(before, 1, res.size(), obj);
+    return res;
+  }
+
+  @Override
+  public void getRangeForDBID(DBIDRef id, double range, ModifiableDoubleDBIDList result) {
+    final int size = result.size();
+    QueryStatistics.Snapshot before = stats.begin();
+    inner.getRangeForDBID(id, range, result);
+    stats.record(before, 1, result.size() - size, id);
+  }
+
+  @Override
+  public void getRangeForObject(O obj, double range, ModifiableDoubleDBIDList result) {
+    final int size = result.size();
+    QueryStatistics.Snapshot before = stats.begin();
+    inner.getRangeForObject(obj, range, result);
+    stats.record(before, 1, result.size() - size, obj);
+  }
+
+  /**
+   * Get the wrapped query.
+   *
+   * @return Inner query
+   */
+  public RangeQuery<O> getInner() {
+    return inner;
+  }
+
+  /**
+   * Get the statistics collector.
+   *
+   * @return Statistics
+   */
+  public QueryStatistics getStatistics() {
+    return stats;
+  }
+}
@@ -28,6 +28,7 @@ import de.lmu.ifi.dbs.elki.database.ids.ModifiableDoubleDBIDList;
 import de.lmu.ifi.dbs.elki.database.query.LinearScanQuery;
 import de.lmu.ifi.dbs.elki.database.query.distance.DistanceQuery;
 import de.lmu.ifi.dbs.elki.database.relation.Relation;
+import de.lmu.ifi.dbs.elki.logging.statistics.QueryCounters;
 
 /**
  * Default linear scan range query class.
@@ -60,6 +61,7 @@ public class LinearScanDistanceRangeQuery<O> extends AbstractDistanceRangeQuery<
         result.add(currentDistance, iter);
       }
     }
+    QueryCounters.countDistances(getRelation().size());
     result.sort();
     return result;
   }
@@ -74,6 +76,7 @@ public class LinearScanDistanceRangeQuery<O> extends AbstractDistanceRangeQuery<
         result.add(currentDistance, iter);
       }
     }
+    QueryCounters.countDistances(getRelation().size());
     result.sort();
     return result;
   }
@@ -87,6 +90,7 @@ public class LinearScanDistanceRangeQuery<O> extends AbstractDistanceRangeQuery<
         neighbors.add(currentDistance, iter);
       }
     }
+    QueryCounters.countDistances(getRelation().size());
   }
 
   @Override
@@ -99,5 +103,6 @@ public class LinearScanDistanceRangeQuery<O> extends AbstractDistanceRangeQuery<
         neighbors.add(currentDistance, iter);
       }
     }
+    QueryCounters.countDistances(getRelation().size());
   }
 }
\ No newline at end of file
@@ -29,6 +29,7 @@ import de.lmu.ifi.dbs.elki.database.ids.ModifiableDoubleDBIDList;
 import de.lmu.ifi.dbs.elki.database.query.distance.PrimitiveDistanceQuery;
 import de.lmu.ifi.dbs.elki.database.relation.Relation;
 import de.lmu.ifi.dbs.elki.distance.distancefunction.minkowski.SquaredEuclideanDistanceFunction;
+import de.lmu.ifi.dbs.elki.logging.statistics.QueryCounters;
 import net.jafama.FastMath;
 
 /**
@@ -100,7 +101,7 @@ public class LinearScanEuclideanDistanceRangeQuery<O extends NumberVector> exten
     // upper = MathUtil.floatToDoubleUpper((float)range);
     final double sqrange = upper * upper;
     while(iter.valid()) {
-      final double sqdistance = squared.distance(obj, relation.get(iter));
+      final double sqdistance = squared.distance(obj, relation.get(iter), sqrange);
       if(sqdistance <= sqrange) {
         final double dist = FastMath.sqrt(sqdistance);
         if(dist <= range) { // double check, as we increased the radius above
@@ -109,5 +110,6 @@ public class LinearScanEuclideanDistanceRangeQuery<O extends NumberVector> exten
       }
       iter.advance();
     }
+    QueryCounters.countDistances(relation.size());
   }
 }
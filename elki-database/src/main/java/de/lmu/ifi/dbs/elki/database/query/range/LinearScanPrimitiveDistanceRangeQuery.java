@@ -28,6 +28,7 @@ import de.lmu.ifi.dbs.elki.database.ids.ModifiableDoubleDBIDList;
 import de.lmu.ifi.dbs.elki.database.query.distance.PrimitiveDistanceQuery;
 import de.lmu.ifi.dbs.elki.database.relation.Relation;
 import de.lmu.ifi.dbs.elki.distance.distancefunction.PrimitiveDistanceFunction;
+import de.lmu.ifi.dbs.elki.logging.statistics.QueryCounters;
 
 /**
  * Default linear scan range query class.
@@ -102,11 +103,12 @@ public class LinearScanPrimitiveDistanceRangeQuery<O> extends AbstractDistanceRa
   private void linearScan(Relation<? extends O> relation, DBIDIter iter, O obj, double range, ModifiableDoubleDBIDList result) {
     final PrimitiveDistanceFunction<? super O> rawdist = this.rawdist;
     while(iter.valid()) {
-      final double distance = rawdist.distance(obj, relation.get(iter));
+      final double distance = rawdist.distance(obj, relation.get(iter), range);
       if(distance <= range) {
         result.add(distance, iter);
       }
       iter.advance();
     }
+    QueryCounters.countDistances(relation.size());
   }
 }
@@ -22,8 +22,12 @@ package de.lmu.ifi.dbs.elki.database.relation;
 
 import de.lmu.ifi.dbs.elki.database.QueryUtil;
 import de.lmu.ifi.dbs.elki.database.query.DatabaseQuery;
+import de.lmu.ifi.dbs.elki.database.query.QueryStatistics;
 import de.lmu.ifi.dbs.elki.database.query.distance.DistanceQuery;
+import de.lmu.ifi.dbs.elki.database.query.distance.InstrumentedDistanceQuery;
+import de.lmu.ifi.dbs.elki.database.query.knn.InstrumentedKNNQuery;
 import de.lmu.ifi.dbs.elki.database.query.knn.KNNQuery;
+import de.lmu.ifi.dbs.elki.database.query.range.InstrumentedRangeQuery;
 import de.lmu.ifi.dbs.elki.database.query.range.RangeQuery;
 import de.lmu.ifi.dbs.elki.database.query.rknn.LinearScanRKNNQuery;
 import de.lmu.ifi.dbs.elki.database.query.rknn.RKNNQuery;
@@ -39,6 +43,7 @@ import de.lmu.ifi.dbs.elki.index.RangeIndex;
 import de.lmu.ifi.dbs.elki.index.SimilarityIndex;
 import de.lmu.ifi.dbs.elki.index.SimilarityRangeIndex;
 import de.lmu.ifi.dbs.elki.logging.Logging;
+import de.lmu.ifi.dbs.elki.logging.statistics.QueryCounters;
 import de.lmu.ifi.dbs.elki.result.AbstractHierarchicalResult;
 import de.lmu.ifi.dbs.elki.utilities.datastructures.iterator.It;
 import de.lmu.ifi.dbs.elki.utilities.exceptions.AbortException;
@@ -52,6 +57,11 @@ import de.lmu.ifi.dbs.elki.utilities.exceptions.AbortException;
  * @param <O> Data type
  */
 public abstract class AbstractRelation<O> extends AbstractHierarchicalResult implements Relation<O> {
+  /**
+   * Statistics of instrumented kNN and range queries.
+   */
+  private QueryStatistics knnStatistics, rangeStatistics;
+
   /**
    * Constructor.
    */
@@ -108,13 +118,16 @@ public abstract class AbstractRelation<O> extends AbstractHierarchicalResult imp
     if(distanceQuery == null) {
       throw new AbortException("kNN query requested for 'null' distance!");
     }
+    if(distanceQuery instanceof InstrumentedDistanceQuery) {
+      distanceQuery = ((InstrumentedDistanceQuery<O>) distanceQuery).getInner();
+    }
     for(It<KNNIndex<O>> it = getHierarchy().iterChildrenReverse(this).filter(KNNIndex.class); it.valid(); it.advance()) {
       KNNQuery<O> q = it.get().getKNNQuery(distanceQuery, hints);
       if(getLogger().isDebuggingFinest()) {
         getLogger().debugFinest((q != null ? "Using" : "Not using") + " index for kNN query: " + it.get());
       }
       if(q != null) {
-        return q;
+        return instrument(q);
       }
     }
 
@@ -136,7 +149,21 @@ public abstract class AbstractRelation<O> extends AbstractHierarchicalResult imp
       }
       getLogger().debugFinest(buf.toString());
     }
-    return QueryUtil.getLinearScanKNNQuery(distanceQuery);
+    return instrument(cacheKNNQuery(distanceQuery, QueryUtil.getLinearScanKNNQuery(distanceQuery), hints));
+  }
+
+  /**
+   * Wrap a linear scan kNN query with a result cache. By default, results are
+   * not cached, as only relations that invalidate the cache when modified may
+   * use it.
+   *
+   * @param distanceQuery Distance query
+   * @param inner Linear scan kNN query
+   * @param hints Query hints
+   * @return kNN query
+   */
+  protected KNNQuery<O> cacheKNNQuery(DistanceQuery<O> distanceQuery, KNNQuery<O> inner, Object... hints) {
+    return inner;
   }
 
   @Override
@@ -144,13 +171,16 @@ public abstract class AbstractRelation<O> extends AbstractHierarchicalResult imp
     if(distanceQuery == null) {
       throw new AbortException("Range query requested for 'null' distance!");
     }
+    if(distanceQuery instanceof InstrumentedDistanceQuery) {
+      distanceQuery = ((InstrumentedDistanceQuery<O>) distanceQuery).getInner();
+    }
     for(It<RangeIndex<O>> it = getHierarchy().iterChildrenReverse(this).filter(RangeIndex.class); it.valid(); it.advance()) {
       RangeQuery<O> q = it.get().getRangeQuery(distanceQuery, hints);
       if(getLogger().isDebuggingFinest()) {
         getLogger().debugFinest((q != null ? "Using" : "Not using") + " index for range query: " + it.get());
       }
       if(q != null) {
-        return q;
+        return instrument(q);
       }
     }
 
@@ -172,7 +202,7 @@ public abstract class AbstractRelation<O> extends AbstractHierarchicalResult imp
       }
       getLogger().debugFinest(buf.toString());
     }
-    return QueryUtil.getLinearScanRangeQuery(distanceQuery);
+    return instrument(QueryUtil.getLinearScanRangeQuery(distanceQuery));
   }
 
   @Override
@@ -252,6 +282,52 @@ public abstract class AbstractRelation<O> extends AbstractHierarchicalResult imp
     return new LinearScanRKNNQuery<>(distanceQuery, knnQuery, maxk);
   }
 
+  /**
+   * Wrap a kNN query for instrumentation, if {@link QueryCounters} are
+   * enabled.
+   *
+   * @param q Query
+   * @return Query, possibly instrumented
+   */
+  private KNNQuery<O> instrument(KNNQuery<O> q) {
+    return q == null || !QueryCounters.isEnabled() ? q : //
+        new InstrumentedKNNQuery<>(q, getQueryStatistics(true));
+  }
+
+  /**
+   * Wrap a range query for instrumentation, if {@link QueryCounters} are
+   * enabled.
+   *
+   * @param q Query
+   * @return Query, possibly instrumented
+   */
+  private RangeQuery<O> instrument(RangeQuery<O> q) {
+    return q == null || !QueryCounters.isEnabled() ? q : //
+        new InstrumentedRangeQuery<>(q, getQueryStatistics(false));
+  }
+
+  /**
+   * Get the statistics of instrumented queries, which are added to the result
+   * hierarchy on first use.
+   *
+   * @param knn {@code true} for kNN queries, {@code false} for range queries
+   * @return Statistics collector
+   */
+  protected synchronized QueryStatistics getQueryStatistics(boolean knn) {
+    QueryStatistics stats = knn ? knnStatistics : rangeStatistics;
+    if(stats == null) {
+      stats = new QueryStatistics(getClass().getName() + (knn ? ".knn" : ".range"));
+      if(knn) {
+        knnStatistics = stats;
+      }
+      else {
+        rangeStatistics = stats;
+      }
+      getHierarchy().add(this, stats);
+    }
+    return stats;
+  }
+
   /**
    * Get the class logger.
    *
@@ -30,6 +30,9 @@ import de.lmu.ifi.dbs.elki.database.ids.DBIDRef;
 import de.lmu.ifi.dbs.elki.database.ids.DBIDUtil;
 import de.lmu.ifi.dbs.elki.database.ids.DBIDs;
 import de.lmu.ifi.dbs.elki.database.ids.StaticDBIDs;
+import de.lmu.ifi.dbs.elki.database.query.distance.DistanceQuery;
+import de.lmu.ifi.dbs.elki.database.query.knn.KNNQuery;
+import de.lmu.ifi.dbs.elki.database.query.knn.KNNQueryCache;
 import de.lmu.ifi.dbs.elki.index.DynamicIndex;
 import de.lmu.ifi.dbs.elki.index.Index;
 import de.lmu.ifi.dbs.elki.logging.Logging;
@@ -153,6 +156,7 @@ public class MaterializedRelation<O> extends AbstractRelation<O> implements Modi
       throw new AbortException("Data is stored in a non-writable data store. Modifications are not possible.");
     }
     ((WritableDataStore<O>) content).put(id, val);
+    KNNQueryCache.STATIC.invalidate(this);
     for(It<Index> it = this.getHierarchy().iterDescendants(this).filter(Index.class); it.valid(); it.advance()) {
       if(!(it.get() instanceof DynamicIndex)) {
         throw new AbortException("A non-dynamic index was added to this database. Modifications are not allowed, unless this index is removed.");
@@ -179,6 +183,7 @@ public class MaterializedRelation<O> extends AbstractRelation<O> implements Modi
       ((DynamicIndex) it.get()).delete(id);
     }
     ((WritableDataStore<O>) content).delete(id);
+    KNNQueryCache.STATIC.invalidate(this);
   }
 
   @Override
@@ -196,6 +201,17 @@ public class MaterializedRelation<O> extends AbstractRelation<O> implements Modi
     return ids.size();
   }
 
+  /**
+   * {@inheritDoc}
+   *
+   * Results are cached in {@link KNNQueryCache#STATIC}, which is invalidated
+   * by {@link #insert} and {@link #delete}.
+   */
+  @Override
+  protected KNNQuery<O> cacheKNNQuery(DistanceQuery<O> distanceQuery, KNNQuery<O> inner, Object... hints) {
+    return KNNQueryCache.STATIC.wrap(this, distanceQuery, inner, hints);
+  }
+
   @Override
   public SimpleTypeInformation<O> getDataTypeInformation() {
     return type;
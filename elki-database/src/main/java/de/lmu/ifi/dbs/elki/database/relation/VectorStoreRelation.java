@@ -0,0 +1,171 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2017
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.lmu.ifi.dbs.elki.database.relation;
+
+import de.lmu.ifi.dbs.elki.data.NumberVector;
+import de.lmu.ifi.dbs.elki.data.VectorStore;
+import de.lmu.ifi.dbs.elki.data.type.VectorFieldTypeInformation;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDIter;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDRange;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDRef;
+import de.lmu.ifi.dbs.elki.database.query.distance.DistanceQuery;
+import de.lmu.ifi.dbs.elki.database.query.distance.SpatialPrimitiveDistanceQuery;
+import de.lmu.ifi.dbs.elki.database.query.distance.VectorStoreDistanceQuery;
+import de.lmu.ifi.dbs.elki.distance.distancefunction.DistanceFunction;
+import de.lmu.ifi.dbs.elki.distance.distancefunction.minkowski.EuclideanDistanceFunction;
+import de.lmu.ifi.dbs.elki.distance.distancefunction.minkowski.SquaredEuclideanDistanceFunction;
+import de.lmu.ifi.dbs.elki.logging.Logging;
+
+/**
+ * Relation serving number vectors from a {@link VectorStore}, such as a single
+ * primitive array, instead of one object per vector. This reduces memory usage
+ * and improves cache locality for large data sets.
+ *
+ * The relation hands out flyweight {@link VectorStore.View}s. Euclidean
+ * distance queries are dispatched once, when the query is created, to a
+ * {@link VectorStoreDistanceQuery} reading the store directly. Other code can
+ * use {@link #getStore} and {@link #getOffset} to access the rows.
+ *
+ * This relation is static, and requires a {@link DBIDRange} as object IDs.
+ *
+ * @author Erich Schubert
+ * @since 0.7.2
+ *
+ * @apiviz.composedOf VectorStore
+ * @apiviz.uses VectorStoreDistanceQuery
+ */
+public class VectorStoreRelation extends AbstractRelation<NumberVector> {
+  /**
+   * Class logger.
+   */
+  private static final Logging LOG = Logging.getLogger(VectorStoreRelation.class);
+
+  /**
+   * Type information.
+   */
+  private final VectorFieldTypeInformation<NumberVector> type;
+
+  /**
+   * The IDs, which also map to the rows of the store.
+   */
+  private final DBIDRange ids;
+
+  /**
+   * Vector storage.
+   */
+  private final VectorStore store;
+
+  /**
+   * The relation name.
+   */
+  private String name;
+
+  /**
+   * Constructor.
+   *
+   * @param type Type information
+   * @param ids Object IDs
+   * @param name Relation name
+   * @param store Vector storage
+   */
+  public VectorStoreRelation(VectorFieldTypeInformation<NumberVector> type, DBIDRange ids, String name, VectorStore store) {
+    super();
+    assert (ids.size() == store.size()) : "Store size does not match the number of objects.";
+    this.type = type;
+    this.ids = ids;
+    this.name = name;
+    this.store = store;
+  }
+
+  @Override
+  public NumberVector get(DBIDRef id) {
+    return store.view(ids.getOffset(id));
+  }
+
+  /**
+   * Get the row of an object in the store.
+   *
+   * @param id Object ID
+   * @return Row number
+   */
+  public int getOffset(DBIDRef id) {
+    return ids.getOffset(id);
+  }
+
+  /**
+   * Get the underlying storage.
+   *
+   * @return Vector store
+   */
+  public VectorStore getStore() {
+    return store;
+  }
+
+  @Override
+  public DistanceQuery<NumberVector> getDistanceQuery(DistanceFunction<? super NumberVector> distanceFunction, Object... hints) {
+    DistanceQuery<NumberVector> q = super.getDistanceQuery(distanceFunction, hints);
+    // Only replace the default query, not queries provided by an index:
+    if(q != null && q.getClass() == SpatialPrimitiveDistanceQuery.class) {
+      if(SquaredEuclideanDistanceFunction.STATIC.equals(distanceFunction)) {
+        return new VectorStoreDistanceQuery(this, SquaredEuclideanDistanceFunction.STATIC, true);
+      }
+      if(EuclideanDistanceFunction.STATIC.equals(distanceFunction)) {
+        return new VectorStoreDistanceQuery(this, EuclideanDistanceFunction.STATIC, false);
+      }
+    }
+    return q;
+  }
+
+  @Override
+  public DBIDRange getDBIDs() {
+    return ids;
+  }
+
+  @Override
+  public DBIDIter iterDBIDs() {
+    return ids.iter();
+  }
+
+  @Override
+  public int size() {
+    return ids.size();
+  }
+
+  @Override
+  public VectorFieldTypeInformation<NumberVector> getDataTypeInformation() {
+    return type;
+  }
+
+  @Override
+  public String getLongName() {
+    return (name != null) ? name : type.toString();
+  }
+
+  @Override
+  public String getShortName() {
+    return "relation";
+  }
+
+  @Override
+  protected Logging getLogger() {
+    return LOG;
+  }
+}
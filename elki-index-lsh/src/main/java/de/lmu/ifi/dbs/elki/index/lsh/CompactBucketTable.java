@@ -0,0 +1,137 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2017
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.lmu.ifi.dbs.elki.index.lsh;
+
+import java.util.Arrays;
+
+import de.lmu.ifi.dbs.elki.database.ids.ArrayDBIDs;
+import de.lmu.ifi.dbs.elki.database.ids.ArrayModifiableDBIDs;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDArrayIter;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDUtil;
+import de.lmu.ifi.dbs.elki.database.ids.ModifiableDBIDs;
+
+/**
+ * Frozen hash table for LSH, in compressed sparse row layout: the objects are
+ * sorted by their bucket, and stored in a single array, next to a sorted array
+ * of the non-empty bucket keys and their offsets. Buckets are found with a
+ * binary search, and are contiguous in memory.
+ *
+ * This needs much less memory than a hash map of individual bucket
+ * collections, but the table cannot be modified after construction.
+ *
+ * @author Erich Schubert
+ * @since 0.7.2
+ */
+class CompactBucketTable {
+  /**
+   * Sorted keys of the non-empty buckets.
+   */
+  private final int[] keys;
+
+  /**
+   * Start of each bucket in {@link #ids}, with a trailing end offset.
+   */
+  private final int[] offsets;
+
+  /**
+   * Object IDs, sorted by bucket.
+   */
+  private final ArrayModifiableDBIDs ids;
+
+  /**
+   * Constructor.
+   *
+   * @param buckets Bucket of each object
+   * @param objects Objects, in the same order as the buckets
+   */
+  CompactBucketTable(int[] buckets, ArrayDBIDs objects) {
+    final int size = buckets.length;
+    assert (size == objects.size());
+    // Sort (bucket, position) pairs:
+    long[] pairs = new long[size];
+    for(int i = 0; i < size; i++) {
+      pairs[i] = (((long) buckets[i]) << 32) | i;
+    }
+    Arrays.sort(pairs);
+    int numkeys = 0;
+    for(int i = 0; i < size; i++) {
+      if(i == 0 || (pairs[i] >> 32) != (pairs[i - 1] >> 32)) {
+        ++numkeys;
+      }
+    }
+    keys = new int[numkeys];
+    offsets = new int[numkeys + 1];
+    ids = DBIDUtil.newArray(size);
+    DBIDArrayIter iter = objects.iter();
+    for(int i = 0, k = -1; i < size; i++) {
+      final int key = (int) (pairs[i] >> 32);
+      if(k < 0 || keys[k] != key) {
+        keys[++k] = key;
+        offsets[k] = i;
+      }
+      ids.add(iter.seek((int) pairs[i]));
+    }
+    offsets[numkeys] = size;
+  }
+
+  /**
+   * Find a bucket.
+   *
+   * @param key Bucket key
+   * @return Bucket number, or -1 if empty
+   */
+  int find(int key) {
+    final int b = Arrays.binarySearch(keys, key);
+    return b >= 0 ? b : -1;
+  }
+
+  /**
+   * Size of a bucket.
+   *
+   * @param b Bucket number, from {@link #find}
+   * @return Number of objects in the bucket
+   */
+  int bucketSize(int b) {
+    return offsets[b + 1] - offsets[b];
+  }
+
+  /**
+   * Add the objects of a bucket to a collection.
+   *
+   * @param b Bucket number, from {@link #find}
+   * @param out Output collection
+   */
+  void addBucket(int b, ModifiableDBIDs out) {
+    DBIDArrayIter iter = ids.iter();
+    for(int i = offsets[b], end = offsets[b + 1]; i < end; i++) {
+      out.add(iter.seek(i));
+    }
+  }
+
+  /**
+   * Number of non-empty buckets.
+   *
+   * @return Number of buckets
+   */
+  int numBuckets() {
+    return keys.length;
+  }
+}
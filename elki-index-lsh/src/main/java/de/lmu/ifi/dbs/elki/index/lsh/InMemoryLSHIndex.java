@@ -23,6 +23,7 @@ package de.lmu.ifi.dbs.elki.index.lsh;
 import java.util.ArrayList;
 
 import de.lmu.ifi.dbs.elki.data.type.TypeInformation;
+import de.lmu.ifi.dbs.elki.database.ids.ArrayDBIDs;
 import de.lmu.ifi.dbs.elki.database.ids.DBIDIter;
 import de.lmu.ifi.dbs.elki.database.ids.DBIDUtil;
 import de.lmu.ifi.dbs.elki.database.ids.DBIDs;
@@ -42,6 +43,7 @@ import de.lmu.ifi.dbs.elki.index.KNNIndex;
 import de.lmu.ifi.dbs.elki.index.RangeIndex;
 import de.lmu.ifi.dbs.elki.index.lsh.hashfamilies.LocalitySensitiveHashFunctionFamily;
 import de.lmu.ifi.dbs.elki.index.lsh.hashfunctions.LocalitySensitiveHashFunction;
+import de.lmu.ifi.dbs.elki.index.lsh.hashfunctions.MultiProbeLocalitySensitiveHashFunction;
 import de.lmu.ifi.dbs.elki.logging.Logging;
 import de.lmu.ifi.dbs.elki.logging.progress.FiniteProgress;
 import de.lmu.ifi.dbs.elki.logging.statistics.LongStatistic;
@@ -49,6 +51,7 @@ import de.lmu.ifi.dbs.elki.utilities.optionhandling.AbstractParameterizer;
 import de.lmu.ifi.dbs.elki.utilities.optionhandling.OptionID;
 import de.lmu.ifi.dbs.elki.utilities.optionhandling.constraints.CommonConstraints;
 import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameterization.Parameterization;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameters.Flag;
 import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameters.IntParameter;
 import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameters.ObjectParameter;
 import it.unimi.dsi.fastutil.ints.Int2ObjectOpenHashMap;
@@ -56,6 +59,14 @@ import it.unimi.dsi.fastutil.ints.Int2ObjectOpenHashMap;
 /**
  * Locality Sensitive Hashing.
  *
+ * With more than one probe per table, queries also visit nearby buckets
+ * (multi-probe LSH), if the hash functions support this. This yields a
+ * similar recall with fewer hash tables, i.e., less memory.
+ *
+ * In compact mode, each hash table is frozen after construction into sorted
+ * primitive arrays ({@link CompactBucketTable}) instead of a hash map of
+ * buckets, which needs much less memory for many small buckets.
+ *
  * @author Erich Schubert
  * @since 0.6.0
  *
@@ -85,6 +96,16 @@ public class InMemoryLSHIndex<V> implements IndexFactory<V, InMemoryLSHIndex<V>.
    */
   int numberOfBuckets;
 
+  /**
+   * Number of buckets to probe per hash table.
+   */
+  int probes;
+
+  /**
+   * Use compact, frozen hash tables.
+   */
+  boolean compact;
+
   /**
    * Constructor.
    *
@@ -93,15 +114,30 @@ public class InMemoryLSHIndex<V> implements IndexFactory<V, InMemoryLSHIndex<V>.
    * @param numberOfBuckets Number of buckets to use.
    */
   public InMemoryLSHIndex(LocalitySensitiveHashFunctionFamily<? super V> family, int l, int numberOfBuckets) {
+    this(family, l, numberOfBuckets, 1, false);
+  }
+
+  /**
+   * Constructor.
+   *
+   * @param family Projection family
+   * @param l Number of hash tables to use
+   * @param numberOfBuckets Number of buckets to use.
+   * @param probes Number of buckets to probe per hash table.
+   * @param compact Use compact, frozen hash tables.
+   */
+  public InMemoryLSHIndex(LocalitySensitiveHashFunctionFamily<? super V> family, int l, int numberOfBuckets, int probes, boolean compact) {
     super();
     this.family = family;
     this.l = l;
     this.numberOfBuckets = numberOfBuckets;
+    this.probes = probes;
+    this.compact = compact;
   }
 
   @Override
   public Instance instantiate(Relation<V> relation) {
-    return new Instance(relation, family.generateHashFunctions(relation, l), numberOfBuckets);
+    return new Instance(relation, family.generateHashFunctions(relation, l), numberOfBuckets, probes, compact);
   }
 
   @Override
@@ -127,21 +163,41 @@ public class InMemoryLSHIndex<V> implements IndexFactory<V, InMemoryLSHIndex<V>.
      */
     ArrayList<Int2ObjectOpenHashMap<DBIDs>> hashtables;
 
+    /**
+     * The compact tables, if used instead of {@link #hashtables}.
+     */
+    ArrayList<CompactBucketTable> compacttables;
+
     /**
      * Number of buckets to use.
      */
     private int numberOfBuckets;
 
+    /**
+     * Number of buckets to probe per hash table.
+     */
+    private int probes;
+
+    /**
+     * Use compact, frozen hash tables.
+     */
+    private boolean compact;
+
     /**
      * Constructor.
      *
      * @param relation Relation to index.
      * @param hashfunctions Hash functions.
+     * @param numberOfBuckets Number of buckets to use.
+     * @param probes Number of buckets to probe per hash table.
+     * @param compact Use compact, frozen hash tables.
      */
-    public Instance(Relation<V> relation, ArrayList<? extends LocalitySensitiveHashFunction<? super V>> hashfunctions, int numberOfBuckets) {
+    public Instance(Relation<V> relation, ArrayList<? extends LocalitySensitiveHashFunction<? super V>> hashfunctions, int numberOfBuckets, int probes, boolean compact) {
       super(relation);
       this.hashfunctions = hashfunctions;
       this.numberOfBuckets = numberOfBuckets;
+      this.probes = probes;
+      this.compact = compact;
     }
 
     @Override
@@ -156,6 +212,10 @@ public class InMemoryLSHIndex<V> implements IndexFactory<V, InMemoryLSHIndex<V>.
 
     @Override
     public void initialize() {
+      if(compact) {
+        initializeCompact();
+        return;
+      }
       final int numhash = hashfunctions.size();
       hashtables = new ArrayList<>(numhash);
       for(int i = 0; i < numhash; i++) {
@@ -208,6 +268,48 @@ public class InMemoryLSHIndex<V> implements IndexFactory<V, InMemoryLSHIndex<V>.
       }
     }
 
+    /**
+     * Build the compact hash tables: hash all objects first, then sort them by
+     * bucket for each table.
+     */
+    protected void initializeCompact() {
+      final int numhash = hashfunctions.size();
+      final ArrayDBIDs ids = DBIDUtil.ensureArray(relation.getDBIDs());
+      final int size = ids.size();
+      int[][] buckets = new int[numhash][size];
+      // TODO: We assume all hash functions have the same dimensionality.
+      double[] buf = new double[hashfunctions.get(0).getNumberOfProjections()];
+      FiniteProgress progress = LOG.isVerbose() ? new FiniteProgress("Building LSH index", size, LOG) : null;
+      int j = 0;
+      for(DBIDIter iter = ids.iter(); iter.valid(); iter.advance(), j++) {
+        V obj = relation.get(iter);
+        for(int i = 0; i < numhash; i++) {
+          // Get the initial (unbounded) hash code, reduce to hash table size:
+          buckets[i][j] = hashfunctions.get(i).hashObject(obj, buf) % numberOfBuckets;
+        }
+        LOG.incrementProcessed(progress);
+      }
+      LOG.ensureCompleted(progress);
+      compacttables = new ArrayList<>(numhash);
+      for(int i = 0; i < numhash; i++) {
+        compacttables.add(new CompactBucketTable(buckets[i], ids));
+        buckets[i] = null;
+      }
+      if(LOG.isStatistics()) {
+        int min = Integer.MAX_VALUE, max = 0;
+        for(CompactBucketTable table : compacttables) {
+          for(int b = 0, e = table.numBuckets(); b < e; b++) {
+            final int bsize = table.bucketSize(b);
+            min = bsize < min ? bsize : min;
+            max = bsize > max ? bsize : max;
+          }
+        }
+        LOG.statistics(new LongStatistic(this.getClass().getName() + ".fill.min", min));
+        LOG.statistics(new LongStatistic(this.getClass().getName() + ".fill.max", max));
+        LOG.statistics(new LongStatistic(this.getClass().getName() + ".hashtables", compacttables.size()));
+      }
+    }
+
     @Override
     public Logging getLogger() {
       return LOG;
@@ -242,28 +344,52 @@ public class InMemoryLSHIndex<V> implements IndexFactory<V, InMemoryLSHIndex<V>.
     }
 
     /**
-     * Get the candidates: points which have at least one hash bucket in common.
+     * Get the candidates: points which have at least one hash bucket in common,
+     * or in one of the probed nearby buckets.
      * 
      * @param obj Query object
      * @return Candidates
      */
     protected DBIDs getCandidates(V obj) {
       ModifiableDBIDs candidates = null;
-      final int numhash = hashtables.size();
+      final int numhash = hashfunctions.size();
       double[] buf = new double[hashfunctions.get(0).getNumberOfProjections()];
+      int[] hashes = new int[probes];
       for(int i = 0; i < numhash; i++) {
-        final Int2ObjectOpenHashMap<DBIDs> table = hashtables.get(i);
+        final Int2ObjectOpenHashMap<DBIDs> table = hashtables != null ? hashtables.get(i) : null;
+        final CompactBucketTable ctable = compacttables != null ? compacttables.get(i) : null;
         final LocalitySensitiveHashFunction<? super V> hashfunc = hashfunctions.get(i);
-        // Get the initial (unbounded) hash code:
-        int hash = hashfunc.hashObject(obj, buf);
-        // Reduce to hash table size
-        int bucket = hash % numberOfBuckets;
-        DBIDs cur = table.get(bucket);
-        if(cur != null) {
-          if(candidates == null) {
-            candidates = DBIDUtil.newHashSet(cur.size() * numhash);
+        // Get the initial (unbounded) hash codes:
+        final int numprobes;
+        if(probes > 1 && hashfunc instanceof MultiProbeLocalitySensitiveHashFunction) {
+          @SuppressWarnings("unchecked")
+          final MultiProbeLocalitySensitiveHashFunction<? super V> mphashfunc = (MultiProbeLocalitySensitiveHashFunction<? super V>) hashfunc;
+          numprobes = mphashfunc.hashProbes(obj, buf, hashes);
+        }
+        else {
+          hashes[0] = hashfunc.hashObject(obj, buf);
+          numprobes = 1;
+        }
+        for(int j = 0; j < numprobes; j++) {
+          // Reduce to hash table size
+          int bucket = hashes[j] % numberOfBuckets;
+          if(ctable != null) {
+            final int b = ctable.find(bucket);
+            if(b >= 0) {
+              if(candidates == null) {
+                candidates = DBIDUtil.newHashSet(ctable.bucketSize(b) * numhash * numprobes);
+              }
+              ctable.addBucket(b, candidates);
+            }
+            continue;
+          }
+          DBIDs cur = table.get(bucket);
+          if(cur != null) {
+            if(candidates == null) {
+              candidates = DBIDUtil.newHashSet(cur.size() * numhash * numprobes);
+            }
+            candidates.addDBIDs(cur);
           }
-          candidates.addDBIDs(cur);
         }
       }
       return (candidates == null) ? DBIDUtil.EMPTYDBIDS : candidates;
@@ -355,6 +481,16 @@ public class InMemoryLSHIndex<V> implements IndexFactory<V, InMemoryLSHIndex<V>.
      */
     public static final OptionID BUCKETS_ID = new OptionID("lsh.buckets", "Number of hash buckets to use.");
 
+    /**
+     * Use compact, frozen hash tables.
+     */
+    public static final OptionID COMPACT_ID = new OptionID("lsh.compact", "Freeze the hash tables into compact sorted arrays after construction, to reduce memory usage.");
+
+    /**
+     * Number of buckets to probe per hash table.
+     */
+    public static final OptionID PROBES_ID = new OptionID("lsh.probes", "Number of buckets to probe per hash table (multi-probe LSH), if supported by the hash functions.");
+
     /**
      * LSH hash function family to use.
      */
@@ -370,6 +506,16 @@ public class InMemoryLSHIndex<V> implements IndexFactory<V, InMemoryLSHIndex<V>.
      */
     int numberOfBuckets;
 
+    /**
+     * Number of buckets to probe per hash table.
+     */
+    int probes;
+
+    /**
+     * Use compact, frozen hash tables.
+     */
+    boolean compact;
+
     @Override
     protected void makeOptions(Parameterization config) {
       super.makeOptions(config);
@@ -390,11 +536,22 @@ public class InMemoryLSHIndex<V> implements IndexFactory<V, InMemoryLSHIndex<V>.
       if(config.grab(bucketsP)) {
         numberOfBuckets = bucketsP.intValue();
       }
+
+      IntParameter probesP = new IntParameter(PROBES_ID, 1);
+      probesP.addConstraint(CommonConstraints.GREATER_EQUAL_ONE_INT);
+      if(config.grab(probesP)) {
+        probes = probesP.intValue();
+      }
+
+      Flag compactF = new Flag(COMPACT_ID);
+      if(config.grab(compactF)) {
+        compact = compactF.isTrue();
+      }
     }
 
     @Override
     protected InMemoryLSHIndex<V> makeInstance() {
-      return new InMemoryLSHIndex<>(family, l, numberOfBuckets);
+      return new InMemoryLSHIndex<>(family, l, numberOfBuckets, probes, compact);
     }
   }
 }
@@ -0,0 +1,58 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2017
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.lmu.ifi.dbs.elki.index.lsh.hashfunctions;
+
+import de.lmu.ifi.dbs.elki.utilities.documentation.Reference;
+
+/**
+ * Hash functions that can also produce the hash values of nearby buckets, for
+ * multi-probe locality sensitive hashing.
+ *
+ * Reference:
+ * <p>
+ * Q. Lv and W. Josephson and Z. Wang and M. Charikar and K. Li<br />
+ * Multi-probe LSH: efficient indexing for high-dimensional similarity
+ * search<br />
+ * Proc. 33rd Int. Conf. on Very Large Data Bases (VLDB'07)
+ * </p>
+ *
+ * @author Erich Schubert
+ * @since 0.7.2
+ *
+ * @param <V> Data type to hash.
+ */
+@Reference(authors = "Q. Lv and W. Josephson and Z. Wang and M. Charikar and K. Li", //
+    title = "Multi-probe LSH: efficient indexing for high-dimensional similarity search", //
+    booktitle = "Proc. 33rd Int. Conf. on Very Large Data Bases (VLDB'07)", //
+    url = "http://www.vldb.org/conf/2007/papers/research/p950-lv.pdf")
+public interface MultiProbeLocalitySensitiveHashFunction<V> extends LocalitySensitiveHashFunction<V> {
+  /**
+   * Compute the hash values of the buckets to probe for an object. The first
+   * value is the hash value of the object itself, followed by nearby buckets
+   * in order of decreasing estimated success probability.
+   *
+   * @param obj Object to hash
+   * @param buf Buffer, sized according to the number of projections.
+   * @param hashes Output buffer, its length is the maximum number of probes.
+   * @return Number of hash values produced
+   */
+  int hashProbes(V obj, double[] buf, int[] hashes);
+}
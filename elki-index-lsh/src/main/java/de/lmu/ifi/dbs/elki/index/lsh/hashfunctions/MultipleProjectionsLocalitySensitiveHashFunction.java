@@ -20,10 +20,12 @@
  */
 package de.lmu.ifi.dbs.elki.index.lsh.hashfunctions;
 
+import java.util.Arrays;
 import java.util.Random;
 
 import de.lmu.ifi.dbs.elki.data.NumberVector;
 import de.lmu.ifi.dbs.elki.math.linearalgebra.randomprojections.RandomProjectionFamily;
+import de.lmu.ifi.dbs.elki.utilities.datastructures.heap.DoubleObjectMinHeap;
 import de.lmu.ifi.dbs.elki.utilities.documentation.Reference;
 
 /**
@@ -37,6 +39,10 @@ import de.lmu.ifi.dbs.elki.utilities.documentation.Reference;
  * Proc. 20th annual symposium on Computational geometry<br />
  * </p>
  *
+ * For multi-probe queries, the buckets adjacent in one or more projections are
+ * probed in the order of the (squared) distance of the projected query to the
+ * bucket boundaries, using the query-directed probing sequence of Lv et al.
+ *
  * @author Erich Schubert
  * @since 0.6.0
  */
@@ -44,7 +50,7 @@ import de.lmu.ifi.dbs.elki.utilities.documentation.Reference;
 title = "Locality-sensitive hashing scheme based on p-stable distributions", //
 booktitle = "Proc. 20th annual symposium on Computational geometry", //
 url = "http://dx.doi.org/10.1145/997817.997857")
-public class MultipleProjectionsLocalitySensitiveHashFunction implements LocalitySensitiveHashFunction<NumberVector> {
+public class MultipleProjectionsLocalitySensitiveHashFunction implements MultiProbeLocalitySensitiveHashFunction<NumberVector> {
   /**
    * Projection matrix.
    */
@@ -118,6 +124,74 @@ public class MultipleProjectionsLocalitySensitiveHashFunction implements Localit
     return fastModPrime(t1sum);
   }
 
+  @Override
+  public int hashProbes(NumberVector vec, double[] buf, int[] hashes) {
+    projection.project(vec, buf);
+    final int num = shift.length, nmoves = num << 1;
+    // Costs of moving to the lower (2i) and upper (2i+1) neighbor bucket:
+    double[] costs = new double[nmoves];
+    long t1sum = 0L;
+    for(int i = 0; i < num; i++) {
+      final double f = (buf[i] + shift[i]) * iwidth;
+      final int ai = (int) Math.floor(f);
+      t1sum += (randoms1[i] & MASK32) * ai; // unsigned math!
+      final double frac = f - ai;
+      costs[i << 1] = frac * frac;
+      costs[(i << 1) + 1] = (1 - frac) * (1 - frac);
+    }
+    hashes[0] = fastModPrime(t1sum);
+    if(hashes.length == 1) {
+      return 1;
+    }
+    // Sort the moves by cost (insertion sort, there are few projections):
+    int[] order = new int[nmoves];
+    for(int i = 0; i < nmoves; i++) {
+      int j = i;
+      for(; j > 0 && costs[order[j - 1]] > costs[i]; j--) {
+        order[j] = order[j - 1];
+      }
+      order[j] = i;
+    }
+    // Generate perturbation sets (positions in order) by increasing score:
+    DoubleObjectMinHeap<int[]> heap = new DoubleObjectMinHeap<>();
+    heap.add(costs[order[0]], new int[] { 0 });
+    int n = 1;
+    while(n < hashes.length && !heap.isEmpty()) {
+      final double score = heap.peekKey();
+      final int[] set = heap.peekValue();
+      heap.poll();
+      final int last = set[set.length - 1];
+      if(last + 1 < nmoves) {
+        // Shift: replace the last move with the next one.
+        int[] shifted = set.clone();
+        shifted[set.length - 1] = last + 1;
+        heap.add(score - costs[order[last]] + costs[order[last + 1]], shifted);
+        // Expand: add the next move.
+        int[] expanded = Arrays.copyOf(set, set.length + 1);
+        expanded[set.length] = last + 1;
+        heap.add(score + costs[order[last + 1]], expanded);
+      }
+      // Skip sets moving in both directions along the same projection:
+      long t = t1sum;
+      boolean valid = true;
+      for(int i = 0; i < set.length && valid; i++) {
+        final int move = order[set[i]];
+        for(int j = 0; j < i; j++) {
+          if((order[set[j]] >>> 1) == (move >>> 1)) {
+            valid = false;
+            break;
+          }
+        }
+        final long r = randoms1[move >>> 1] & MASK32;
+        t += (move & 1) == 1 ? r : -r;
+      }
+      if(valid) {
+        hashes[n++] = fastModPrime(t);
+      }
+    }
+    return n;
+  }
+
   /**
    * Fast modulo operation for the largest unsigned integer prime.
    *
@@ -0,0 +1,134 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2017
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.lmu.ifi.dbs.elki.index.lsh;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+
+import org.junit.Test;
+
+import de.lmu.ifi.dbs.elki.data.DoubleVector;
+import de.lmu.ifi.dbs.elki.data.NumberVector;
+import de.lmu.ifi.dbs.elki.database.QueryUtil;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDIter;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDUtil;
+import de.lmu.ifi.dbs.elki.database.ids.DoubleDBIDList;
+import de.lmu.ifi.dbs.elki.database.ids.KNNList;
+import de.lmu.ifi.dbs.elki.database.query.distance.DistanceQuery;
+import de.lmu.ifi.dbs.elki.database.query.knn.KNNQuery;
+import de.lmu.ifi.dbs.elki.database.query.range.RangeQuery;
+import de.lmu.ifi.dbs.elki.database.relation.Relation;
+import de.lmu.ifi.dbs.elki.distance.distancefunction.minkowski.EuclideanDistanceFunction;
+import de.lmu.ifi.dbs.elki.index.AbstractIndexStructureTest;
+import de.lmu.ifi.dbs.elki.index.lsh.hashfamilies.EuclideanHashFunctionFamily;
+import de.lmu.ifi.dbs.elki.index.lsh.hashfunctions.LocalitySensitiveHashFunction;
+import de.lmu.ifi.dbs.elki.index.lsh.hashfunctions.MultiProbeLocalitySensitiveHashFunction;
+import de.lmu.ifi.dbs.elki.utilities.random.RandomFactory;
+
+/**
+ * Unit test for multi-probe queries and compact tables of the LSH index.
+ *
+ * @author Erich Schubert
+ * @since 0.7.2
+ */
+public class InMemoryLSHIndexTest extends AbstractIndexStructureTest {
+  @Test
+  public void testProbes() {
+    Relation<NumberVector> rel = makeRandomRelation(10, 4);
+    EuclideanHashFunctionFamily family = new EuclideanHashFunctionFamily(RandomFactory.get(0L), .5, 3);
+    @SuppressWarnings("unchecked")
+    MultiProbeLocalitySensitiveHashFunction<? super NumberVector> hf = (MultiProbeLocalitySensitiveHashFunction<? super NumberVector>) family.generateHashFunctions(rel, 1).get(0);
+    double[] buf = new double[hf.getNumberOfProjections()];
+    int[] hashes = new int[20];
+    for(DBIDIter it = rel.iterDBIDs(); it.valid(); it.advance()) {
+      NumberVector v = rel.get(it);
+      assertEquals("Too few probes", hashes.length, hf.hashProbes(v, buf, hashes));
+      assertEquals("First probe is not the query bucket", hf.hashObject(v), hashes[0]);
+      for(int i = 1; i < hashes.length; i++) {
+        for(int j = 0; j < i; j++) {
+          assertNotEquals("Bucket probed twice", hashes[j], hashes[i]);
+        }
+      }
+    }
+    // With 3 projections, there are only 3^3 buckets to probe:
+    int[] all = new int[100];
+    assertEquals("Wrong number of probes", 27, hf.hashProbes(DoubleVector.wrap(new double[4]), buf, all));
+  }
+
+  @Test
+  public void testMultiProbeRecall() {
+    Relation<NumberVector> rel = makeRandomRelation(1000, 6);
+    DistanceQuery<NumberVector> dq = rel.getDistanceQuery(EuclideanDistanceFunction.STATIC);
+    EuclideanHashFunctionFamily family = new EuclideanHashFunctionFamily(RandomFactory.get(0L), .3, 4);
+    double single = recall(rel, dq, new InMemoryLSHIndex<>(family, 2, 7919, 1, false).instantiate(rel));
+    double multi = recall(rel, dq, new InMemoryLSHIndex<>(family, 2, 7919, 20, false).instantiate(rel));
+    assertTrue("Multi-probe did not improve recall: " + single + " >= " + multi, multi > single + .1);
+  }
+
+  @Test
+  public void testCompact() {
+    Relation<NumberVector> rel = makeRandomRelation(1000, 6);
+    DistanceQuery<NumberVector> dq = rel.getDistanceQuery(EuclideanDistanceFunction.STATIC);
+    EuclideanHashFunctionFamily family = new EuclideanHashFunctionFamily(RandomFactory.get(0L), .3, 4);
+    InMemoryLSHIndex<NumberVector> factory = new InMemoryLSHIndex<>(family, 3, 7919);
+    ArrayList<? extends LocalitySensitiveHashFunction<? super NumberVector>> hashfunctions = family.generateHashFunctions(rel, 3);
+    for(int probes : new int[] { 1, 5 }) {
+      InMemoryLSHIndex<NumberVector>.Instance maps = factory.new Instance(rel, hashfunctions, 7919, probes, false);
+      maps.initialize();
+      InMemoryLSHIndex<NumberVector>.Instance compact = factory.new Instance(rel, hashfunctions, 7919, probes, true);
+      compact.initialize();
+      assertTrue("Hash maps used in compact mode.", compact.hashtables == null && compact.compacttables.size() == 3);
+      KNNQuery<NumberVector> q1 = maps.getKNNQuery(dq), q2 = compact.getKNNQuery(dq);
+      RangeQuery<NumberVector> r1 = maps.getRangeQuery(dq), r2 = compact.getRangeQuery(dq);
+      for(DBIDIter it = rel.iterDBIDs(); it.valid(); it.advance()) {
+        KNNList l1 = q1.getKNNForDBID(it, 10), l2 = q2.getKNNForDBID(it, 10);
+        assertEquals("kNN sizes differ", l1.size(), l2.size());
+        assertEquals("kNN differ", l1.size(), DBIDUtil.intersectionSize(l1, l2));
+        assertEquals("kNN distance differs", l1.getKNNDistance(), l2.getKNNDistance(), 0.);
+        DoubleDBIDList d1 = r1.getRangeForDBID(it, .2), d2 = r2.getRangeForDBID(it, .2);
+        assertEquals("Range results differ", d1.size(), d2.size());
+        assertEquals("Range results differ", d1.size(), DBIDUtil.intersectionSize(d1, d2));
+      }
+    }
+  }
+
+  /**
+   * Compute the average recall of the LSH index.
+   *
+   * @param rel Relation
+   * @param dq Distance query
+   * @param index Index
+   * @return Recall
+   */
+  private static double recall(Relation<NumberVector> rel, DistanceQuery<NumberVector> dq, InMemoryLSHIndex<NumberVector>.Instance index) {
+    index.initialize();
+    KNNQuery<NumberVector> exact = QueryUtil.getLinearScanKNNQuery(dq), knnq = index.getKNNQuery(dq);
+    int found = 0, total = 0;
+    for(DBIDIter it = rel.iterDBIDs(); it.valid(); it.advance()) {
+      found += DBIDUtil.intersectionSize(exact.getKNNForDBID(it, 10), knnq.getKNNForDBID(it, 10));
+      total += 10;
+    }
+    return found / (double) total;
+  }
+}
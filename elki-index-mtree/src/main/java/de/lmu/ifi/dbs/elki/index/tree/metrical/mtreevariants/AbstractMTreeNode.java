@@ -20,10 +20,14 @@
  */
 package de.lmu.ifi.dbs.elki.index.tree.metrical.mtreevariants;
 
+import java.io.IOException;
+import java.io.ObjectInput;
+import java.io.ObjectOutput;
 import java.util.logging.Logger;
 
 import de.lmu.ifi.dbs.elki.database.ids.DBID;
 import de.lmu.ifi.dbs.elki.index.tree.AbstractNode;
+import de.lmu.ifi.dbs.elki.index.tree.Entry;
 import de.lmu.ifi.dbs.elki.logging.LoggingConfiguration;
 import de.lmu.ifi.dbs.elki.utilities.exceptions.InconsistentDataException;
 
@@ -182,4 +186,52 @@ public abstract class AbstractMTreeNode<O, N extends AbstractMTreeNode<O, N, E>,
       throw new InconsistentDataException("pcr < pd + cr \n" + parentEntry.getCoveringRadius() + " < " + parentDistance + " + " + entry.getCoveringRadius() + "in node " + parent.getPageID() + " at index " + index + " (child " + entry + "):\n" + "dist(" + entry.getRoutingObjectID() + " - " + parentEntry.getRoutingObjectID() + ")" + " >  cr(" + entry + ")");
     }
   }
+
+  /**
+   * Create an empty entry, to be filled by deserialization. Subclasses using
+   * other entry types must override this method.
+   * 
+   * @param leaf {@code true} for leaf entries
+   * @return New entry
+   */
+  @SuppressWarnings("unchecked")
+  protected E createEmptyEntry(boolean leaf) {
+    return (E) (leaf ? new MTreeLeafEntry() : new MTreeDirectoryEntry());
+  }
+
+  /**
+   * Calls the super method and writes the capacity and the entries of this
+   * node to the specified stream.
+   * 
+   * @param out the stream to write the object to
+   * @throws java.io.IOException Includes any I/O exceptions that may occur
+   */
+  @Override
+  public void writeExternal(ObjectOutput out) throws IOException {
+    super.writeExternal(out);
+    out.writeInt(entries.length);
+    for(int i = 0; i < numEntries; i++) {
+      entries[i].writeExternal(out);
+    }
+  }
+
+  /**
+   * Reads the id of this node, the number of entries, the capacity and the
+   * entries from the specified stream.
+   * 
+   * @param in the stream to read data from in order to restore the object
+   * @throws java.io.IOException if I/O errors occur
+   * @throws ClassNotFoundException If the class for an object being restored
+   *         cannot be found.
+   */
+  @Override
+  public void readExternal(ObjectInput in) throws IOException, ClassNotFoundException {
+    super.readExternal(in);
+    entries = new Entry[in.readInt()];
+    for(int i = 0; i < numEntries; i++) {
+      E e = createEmptyEntry(isLeaf);
+      e.readExternal(in);
+      entries[i] = e;
+    }
+  }
 }
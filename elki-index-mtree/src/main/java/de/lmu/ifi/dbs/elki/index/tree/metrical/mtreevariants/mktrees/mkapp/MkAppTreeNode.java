@@ -60,6 +60,11 @@ class MkAppTreeNode<O> extends AbstractMTreeNode<O, MkAppTreeNode<O>, MkAppEntry
     super(capacity, isLeaf, MkAppEntry.class);
   }
 
+  @Override
+  protected MkAppEntry createEmptyEntry(boolean leaf) {
+    return leaf ? new MkAppLeafEntry() : new MkAppDirectoryEntry();
+  }
+
   /**
    * Determines and returns the polynomial approximation for the knn distances
    * of this node as the maximum of the polynomial approximations of all
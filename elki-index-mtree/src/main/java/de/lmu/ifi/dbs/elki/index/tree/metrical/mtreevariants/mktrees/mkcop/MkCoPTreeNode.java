@@ -59,6 +59,11 @@ class MkCoPTreeNode<O> extends AbstractMTreeNode<O, MkCoPTreeNode<O>, MkCoPEntry
     super(capacity, isLeaf, MkCoPEntry.class);
   }
 
+  @Override
+  protected MkCoPEntry createEmptyEntry(boolean leaf) {
+    return leaf ? new MkCoPLeafEntry() : new MkCoPDirectoryEntry();
+  }
+
   /**
    * Determines and returns the conservative approximation for the knn distances
    * of this node as the maximum of the conservative approximations of all
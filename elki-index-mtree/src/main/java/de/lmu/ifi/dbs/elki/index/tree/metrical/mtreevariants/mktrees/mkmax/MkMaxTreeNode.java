@@ -58,6 +58,11 @@ class MkMaxTreeNode<O> extends AbstractMTreeNode<O, MkMaxTreeNode<O>, MkMaxEntry
     super(capacity, isLeaf, MkMaxEntry.class);
   }
 
+  @Override
+  protected MkMaxEntry createEmptyEntry(boolean leaf) {
+    return leaf ? new MkMaxLeafEntry() : new MkMaxDirectoryEntry();
+  }
+
   /**
    * Determines and returns the k-nearest neighbor distance of this node as the
    * maximum of the k-nearest neighbor distances of all entries.
@@ -57,6 +57,11 @@ class MkTabTreeNode<O> extends AbstractMTreeNode<O, MkTabTreeNode<O>, MkTabEntry
     super(capacity, isLeaf, MkTabEntry.class);
   }
 
+  @Override
+  protected MkTabEntry createEmptyEntry(boolean leaf) {
+    return leaf ? new MkTabLeafEntry() : new MkTabDirectoryEntry();
+  }
+
   /**
    * Determines and returns the knn distance of this node as the maximum knn
    * distance of all entries.
@@ -20,7 +20,12 @@
  */
 package de.lmu.ifi.dbs.elki.index.tree.metrical.mtreevariants.query;
 
+import java.util.ArrayList;
+import java.util.List;
+
+import de.lmu.ifi.dbs.elki.database.ids.ArrayDBIDs;
 import de.lmu.ifi.dbs.elki.database.ids.DBID;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDArrayIter;
 import de.lmu.ifi.dbs.elki.database.ids.DBIDUtil;
 import de.lmu.ifi.dbs.elki.database.ids.KNNHeap;
 import de.lmu.ifi.dbs.elki.database.ids.KNNList;
@@ -30,7 +35,9 @@ import de.lmu.ifi.dbs.elki.index.tree.DirectoryEntry;
 import de.lmu.ifi.dbs.elki.index.tree.metrical.mtreevariants.AbstractMTree;
 import de.lmu.ifi.dbs.elki.index.tree.metrical.mtreevariants.AbstractMTreeNode;
 import de.lmu.ifi.dbs.elki.index.tree.metrical.mtreevariants.MTreeEntry;
+import de.lmu.ifi.dbs.elki.utilities.datastructures.arrays.DoubleIntegerArrayQuickSort;
 import de.lmu.ifi.dbs.elki.utilities.datastructures.heap.ComparableMinHeap;
+import de.lmu.ifi.dbs.elki.utilities.datastructures.heap.ObjectHeap;
 
 /**
  * Instance of a KNN query for a particular spatial index.
@@ -44,6 +51,11 @@ import de.lmu.ifi.dbs.elki.utilities.datastructures.heap.ComparableMinHeap;
  * @param <O> Object type
  */
 public class MetricalIndexKNNQuery<O> extends AbstractDistanceKNNQuery<O> {
+  /**
+   * Number of queued nodes to announce to the page file for prefetching.
+   */
+  protected static final int PREFETCH = 4;
+
   /**
    * The index to use
    */
@@ -82,6 +94,7 @@ public class MetricalIndexKNNQuery<O> extends AbstractDistanceKNNQuery<O> {
       if(knnList.size() >= k && pqNode.mindist > d_k) {
         break;
       }
+      prefetch(pq, d_k);
 
       AbstractMTreeNode<?, ?, ?> node = index.getNode(pqNode.nodeID);
       DBID id_p = pqNode.routingObjectID;
@@ -132,4 +145,138 @@ public class MetricalIndexKNNQuery<O> extends AbstractDistanceKNNQuery<O> {
     }
     return knnList.toKNNList();
   }
+
+  /**
+   * Bulk kNN query, sharing a single depth-first traversal of the tree across
+   * all queries, such that each node is read at most once per batch.
+   */
+  @Override
+  public List<KNNList> getKNNForBulkDBIDs(ArrayDBIDs ids, int k) {
+    if(k < 1) {
+      throw new IllegalArgumentException("At least one object has to be requested!");
+    }
+    final int num = ids.size();
+    final KNNHeap[] heaps = new KNNHeap[num];
+    final int[] active = new int[num];
+    for(int i = 0; i < num; i++) {
+      index.statistics.countKNNQuery();
+      heaps[i] = DBIDUtil.newHeap(k);
+      active[i] = i;
+    }
+    if(num > 0) {
+      batchNN(index.getRootID(), false, ids.iter(), heaps, active, num, new double[num]);
+    }
+    List<KNNList> result = new ArrayList<>(num);
+    for(KNNHeap heap : heaps) {
+      result.add(heap.toKNNList());
+    }
+    return result;
+  }
+
+  /**
+   * Process a node for a batch of queries.
+   *
+   * @param nodeID Node to process
+   * @param hasParent {@code false} for the root node
+   * @param q Iterator over the query IDs
+   * @param heaps kNN heaps of all queries
+   * @param active Indexes of the queries that need to visit this node
+   * @param num Number of active queries
+   * @param d1 Distances of the active queries to the routing object
+   */
+  private void batchNN(int nodeID, boolean hasParent, DBIDArrayIter q, KNNHeap[] heaps, int[] active, int num, double[] d1) {
+    AbstractMTreeNode<?, ?, ?> node = index.getNode(nodeID);
+    final int numEntries = node.getNumEntries();
+    if(node.isLeaf()) {
+      for(int i = 0; i < numEntries; i++) {
+        MTreeEntry entry = node.getEntry(i);
+        DBID o_j = entry.getRoutingObjectID();
+        double d2 = hasParent ? entry.getParentDistance() : 0.;
+        for(int j = 0; j < num; j++) {
+          final KNNHeap heap = heaps[active[j]];
+          final double d_k = heap.getKNNDistance();
+          if(Math.abs(d1[j] - d2) <= d_k) {
+            double d3 = distanceQuery.distance(o_j, q.seek(active[j]));
+            index.statistics.countDistanceCalculation();
+            if(d3 <= d_k) {
+              heap.insert(d3, o_j);
+            }
+          }
+        }
+      }
+      return;
+    }
+    // Queries, distances and lower bounds for each child:
+    int[][] cactive = new int[numEntries][];
+    double[][] cdist = new double[numEntries][], cmin = new double[numEntries][];
+    int[] cnum = new int[numEntries], order = new int[numEntries];
+    double[] best = new double[numEntries];
+    for(int i = 0; i < numEntries; i++) {
+      MTreeEntry entry = node.getEntry(i);
+      DBID o_r = entry.getRoutingObjectID();
+      double r_or = entry.getCoveringRadius();
+      double d2 = hasParent ? entry.getParentDistance() : 0.;
+      int[] ca = cactive[i] = new int[num];
+      double[] cd = cdist[i] = new double[num], cm = cmin[i] = new double[num];
+      int c = 0;
+      double b = Double.POSITIVE_INFINITY;
+      for(int j = 0; j < num; j++) {
+        final double d_k = heaps[active[j]].getKNNDistance();
+        if(Math.abs(d1[j] - d2) <= d_k + r_or) {
+          double d3 = distanceQuery.distance(o_r, q.seek(active[j]));
+          index.statistics.countDistanceCalculation();
+          double d_min = Math.max(d3 - r_or, 0.);
+          if(d_min <= d_k) {
+            ca[c] = active[j];
+            cd[c] = d3;
+            cm[c] = d_min;
+            b = d_min < b ? d_min : b;
+            c++;
+          }
+        }
+      }
+      cnum[i] = c;
+      best[i] = b;
+      order[i] = i;
+    }
+    // Visit the most promising children first, to tighten the bounds early.
+    DoubleIntegerArrayQuickSort.sort(best, order, numEntries);
+    for(int o = 0; o < numEntries; o++) {
+      final int i = order[o];
+      final int[] ca = cactive[i];
+      final double[] cd = cdist[i], cm = cmin[i];
+      // Bounds may have improved in the meantime:
+      int c = 0;
+      for(int j = 0; j < cnum[i]; j++) {
+        if(cm[j] <= heaps[ca[j]].getKNNDistance()) {
+          ca[c] = ca[j];
+          cd[c] = cd[j];
+          c++;
+        }
+      }
+      if(c > 0) {
+        batchNN(((DirectoryEntry) node.getEntry(i)).getPageID(), true, q, heaps, ca, c, cd);
+      }
+    }
+  }
+
+  /**
+   * Announce the next candidate nodes to the page file, so that they can be
+   * loaded asynchronously while the current node is processed.
+   * 
+   * The first positions of the heap array are its top levels, and hence
+   * contain the next nodes to be expanded.
+   * 
+   * @param pq Priority queue
+   * @param d_k Current pruning distance
+   */
+  protected void prefetch(ComparableMinHeap<MTreeSearchCandidate> pq, double d_k) {
+    int i = 0;
+    for(ObjectHeap.UnsortedIter<MTreeSearchCandidate> it = pq.unsortedIter(); it.valid() && i < PREFETCH; it.advance(), i++) {
+      final MTreeSearchCandidate c = it.get();
+      if(c.mindist <= d_k) {
+        index.prefetchNode(c.nodeID);
+      }
+    }
+  }
 }
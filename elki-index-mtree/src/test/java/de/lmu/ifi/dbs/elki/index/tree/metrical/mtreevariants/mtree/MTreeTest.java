@@ -20,12 +20,35 @@
  */
 package de.lmu.ifi.dbs.elki.index.tree.metrical.mtreevariants.mtree;
 
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.List;
+
 import org.junit.Test;
 
+import de.lmu.ifi.dbs.elki.algorithm.AbstractSimpleAlgorithmTest;
+import de.lmu.ifi.dbs.elki.data.DoubleVector;
+import de.lmu.ifi.dbs.elki.data.type.TypeUtil;
+import de.lmu.ifi.dbs.elki.database.Database;
 import de.lmu.ifi.dbs.elki.database.StaticArrayDatabase;
+import de.lmu.ifi.dbs.elki.database.ids.ArrayDBIDs;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDIter;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDUtil;
+import de.lmu.ifi.dbs.elki.database.ids.DoubleDBIDList;
+import de.lmu.ifi.dbs.elki.database.ids.DoubleDBIDListIter;
+import de.lmu.ifi.dbs.elki.database.query.distance.DistanceQuery;
+import de.lmu.ifi.dbs.elki.database.query.knn.KNNQuery;
+import de.lmu.ifi.dbs.elki.database.query.knn.LinearScanDistanceKNNQuery;
+import de.lmu.ifi.dbs.elki.database.query.range.LinearScanDistanceRangeQuery;
+import de.lmu.ifi.dbs.elki.database.query.range.RangeQuery;
+import de.lmu.ifi.dbs.elki.database.relation.Relation;
+import de.lmu.ifi.dbs.elki.distance.distancefunction.minkowski.EuclideanDistanceFunction;
 import de.lmu.ifi.dbs.elki.index.AbstractIndexStructureTest;
 import de.lmu.ifi.dbs.elki.index.tree.metrical.mtreevariants.query.MetricalIndexKNNQuery;
 import de.lmu.ifi.dbs.elki.index.tree.metrical.mtreevariants.query.MetricalIndexRangeQuery;
+import de.lmu.ifi.dbs.elki.parallel.ParallelBulkQuery;
 import de.lmu.ifi.dbs.elki.persistent.AbstractPageFileFactory;
 import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameterization.ListParameterization;
 
@@ -46,4 +69,78 @@ public class MTreeTest extends AbstractIndexStructureTest {
     metparams.addParameter(AbstractPageFileFactory.Parameterizer.PAGE_SIZE_ID, 300);
     testExactEuclidean(metparams, MetricalIndexKNNQuery.class, MetricalIndexRangeQuery.class);
   }
+
+  /**
+   * Test the batched and parallel bulk queries against the serial queries.
+   */
+  @Test
+  public void testBulk() {
+    ListParameterization params = new ListParameterization();
+    params.addParameter(StaticArrayDatabase.Parameterizer.INDEX_ID, MTreeFactory.class);
+    params.addParameter(AbstractPageFileFactory.Parameterizer.PAGE_SIZE_ID, 300);
+    Database db = AbstractSimpleAlgorithmTest.makeSimpleDatabase("elki/testdata/unittests/hierarchical-3d2d1d.csv", 600, params);
+    Relation<DoubleVector> rel = db.getRelation(TypeUtil.DOUBLE_VECTOR_FIELD);
+    DistanceQuery<DoubleVector> dist = db.getDistanceQuery(rel, EuclideanDistanceFunction.STATIC);
+    KNNQuery<DoubleVector> knnq = db.getKNNQuery(dist, 10);
+    RangeQuery<DoubleVector> rangeq = db.getRangeQuery(dist, .1);
+    assertTrue(knnq instanceof MetricalIndexKNNQuery);
+    assertTrue(rangeq instanceof MetricalIndexRangeQuery);
+    KNNQuery<DoubleVector> linknn = new LinearScanDistanceKNNQuery<>(dist);
+    RangeQuery<DoubleVector> linrange = new LinearScanDistanceRangeQuery<>(dist);
+
+    ArrayDBIDs ids = DBIDUtil.ensureArray(rel.getDBIDs());
+    assertSameResults(ids, linknn, knnq.getKNNForBulkDBIDs(ids, 10));
+    assertSameResults(ids, linknn, ParallelBulkQuery.getKNNForBulkDBIDs(knnq, ids, 10));
+    List<DoubleDBIDList> ranges = ParallelBulkQuery.getRangeForBulkDBIDs(rangeq, ids, .1);
+    int i = 0;
+    for(DBIDIter iter = ids.iter(); iter.valid(); iter.advance(), i++) {
+      assertSameDistances(linrange.getRangeForDBID(iter, .1), ranges.get(i));
+    }
+  }
+
+  /**
+   * Compare bulk kNN results to serial linear scan queries.
+   *
+   * @param ids Query objects
+   * @param linknn Linear scan query
+   * @param bulk Bulk results
+   */
+  private static void assertSameResults(ArrayDBIDs ids, KNNQuery<DoubleVector> linknn, List<? extends DoubleDBIDList> bulk) {
+    assertEquals("Wrong number of results.", ids.size(), bulk.size());
+    int i = 0;
+    for(DBIDIter iter = ids.iter(); iter.valid(); iter.advance(), i++) {
+      assertSameDistances(linknn.getKNNForDBID(iter, 10), bulk.get(i));
+    }
+  }
+
+  /**
+   * Compare two result lists by their distances (ties and range query results
+   * may be ordered differently).
+   *
+   * @param expect Expected result
+   * @param actual Actual result
+   */
+  private static void assertSameDistances(DoubleDBIDList expect, DoubleDBIDList actual) {
+    assertEquals("Result sizes do not agree.", expect.size(), actual.size());
+    double[] e = sortedDistances(expect), a = sortedDistances(actual);
+    for(int i = 0; i < e.length; i++) {
+      assertEquals("Distances do not agree.", e[i], a[i], 1e-15);
+    }
+  }
+
+  /**
+   * Get the sorted distances of a result list.
+   *
+   * @param list Result list
+   * @return Sorted distances
+   */
+  private static double[] sortedDistances(DoubleDBIDList list) {
+    double[] d = new double[list.size()];
+    int i = 0;
+    for(DoubleDBIDListIter it = list.iter(); it.valid(); it.advance()) {
+      d[i++] = it.doubleValue();
+    }
+    Arrays.sort(d);
+    return d;
+  }
 }
@@ -53,6 +53,7 @@ import de.lmu.ifi.dbs.elki.index.RKNNIndex;
 import de.lmu.ifi.dbs.elki.logging.Logging;
 import de.lmu.ifi.dbs.elki.logging.progress.FiniteProgress;
 import de.lmu.ifi.dbs.elki.logging.progress.StepProgress;
+import de.lmu.ifi.dbs.elki.parallel.ParallelBulkQuery;
 import de.lmu.ifi.dbs.elki.utilities.documentation.Description;
 import de.lmu.ifi.dbs.elki.utilities.documentation.Title;
 
@@ -91,7 +92,19 @@ public class MaterializeKNNAndRKNNPreprocessor<O> extends MaterializeKNNPreproce
    * @param k query k
    */
   public MaterializeKNNAndRKNNPreprocessor(Relation<O> relation, DistanceFunction<? super O> distanceFunction, int k) {
-    super(relation, distanceFunction, k);
+    this(relation, distanceFunction, k, false);
+  }
+
+  /**
+   * Constructor.
+   *
+   * @param relation Relation to process
+   * @param distanceFunction the distance function to use
+   * @param k query k
+   * @param parallel Use parallel bulk queries
+   */
+  public MaterializeKNNAndRKNNPreprocessor(Relation<O> relation, DistanceFunction<? super O> distanceFunction, int k, boolean parallel) {
+    super(relation, distanceFunction, k, parallel);
   }
 
   @Override
@@ -116,7 +129,7 @@ public class MaterializeKNNAndRKNNPreprocessor<O> extends MaterializeKNNPreproce
     }
 
     // knn query
-    List<? extends KNNList> kNNList = knnQuery.getKNNForBulkDBIDs(ids, k);
+    List<? extends KNNList> kNNList = parallel ? ParallelBulkQuery.getKNNForBulkDBIDs(knnQuery, ids, k) : knnQuery.getKNNForBulkDBIDs(ids, k);
     int i = 0;
     for(DBIDIter id = ids.iter(); id.valid(); id.advance(), i++) {
       KNNList kNNs = kNNList.get(i);
@@ -416,12 +429,23 @@ public class MaterializeKNNAndRKNNPreprocessor<O> extends MaterializeKNNPreproce
      * @param distanceFunction distance function
      */
     public Factory(int k, DistanceFunction<? super O> distanceFunction) {
-      super(k, distanceFunction);
+      this(k, distanceFunction, false);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param k k
+     * @param distanceFunction distance function
+     * @param parallel Use parallel bulk queries
+     */
+    public Factory(int k, DistanceFunction<? super O> distanceFunction, boolean parallel) {
+      super(k, distanceFunction, parallel);
     }
 
     @Override
     public MaterializeKNNAndRKNNPreprocessor<O> instantiate(Relation<O> relation) {
-      MaterializeKNNAndRKNNPreprocessor<O> instance = new MaterializeKNNAndRKNNPreprocessor<>(relation, distanceFunction, k);
+      MaterializeKNNAndRKNNPreprocessor<O> instance = new MaterializeKNNAndRKNNPreprocessor<>(relation, distanceFunction, k, parallel);
       return instance;
     }
 
@@ -435,7 +459,7 @@ public class MaterializeKNNAndRKNNPreprocessor<O> extends MaterializeKNNPreproce
     public static class Parameterizer<O> extends MaterializeKNNPreprocessor.Factory.Parameterizer<O> {
       @Override
       protected Factory<O> makeInstance() {
-        return new Factory<>(k, distanceFunction);
+        return new Factory<>(k, distanceFunction, parallel);
       }
     }
   }
@@ -44,9 +44,13 @@ import de.lmu.ifi.dbs.elki.logging.progress.FiniteProgress;
 import de.lmu.ifi.dbs.elki.logging.progress.StepProgress;
 import de.lmu.ifi.dbs.elki.logging.statistics.Duration;
 import de.lmu.ifi.dbs.elki.logging.statistics.LongStatistic;
+import de.lmu.ifi.dbs.elki.parallel.ParallelBulkQuery;
 import de.lmu.ifi.dbs.elki.utilities.Alias;
 import de.lmu.ifi.dbs.elki.utilities.documentation.Description;
 import de.lmu.ifi.dbs.elki.utilities.documentation.Title;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.OptionID;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameterization.Parameterization;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameters.Flag;
 
 /**
  * A preprocessor for annotation of the k nearest neighbors (and their
@@ -73,11 +77,9 @@ public class MaterializeKNNPreprocessor<O> extends AbstractMaterializeKNNPreproc
   private static final Logging LOG = Logging.getLogger(MaterializeKNNPreprocessor.class);
 
   /**
-   * Flag to use bulk operations.
-   *
-   * TODO: right now, bulk is not that good - so don't use
+   * Flag to use parallel bulk operations.
    */
-  private static final boolean usebulk = false;
+  protected final boolean parallel;
 
   /**
    * KNNQuery instance to use.
@@ -97,7 +99,20 @@ public class MaterializeKNNPreprocessor<O> extends AbstractMaterializeKNNPreproc
    * @param k query k
    */
   public MaterializeKNNPreprocessor(Relation<O> relation, DistanceFunction<? super O> distanceFunction, int k) {
+    this(relation, distanceFunction, k, false);
+  }
+
+  /**
+   * Constructor with preprocessing step.
+   *
+   * @param relation Relation to preprocess
+   * @param distanceFunction the distance function to use
+   * @param k query k
+   * @param parallel Use parallel bulk queries
+   */
+  public MaterializeKNNPreprocessor(Relation<O> relation, DistanceFunction<? super O> distanceFunction, int k, boolean parallel) {
     super(relation, distanceFunction, k);
+    this.parallel = parallel;
     this.knnQuery = relation.getKNNQuery(distanceQuery, k, DatabaseQuery.HINT_BULK, DatabaseQuery.HINT_HEAVY_USE, DatabaseQuery.HINT_NO_CACHE);
   }
 
@@ -116,16 +131,12 @@ public class MaterializeKNNPreprocessor<O> extends AbstractMaterializeKNNPreproc
     }
     Duration duration = log.isStatistics() ? log.newDuration(this.getClass().getName() + ".precomputation-time").begin() : null;
     FiniteProgress progress = getLogger().isVerbose() ? new FiniteProgress("Materializing k nearest neighbors (k=" + k + ")", ids.size(), getLogger()) : null;
-    // Try bulk
-    List<? extends KNNList> kNNList = null;
-    if(usebulk) {
-      kNNList = knnQuery.getKNNForBulkDBIDs(ids, k);
-      if(kNNList != null) {
-        int i = 0;
-        for(DBIDIter id = ids.iter(); id.valid(); id.advance(), i++) {
-          storage.put(id, kNNList.get(i));
-          log.incrementProcessed(progress);
-        }
+    if(parallel) {
+      List<? extends KNNList> kNNList = ParallelBulkQuery.getKNNForBulkDBIDs(knnQuery, ids, k);
+      int i = 0;
+      for(DBIDIter id = ids.iter(); id.valid(); id.advance(), i++) {
+        storage.put(id, kNNList.get(i));
+        log.incrementProcessed(progress);
       }
     }
     else {
@@ -393,6 +404,11 @@ public class MaterializeKNNPreprocessor<O> extends AbstractMaterializeKNNPreproc
    * @param <O> The object type
    */
   public static class Factory<O> extends AbstractMaterializeKNNPreprocessor.Factory<O> {
+    /**
+     * Use parallel bulk queries.
+     */
+    protected boolean parallel;
+
     /**
      * Index factory.
      *
@@ -400,12 +416,24 @@ public class MaterializeKNNPreprocessor<O> extends AbstractMaterializeKNNPreproc
      * @param distanceFunction distance function
      */
     public Factory(int k, DistanceFunction<? super O> distanceFunction) {
+      this(k, distanceFunction, false);
+    }
+
+    /**
+     * Index factory.
+     *
+     * @param k k parameter
+     * @param distanceFunction distance function
+     * @param parallel Use parallel bulk queries
+     */
+    public Factory(int k, DistanceFunction<? super O> distanceFunction, boolean parallel) {
       super(k, distanceFunction);
+      this.parallel = parallel;
     }
 
     @Override
     public MaterializeKNNPreprocessor<O> instantiate(Relation<O> relation) {
-      MaterializeKNNPreprocessor<O> instance = new MaterializeKNNPreprocessor<>(relation, distanceFunction, k);
+      MaterializeKNNPreprocessor<O> instance = new MaterializeKNNPreprocessor<>(relation, distanceFunction, k, parallel);
       return instance;
     }
 
@@ -417,9 +445,28 @@ public class MaterializeKNNPreprocessor<O> extends AbstractMaterializeKNNPreproc
      * @apiviz.exclude
      */
     public static class Parameterizer<O> extends AbstractMaterializeKNNPreprocessor.Factory.Parameterizer<O> {
+      /**
+       * Flag to materialize the neighborhoods using parallel bulk queries.
+       */
+      public static final OptionID PARALLEL_ID = new OptionID("materialize.parallel", "Materialize the neighborhoods using parallel bulk queries.");
+
+      /**
+       * Use parallel bulk queries.
+       */
+      protected boolean parallel;
+
+      @Override
+      protected void makeOptions(Parameterization config) {
+        super.makeOptions(config);
+        Flag parallelF = new Flag(PARALLEL_ID);
+        if(config.grab(parallelF)) {
+          parallel = parallelF.isTrue();
+        }
+      }
+
       @Override
       protected Factory<O> makeInstance() {
-        return new Factory<>(k, distanceFunction);
+        return new Factory<>(k, distanceFunction, parallel);
       }
     }
   }
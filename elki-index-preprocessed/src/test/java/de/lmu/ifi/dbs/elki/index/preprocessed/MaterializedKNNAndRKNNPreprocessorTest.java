@@ -39,6 +39,7 @@ import de.lmu.ifi.dbs.elki.data.NumberVector;
 import de.lmu.ifi.dbs.elki.data.VectorUtil;
 import de.lmu.ifi.dbs.elki.data.type.TypeUtil;
 import de.lmu.ifi.dbs.elki.database.AbstractDatabase;
+import de.lmu.ifi.dbs.elki.database.Database;
 import de.lmu.ifi.dbs.elki.database.HashmapDatabase;
 import de.lmu.ifi.dbs.elki.database.UpdatableDatabase;
 import de.lmu.ifi.dbs.elki.database.ids.ArrayDBIDs;
@@ -162,6 +163,23 @@ public class MaterializedKNNAndRKNNPreprocessorTest {
     testRKNNQueries(rep, lin_rknn_query, preproc_rknn_query, k);
   }
 
+  @Test
+  public void testParallelPreprocessor() {
+    Database db = AbstractSimpleAlgorithmTest.makeSimpleDatabase(dataset, shoulds);
+    Relation<DoubleVector> rep = db.getRelation(TypeUtil.DOUBLE_VECTOR_FIELD);
+    DistanceQuery<DoubleVector> distanceQuery = db.getDistanceQuery(rep, EuclideanDistanceFunction.STATIC);
+    LinearScanDistanceKNNQuery<DoubleVector> lin_knn_query = new LinearScanDistanceKNNQuery<>(distanceQuery);
+
+    MaterializeKNNPreprocessor<DoubleVector> preproc = new MaterializeKNNPreprocessor<>(rep, distanceQuery.getDistanceFunction(), k, true);
+    preproc.initialize();
+    testKNNQueries(rep, lin_knn_query, preproc.getKNNQuery(distanceQuery, k), k);
+
+    MaterializeKNNAndRKNNPreprocessor<DoubleVector> rpreproc = new MaterializeKNNAndRKNNPreprocessor<>(rep, distanceQuery.getDistanceFunction(), k, true);
+    rpreproc.initialize();
+    testKNNQueries(rep, lin_knn_query, rpreproc.getKNNQuery(distanceQuery, k), k);
+    testRKNNQueries(rep, new LinearScanRKNNQuery<>(distanceQuery, lin_knn_query, k), rpreproc.getRKNNQuery(distanceQuery), k);
+  }
+
   private void testKNNQueries(Relation<DoubleVector> rep, KNNQuery<DoubleVector> lin_knn_query, KNNQuery<DoubleVector> preproc_knn_query, int k) {
     ArrayDBIDs sample = DBIDUtil.ensureArray(rep.getDBIDs());
     List<? extends KNNList> lin_knn_ids = lin_knn_query.getKNNForBulkDBIDs(sample, k);
@@ -23,6 +23,7 @@ package de.lmu.ifi.dbs.elki.index.tree.spatial.rstarvariants;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.ObjectOutputStream;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Stack;
@@ -43,8 +44,11 @@ import de.lmu.ifi.dbs.elki.index.tree.spatial.SpatialIndexTree;
 import de.lmu.ifi.dbs.elki.index.tree.spatial.SpatialPointLeafEntry;
 import de.lmu.ifi.dbs.elki.index.tree.spatial.rstarvariants.util.NodeArrayAdapter;
 import de.lmu.ifi.dbs.elki.logging.Logging;
+import de.lmu.ifi.dbs.elki.logging.statistics.AtomicLongCounter;
 import de.lmu.ifi.dbs.elki.logging.statistics.Counter;
 import de.lmu.ifi.dbs.elki.logging.statistics.LongStatistic;
+import de.lmu.ifi.dbs.elki.logging.statistics.QueryCounters;
+import de.lmu.ifi.dbs.elki.persistent.MappedPageFile;
 import de.lmu.ifi.dbs.elki.persistent.PageFile;
 import de.lmu.ifi.dbs.elki.utilities.datastructures.BitsUtil;
 import de.lmu.ifi.dbs.elki.utilities.exceptions.AbortException;
@@ -92,6 +96,11 @@ public abstract class AbstractRStarTree<N extends AbstractRStarTreeNode<N, E>, E
    */
   protected S settings;
 
+  /**
+   * Memory-mapped page file with binary nodes, or {@code null}.
+   */
+  private final MappedPageFile<N> mapped;
+
   /**
    * Constructor.
    *
@@ -101,6 +110,25 @@ public abstract class AbstractRStarTree<N extends AbstractRStarTreeNode<N, E>, E
   public AbstractRStarTree(PageFile<N> pagefile, S settings) {
     super(pagefile);
     this.settings = settings;
+    this.mapped = pagefile instanceof MappedPageFile && ((MappedPageFile<N>) pagefile).isBinary() ? (MappedPageFile<N>) pagefile : null;
+  }
+
+  /**
+   * Read a node in the flat binary format of {@link BinaryNodeFormat} directly
+   * from a memory-mapped page file, without materializing the node.
+   *
+   * This is not available for other page files (and for the root node, which
+   * some variants keep in memory); then use {@link #getNode(int)} instead.
+   *
+   * @param nodeID Node id
+   * @return Encoded node, or {@code null}
+   */
+  public ByteBuffer getNodeBuffer(int nodeID) {
+    if(mapped == null || nodeID == getRootID()) {
+      return null;
+    }
+    QueryCounters.countNodeVisit();
+    return mapped.readPageBuffer(nodeID);
   }
 
   /**
@@ -234,6 +262,21 @@ public abstract class AbstractRStarTree<N extends AbstractRStarTreeNode<N, E>, E
     doExtraIntegrityChecks();
   }
 
+  /**
+   * Write a node to the backing storage.
+   *
+   * All modifications of a node, including changes to the bounding boxes of
+   * its entries, are followed by writing the node, so this is where the
+   * packed bounding boxes are invalidated.
+   *
+   * @param node Node to write
+   */
+  @Override
+  protected void writeNode(N node) {
+    node.invalidatePackedMBRs();
+    super.writeNode(node);
+  }
+
   /**
    * Initializes this R*-Tree from an existing persistent file.
    *
@@ -819,6 +862,8 @@ public abstract class AbstractRStarTree<N extends AbstractRStarTreeNode<N, E>, E
   /**
    * Class for tracking some statistics.
    *
+   * The counters are atomic, as bulk queries may run on several threads.
+   *
    * @author Erich Schubert
    *
    * @apiviz.composedOf Counter
@@ -846,9 +891,9 @@ public abstract class AbstractRStarTree<N extends AbstractRStarTreeNode<N, E>, E
       super();
       Logging log = getLogger();
       final String prefix = AbstractRStarTree.this.getClass().getName();
-      distanceCalcs = log.isStatistics() ? log.newCounter(prefix + ".distancecalcs") : null;
-      knnQueries = log.isStatistics() ? log.newCounter(prefix + ".knnqueries") : null;
-      rangeQueries = log.isStatistics() ? log.newCounter(prefix + ".rangequeries") : null;
+      distanceCalcs = log.isStatistics() ? new AtomicLongCounter(prefix + ".distancecalcs") : null;
+      knnQueries = log.isStatistics() ? new AtomicLongCounter(prefix + ".knnqueries") : null;
+      rangeQueries = log.isStatistics() ? new AtomicLongCounter(prefix + ".rangequeries") : null;
     }
 
     /**
@@ -858,6 +903,7 @@ public abstract class AbstractRStarTree<N extends AbstractRStarTreeNode<N, E>, E
       if(distanceCalcs != null) {
         distanceCalcs.increment();
       }
+      QueryCounters.countDistance();
     }
 
     /**
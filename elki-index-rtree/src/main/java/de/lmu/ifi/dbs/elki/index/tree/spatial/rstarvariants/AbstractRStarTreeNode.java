@@ -23,14 +23,19 @@ package de.lmu.ifi.dbs.elki.index.tree.spatial.rstarvariants;
 import java.io.IOException;
 import java.io.ObjectInput;
 import java.io.ObjectOutput;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
 import java.util.logging.Logger;
 
 import de.lmu.ifi.dbs.elki.data.HyperBoundingBox;
 import de.lmu.ifi.dbs.elki.data.ModifiableHyperBoundingBox;
 import de.lmu.ifi.dbs.elki.data.spatial.SpatialComparable;
 import de.lmu.ifi.dbs.elki.data.spatial.SpatialUtil;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDUtil;
 import de.lmu.ifi.dbs.elki.index.tree.AbstractNode;
+import de.lmu.ifi.dbs.elki.index.tree.DirectoryEntry;
 import de.lmu.ifi.dbs.elki.index.tree.Entry;
+import de.lmu.ifi.dbs.elki.index.tree.LeafEntry;
 import de.lmu.ifi.dbs.elki.index.tree.spatial.SpatialDirectoryEntry;
 import de.lmu.ifi.dbs.elki.index.tree.spatial.SpatialEntry;
 import de.lmu.ifi.dbs.elki.index.tree.spatial.SpatialNode;
@@ -46,6 +51,11 @@ import de.lmu.ifi.dbs.elki.logging.LoggingConfiguration;
  * @param <E> Entry type
  */
 public abstract class AbstractRStarTreeNode<N extends AbstractRStarTreeNode<N, E>, E extends SpatialEntry> extends AbstractNode<E> implements SpatialNode<N, E> {
+  /**
+   * Packed bounding boxes of the entries, built on demand.
+   */
+  private transient volatile PackedMBRs packed;
+
   /**
    * Empty constructor for Externalizable interface.
    */
@@ -128,6 +138,29 @@ public abstract class AbstractRStarTreeNode<N extends AbstractRStarTreeNode<N, E
     return ((SpatialDirectoryEntry) entry).extendMBR(responsibleMBR);
   }
 
+  /**
+   * Get the bounding boxes of all entries, packed into primitive arrays.
+   *
+   * The packed copy is built on first use, and must be invalidated using
+   * {@link #invalidatePackedMBRs()} whenever the entries are modified.
+   *
+   * @return Packed bounding boxes
+   */
+  public PackedMBRs getPackedMBRs() {
+    PackedMBRs p = packed;
+    if(p == null) {
+      packed = p = new PackedMBRs(this);
+    }
+    return p;
+  }
+
+  /**
+   * Discard the packed bounding boxes, after the entries were modified.
+   */
+  public void invalidatePackedMBRs() {
+    packed = null;
+  }
+
   /**
    * Tests this node (for debugging purposes).
    */
@@ -260,4 +293,65 @@ public abstract class AbstractRStarTreeNode<N extends AbstractRStarTreeNode<N, E
       }
     }
   }
-}
\ No newline at end of file
+
+  /**
+   * Write this node in the flat binary format of {@link BinaryNodeFormat}.
+   *
+   * Only the coordinates and ids are stored, so this is only applicable to
+   * nodes with plain {@link SpatialPointLeafEntry} and
+   * {@link SpatialDirectoryEntry} entries.
+   *
+   * @param buf Buffer to write to
+   */
+  public void writeToByteBuffer(ByteBuffer buf) {
+    final int dim = numEntries > 0 ? getEntry(0).getDimensionality() : 0;
+    if(BinaryNodeFormat.encodedSize(isLeaf, numEntries, dim) > buf.limit()) {
+      throw new BufferOverflowException();
+    }
+    int off = BinaryNodeFormat.writeHeader(buf, getPageID(), isLeaf, numEntries, entries.length, dim);
+    for(int i = 0, ioff = BinaryNodeFormat.HEADER_SIZE; i < numEntries; i++, ioff += 4) {
+      E e = getEntry(i);
+      buf.putInt(ioff, isLeaf ? DBIDUtil.asInteger(((LeafEntry) e).getDBID()) : ((DirectoryEntry) e).getPageID());
+      for(int d = 0; d < dim; d++, off += 8) {
+        buf.putDouble(off, e.getMin(d));
+      }
+      if(!isLeaf) {
+        for(int d = 0; d < dim; d++, off += 8) {
+          buf.putDouble(off, e.getMax(d));
+        }
+      }
+    }
+  }
+
+  /**
+   * Restore this node from the flat binary format of {@link BinaryNodeFormat}.
+   *
+   * @param buf Buffer to read from
+   */
+  @SuppressWarnings("unchecked")
+  public void readFromByteBuffer(ByteBuffer buf) {
+    setPageID(BinaryNodeFormat.getPageID(buf));
+    isLeaf = BinaryNodeFormat.isLeaf(buf);
+    numEntries = BinaryNodeFormat.getNumEntries(buf);
+    final int capacity = BinaryNodeFormat.getCapacity(buf);
+    final int dim = BinaryNodeFormat.getDimensionality(buf);
+    int off = BinaryNodeFormat.encodedSize(isLeaf, numEntries, 0);
+    entries = isLeaf ? new SpatialPointLeafEntry[capacity] : new SpatialDirectoryEntry[capacity];
+    for(int i = 0, ioff = BinaryNodeFormat.HEADER_SIZE; i < numEntries; i++, ioff += 4) {
+      final int id = buf.getInt(ioff);
+      double[] min = new double[dim];
+      for(int d = 0; d < dim; d++, off += 8) {
+        min[d] = buf.getDouble(off);
+      }
+      if(isLeaf) {
+        entries[i] = (E) new SpatialPointLeafEntry(DBIDUtil.importInteger(id), min);
+        continue;
+      }
+      double[] max = new double[dim];
+      for(int d = 0; d < dim; d++, off += 8) {
+        max[d] = buf.getDouble(off);
+      }
+      entries[i] = (E) new SpatialDirectoryEntry(id, new ModifiableHyperBoundingBox(min, max));
+    }
+  }
+}
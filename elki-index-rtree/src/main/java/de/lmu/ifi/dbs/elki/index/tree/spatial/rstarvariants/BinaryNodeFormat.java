@@ -0,0 +1,325 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2017
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.lmu.ifi.dbs.elki.index.tree.spatial.rstarvariants;
+
+import java.nio.ByteBuffer;
+
+import de.lmu.ifi.dbs.elki.data.spatial.SpatialComparable;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDFactory;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDVar;
+
+/**
+ * Flat binary encoding of R*-tree nodes.
+ *
+ * The layout consists of a fixed header (page id, flags, number of entries,
+ * capacity and dimensionality), the entry ids (object ids in leaves, page ids
+ * in directory nodes), followed by the packed coordinates, aligned to 8 bytes.
+ * Leaf entries store their coordinates, directory entries all minima followed
+ * by all maxima of their MBR.
+ *
+ * The static accessors read the entries directly from the buffer, so queries
+ * on a memory-mapped page file do not need to materialize the nodes, see
+ * {@link AbstractRStarTree#getNodeBuffer}.
+ *
+ * @author Erich Schubert
+ * @since 0.7.2
+ *
+ * @apiviz.has EntryView
+ */
+public final class BinaryNodeFormat {
+  /**
+   * Offset of the page id.
+   */
+  static final int OFFSET_PAGEID = 0;
+
+  /**
+   * Offset of the flags.
+   */
+  static final int OFFSET_FLAGS = 4;
+
+  /**
+   * Offset of the number of entries.
+   */
+  static final int OFFSET_NUMENTRIES = 8;
+
+  /**
+   * Offset of the node capacity.
+   */
+  static final int OFFSET_CAPACITY = 12;
+
+  /**
+   * Offset of the dimensionality.
+   */
+  static final int OFFSET_DIM = 16;
+
+  /**
+   * Header size; entry ids start here.
+   */
+  static final int HEADER_SIZE = 24;
+
+  /**
+   * Flag for leaf nodes.
+   */
+  static final int FLAG_LEAF = 1;
+
+  /**
+   * Fake constructor: do not instantiate.
+   */
+  private BinaryNodeFormat() {
+    // Do not instantiate.
+  }
+
+  /**
+   * Size of an encoded node.
+   *
+   * @param leaf Leaf flag
+   * @param numEntries Number of entries
+   * @param dim Dimensionality
+   * @return Size in bytes
+   */
+  static int encodedSize(boolean leaf, int numEntries, int dim) {
+    return dataOffset(numEntries) + ((numEntries * (leaf ? dim : dim << 1)) << 3);
+  }
+
+  /**
+   * Offset of the first coordinate.
+   *
+   * @param numEntries Number of entries
+   * @return Offset
+   */
+  private static int dataOffset(int numEntries) {
+    return HEADER_SIZE + (((numEntries << 2) + 7) & ~7);
+  }
+
+  /**
+   * Get the page id of the encoded node.
+   *
+   * @param buf Buffer
+   * @return Page id
+   */
+  public static int getPageID(ByteBuffer buf) {
+    return buf.getInt(OFFSET_PAGEID);
+  }
+
+  /**
+   * Test whether the encoded node is a leaf.
+   *
+   * @param buf Buffer
+   * @return {@code true} for leaf nodes
+   */
+  public static boolean isLeaf(ByteBuffer buf) {
+    return (buf.getInt(OFFSET_FLAGS) & FLAG_LEAF) != 0;
+  }
+
+  /**
+   * Get the number of entries of the encoded node.
+   *
+   * @param buf Buffer
+   * @return Number of entries
+   */
+  public static int getNumEntries(ByteBuffer buf) {
+    return buf.getInt(OFFSET_NUMENTRIES);
+  }
+
+  /**
+   * Get the capacity of the encoded node.
+   *
+   * @param buf Buffer
+   * @return Capacity
+   */
+  public static int getCapacity(ByteBuffer buf) {
+    return buf.getInt(OFFSET_CAPACITY);
+  }
+
+  /**
+   * Get the dimensionality of the encoded node.
+   *
+   * @param buf Buffer
+   * @return Dimensionality
+   */
+  public static int getDimensionality(ByteBuffer buf) {
+    return buf.getInt(OFFSET_DIM);
+  }
+
+  /**
+   * Get the id of an entry: the object id in leaves, the child page id in
+   * directory nodes.
+   *
+   * @param buf Buffer
+   * @param i Entry number
+   * @return Id
+   */
+  public static int getEntryID(ByteBuffer buf, int i) {
+    return buf.getInt(HEADER_SIZE + (i << 2));
+  }
+
+  /**
+   * Assign the object id of a leaf entry to a variable.
+   *
+   * @param buf Buffer
+   * @param i Entry number
+   * @param var Variable to assign to
+   * @return {@code var}
+   */
+  public static DBIDVar assignDBID(ByteBuffer buf, int i, DBIDVar var) {
+    DBIDFactory.FACTORY.assignVar(var, getEntryID(buf, i));
+    return var;
+  }
+
+  /**
+   * Get the lower bound of an entry.
+   *
+   * @param buf Buffer
+   * @param i Entry number
+   * @param d Dimension
+   * @return Minimum
+   */
+  public static double getMin(ByteBuffer buf, int i, int d) {
+    return buf.getDouble(entryOffset(buf, i) + (d << 3));
+  }
+
+  /**
+   * Get the upper bound of an entry.
+   *
+   * @param buf Buffer
+   * @param i Entry number
+   * @param d Dimension
+   * @return Maximum
+   */
+  public static double getMax(ByteBuffer buf, int i, int d) {
+    final int off = entryOffset(buf, i) + (d << 3);
+    return isLeaf(buf) ? buf.getDouble(off) : buf.getDouble(off + (getDimensionality(buf) << 3));
+  }
+
+  /**
+   * Offset of the coordinates of an entry.
+   *
+   * @param buf Buffer
+   * @param i Entry number
+   * @return Offset
+   */
+  private static int entryOffset(ByteBuffer buf, int i) {
+    final int dim = getDimensionality(buf);
+    return dataOffset(getNumEntries(buf)) + ((i * (isLeaf(buf) ? dim : dim << 1)) << 3);
+  }
+
+  /**
+   * Compute the squared Euclidean minimum distance of a query point to every
+   * entry of the encoded node, in a single pass over the buffer.
+   *
+   * The results are the same as
+   * {@link de.lmu.ifi.dbs.elki.distance.distancefunction.minkowski.SquaredEuclideanDistanceFunction#minDist}.
+   *
+   * @param buf Buffer
+   * @param query Query point, of the same dimensionality
+   * @param out Output array, of length at least {@link #getNumEntries}
+   */
+  public static void squaredMinDists(ByteBuffer buf, double[] query, double[] out) {
+    final int size = getNumEntries(buf), dim = getDimensionality(buf);
+    // Offset of the maximum relative to the minimum:
+    final int maxoff = isLeaf(buf) ? 0 : dim << 3;
+    for(int i = 0, off = dataOffset(size); i < size; i++, off += maxoff) {
+      double agg = 0.;
+      for(int d = 0; d < dim; d++, off += 8) {
+        final double value = query[d];
+        double delta = buf.getDouble(off) - value;
+        delta = delta >= 0. ? delta : value - buf.getDouble(off + maxoff);
+        if(delta > 0.) {
+          agg += delta * delta;
+        }
+      }
+      out[i] = agg;
+    }
+  }
+
+  /**
+   * Write the node header and the entry ids.
+   *
+   * @param buf Buffer
+   * @param pageID Page id
+   * @param leaf Leaf flag
+   * @param numEntries Number of entries
+   * @param capacity Capacity
+   * @param dim Dimensionality
+   * @return Offset of the first coordinate
+   */
+  static int writeHeader(ByteBuffer buf, int pageID, boolean leaf, int numEntries, int capacity, int dim) {
+    buf.putInt(OFFSET_PAGEID, pageID);
+    buf.putInt(OFFSET_FLAGS, leaf ? FLAG_LEAF : 0);
+    buf.putInt(OFFSET_NUMENTRIES, numEntries);
+    buf.putInt(OFFSET_CAPACITY, capacity);
+    buf.putInt(OFFSET_DIM, dim);
+    return dataOffset(numEntries);
+  }
+
+  /**
+   * Flyweight view of one encoded entry, which can be passed to spatial
+   * distance functions without materializing the entry.
+   *
+   * @author Erich Schubert
+   */
+  public static class EntryView implements SpatialComparable {
+    /**
+     * Buffer of the current node.
+     */
+    private ByteBuffer buf;
+
+    /**
+     * Dimensionality.
+     */
+    private int dim;
+
+    /**
+     * Offset of the minima and maxima.
+     */
+    private int minoff, maxoff;
+
+    /**
+     * Move the view to an entry.
+     *
+     * @param buf Buffer of the node
+     * @param i Entry number
+     * @return {@code this}
+     */
+    public EntryView moveTo(ByteBuffer buf, int i) {
+      this.buf = buf;
+      this.dim = BinaryNodeFormat.getDimensionality(buf);
+      this.minoff = entryOffset(buf, i);
+      this.maxoff = isLeaf(buf) ? minoff : minoff + (dim << 3);
+      return this;
+    }
+
+    @Override
+    public int getDimensionality() {
+      return dim;
+    }
+
+    @Override
+    public double getMin(int d) {
+      return buf.getDouble(minoff + (d << 3));
+    }
+
+    @Override
+    public double getMax(int d) {
+      return buf.getDouble(maxoff + (d << 3));
+    }
+  }
+}
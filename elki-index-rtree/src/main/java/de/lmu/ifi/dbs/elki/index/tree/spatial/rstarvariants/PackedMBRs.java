@@ -0,0 +1,125 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2017
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.lmu.ifi.dbs.elki.index.tree.spatial.rstarvariants;
+
+import de.lmu.ifi.dbs.elki.data.spatial.SpatialComparable;
+
+/**
+ * Packed copy of the bounding boxes of the entries of a node, as two
+ * entry-major arrays of minima and maxima.
+ * 
+ * This allows computing the distances to all entries of a node in a single
+ * loop over primitive arrays, instead of calling
+ * {@link SpatialComparable#getMin} and {@link SpatialComparable#getMax} on
+ * every entry. Instances are immutable, and hence can be shared by concurrent
+ * queries.
+ * 
+ * @author Erich Schubert
+ * @since 0.7.2
+ */
+public final class PackedMBRs {
+  /**
+   * Minima, entry-major.
+   */
+  private final double[] mins;
+
+  /**
+   * Maxima, entry-major.
+   */
+  private final double[] maxs;
+
+  /**
+   * Number of entries.
+   */
+  private final int size;
+
+  /**
+   * Dimensionality.
+   */
+  private final int dim;
+
+  /**
+   * Constructor.
+   * 
+   * @param node Node to pack
+   */
+  public PackedMBRs(AbstractRStarTreeNode<?, ?> node) {
+    final int size = node.getNumEntries();
+    final int dim = size > 0 ? node.getEntry(0).getDimensionality() : 0;
+    final double[] mins = new double[size * dim], maxs = new double[size * dim];
+    for(int i = 0, off = 0; i < size; i++, off += dim) {
+      final SpatialComparable mbr = node.getEntry(i);
+      for(int d = 0; d < dim; d++) {
+        mins[off + d] = mbr.getMin(d);
+        maxs[off + d] = mbr.getMax(d);
+      }
+    }
+    this.mins = mins;
+    this.maxs = maxs;
+    this.size = size;
+    this.dim = dim;
+  }
+
+  /**
+   * Number of entries.
+   * 
+   * @return Size
+   */
+  public int size() {
+    return size;
+  }
+
+  /**
+   * Dimensionality of the entries.
+   * 
+   * @return Dimensionality
+   */
+  public int getDimensionality() {
+    return dim;
+  }
+
+  /**
+   * Compute the squared Euclidean minimum distance of a query point to every
+   * entry.
+   * 
+   * The results are the same as
+   * {@link de.lmu.ifi.dbs.elki.distance.distancefunction.minkowski.SquaredEuclideanDistanceFunction#minDist}.
+   * 
+   * @param query Query point, of the same dimensionality
+   * @param out Output array, of length at least {@link #size()}
+   */
+  public void squaredMinDists(double[] query, double[] out) {
+    final double[] mins = this.mins, maxs = this.maxs;
+    final int dim = this.dim;
+    for(int i = 0, off = 0; i < size; i++, off += dim) {
+      double agg = 0.;
+      for(int d = 0; d < dim; d++) {
+        final double value = query[d];
+        double delta = mins[off + d] - value;
+        delta = delta >= 0. ? delta : value - maxs[off + d];
+        if(delta > 0.) {
+          agg += delta * delta;
+        }
+      }
+      out[i] = agg;
+    }
+  }
+}
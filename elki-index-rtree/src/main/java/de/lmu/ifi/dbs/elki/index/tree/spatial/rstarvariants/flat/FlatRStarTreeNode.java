@@ -23,6 +23,8 @@ package de.lmu.ifi.dbs.elki.index.tree.spatial.rstarvariants.flat;
 import java.util.Arrays;
 import de.lmu.ifi.dbs.elki.index.tree.spatial.SpatialEntry;
 import de.lmu.ifi.dbs.elki.index.tree.spatial.rstarvariants.AbstractRStarTreeNode;
+import de.lmu.ifi.dbs.elki.persistent.ByteBufferPage;
+import de.lmu.ifi.dbs.elki.persistent.ExternalizablePage;
 
 /**
  * Represents a node in a flat R*-Tree.
@@ -30,7 +32,7 @@ import de.lmu.ifi.dbs.elki.index.tree.spatial.rstarvariants.AbstractRStarTreeNod
  * @author Elke Achtert
  * @since 0.2
  */
-public class FlatRStarTreeNode extends AbstractRStarTreeNode<FlatRStarTreeNode, SpatialEntry> {
+public class FlatRStarTreeNode extends AbstractRStarTreeNode<FlatRStarTreeNode, SpatialEntry> implements ExternalizablePage, ByteBufferPage {
   /**
    * Serial version
    */
@@ -20,6 +20,7 @@
  */
 package de.lmu.ifi.dbs.elki.index.tree.spatial.rstarvariants.query;
 
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
@@ -34,6 +35,8 @@ import de.lmu.ifi.dbs.elki.index.tree.spatial.SpatialDirectoryEntry;
 import de.lmu.ifi.dbs.elki.index.tree.spatial.SpatialPointLeafEntry;
 import de.lmu.ifi.dbs.elki.index.tree.spatial.rstarvariants.AbstractRStarTree;
 import de.lmu.ifi.dbs.elki.index.tree.spatial.rstarvariants.AbstractRStarTreeNode;
+import de.lmu.ifi.dbs.elki.index.tree.spatial.rstarvariants.BinaryNodeFormat;
+import de.lmu.ifi.dbs.elki.index.tree.spatial.rstarvariants.PackedMBRs;
 import de.lmu.ifi.dbs.elki.utilities.datastructures.heap.DoubleIntegerMinHeap;
 import de.lmu.ifi.dbs.elki.utilities.documentation.Reference;
 
@@ -83,8 +86,11 @@ public class EuclideanRStarTreeKNNQuery<O extends NumberVector> extends RStarTre
     final KNNHeap knnList = DBIDUtil.newHeap(k);
     final DoubleIntegerMinHeap pq = new DoubleIntegerMinHeap(Math.min(knnList.getK() << 1, 21));
 
-    // expand root
-    double maxDist = expandNode(obj, knnList, pq, Double.MAX_VALUE, tree.getRootID());
+    final double[] query = obj.toArray();
+    final DBIDVar var = DBIDUtil.newVar();
+    double[] dists = new double[0];
+    double maxDist = Double.MAX_VALUE;
+    pq.add(0., tree.getRootID());
 
     // search in tree
     while(!pq.isEmpty()) {
@@ -94,42 +100,63 @@ public class EuclideanRStarTreeKNNQuery<O extends NumberVector> extends RStarTre
       }
       int nodeID = pq.peekValue();
       pq.poll(); // Remove from heap.
-      maxDist = expandNode(obj, knnList, pq, maxDist, nodeID);
-    }
-    return knnList.toKNNListSqrt();
-  }
-
-  private double expandNode(O object, KNNHeap knnList, DoubleIntegerMinHeap pq, double maxDist, final int nodeID) {
-    AbstractRStarTreeNode<?, ?> node = tree.getNode(nodeID);
-    // data node
-    if(node.isLeaf()) {
-      for(int i = 0; i < node.getNumEntries(); i++) {
-        SpatialPointLeafEntry entry = (SpatialPointLeafEntry) node.getEntry(i);
-        double distance = SQUARED.minDist(entry, object);
-        tree.statistics.countDistanceCalculation();
-        if(distance <= maxDist) {
-          maxDist = knnList.insert(distance, entry.getDBID());
+      prefetch(pq, maxDist);
+      final ByteBuffer buf = tree.getNodeBuffer(nodeID);
+      if(buf != null) {
+        // Read the entries directly from the mapped page file:
+        final int numEntries = BinaryNodeFormat.getNumEntries(buf);
+        final boolean leaf = BinaryNodeFormat.isLeaf(buf);
+        if(dists.length < numEntries) {
+          dists = new double[numEntries];
+        }
+        BinaryNodeFormat.squaredMinDists(buf, query, dists);
+        for(int i = 0; i < numEntries; i++) {
+          double distance = dists[i];
+          tree.statistics.countDistanceCalculation();
+          if(distance <= maxDist) {
+            if(leaf) {
+              maxDist = knnList.insert(distance, BinaryNodeFormat.assignDBID(buf, i, var));
+            }
+            else {
+              pq.add(distance, BinaryNodeFormat.getEntryID(buf, i));
+            }
+          }
         }
+        continue;
       }
-    }
-    // directory node
-    else {
-      for(int i = 0; i < node.getNumEntries(); i++) {
-        SpatialDirectoryEntry entry = (SpatialDirectoryEntry) node.getEntry(i);
-        double distance = SQUARED.minDist(entry, object);
-        tree.statistics.countDistanceCalculation();
-        // Greedy expand, bypassing the queue
-        if(distance <= 0) {
-          expandNode(object, knnList, pq, maxDist, entry.getPageID());
+      AbstractRStarTreeNode<?, ?> node = tree.getNode(nodeID);
+      final int numEntries = node.getNumEntries();
+      // data node
+      if(node.isLeaf()) {
+        for(int i = 0; i < numEntries; i++) {
+          SpatialPointLeafEntry entry = (SpatialPointLeafEntry) node.getEntry(i);
+          double distance = SQUARED.minDist(entry, obj);
+          tree.statistics.countDistanceCalculation();
+          if(distance <= maxDist) {
+            maxDist = knnList.insert(distance, entry.getDBID());
+          }
         }
-        else {
+      }
+      // directory node
+      else {
+        // Compute the distances to all children at once:
+        final PackedMBRs mbrs = node.getPackedMBRs();
+        if(dists.length < numEntries) {
+          dists = new double[numEntries];
+        }
+        mbrs.squaredMinDists(query, dists);
+        for(int i = 0; i < numEntries; i++) {
+          double distance = dists[i];
+          tree.statistics.countDistanceCalculation();
+          // Children containing the query (distance 0) are expanded next.
           if(distance <= maxDist) {
+            SpatialDirectoryEntry entry = (SpatialDirectoryEntry) node.getEntry(i);
             pq.add(distance, entry.getPageID());
           }
         }
       }
     }
-    return maxDist;
+    return knnList.toKNNListSqrt();
   }
 
   @Override
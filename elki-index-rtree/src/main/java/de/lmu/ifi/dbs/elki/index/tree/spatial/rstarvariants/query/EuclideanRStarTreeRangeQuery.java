@@ -20,9 +20,12 @@
  */
 package de.lmu.ifi.dbs.elki.index.tree.spatial.rstarvariants.query;
 
+import java.nio.ByteBuffer;
 import java.util.Arrays;
 
 import de.lmu.ifi.dbs.elki.data.NumberVector;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDUtil;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDVar;
 import de.lmu.ifi.dbs.elki.database.ids.ModifiableDoubleDBIDList;
 import de.lmu.ifi.dbs.elki.database.relation.Relation;
 import de.lmu.ifi.dbs.elki.distance.distancefunction.minkowski.EuclideanDistanceFunction;
@@ -31,6 +34,8 @@ import de.lmu.ifi.dbs.elki.index.tree.spatial.SpatialDirectoryEntry;
 import de.lmu.ifi.dbs.elki.index.tree.spatial.SpatialPointLeafEntry;
 import de.lmu.ifi.dbs.elki.index.tree.spatial.rstarvariants.AbstractRStarTree;
 import de.lmu.ifi.dbs.elki.index.tree.spatial.rstarvariants.AbstractRStarTreeNode;
+import de.lmu.ifi.dbs.elki.index.tree.spatial.rstarvariants.BinaryNodeFormat;
+import de.lmu.ifi.dbs.elki.index.tree.spatial.rstarvariants.PackedMBRs;
 import de.lmu.ifi.dbs.elki.utilities.documentation.Reference;
 import net.jafama.FastMath;
 
@@ -75,6 +80,9 @@ public class EuclideanRStarTreeRangeQuery<O extends NumberVector> extends RStarT
   public void getRangeForObject(O object, double range, ModifiableDoubleDBIDList result) {
     tree.statistics.countRangeQuery();
     final double sqepsilon = range * range;
+    final double[] query = object.toArray();
+    final DBIDVar var = DBIDUtil.newVar();
+    double[] dists = new double[0];
 
     // Processing queue.
     int[] pq = new int[101];
@@ -84,6 +92,32 @@ public class EuclideanRStarTreeRangeQuery<O extends NumberVector> extends RStarT
     // search in tree
     while(ps > 0) {
       int pqNode = pq[--ps]; // Pop last.
+      final ByteBuffer buf = tree.getNodeBuffer(pqNode);
+      if(buf != null) {
+        // Read the entries directly from the mapped page file:
+        final int numEntries = BinaryNodeFormat.getNumEntries(buf);
+        final boolean leaf = BinaryNodeFormat.isLeaf(buf);
+        if(dists.length < numEntries) {
+          dists = new double[numEntries];
+        }
+        BinaryNodeFormat.squaredMinDists(buf, query, dists);
+        for(int i = 0; i < numEntries; i++) {
+          double distance = dists[i];
+          if(leaf) {
+            tree.statistics.countDistanceCalculation();
+            if(distance <= sqepsilon) {
+              result.add(FastMath.sqrt(distance), BinaryNodeFormat.assignDBID(buf, i, var));
+            }
+          }
+          else if(distance <= sqepsilon) {
+            if(ps == pq.length) { // Resize:
+              pq = Arrays.copyOf(pq, pq.length + (pq.length >>> 1));
+            }
+            pq[ps++] = BinaryNodeFormat.getEntryID(buf, i);
+          }
+        }
+        continue;
+      }
       AbstractRStarTreeNode<?, ?> node = tree.getNode(pqNode);
       final int numEntries = node.getNumEntries();
 
@@ -98,10 +132,16 @@ public class EuclideanRStarTreeRangeQuery<O extends NumberVector> extends RStarT
         }
       }
       else {
+        // Compute the distances to all children at once:
+        final PackedMBRs mbrs = node.getPackedMBRs();
+        if(dists.length < numEntries) {
+          dists = new double[numEntries];
+        }
+        mbrs.squaredMinDists(query, dists);
         for(int i = 0; i < numEntries; i++) {
-          SpatialDirectoryEntry entry = (SpatialDirectoryEntry) node.getEntry(i);
-          double distance = SQUARED.minDist(object, entry);
+          double distance = dists[i];
           if(distance <= sqepsilon) {
+            SpatialDirectoryEntry entry = (SpatialDirectoryEntry) node.getEntry(i);
             if(ps == pq.length) { // Resize:
               pq = Arrays.copyOf(pq, pq.length + (pq.length >>> 1));
             }
@@ -20,6 +20,7 @@
  */
 package de.lmu.ifi.dbs.elki.index.tree.spatial.rstarvariants.query;
 
+import java.nio.ByteBuffer;
 import java.util.*;
 import java.util.Map.Entry;
 
@@ -35,6 +36,8 @@ import de.lmu.ifi.dbs.elki.index.tree.spatial.SpatialEntry;
 import de.lmu.ifi.dbs.elki.index.tree.spatial.SpatialPointLeafEntry;
 import de.lmu.ifi.dbs.elki.index.tree.spatial.rstarvariants.AbstractRStarTree;
 import de.lmu.ifi.dbs.elki.index.tree.spatial.rstarvariants.AbstractRStarTreeNode;
+import de.lmu.ifi.dbs.elki.index.tree.spatial.rstarvariants.BinaryNodeFormat;
+import de.lmu.ifi.dbs.elki.utilities.datastructures.heap.DoubleIntegerHeap;
 import de.lmu.ifi.dbs.elki.utilities.datastructures.heap.DoubleIntegerMinHeap;
 import de.lmu.ifi.dbs.elki.utilities.documentation.Reference;
 
@@ -60,6 +63,11 @@ title = "Ranking in spatial databases", //
 booktitle = "Advances in Spatial Databases - 4th Symposium, SSD'95", //
 url = "http://dx.doi.org/10.1007/3-540-60159-7_6")
 public class RStarTreeKNNQuery<O extends SpatialComparable> implements KNNQuery<O> {
+  /**
+   * Number of queued nodes to announce to the page file for prefetching.
+   */
+  protected static final int PREFETCH = 4;
+
   /**
    * The index to use
    */
@@ -104,8 +112,11 @@ public class RStarTreeKNNQuery<O extends SpatialComparable> implements KNNQuery<
     final KNNHeap knnList = DBIDUtil.newHeap(k);
     final DoubleIntegerMinHeap pq = new DoubleIntegerMinHeap(Math.min(knnList.getK() << 1, 21));
 
+    final BinaryNodeFormat.EntryView view = new BinaryNodeFormat.EntryView();
+    final DBIDVar var = DBIDUtil.newVar();
+
     // expand root
-    double maxDist = expandNode(obj, knnList, pq, Double.MAX_VALUE, tree.getRootID());
+    double maxDist = expandNode(obj, knnList, pq, Double.MAX_VALUE, tree.getRootID(), view, var);
 
     // search in tree
     while(!pq.isEmpty()) {
@@ -116,12 +127,67 @@ public class RStarTreeKNNQuery<O extends SpatialComparable> implements KNNQuery<
       }
       int nodeID = pq.peekValue();
       pq.poll(); // Remove from heap.
-      maxDist = expandNode(obj, knnList, pq, maxDist, nodeID);
+      prefetch(pq, maxDist);
+      maxDist = expandNode(obj, knnList, pq, maxDist, nodeID, view, var);
     }
     return knnList.toKNNList();
   }
 
-  private double expandNode(O object, KNNHeap knnList, DoubleIntegerMinHeap pq, double maxDist, final int nodeID) {
+  /**
+   * Announce the next candidate nodes to the page file, so that they can be
+   * loaded asynchronously while the current node is processed.
+   * 
+   * The first positions of the heap array are its top levels, and hence
+   * contain the next nodes to be expanded.
+   * 
+   * @param pq Priority queue
+   * @param maxDist Current pruning distance
+   */
+  protected void prefetch(DoubleIntegerMinHeap pq, double maxDist) {
+    int i = 0;
+    for(DoubleIntegerHeap.UnsortedIter it = pq.unsortedIter(); it.valid() && i < PREFETCH; it.advance(), i++) {
+      if(it.getKey() <= maxDist) {
+        tree.prefetchNode(it.getValue());
+      }
+    }
+  }
+
+  /**
+   * Expand a node: add its objects to the result, and its children to the
+   * queue, children containing the query are expanded immediately.
+   * 
+   * @param object Query object
+   * @param knnList Result heap
+   * @param pq Priority queue
+   * @param maxDist Current pruning distance
+   * @param nodeID Node to expand
+   * @param view Entry view for encoded nodes
+   * @param var Variable for object ids of encoded nodes
+   * @return New pruning distance
+   */
+  private double expandNode(O object, KNNHeap knnList, DoubleIntegerMinHeap pq, double maxDist, final int nodeID, BinaryNodeFormat.EntryView view, DBIDVar var) {
+    final ByteBuffer buf = tree.getNodeBuffer(nodeID);
+    if(buf != null) {
+      // Read the entries directly from the mapped page file:
+      final boolean leaf = BinaryNodeFormat.isLeaf(buf);
+      for(int i = 0, numEntries = BinaryNodeFormat.getNumEntries(buf); i < numEntries; i++) {
+        double distance = distanceFunction.minDist(view.moveTo(buf, i), object);
+        tree.statistics.countDistanceCalculation();
+        if(leaf) {
+          if(distance <= maxDist) {
+            maxDist = knnList.insert(distance, BinaryNodeFormat.assignDBID(buf, i, var));
+          }
+        }
+        // Greedy expand, bypassing the queue
+        else if(distance <= 0) {
+          expandNode(object, knnList, pq, maxDist, BinaryNodeFormat.getEntryID(buf, i), view, var);
+        }
+        else if(distance <= maxDist) {
+          pq.add(distance, BinaryNodeFormat.getEntryID(buf, i));
+        }
+      }
+      return maxDist;
+    }
     AbstractRStarTreeNode<?, ?> node = tree.getNode(nodeID);
     // data node
     if(node.isLeaf()) {
@@ -142,7 +208,7 @@ public class RStarTreeKNNQuery<O extends SpatialComparable> implements KNNQuery<
         tree.statistics.countDistanceCalculation();
         // Greedy expand, bypassing the queue
         if(distance <= 0) {
-          expandNode(object, knnList, pq, maxDist, entry.getPageID());
+          expandNode(object, knnList, pq, maxDist, entry.getPageID(), view, var);
         }
         else {
           if(distance <= maxDist) {
@@ -20,11 +20,13 @@
  */
 package de.lmu.ifi.dbs.elki.index.tree.spatial.rstarvariants.query;
 
+import java.nio.ByteBuffer;
 import java.util.Arrays;
 
 import de.lmu.ifi.dbs.elki.data.spatial.SpatialComparable;
 import de.lmu.ifi.dbs.elki.database.ids.DBIDRef;
 import de.lmu.ifi.dbs.elki.database.ids.DBIDUtil;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDVar;
 import de.lmu.ifi.dbs.elki.database.ids.DoubleDBIDList;
 import de.lmu.ifi.dbs.elki.database.ids.ModifiableDoubleDBIDList;
 import de.lmu.ifi.dbs.elki.database.query.range.RangeQuery;
@@ -34,6 +36,7 @@ import de.lmu.ifi.dbs.elki.index.tree.spatial.SpatialDirectoryEntry;
 import de.lmu.ifi.dbs.elki.index.tree.spatial.SpatialPointLeafEntry;
 import de.lmu.ifi.dbs.elki.index.tree.spatial.rstarvariants.AbstractRStarTree;
 import de.lmu.ifi.dbs.elki.index.tree.spatial.rstarvariants.AbstractRStarTreeNode;
+import de.lmu.ifi.dbs.elki.index.tree.spatial.rstarvariants.BinaryNodeFormat;
 import de.lmu.ifi.dbs.elki.utilities.documentation.Reference;
 
 /**
@@ -108,6 +111,8 @@ public class RStarTreeRangeQuery<O extends SpatialComparable> implements RangeQu
   @Override
   public void getRangeForObject(O obj, double range, ModifiableDoubleDBIDList result) {
     tree.statistics.countRangeQuery();
+    final BinaryNodeFormat.EntryView view = new BinaryNodeFormat.EntryView();
+    final DBIDVar var = DBIDUtil.newVar();
 
     // Processing queue.
     int[] pq = new int[101];
@@ -117,6 +122,27 @@ public class RStarTreeRangeQuery<O extends SpatialComparable> implements RangeQu
     // search in tree
     while(ps > 0) {
       int pqNode = pq[--ps]; // Pop last.
+      final ByteBuffer buf = tree.getNodeBuffer(pqNode);
+      if(buf != null) {
+        // Read the entries directly from the mapped page file:
+        final boolean leaf = BinaryNodeFormat.isLeaf(buf);
+        for(int i = 0, numEntries = BinaryNodeFormat.getNumEntries(buf); i < numEntries; i++) {
+          double distance = distanceFunction.minDist(obj, view.moveTo(buf, i));
+          if(leaf) {
+            tree.statistics.countDistanceCalculation();
+            if(distance <= range) {
+              result.add(distance, BinaryNodeFormat.assignDBID(buf, i, var));
+            }
+          }
+          else if(distance <= range) {
+            if(ps == pq.length) {
+              pq = Arrays.copyOf(pq, pq.length + (pq.length >>> 1));
+            }
+            pq[ps++] = BinaryNodeFormat.getEntryID(buf, i);
+          }
+        }
+        continue;
+      }
       AbstractRStarTreeNode<?, ?> node = tree.getNode(pqNode);
       final int numEntries = node.getNumEntries();
 
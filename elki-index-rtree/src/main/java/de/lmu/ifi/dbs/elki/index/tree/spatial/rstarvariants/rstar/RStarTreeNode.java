@@ -22,6 +22,8 @@ package de.lmu.ifi.dbs.elki.index.tree.spatial.rstarvariants.rstar;
 
 import de.lmu.ifi.dbs.elki.index.tree.spatial.SpatialEntry;
 import de.lmu.ifi.dbs.elki.index.tree.spatial.rstarvariants.AbstractRStarTreeNode;
+import de.lmu.ifi.dbs.elki.persistent.ByteBufferPage;
+import de.lmu.ifi.dbs.elki.persistent.ExternalizablePage;
 
 /**
  * Represents a node in an R*-Tree.
@@ -29,7 +31,7 @@ import de.lmu.ifi.dbs.elki.index.tree.spatial.rstarvariants.AbstractRStarTreeNod
  * @author Elke Achtert
  * @since 0.2
  */
-public class RStarTreeNode extends AbstractRStarTreeNode<RStarTreeNode, SpatialEntry> {
+public class RStarTreeNode extends AbstractRStarTreeNode<RStarTreeNode, SpatialEntry> implements ExternalizablePage, ByteBufferPage {
   private static final long serialVersionUID = 1;
 
   /**
@@ -20,8 +20,10 @@
  */
 package de.lmu.ifi.dbs.elki.index.tree.spatial.rstarvariants.strategies.bulk;
 
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
+import java.util.ListIterator;
 
 import de.lmu.ifi.dbs.elki.data.spatial.SpatialComparable;
 import de.lmu.ifi.dbs.elki.data.spatial.SpatialSingleMeanComparator;
@@ -58,10 +60,33 @@ public class OneDimSortBulkSplit extends AbstractBulkSplit {
   @Override
   public <T extends SpatialComparable> List<List<T>> partition(List<T> spatialObjects, int minEntries, int maxEntries) {
     // Sort by first dimension
-    Collections.sort(spatialObjects, new SpatialSingleMeanComparator(0));
+    sort(spatialObjects, new SpatialSingleMeanComparator(0));
     return trivialPartition(spatialObjects, minEntries, maxEntries);
   }
 
+  /**
+   * Sort the objects, in parallel for large lists. Both sorts are stable, so
+   * the resulting order is the same.
+   *
+   * @param objs Objects to sort
+   * @param comp Comparator
+   * @param <T> data type
+   */
+  protected static <T extends SpatialComparable> void sort(List<T> objs, SpatialSingleMeanComparator comp) {
+    if(objs.size() < SortTileRecursiveBulkSplit.PARALLEL_THRESHOLD) {
+      Collections.sort(objs, comp);
+      return;
+    }
+    @SuppressWarnings("unchecked")
+    T[] arr = (T[]) objs.toArray(new SpatialComparable[objs.size()]);
+    Arrays.parallelSort(arr, comp);
+    ListIterator<T> it = objs.listIterator();
+    for(T o : arr) {
+      it.next();
+      it.set(o);
+    }
+  }
+
   /**
    * Parameterization class.
    * 
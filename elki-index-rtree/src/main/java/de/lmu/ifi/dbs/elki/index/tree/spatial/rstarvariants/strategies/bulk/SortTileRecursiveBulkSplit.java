@@ -22,9 +22,11 @@ package de.lmu.ifi.dbs.elki.index.tree.spatial.rstarvariants.strategies.bulk;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.RecursiveTask;
 
 import de.lmu.ifi.dbs.elki.data.spatial.SpatialComparable;
 import de.lmu.ifi.dbs.elki.data.spatial.SpatialSingleMeanComparator;
+import de.lmu.ifi.dbs.elki.parallel.ParallelCore;
 import de.lmu.ifi.dbs.elki.utilities.Alias;
 import de.lmu.ifi.dbs.elki.utilities.datastructures.QuickSelect;
 import de.lmu.ifi.dbs.elki.utilities.documentation.Reference;
@@ -53,9 +55,17 @@ public class SortTileRecursiveBulkSplit extends AbstractBulkSplit {
    */
   public static final SortTileRecursiveBulkSplit STATIC = new SortTileRecursiveBulkSplit();
 
+  /**
+   * Minimum number of objects to partition slabs in parallel.
+   */
+  static final int PARALLEL_THRESHOLD = 1 << 14;
+
   @Override
   public <T extends SpatialComparable> List<List<T>> partition(List<T> spatialObjects, int minEntries, int maxEntries) {
     final int dims = spatialObjects.get(0).getDimensionality();
+    if(spatialObjects.size() >= PARALLEL_THRESHOLD && dims > 1 && ParallelCore.getCore().getParallelism() > 1) {
+      return partitionParallel(spatialObjects, maxEntries);
+    }
     final int p = (int) FastMath.ceil(spatialObjects.size() / (double) maxEntries);
     List<List<T>> ret = new ArrayList<>(p);
     strPartition(spatialObjects, 0, spatialObjects.size(), 0, dims, maxEntries, new SpatialSingleMeanComparator(0), ret);
@@ -98,6 +108,98 @@ public class SortTileRecursiveBulkSplit extends AbstractBulkSplit {
     }
   }
 
+  /**
+   * Partition in parallel: the objects of a slab are no longer moved once the
+   * slab has been split off, so each slab is partitioned by its own task while
+   * the next slabs are split off. Because the quickselects are deterministic,
+   * this yields the same partitioning as the serial version.
+   *
+   * @param objs Object list
+   * @param maxEntries Maximum page size
+   * @param <T> data type
+   * @return Partitions, in the same order as the serial version
+   */
+  protected <T extends SpatialComparable> List<List<T>> partitionParallel(List<T> objs, int maxEntries) {
+    final int dims = objs.get(0).getDimensionality();
+    return ParallelCore.getCore().invoke(new PartitionTask<>(objs, 0, objs.size(), 0, dims, maxEntries));
+  }
+
+  /**
+   * Fork-join task to partition a slab.
+   *
+   * @author Erich Schubert
+   *
+   * @apiviz.exclude
+   *
+   * @param <T> data type
+   */
+  private class PartitionTask<T extends SpatialComparable> extends RecursiveTask<List<List<T>>> {
+    /**
+     * Serialization version.
+     */
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * Object list.
+     */
+    private final List<T> objs;
+
+    /**
+     * Subinterval start and end, iteration depth, dimensions, page size.
+     */
+    private final int start, end, depth, dims, maxEntries;
+
+    /**
+     * Constructor.
+     *
+     * @param objs Object list
+     * @param start Subinterval start
+     * @param end Subinterval end
+     * @param depth Iteration depth (must be less than dimensionality!)
+     * @param dims Total number of dimensions
+     * @param maxEntries Maximum page size
+     */
+    public PartitionTask(List<T> objs, int start, int end, int depth, int dims, int maxEntries) {
+      super();
+      this.objs = objs;
+      this.start = start;
+      this.end = end;
+      this.depth = depth;
+      this.dims = dims;
+      this.maxEntries = maxEntries;
+    }
+
+    @Override
+    protected List<List<T>> compute() {
+      final int p = (int) FastMath.ceil((end - start) / (double) maxEntries);
+      List<List<T>> ret = new ArrayList<>(p);
+      // Comparators are stateful, each task uses its own.
+      SpatialSingleMeanComparator c = new SpatialSingleMeanComparator(depth);
+      if(end - start < PARALLEL_THRESHOLD || depth + 1 == dims) {
+        strPartition(objs, start, end, depth, dims, maxEntries, c, ret);
+        return ret;
+      }
+      final int s = (int) FastMath.ceil(FastMath.pow(p, 1.0 / (dims - depth)));
+      List<PartitionTask<T>> slabs = new ArrayList<>(s);
+      final double len = end - start; // double intentional!
+      for(int i = 0; i < s; i++) {
+        int s2 = start + (int) ((i * len) / s);
+        int e2 = start + (int) (((i + 1) * len) / s);
+        if(e2 < end) {
+          c.setDimension(depth);
+          QuickSelect.quickSelect(objs, c, s2, end, e2);
+        }
+        PartitionTask<T> slab = new PartitionTask<>(objs, s2, e2, depth + 1, dims, maxEntries);
+        slab.fork();
+        slabs.add(slab);
+      }
+      for(PartitionTask<T> slab : slabs) {
+        ret.addAll(slab.join());
+      }
+      return ret;
+    }
+  }
+
   /**
    * Parameterization class.
    * 
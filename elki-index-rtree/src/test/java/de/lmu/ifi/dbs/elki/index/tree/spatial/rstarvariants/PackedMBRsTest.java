@@ -0,0 +1,110 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2017
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.lmu.ifi.dbs.elki.index.tree.spatial.rstarvariants;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+import de.lmu.ifi.dbs.elki.data.DoubleVector;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDUtil;
+import de.lmu.ifi.dbs.elki.distance.distancefunction.minkowski.SquaredEuclideanDistanceFunction;
+import de.lmu.ifi.dbs.elki.index.tree.spatial.SpatialEntry;
+import de.lmu.ifi.dbs.elki.index.tree.spatial.SpatialPointLeafEntry;
+import de.lmu.ifi.dbs.elki.index.tree.spatial.rstarvariants.rstar.RStarTree;
+import de.lmu.ifi.dbs.elki.index.tree.spatial.rstarvariants.rstar.RStarTreeNode;
+import de.lmu.ifi.dbs.elki.persistent.MemoryPageFile;
+
+/**
+ * Verify that the packed bounding boxes yield the same distances as the
+ * entries, and stay consistent while the tree is modified.
+ *
+ * @author Erich Schubert
+ * @since 0.7.2
+ */
+public class PackedMBRsTest {
+  @Test
+  public void testIncrementalInsertion() {
+    final int dim = 3;
+    // Plain tree, without the index wrapper.
+    RStarTree tree = new RStarTree(new MemoryPageFile<RStarTreeNode>(300), new RTreeSettings()) {
+      @Override
+      public String getLongName() {
+        return "R*-tree";
+      }
+
+      @Override
+      public String getShortName() {
+        return "rstartree";
+      }
+    };
+    tree.initialize();
+    Random r = new Random(0L);
+    for(int i = 0; i < 1000; i++) {
+      tree.insertLeaf(new SpatialPointLeafEntry(DBIDUtil.importInteger(i), randomVector(r, dim)));
+      // Query often while the tree is small, then less frequently.
+      if(i < 50 || i % 50 == 0) {
+        final double[] query = randomVector(r, dim);
+        checkNode(tree, tree.getRoot(), query);
+      }
+    }
+  }
+
+  /**
+   * Check the packed distances of a subtree.
+   *
+   * @param tree Tree
+   * @param node Current node
+   * @param query Query point
+   */
+  private static void checkNode(RStarTree tree, RStarTreeNode node, double[] query) {
+    if(node.isLeaf()) {
+      return;
+    }
+    final PackedMBRs mbrs = node.getPackedMBRs();
+    assertEquals("Stale number of entries.", node.getNumEntries(), mbrs.size());
+    final double[] dists = new double[mbrs.size()];
+    mbrs.squaredMinDists(query, dists);
+    final DoubleVector vec = DoubleVector.wrap(query);
+    for(int i = 0; i < node.getNumEntries(); i++) {
+      SpatialEntry entry = node.getEntry(i);
+      assertEquals("Packed distance differs.", SquaredEuclideanDistanceFunction.STATIC.minDist(entry, vec), dists[i], 0.);
+      checkNode(tree, tree.getNode(entry), query);
+    }
+  }
+
+  /**
+   * Generate a random vector.
+   *
+   * @param r Random generator
+   * @param dim Dimensionality
+   * @return Vector
+   */
+  private static double[] randomVector(Random r, int dim) {
+    double[] v = new double[dim];
+    for(int d = 0; d < dim; d++) {
+      v[d] = r.nextDouble() * 100.;
+    }
+    return v;
+  }
+}
@@ -0,0 +1,91 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2017
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.lmu.ifi.dbs.elki.index.tree.spatial.rstarvariants.strategies.bulk;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+import de.lmu.ifi.dbs.elki.data.DoubleVector;
+import de.lmu.ifi.dbs.elki.data.spatial.SpatialSingleMeanComparator;
+
+/**
+ * Verify that the parallel bulk splits yield the same partitions as the
+ * serial versions.
+ *
+ * @author Erich Schubert
+ * @since 0.7.2
+ */
+public class ParallelBulkSplitTest {
+  @Test
+  public void testSortTileRecursive() {
+    List<DoubleVector> serial = randomVectors(SortTileRecursiveBulkSplit.PARALLEL_THRESHOLD * 8 + 5, 3);
+    List<DoubleVector> parallel = new ArrayList<>(serial);
+    List<List<DoubleVector>> expect = new ArrayList<>();
+    SortTileRecursiveBulkSplit.STATIC.strPartition(serial, 0, serial.size(), 0, 3, 50, new SpatialSingleMeanComparator(0), expect);
+    List<List<DoubleVector>> actual = SortTileRecursiveBulkSplit.STATIC.partitionParallel(parallel, 50);
+    assertEquals("Number of partitions differs", expect.size(), actual.size());
+    for(int i = 0; i < expect.size(); i++) {
+      List<DoubleVector> e = expect.get(i), a = actual.get(i);
+      assertEquals("Partition size differs", e.size(), a.size());
+      for(int j = 0; j < e.size(); j++) {
+        assertSame("Partition " + i + " differs", e.get(j), a.get(j));
+      }
+    }
+  }
+
+  @Test
+  public void testOneDimSort() {
+    List<DoubleVector> serial = randomVectors(SortTileRecursiveBulkSplit.PARALLEL_THRESHOLD * 2, 2);
+    List<DoubleVector> parallel = new ArrayList<>(serial);
+    Collections.sort(serial, new SpatialSingleMeanComparator(0));
+    OneDimSortBulkSplit.sort(parallel, new SpatialSingleMeanComparator(0));
+    for(int i = 0; i < serial.size(); i++) {
+      assertSame("Order differs at " + i, serial.get(i), parallel.get(i));
+    }
+  }
+
+  /**
+   * Generate random vectors, with many ties.
+   *
+   * @param size Number of vectors
+   * @param dim Dimensionality
+   * @return Vectors
+   */
+  private static List<DoubleVector> randomVectors(int size, int dim) {
+    Random r = new Random(0L);
+    List<DoubleVector> ret = new ArrayList<>(size);
+    for(int i = 0; i < size; i++) {
+      double[] v = new double[dim];
+      for(int d = 0; d < dim; d++) {
+        v[d] = r.nextInt(100);
+      }
+      ret.add(DoubleVector.wrap(v));
+    }
+    return ret;
+  }
+}
@@ -0,0 +1,1125 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2017
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.lmu.ifi.dbs.elki.index.graph;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.RecursiveAction;
+
+import de.lmu.ifi.dbs.elki.data.type.TypeInformation;
+import de.lmu.ifi.dbs.elki.database.ids.ArrayDBIDs;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDArrayIter;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDUtil;
+import de.lmu.ifi.dbs.elki.database.ids.KNNHeap;
+import de.lmu.ifi.dbs.elki.database.ids.KNNList;
+import de.lmu.ifi.dbs.elki.database.query.DatabaseQuery;
+import de.lmu.ifi.dbs.elki.database.query.distance.DistanceQuery;
+import de.lmu.ifi.dbs.elki.database.query.knn.AbstractDistanceKNNQuery;
+import de.lmu.ifi.dbs.elki.database.query.knn.KNNQuery;
+import de.lmu.ifi.dbs.elki.database.relation.Relation;
+import de.lmu.ifi.dbs.elki.distance.distancefunction.DistanceFunction;
+import de.lmu.ifi.dbs.elki.distance.distancefunction.minkowski.EuclideanDistanceFunction;
+import de.lmu.ifi.dbs.elki.index.AbstractIndex;
+import de.lmu.ifi.dbs.elki.index.IndexFactory;
+import de.lmu.ifi.dbs.elki.index.KNNIndex;
+import de.lmu.ifi.dbs.elki.logging.Logging;
+import de.lmu.ifi.dbs.elki.logging.progress.FiniteProgress;
+import de.lmu.ifi.dbs.elki.logging.statistics.LongStatistic;
+import de.lmu.ifi.dbs.elki.logging.statistics.QueryCounters;
+import de.lmu.ifi.dbs.elki.parallel.ParallelCore;
+import de.lmu.ifi.dbs.elki.utilities.Alias;
+import de.lmu.ifi.dbs.elki.utilities.datastructures.heap.DoubleIntegerHeap;
+import de.lmu.ifi.dbs.elki.utilities.datastructures.heap.DoubleIntegerMaxHeap;
+import de.lmu.ifi.dbs.elki.utilities.datastructures.heap.DoubleIntegerMinHeap;
+import de.lmu.ifi.dbs.elki.utilities.documentation.Reference;
+import de.lmu.ifi.dbs.elki.utilities.io.ByteArrayUtil;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.AbstractParameterizer;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.OptionID;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.constraints.CommonConstraints;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameterization.Parameterization;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameters.FileParameter;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameters.IntParameter;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameters.ObjectParameter;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameters.RandomParameter;
+import de.lmu.ifi.dbs.elki.utilities.random.RandomFactory;
+
+/**
+ * Hierarchical navigable small world graph (HNSW) for approximate nearest
+ * neighbor search.
+ *
+ * Every object is assigned a random level, with exponentially decreasing
+ * probability. On each level up to its own, an object is linked to (at most)
+ * {@code m} neighbors, chosen with the neighbor diversity heuristic from the
+ * {@code efConstruction} nearest candidates found by a beam search. Level 0
+ * allows up to {@code 2m} links. Queries descend greedily through the upper
+ * levels, and then perform a beam search of width {@code efSearch} on level 0.
+ * Because the query can be an arbitrary object, this index (unlike
+ * materialized kNN graphs such as NN-Descent) also answers queries for objects
+ * not in the relation.
+ *
+ * The graph is stored as fixed-size adjacency lists in a single
+ * {@link IntBuffer}, with neighbors referenced by their offset in the relation.
+ * It can be saved to a file, which is memory-mapped instead of rebuilding the
+ * index on the next initialization. The file is only valid for the same data
+ * in the same order: the parameters, the distance function class and a
+ * fingerprint of the DBIDs and a sample of distances are checked, and on a
+ * mismatch the graph is rebuilt and the file is overwritten. Use
+ * {@link #close()} to release the mapping.
+ *
+ * Large data sets are inserted in parallel using {@link ParallelCore}, with
+ * striped locks on the adjacency lists. The resulting graph then depends on
+ * the thread scheduling; serial construction is deterministic for a fixed
+ * random seed.
+ *
+ * This index only provides approximate results, and is not used if
+ * {@link DatabaseQuery#HINT_EXACT} is given.
+ *
+ * Reference:
+ * <p>
+ * Y. A. Malkov, D. A. Yashunin<br />
+ * Efficient and robust approximate nearest neighbor search using Hierarchical
+ * Navigable Small World graphs<br />
+ * IEEE Transactions on Pattern Analysis and Machine Intelligence
+ * </p>
+ *
+ * @author Erich Schubert
+ * @since 0.7.2
+ *
+ * @apiviz.has HNSWKNNQuery
+ *
+ * @param <O> Object type
+ */
+@Reference(authors = "Y. A. Malkov, D. A. Yashunin", //
+    title = "Efficient and robust approximate nearest neighbor search using Hierarchical Navigable Small World graphs", //
+    booktitle = "IEEE Transactions on Pattern Analysis and Machine Intelligence", //
+    url = "http://dx.doi.org/10.1109/TPAMI.2018.2889473")
+public class HNSWIndex<O> extends AbstractIndex<O> implements KNNIndex<O>, AutoCloseable {
+  /**
+   * Class logger
+   */
+  private static final Logging LOG = Logging.getLogger(HNSWIndex.class);
+
+  /**
+   * File magic ("HNSW").
+   */
+  static final int MAGIC = 0x484E5357;
+
+  /**
+   * File format version.
+   */
+  static final int VERSION = 2;
+
+  /**
+   * Header size in bytes.
+   */
+  static final int HEADER_SIZE = 8 * ByteArrayUtil.SIZE_INT + 2 * ByteArrayUtil.SIZE_LONG;
+
+  /**
+   * Number of distances sampled for the data fingerprint.
+   */
+  static final int FINGERPRINT_SAMPLES = 16;
+
+  /**
+   * Minimum size for parallel construction.
+   */
+  static final int PARALLEL_THRESHOLD = 1 << 12;
+
+  /**
+   * Number of objects inserted serially before parallel construction.
+   */
+  static final int PARALLEL_SEED = 1 << 10;
+
+  /**
+   * Maximum level, to bound the storage for degenerate random numbers.
+   */
+  static final int MAX_LEVEL = 32;
+
+  /**
+   * Distance function.
+   */
+  protected DistanceFunction<? super O> distanceFunction;
+
+  /**
+   * Distance query.
+   */
+  protected DistanceQuery<O> distanceQuery;
+
+  /**
+   * Maximum number of links on the upper levels.
+   */
+  protected int m;
+
+  /**
+   * Maximum number of links on level 0.
+   */
+  protected int m0;
+
+  /**
+   * Beam width during construction.
+   */
+  protected int efConstruction;
+
+  /**
+   * Beam width during search.
+   */
+  protected int efSearch;
+
+  /**
+   * Random generator for the levels.
+   */
+  protected RandomFactory rnd;
+
+  /**
+   * File to store the graph in, may be {@code null}.
+   */
+  protected File file;
+
+  /**
+   * Object IDs, the graph refers to their offsets.
+   */
+  private ArrayDBIDs ids;
+
+  /**
+   * Level of each object.
+   */
+  private int[] levels;
+
+  /**
+   * Offset of the level 1 adjacency list of each object in the graph.
+   */
+  private int[] upperoff;
+
+  /**
+   * Adjacency lists, each with a leading count. First the level 0 lists of
+   * all objects, then the upper levels.
+   */
+  private IntBuffer graph;
+
+  /**
+   * Mapped file, if the graph was loaded from disk.
+   */
+  MappedByteBuffer mapped;
+
+  /**
+   * Entry point (object offset) and its level.
+   */
+  private int entry = -1, maxlevel = -1;
+
+  /**
+   * Striped locks on the adjacency lists, during parallel construction only.
+   */
+  private volatile Object[] locks;
+
+  /**
+   * Lock for the entry point.
+   */
+  private final Object entrylock = new Object();
+
+  /**
+   * Thread-local search state.
+   */
+  private ThreadLocal<Searcher> searchers;
+
+  /**
+   * Constructor.
+   *
+   * @param relation Relation to index
+   * @param distanceFunction Distance function
+   * @param m Maximum number of links on upper levels (2m on level 0)
+   * @param efConstruction Beam width during construction
+   * @param efSearch Beam width during search
+   * @param rnd Random generator
+   * @param file File to store the graph in, may be {@code null}
+   */
+  public HNSWIndex(Relation<O> relation, DistanceFunction<? super O> distanceFunction, int m, int efConstruction, int efSearch, RandomFactory rnd, File file) {
+    super(relation);
+    this.distanceFunction = distanceFunction;
+    this.m = m;
+    this.m0 = m << 1;
+    this.efConstruction = Math.max(efConstruction, m);
+    this.efSearch = efSearch;
+    this.rnd = rnd;
+    this.file = file;
+  }
+
+  @Override
+  public void initialize() {
+    distanceQuery = distanceFunction.instantiate(relation);
+    ids = DBIDUtil.ensureArray(relation.getDBIDs());
+    searchers = ThreadLocal.withInitial(Searcher::new);
+    if(file != null && file.exists()) {
+      try {
+        if(load(file)) {
+          return;
+        }
+        LOG.warning("Graph file " + file + " does not match the data or parameters, rebuilding.");
+      }
+      catch(IOException e) {
+        LOG.warning("Cannot load graph file " + file + ", rebuilding.", e);
+      }
+    }
+    close();
+    build();
+    if(file != null) {
+      try {
+        save(file);
+      }
+      catch(IOException e) {
+        LOG.exception("Cannot save graph file " + file, e);
+      }
+    }
+  }
+
+  /**
+   * Build the graph.
+   */
+  protected void build() {
+    build(ids.size() >= PARALLEL_THRESHOLD && ParallelCore.getCore().getParallelism() > 1);
+  }
+
+  /**
+   * Build the graph.
+   *
+   * @param parallel Insert in parallel
+   */
+  void build(boolean parallel) {
+    final int size = ids.size();
+    // Draw all levels in advance, to allocate the adjacency lists:
+    Random r = rnd.getSingleThreadedRandom();
+    final double ml = 1. / Math.log(m);
+    levels = new int[size];
+    upperoff = new int[size];
+    int pos = size * (m0 + 1);
+    for(int i = 0; i < size; i++) {
+      final int l = Math.min(MAX_LEVEL, (int) (-Math.log(1. - r.nextDouble()) * ml));
+      levels[i] = l;
+      upperoff[i] = pos;
+      pos += l * (m + 1);
+    }
+    graph = IntBuffer.wrap(new int[pos]);
+    if(size == 0) {
+      return;
+    }
+    entry = 0;
+    maxlevel = levels[0];
+    FiniteProgress prog = LOG.isVerbose() ? new FiniteProgress("Building HNSW graph", size, LOG) : null;
+    LOG.incrementProcessed(prog);
+    if(parallel) {
+      final int seed = Math.min(PARALLEL_SEED, size);
+      Searcher s = searchers.get();
+      for(int i = 1; i < seed; i++) {
+        s.insert(i);
+        LOG.incrementProcessed(prog);
+      }
+      locks = new Object[1 << 10];
+      for(int i = 0; i < locks.length; i++) {
+        locks[i] = new Object();
+      }
+      ParallelCore.getCore().invoke(new InsertTask(seed, size, prog));
+      locks = null;
+    }
+    else {
+      Searcher s = searchers.get();
+      for(int i = 1; i < size; i++) {
+        s.insert(i);
+        LOG.incrementProcessed(prog);
+      }
+    }
+    LOG.ensureCompleted(prog);
+  }
+
+  /**
+   * Offset of an adjacency list in the graph.
+   *
+   * @param node Object offset
+   * @param level Level
+   * @return Position of the list (count first)
+   */
+  private int listOffset(int node, int level) {
+    return level == 0 ? node * (m0 + 1) : upperoff[node] + (level - 1) * (m + 1);
+  }
+
+  /**
+   * Save the graph to a file.
+   *
+   * @param file Output file
+   * @throws IOException on write errors
+   */
+  protected void save(File file) throws IOException {
+    try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file), 1 << 16))) {
+      final int size = levels.length;
+      out.writeInt(MAGIC);
+      out.writeInt(VERSION);
+      out.writeInt(size);
+      out.writeInt(m);
+      out.writeInt(efConstruction);
+      out.writeInt(distanceFunction.getClass().getName().hashCode());
+      out.writeInt(maxlevel);
+      out.writeInt(entry);
+      out.writeLong(graph.limit());
+      out.writeLong(fingerprint());
+      for(int i = 0; i < size; i++) {
+        out.writeInt(levels[i]);
+      }
+      for(int i = 0, e = graph.limit(); i < e; i++) {
+        out.writeInt(graph.get(i));
+      }
+    }
+  }
+
+  /**
+   * Load the graph from a file, by memory mapping it.
+   *
+   * @param file Input file
+   * @return {@code false} if the file does not match
+   * @throws IOException on read errors
+   */
+  protected boolean load(File file) throws IOException {
+    try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+      final long len = channel.size();
+      if(len < HEADER_SIZE) {
+        return false;
+      }
+      if(len > Integer.MAX_VALUE) {
+        throw new IOException("Graph files larger than 2 GB are not supported.");
+      }
+      MappedByteBuffer buf = channel.map(MapMode.READ_ONLY, 0, len);
+      final int size = ids.size();
+      final long glen;
+      if(buf.getInt(0) != MAGIC || buf.getInt(4) != VERSION || buf.getInt(8) != size || buf.getInt(12) != m //
+          || buf.getInt(16) != efConstruction || buf.getInt(20) != distanceFunction.getClass().getName().hashCode() //
+          || (glen = buf.getLong(32)) < size * (long) (m0 + 1) || HEADER_SIZE + (size + glen) * ByteArrayUtil.SIZE_INT != len //
+          || buf.getLong(40) != fingerprint()) {
+        ByteArrayUtil.unmapByteBuffer(buf);
+        return false;
+      }
+      buf.position(HEADER_SIZE);
+      IntBuffer ib = buf.slice().asIntBuffer();
+      levels = new int[size];
+      ib.get(levels);
+      upperoff = new int[size];
+      int pos = size * (m0 + 1);
+      for(int i = 0; i < size; i++) {
+        upperoff[i] = pos;
+        pos += levels[i] * (m + 1);
+      }
+      if(pos != glen) {
+        ByteArrayUtil.unmapByteBuffer(buf);
+        return false;
+      }
+      close();
+      graph = ib.slice();
+      maxlevel = buf.getInt(24);
+      entry = buf.getInt(28);
+      mapped = buf;
+      return true;
+    }
+  }
+
+  /**
+   * Fingerprint of the indexed data: the DBIDs, and a sample of distances
+   * (which also reflects the parameters of the distance function).
+   *
+   * @return Fingerprint
+   */
+  private long fingerprint() {
+    long h = ids.size();
+    for(DBIDArrayIter it = ids.iter(); it.valid(); it.advance()) {
+      h = h * 31 + DBIDUtil.asInteger(it);
+    }
+    final int size = ids.size();
+    if(size > 0) {
+      DBIDArrayIter a = ids.iter(), b = ids.iter();
+      for(int i = 0; i < FINGERPRINT_SAMPLES; i++) {
+        final int j = (int) (i * (long) size / FINGERPRINT_SAMPLES);
+        h = h * 31 + Double.doubleToLongBits(distanceQuery.distance(a.seek(j), b.seek(size - 1 - j)));
+      }
+    }
+    return h;
+  }
+
+  /**
+   * Release the memory mapped graph file, if any. The index must not be used
+   * afterwards, until it is initialized again.
+   */
+  @Override
+  public void close() {
+    if(mapped != null) {
+      graph = null;
+      ByteArrayUtil.unmapByteBuffer(mapped);
+      mapped = null;
+    }
+  }
+
+  @Override
+  public String getLongName() {
+    return "HNSW graph";
+  }
+
+  @Override
+  public String getShortName() {
+    return "hnsw";
+  }
+
+  @Override
+  public void logStatistics() {
+    LOG.statistics(new LongStatistic(this.getClass().getName() + ".maxlevel", maxlevel));
+    LOG.statistics(new LongStatistic(this.getClass().getName() + ".mapped", mapped != null ? 1 : 0));
+  }
+
+  @Override
+  public KNNQuery<O> getKNNQuery(DistanceQuery<O> distanceQuery, Object... hints) {
+    for(Object hint : hints) {
+      if(DatabaseQuery.HINT_EXACT.equals(hint)) {
+        return null;
+      }
+    }
+    if(!distanceFunction.equals(distanceQuery.getDistanceFunction())) {
+      return null;
+    }
+    return new HNSWKNNQuery(distanceQuery);
+  }
+
+  /**
+   * Marks for visited objects, reset in constant time.
+   *
+   * @author Erich Schubert
+   *
+   * @apiviz.exclude
+   */
+  private static class Visited {
+    /**
+     * Epoch in which each object was visited.
+     */
+    private final int[] marks;
+
+    /**
+     * Current epoch.
+     */
+    private int epoch = 0;
+
+    /**
+     * Constructor.
+     *
+     * @param size Number of objects
+     */
+    Visited(int size) {
+      this.marks = new int[size];
+    }
+
+    /**
+     * Start a new search.
+     */
+    void reset() {
+      if(++epoch == Integer.MAX_VALUE) {
+        Arrays.fill(marks, 0);
+        epoch = 1;
+      }
+    }
+
+    /**
+     * Mark an object as visited.
+     *
+     * @param i Object offset
+     * @return {@code true} if it was not visited before
+     */
+    boolean visit(int i) {
+      if(marks[i] == epoch) {
+        return false;
+      }
+      marks[i] = epoch;
+      return true;
+    }
+  }
+
+  /**
+   * Per-thread search state, used for construction and queries.
+   *
+   * @author Erich Schubert
+   *
+   * @apiviz.exclude
+   */
+  private class Searcher {
+    /**
+     * Iterators for the object IDs.
+     */
+    private final DBIDArrayIter it1 = ids.iter(), it2 = ids.iter();
+
+    /**
+     * Visited objects.
+     */
+    private final Visited visited = new Visited(ids.size());
+
+    /**
+     * Candidates to expand.
+     */
+    private final DoubleIntegerMinHeap candidates = new DoubleIntegerMinHeap();
+
+    /**
+     * Current results.
+     */
+    final DoubleIntegerMaxHeap results = new DoubleIntegerMaxHeap();
+
+    /**
+     * Buffer for adjacency lists.
+     */
+    private final int[] buf = new int[m0 + 1];
+
+    /**
+     * Buffer for the neighbor selection.
+     */
+    private final int[] selected = new int[m0 + 1];
+
+    /**
+     * Neighbors of the object being inserted.
+     */
+    private final int[] links = new int[m0 + 1];
+
+    /**
+     * Current entry point and its distance.
+     */
+    int ep;
+
+    /**
+     * Distance to the current entry point.
+     */
+    double epd;
+
+    /**
+     * Distance of the query to an object.
+     *
+     * @param q Query object
+     * @param i Object offset
+     * @return Distance
+     */
+    private double distance(O q, int i) {
+      QueryCounters.countDistance();
+      return distanceQuery.distance(q, it1.seek(i));
+    }
+
+    /**
+     * Copy an adjacency list.
+     *
+     * @param node Object offset
+     * @param level Level
+     * @return Number of neighbors, in {@link #buf}
+     */
+    private int readLinks(int node, int level) {
+      final int off = listOffset(node, level);
+      final Object[] locks = HNSWIndex.this.locks;
+      if(locks == null) {
+        return copyLinks(off);
+      }
+      synchronized(locks[node & (locks.length - 1)]) {
+        return copyLinks(off);
+      }
+    }
+
+    /**
+     * Copy an adjacency list.
+     *
+     * @param off Offset in the graph
+     * @return Number of neighbors, in {@link #buf}
+     */
+    private int copyLinks(int off) {
+      final int cnt = graph.get(off);
+      for(int i = 0; i < cnt; i++) {
+        buf[i] = graph.get(off + 1 + i);
+      }
+      return cnt;
+    }
+
+    /**
+     * Search the entry point greedily on the upper levels.
+     *
+     * @param q Query object
+     * @param top Top level to start at
+     * @param bottom Level to stop at (exclusive)
+     */
+    void greedy(O q, int top, int bottom) {
+      for(int l = top; l > bottom; l--) {
+        boolean changed = true;
+        while(changed) {
+          changed = false;
+          QueryCounters.countNodeVisit();
+          for(int i = 0, cnt = readLinks(ep, l); i < cnt; i++) {
+            final int c = buf[i];
+            final double d = distance(q, c);
+            if(d < epd) {
+              ep = c;
+              epd = d;
+              changed = true;
+            }
+          }
+        }
+      }
+    }
+
+    /**
+     * Beam search on a single level, starting at the current entry point. The
+     * result is in {@link #results}.
+     *
+     * @param q Query object
+     * @param ef Beam width
+     * @param level Level
+     */
+    void searchLevel(O q, int ef, int level) {
+      visited.reset();
+      visited.visit(ep);
+      candidates.clear();
+      results.clear();
+      candidates.add(epd, ep);
+      results.add(epd, ep);
+      while(!candidates.isEmpty()) {
+        final double cd = candidates.peekKey();
+        if(cd > results.peekKey() && results.size() >= ef) {
+          break;
+        }
+        final int c = candidates.peekValue();
+        candidates.poll();
+        QueryCounters.countNodeVisit();
+        for(int i = 0, cnt = readLinks(c, level); i < cnt; i++) {
+          final int n = buf[i];
+          if(!visited.visit(n)) {
+            continue;
+          }
+          final double d = distance(q, n);
+          if(results.size() < ef || d < results.peekKey()) {
+            candidates.add(d, n);
+            results.add(d, n, ef);
+          }
+        }
+      }
+    }
+
+    /**
+     * Insert an object into the graph.
+     *
+     * @param node Object offset
+     */
+    void insert(int node) {
+      final O q = relation.get(it2.seek(node));
+      final int level = levels[node];
+      final int top;
+      synchronized(entrylock) {
+        ep = entry;
+        top = maxlevel;
+      }
+      epd = distance(q, ep);
+      greedy(q, top, level);
+      for(int l = Math.min(top, level); l >= 0; l--) {
+        searchLevel(q, efConstruction, l);
+        // Move the results to the candidates; the closest is the next entry:
+        candidates.clear();
+        while(!results.isEmpty()) {
+          ep = results.peekValue();
+          epd = results.peekKey();
+          candidates.add(epd, ep);
+          results.poll();
+        }
+        final int cnt = selectNeighbors(m);
+        System.arraycopy(selected, 0, links, 0, cnt);
+        setLinks(node, l, links, cnt);
+        for(int i = 0; i < cnt; i++) {
+          addLink(links[i], node, l);
+        }
+      }
+      if(level > top) {
+        synchronized(entrylock) {
+          if(level > maxlevel) {
+            maxlevel = level;
+            entry = node;
+          }
+        }
+      }
+    }
+
+    /**
+     * Select diverse neighbors from {@link #candidates}: a candidate is only
+     * kept if it is closer to the base than to all previously selected.
+     *
+     * @param max Maximum number of neighbors
+     * @return Number of neighbors, in {@link #selected}
+     */
+    private int selectNeighbors(int max) {
+      int cnt = 0;
+      while(!candidates.isEmpty() && cnt < max) {
+        final double d = candidates.peekKey();
+        final int c = candidates.peekValue();
+        candidates.poll();
+        boolean good = true;
+        it1.seek(c);
+        for(int i = 0; i < cnt; i++) {
+          QueryCounters.countDistance();
+          if(distanceQuery.distance(it1, it2.seek(selected[i])) < d) {
+            good = false;
+            break;
+          }
+        }
+        if(good) {
+          selected[cnt++] = c;
+        }
+      }
+      return cnt;
+    }
+
+    /**
+     * Overwrite an adjacency list.
+     *
+     * @param node Object offset
+     * @param level Level
+     * @param links New neighbors
+     * @param cnt Number of neighbors
+     */
+    private void setLinks(int node, int level, int[] links, int cnt) {
+      final int off = listOffset(node, level);
+      final Object[] locks = HNSWIndex.this.locks;
+      if(locks == null) {
+        writeLinks(off, links, cnt);
+        return;
+      }
+      synchronized(locks[node & (locks.length - 1)]) {
+        writeLinks(off, links, cnt);
+      }
+    }
+
+    /**
+     * Write an adjacency list.
+     *
+     * @param off Offset in the graph
+     * @param links New neighbors
+     * @param cnt Number of neighbors
+     */
+    private void writeLinks(int off, int[] links, int cnt) {
+      for(int i = 0; i < cnt; i++) {
+        graph.put(off + 1 + i, links[i]);
+      }
+      graph.put(off, cnt);
+    }
+
+    /**
+     * Add a reverse link, pruning the adjacency list if it is full.
+     *
+     * @param node Object to add the link to
+     * @param link New neighbor
+     * @param level Level
+     */
+    private void addLink(int node, int link, int level) {
+      final Object[] locks = HNSWIndex.this.locks;
+      if(locks == null) {
+        addLinkUnlocked(node, link, level);
+        return;
+      }
+      synchronized(locks[node & (locks.length - 1)]) {
+        addLinkUnlocked(node, link, level);
+      }
+    }
+
+    /**
+     * Add a reverse link, pruning the adjacency list if it is full.
+     *
+     * @param node Object to add the link to
+     * @param link New neighbor
+     * @param level Level
+     */
+    private void addLinkUnlocked(int node, int link, int level) {
+      final int off = listOffset(node, level), max = level == 0 ? m0 : m;
+      final int cnt = graph.get(off);
+      if(cnt < max) {
+        graph.put(off + 1 + cnt, link);
+        graph.put(off, cnt + 1);
+        return;
+      }
+      candidates.clear();
+      it2.seek(node);
+      QueryCounters.countDistances(cnt + 1);
+      candidates.add(distanceQuery.distance(it2, it1.seek(link)), link);
+      for(int i = 0; i < cnt; i++) {
+        final int c = graph.get(off + 1 + i);
+        candidates.add(distanceQuery.distance(it2, it1.seek(c)), c);
+      }
+      writeLinks(off, selected, selectNeighbors(max));
+    }
+  }
+
+  /**
+   * Task to insert a range of objects in parallel.
+   *
+   * @author Erich Schubert
+   *
+   * @apiviz.exclude
+   */
+  private class InsertTask extends RecursiveAction {
+    /**
+     * Serialization version.
+     */
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * Range of objects to insert.
+     */
+    private final int begin, end;
+
+    /**
+     * Progress, may be {@code null}.
+     */
+    private final FiniteProgress prog;
+
+    /**
+     * Constructor.
+     *
+     * @param begin First object
+     * @param end End (exclusive)
+     * @param prog Progress, may be {@code null}
+     */
+    InsertTask(int begin, int end, FiniteProgress prog) {
+      this.begin = begin;
+      this.end = end;
+      this.prog = prog;
+    }
+
+    @Override
+    protected void compute() {
+      if(end - begin > 256) {
+        final int mid = (begin + end) >>> 1;
+        invokeAll(new InsertTask(begin, mid, prog), new InsertTask(mid, end, prog));
+        return;
+      }
+      Searcher s = searchers.get();
+      for(int i = begin; i < end; i++) {
+        s.insert(i);
+        LOG.incrementProcessed(prog);
+      }
+    }
+  }
+
+  /**
+   * kNN query on the HNSW graph.
+   *
+   * @author Erich Schubert
+   */
+  public class HNSWKNNQuery extends AbstractDistanceKNNQuery<O> {
+    /**
+     * Constructor.
+     *
+     * @param distanceQuery Distance query
+     */
+    public HNSWKNNQuery(DistanceQuery<O> distanceQuery) {
+      super(distanceQuery);
+    }
+
+    @Override
+    public KNNList getKNNForObject(O obj, int k) {
+      final KNNHeap knns = DBIDUtil.newHeap(k);
+      if(entry < 0) {
+        return knns.toKNNList();
+      }
+      Searcher s = searchers.get();
+      s.ep = entry;
+      s.epd = s.distance(obj, entry);
+      s.greedy(obj, maxlevel, 0);
+      s.searchLevel(obj, Math.max(efSearch, k), 0);
+      DBIDArrayIter it = ids.iter();
+      for(DoubleIntegerHeap.UnsortedIter iter = s.results.unsortedIter(); iter.valid(); iter.advance()) {
+        knns.insert(iter.getKey(), it.seek(iter.getValue()));
+      }
+      return knns.toKNNList();
+    }
+  }
+
+  /**
+   * Index factory for HNSW graphs.
+   *
+   * @author Erich Schubert
+   *
+   * @apiviz.has HNSWIndex
+   *
+   * @param <O> Object type
+   */
+  @Alias({ "hnsw" })
+  public static class Factory<O> implements IndexFactory<O, HNSWIndex<O>> {
+    /**
+     * Distance function.
+     */
+    DistanceFunction<? super O> distanceFunction;
+
+    /**
+     * Maximum number of links on the upper levels.
+     */
+    int m;
+
+    /**
+     * Beam widths during construction and search.
+     */
+    int efConstruction, efSearch;
+
+    /**
+     * Random generator.
+     */
+    RandomFactory rnd;
+
+    /**
+     * Graph file, may be {@code null}.
+     */
+    File file;
+
+    /**
+     * Constructor.
+     *
+     * @param distanceFunction Distance function
+     * @param m Maximum number of links on upper levels (2m on level 0)
+     * @param efConstruction Beam width during construction
+     * @param efSearch Beam width during search
+     * @param rnd Random generator
+     * @param file File to store the graph in, may be {@code null}
+     */
+    public Factory(DistanceFunction<? super O> distanceFunction, int m, int efConstruction, int efSearch, RandomFactory rnd, File file) {
+      super();
+      this.distanceFunction = distanceFunction;
+      this.m = m;
+      this.efConstruction = efConstruction;
+      this.efSearch = efSearch;
+      this.rnd = rnd;
+      this.file = file;
+    }
+
+    @Override
+    public HNSWIndex<O> instantiate(Relation<O> relation) {
+      return new HNSWIndex<>(relation, distanceFunction, m, efConstruction, efSearch, rnd, file);
+    }
+
+    @Override
+    public TypeInformation getInputTypeRestriction() {
+      return distanceFunction.getInputTypeRestriction();
+    }
+
+    /**
+     * Parameterization class.
+     *
+     * @author Erich Schubert
+     *
+     * @apiviz.exclude
+     */
+    public static class Parameterizer<O> extends AbstractParameterizer {
+      /**
+       * Distance function to use.
+       */
+      public static final OptionID DISTANCE_FUNCTION_ID = new OptionID("hnsw.distance", "Distance function to build the graph with.");
+
+      /**
+       * Maximum number of links per object.
+       */
+      public static final OptionID M_ID = new OptionID("hnsw.m", "Maximum number of links per object on the upper levels, twice as many are allowed on level 0.");
+
+      /**
+       * Beam width during construction.
+       */
+      public static final OptionID EF_CONSTRUCTION_ID = new OptionID("hnsw.efconstruction", "Number of candidate neighbors considered when inserting an object.");
+
+      /**
+       * Beam width during search.
+       */
+      public static final OptionID EF_SEARCH_ID = new OptionID("hnsw.efsearch", "Number of candidates kept during search; larger values are slower but more accurate.");
+
+      /**
+       * Random seed.
+       */
+      public static final OptionID SEED_ID = new OptionID("hnsw.seed", "Random seed for the levels of the objects.");
+
+      /**
+       * Graph file.
+       */
+      public static final OptionID FILE_ID = new OptionID("hnsw.file", "File to store the graph in. If it exists and matches, it is memory-mapped instead of rebuilding the graph.");
+
+      /**
+       * Distance function.
+       */
+      DistanceFunction<? super O> distanceFunction;
+
+      /**
+       * Maximum number of links on the upper levels.
+       */
+      int m;
+
+      /**
+       * Beam widths during construction and search.
+       */
+      int efConstruction, efSearch;
+
+      /**
+       * Random generator.
+       */
+      RandomFactory rnd;
+
+      /**
+       * Graph file, may be {@code null}.
+       */
+      File file;
+
+      @Override
+      protected void makeOptions(Parameterization config) {
+        super.makeOptions(config);
+        ObjectParameter<DistanceFunction<? super O>> distanceFunctionP = new ObjectParameter<>(DISTANCE_FUNCTION_ID, DistanceFunction.class, EuclideanDistanceFunction.class);
+        if(config.grab(distanceFunctionP)) {
+          distanceFunction = distanceFunctionP.instantiateClass(config);
+        }
+        IntParameter mP = new IntParameter(M_ID, 16) //
+            .addConstraint(CommonConstraints.GREATER_THAN_ONE_INT);
+        if(config.grab(mP)) {
+          m = mP.intValue();
+        }
+        IntParameter efcP = new IntParameter(EF_CONSTRUCTION_ID, 100) //
+            .addConstraint(CommonConstraints.GREATER_EQUAL_ONE_INT);
+        if(config.grab(efcP)) {
+          efConstruction = efcP.intValue();
+        }
+        IntParameter efsP = new IntParameter(EF_SEARCH_ID, 50) //
+            .addConstraint(CommonConstraints.GREATER_EQUAL_ONE_INT);
+        if(config.grab(efsP)) {
+          efSearch = efsP.intValue();
+        }
+        RandomParameter rndP = new RandomParameter(SEED_ID);
+        if(config.grab(rndP)) {
+          rnd = rndP.getValue();
+        }
+        FileParameter fileP = new FileParameter(FILE_ID, FileParameter.FileType.OUTPUT_FILE, true);
+        if(config.grab(fileP)) {
+          file = fileP.getValue();
+        }
+      }
+
+      @Override
+      protected Factory<O> makeInstance() {
+        return new Factory<>(distanceFunction, m, efConstruction, efSearch, rnd, file);
+      }
+    }
+  }
+}
@@ -34,6 +34,7 @@ import de.lmu.ifi.dbs.elki.index.IndexFactory;
 import de.lmu.ifi.dbs.elki.logging.Logging;
 import de.lmu.ifi.dbs.elki.logging.LoggingUtil;
 import de.lmu.ifi.dbs.elki.logging.statistics.LongStatistic;
+import de.lmu.ifi.dbs.elki.logging.statistics.QueryCounters;
 import de.lmu.ifi.dbs.elki.utilities.optionhandling.AbstractParameterizer;
 import de.lmu.ifi.dbs.elki.utilities.optionhandling.OptionID;
 import de.lmu.ifi.dbs.elki.utilities.optionhandling.constraints.CommonConstraints;
@@ -52,6 +53,11 @@ import net.jafama.FastMath;
  * @param <O> Object type
  */
 public abstract class AbstractCoverTree<O> extends AbstractIndex<O> {
+  /**
+   * Minimum number of candidates to build a subtree in a parallel task.
+   */
+  protected static final int PARALLEL_THRESHOLD = 1 << 12;
+
   /**
    * Constant expansion rate. 2 would be the intuitive value, but the original
    * version used 1.3, so we copy this. This means that in every level, the
@@ -151,6 +157,7 @@ public abstract class AbstractCoverTree<O> extends AbstractIndex<O> {
    */
   protected double distance(DBIDRef a, DBIDRef b) {
     ++distComputations;
+    QueryCounters.countDistance();
     return distanceQuery.distance(a, b);
   }
 
@@ -163,6 +170,7 @@ public abstract class AbstractCoverTree<O> extends AbstractIndex<O> {
    */
   protected double distance(O a, DBIDRef b) {
     ++distComputations;
+    QueryCounters.countDistance();
     return distanceQuery.distance(a, b);
   }
 
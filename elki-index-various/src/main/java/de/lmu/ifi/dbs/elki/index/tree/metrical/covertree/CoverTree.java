@@ -21,11 +21,14 @@
 package de.lmu.ifi.dbs.elki.index.tree.metrical.covertree;
 
 import java.util.ArrayList;
+import java.util.concurrent.RecursiveTask;
 
+import de.lmu.ifi.dbs.elki.database.ids.ArrayModifiableDBIDs;
 import de.lmu.ifi.dbs.elki.database.ids.DBID;
 import de.lmu.ifi.dbs.elki.database.ids.DBIDIter;
 import de.lmu.ifi.dbs.elki.database.ids.DBIDRef;
 import de.lmu.ifi.dbs.elki.database.ids.DBIDUtil;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDVar;
 import de.lmu.ifi.dbs.elki.database.ids.DBIDs;
 import de.lmu.ifi.dbs.elki.database.ids.DoubleDBIDList;
 import de.lmu.ifi.dbs.elki.database.ids.DoubleDBIDListIter;
@@ -39,11 +42,14 @@ import de.lmu.ifi.dbs.elki.database.query.range.AbstractDistanceRangeQuery;
 import de.lmu.ifi.dbs.elki.database.query.range.RangeQuery;
 import de.lmu.ifi.dbs.elki.database.relation.Relation;
 import de.lmu.ifi.dbs.elki.distance.distancefunction.DistanceFunction;
+import de.lmu.ifi.dbs.elki.index.DynamicIndex;
 import de.lmu.ifi.dbs.elki.index.KNNIndex;
 import de.lmu.ifi.dbs.elki.index.RangeIndex;
 import de.lmu.ifi.dbs.elki.logging.Logging;
 import de.lmu.ifi.dbs.elki.logging.statistics.DoubleStatistic;
 import de.lmu.ifi.dbs.elki.logging.statistics.LongStatistic;
+import de.lmu.ifi.dbs.elki.logging.statistics.QueryCounters;
+import de.lmu.ifi.dbs.elki.parallel.ParallelCore;
 import de.lmu.ifi.dbs.elki.utilities.datastructures.heap.DoubleObjectMinHeap;
 import de.lmu.ifi.dbs.elki.utilities.documentation.Reference;
 
@@ -64,7 +70,11 @@ import de.lmu.ifi.dbs.elki.utilities.documentation.Reference;
  * parent nodes. It thus needs more than twice the memory of
  * {@link SimplifiedCoverTree}, but computes fewer distances.
  *
- * TODO: allow insertions and removals, as in the original publication.
+ * The tree supports insertions and removals, as in the original publication:
+ * a new object is added at the first level where it is not within the cover of
+ * an existing child, so that the children remain separated; leaves that grew
+ * too large are rebuilt with the bulk-load procedure. When a routing object is
+ * removed, the objects of its subtree are reinserted.
  *
  * @author Erich Schubert
  * @since 0.7.0
@@ -76,7 +86,7 @@ import de.lmu.ifi.dbs.elki.utilities.documentation.Reference;
 title = "Cover trees for nearest neighbor", //
 booktitle = "In Proc. 23rd International Conference on Machine Learning (ICML)", //
 url = "http://dx.doi.org/10.1145/1143844.1143857")
-public class CoverTree<O> extends AbstractCoverTree<O>implements RangeIndex<O>, KNNIndex<O> {
+public class CoverTree<O> extends AbstractCoverTree<O>implements RangeIndex<O>, KNNIndex<O>, DynamicIndex {
   /**
    * Class logger.
    */
@@ -128,9 +138,10 @@ public class CoverTree<O> extends AbstractCoverTree<O>implements RangeIndex<O>,
     ArrayList<Node> children;
 
     /**
-     * Expansion scale.
+     * Expansion scale, children are separated by more than the distance of
+     * the next smaller scale.
      */
-    // int scale = SCALE_LEAF;
+    int scale;
 
     /**
      * Constructor.
@@ -138,13 +149,15 @@ public class CoverTree<O> extends AbstractCoverTree<O>implements RangeIndex<O>,
      * @param r Object.
      * @param maxDist Maximum distance to any descendant.
      * @param parentDist Distance from parent.
+     * @param scale Expansion scale
      */
-    public Node(DBIDRef r, double maxDist, double parentDist) {
+    public Node(DBIDRef r, double maxDist, double parentDist, int scale) {
       this.singletons = DBIDUtil.newDistanceDBIDList();
       this.singletons.add(0., r);
       this.children = new ArrayList<>();
       this.maxDist = maxDist;
       this.parentDist = parentDist;
+      this.scale = scale;
     }
 
     /**
@@ -153,9 +166,10 @@ public class CoverTree<O> extends AbstractCoverTree<O>implements RangeIndex<O>,
      * @param r Object.
      * @param maxDist Maximum distance to any descendant.
      * @param parentDist Distance from parent.
+     * @param scale Expansion scale
      * @param singletons Singletons.
      */
-    public Node(DBIDRef r, double maxDist, double parentDist, DoubleDBIDList singletons) {
+    public Node(DBIDRef r, double maxDist, double parentDist, int scale, DoubleDBIDList singletons) {
       assert(!singletons.contains(r));
       this.singletons = DBIDUtil.newDistanceDBIDList(singletons.size() + 1);
       this.singletons.add(0., r);
@@ -165,6 +179,7 @@ public class CoverTree<O> extends AbstractCoverTree<O>implements RangeIndex<O>,
       this.children = null;
       this.maxDist = maxDist;
       this.parentDist = parentDist;
+      this.scale = scale;
     }
 
     /**
@@ -180,7 +195,7 @@ public class CoverTree<O> extends AbstractCoverTree<O>implements RangeIndex<O>,
   @Override
   public void initialize() {
     bulkLoad(relation.getDBIDs());
-    if(LOG.isVerbose()) {
+    if(LOG.isVerbose() && root != null) {
       int[] counts = new int[5];
       checkCoverTree(root, counts, 0);
       LOG.statistics(new LongStatistic(this.getClass().getName() + ".nodes", counts[0]));
@@ -197,6 +212,20 @@ public class CoverTree<O> extends AbstractCoverTree<O>implements RangeIndex<O>,
    * @param ids IDs to load
    */
   public void bulkLoad(DBIDs ids) {
+    // The distance counter is not thread safe, so only build in parallel
+    // when statistics are not logged.
+    bulkLoad(ids, ids.size() >= PARALLEL_THRESHOLD && !getLogger().isStatistics() && ParallelCore.getCore().getParallelism() > 1);
+  }
+
+  /**
+   * Bulk-load the index.
+   *
+   * The parallel build yields the same tree as the serial build.
+   *
+   * @param ids IDs to load
+   * @param parallel Build large subtrees in parallel
+   */
+  protected void bulkLoad(DBIDs ids, boolean parallel) {
     if(ids.size() == 0) {
       return;
     }
@@ -208,7 +237,8 @@ public class CoverTree<O> extends AbstractCoverTree<O>implements RangeIndex<O>,
     for(it.advance(); it.valid(); it.advance()) {
       candidates.add(distance(first, it), it);
     }
-    root = bulkConstruct(first, Integer.MAX_VALUE, 0., candidates);
+    root = parallel ? ParallelCore.getCore().invoke(new BuildTask(first, Integer.MAX_VALUE, 0., candidates)) //
+        : bulkConstruct(first, Integer.MAX_VALUE, 0., candidates, false);
   }
 
   /**
@@ -219,10 +249,13 @@ public class CoverTree<O> extends AbstractCoverTree<O>implements RangeIndex<O>,
    *
    * @param cur Current routing object
    * @param maxScale Maximum scale
+   * @param parentDist Distance to the parent routing object
    * @param elems Candidates
+   * @param parallel Fork tasks for large subtrees (must run in the fork-join
+   *        pool)
    * @return Root node of subtree
    */
-  protected Node bulkConstruct(DBIDRef cur, int maxScale, double parentDist, ModifiableDoubleDBIDList elems) {
+  protected Node bulkConstruct(DBIDRef cur, int maxScale, double parentDist, ModifiableDoubleDBIDList elems, boolean parallel) {
     assert(!elems.contains(cur));
     final double max = maxDistance(elems);
     final int scale = Math.min(distToScale(max) - 1, maxScale);
@@ -230,7 +263,7 @@ public class CoverTree<O> extends AbstractCoverTree<O>implements RangeIndex<O>,
     // Leaf node, because points coincide, we are too deep, or have too few
     // elements remaining:
     if(max <= 0 || scale <= scaleBottom || elems.size() < truncate) {
-      return new Node(cur, max, parentDist, elems);
+      return new Node(cur, max, parentDist, scale, elems);
     }
     // Find neighbors in the cover of the current object:
     ModifiableDoubleDBIDList candidates = DBIDUtil.newDistanceDBIDList();
@@ -238,15 +271,24 @@ public class CoverTree<O> extends AbstractCoverTree<O>implements RangeIndex<O>,
     // If no elements were not in the cover, build a compact tree:
     if(candidates.size() == 0) {
       LOG.warning("Scale not chosen appropriately? " + max + " " + scaleToDist(scale));
-      return bulkConstruct(cur, nextScale, parentDist, elems);
+      return bulkConstruct(cur, nextScale, parentDist, elems, parallel);
     }
     // We will have at least one other child, so build the parent:
-    Node node = new Node(cur, max, parentDist);
+    Node node = new Node(cur, max, parentDist, scale);
     // Routing element now is a singleton:
     final boolean curSingleton = elems.size() == 0;
+    // Subtrees built by other tasks, in the order of the empty child slots:
+    ArrayList<BuildTask> tasks = null;
     if(!curSingleton) {
       // Add node for the routing object:
-      node.children.add(bulkConstruct(cur, nextScale, 0, elems));
+      if(parallel && elems.size() >= PARALLEL_THRESHOLD) {
+        tasks = new ArrayList<>();
+        tasks.add(forkChild(node, DBIDUtil.deref(cur), nextScale, 0, elems));
+        elems = DBIDUtil.newDistanceDBIDList(); // Task owns the old buffer.
+      }
+      else {
+        node.children.add(bulkConstruct(cur, nextScale, 0, elems, parallel));
+      }
     }
     final double fmax = scaleToDist(nextScale);
     // Build additional cover nodes:
@@ -259,26 +301,333 @@ public class CoverTree<O> extends AbstractCoverTree<O>implements RangeIndex<O>,
       if(elems.size() == 0) { // Singleton
         node.singletons.add(it.doubleValue(), it);
       }
+      else if(parallel && elems.size() >= PARALLEL_THRESHOLD) {
+        tasks = tasks != null ? tasks : new ArrayList<BuildTask>();
+        tasks.add(forkChild(node, DBIDUtil.deref(it), nextScale, it.doubleValue(), elems));
+        elems = DBIDUtil.newDistanceDBIDList(); // Task owns the old buffer.
+      }
       else {
         // Build a full child node:
-        node.children.add(bulkConstruct(it, nextScale, it.doubleValue(), elems));
+        node.children.add(bulkConstruct(it, nextScale, it.doubleValue(), elems, parallel));
       }
       candidates.removeSwap(0);
     }
     assert(candidates.size() == 0);
+    if(tasks != null) {
+      for(int i = 0, j = 0; i < node.children.size(); i++) {
+        if(node.children.get(i) == null) {
+          node.children.set(i, tasks.get(j++).join());
+        }
+      }
+    }
     // Routing object is not yet handled:
     if(curSingleton) {
       if(node.isLeaf()) {
         node.children = null; // First in leaf is enough.
       }
       else {
-        node.singletons.add(parentDist, cur); // Add as regular singleton.
+        node.singletons.add(0., cur); // Add as regular singleton.
       }
     }
     // TODO: improve recycling of lists?
     return node;
   }
 
+  /**
+   * Fork a task to build a child node, and reserve its slot.
+   *
+   * @param node Parent node
+   * @param cur Routing object of the child
+   * @param maxScale Maximum scale
+   * @param parentDist Distance to the parent routing object
+   * @param elems Candidates, owned by the task
+   * @return Forked task
+   */
+  private BuildTask forkChild(Node node, DBID cur, int maxScale, double parentDist, ModifiableDoubleDBIDList elems) {
+    node.children.add(null);
+    BuildTask task = new BuildTask(cur, maxScale, parentDist, elems);
+    task.fork();
+    return task;
+  }
+
+  /**
+   * Fork-join task to build a subtree.
+   *
+   * @author Erich Schubert
+   *
+   * @apiviz.exclude
+   */
+  private class BuildTask extends RecursiveTask<Node> {
+    /**
+     * Serialization version.
+     */
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * Routing object.
+     */
+    private final DBID cur;
+
+    /**
+     * Maximum scale.
+     */
+    private final int maxScale;
+
+    /**
+     * Distance to the parent routing object.
+     */
+    private final double parentDist;
+
+    /**
+     * Candidates.
+     */
+    private final ModifiableDoubleDBIDList elems;
+
+    /**
+     * Constructor.
+     *
+     * @param cur Routing object
+     * @param maxScale Maximum scale
+     * @param parentDist Distance to the parent routing object
+     * @param elems Candidates
+     */
+    public BuildTask(DBID cur, int maxScale, double parentDist, ModifiableDoubleDBIDList elems) {
+      super();
+      this.cur = cur;
+      this.maxScale = maxScale;
+      this.parentDist = parentDist;
+      this.elems = elems;
+    }
+
+    @Override
+    protected Node compute() {
+      return bulkConstruct(cur, maxScale, parentDist, elems, true);
+    }
+  }
+
+  @Override
+  public void insert(DBIDRef id) {
+    insert(relation.get(id), id);
+  }
+
+  @Override
+  public void insertAll(DBIDs ids) {
+    if(root == null) {
+      bulkLoad(ids);
+      return;
+    }
+    for(DBIDIter it = ids.iter(); it.valid(); it.advance()) {
+      insert(relation.get(it), it);
+    }
+  }
+
+  /**
+   * Insert a single object into the tree.
+   *
+   * @param obj Object
+   * @param id Object id
+   */
+  protected void insert(O obj, DBIDRef id) {
+    if(root == null) {
+      root = new Node(id, 0., 0., Integer.MAX_VALUE, DBIDUtil.newDistanceDBIDList(0));
+      return;
+    }
+    Node cur = root;
+    double d = distance(obj, cur.singletons.iter());
+    // Object is not covered by the root: grow the tree upwards.
+    if(!root.isLeaf() && d > root.maxDist && d > scaleToDist(root.scale)) {
+      root = new Node(root.singletons.iter(), d, 0., Math.max(distToScale(d), root.scale + 1));
+      root.children.add(cur);
+      root.singletons.add(d, id);
+      return;
+    }
+    while(true) {
+      cur.maxDist = d > cur.maxDist ? d : cur.maxDist;
+      if(cur.isLeaf()) {
+        cur.singletons.add(d, id);
+        final int size = cur.singletons.size();
+        if(size >= truncate << 1 && size % truncate == 0) {
+          rebuildLeaf(cur);
+        }
+        return;
+      }
+      // Find the closest child or singleton within the cover radius, using
+      // the distances to the routing object for pruning:
+      final DoubleDBIDListIter it = cur.singletons.iter();
+      final DBIDVar r = DBIDUtil.newVar(it);
+      double bestd = scaleToDist(cur.scale - 1);
+      Node best = null;
+      for(Node c : cur.children) {
+        if(Math.abs(d - c.parentDist) > bestd) {
+          continue;
+        }
+        final DoubleDBIDListIter f = c.singletons.iter();
+        final double dist = DBIDUtil.equal(f, it) ? d : distance(obj, f);
+        if(dist <= bestd) {
+          best = c;
+          bestd = dist;
+        }
+      }
+      int bests = -1;
+      for(it.advance(); it.valid(); it.advance()) {
+        if(Math.abs(d - it.doubleValue()) >= bestd) {
+          continue;
+        }
+        final double dist = DBIDUtil.equal(it, r) ? d : distance(obj, it);
+        if(dist < bestd) {
+          bests = it.getOffset();
+          bestd = dist;
+        }
+      }
+      if(bests > 0) {
+        // Turn the singleton into a leaf with the new object:
+        ModifiableDoubleDBIDList elems = DBIDUtil.newDistanceDBIDList(1);
+        elems.add(bestd, id);
+        it.seek(bests);
+        cur.children.add(new Node(it, bestd, it.doubleValue(), cur.scale - 1, elems));
+        cur.singletons.removeSwap(bests);
+        return;
+      }
+      if(best == null) {
+        // Separated from all children, add as singleton:
+        cur.singletons.add(d, id);
+        return;
+      }
+      cur = best;
+      d = bestd;
+    }
+  }
+
+  /**
+   * Rebuild a leaf node that has become too large.
+   *
+   * @param leaf Leaf node
+   */
+  private void rebuildLeaf(Node leaf) {
+    DoubleDBIDListIter it = leaf.singletons.iter();
+    DBID r = DBIDUtil.deref(it);
+    ModifiableDoubleDBIDList elems = DBIDUtil.newDistanceDBIDList(leaf.singletons.size() - 1);
+    for(it.advance(); it.valid(); it.advance()) {
+      elems.add(it.doubleValue(), it);
+    }
+    Node n = bulkConstruct(r, Integer.MAX_VALUE, leaf.parentDist, elems, false);
+    leaf.singletons = n.singletons;
+    leaf.children = n.children;
+    leaf.maxDist = n.maxDist;
+    leaf.scale = n.scale;
+  }
+
+  @Override
+  public boolean delete(DBIDRef id) {
+    if(root == null) {
+      return false;
+    }
+    if(DBIDUtil.equal(root.singletons.iter(), id)) {
+      // Root object removed, rebuild the tree.
+      ArrayModifiableDBIDs rest = DBIDUtil.newArray();
+      collect(root, id, rest);
+      root = null;
+      bulkLoad(rest);
+      return true;
+    }
+    final O obj = relation.get(id);
+    return delete(root, distance(obj, root.singletons.iter()), obj, id);
+  }
+
+  @Override
+  public void deleteAll(DBIDs ids) {
+    for(DBIDIter it = ids.iter(); it.valid(); it.advance()) {
+      delete(it);
+    }
+  }
+
+  /**
+   * Remove an object from a subtree.
+   *
+   * @param cur Current node, routing object must not be the object removed
+   * @param d Distance of the object to the routing object
+   * @param obj Object to remove
+   * @param id Object id
+   * @return {@code true} if the object was found.
+   */
+  private boolean delete(Node cur, double d, O obj, DBIDRef id) {
+    for(DoubleDBIDListIter it = cur.singletons.iter().advance(); it.valid(); it.advance()) {
+      if(DBIDUtil.equal(it, id)) {
+        cur.singletons.removeSwap(it.getOffset());
+        return true;
+      }
+    }
+    if(cur.isLeaf()) {
+      return false;
+    }
+    for(int i = 0; i < cur.children.size(); i++) {
+      final Node c = cur.children.get(i);
+      if(DBIDUtil.equal(c.singletons.iter(), id)) {
+        // Routing object removed: reinsert the remainder of the subtree.
+        cur.children.remove(i);
+        if(cur.children.isEmpty()) {
+          makeLeaf(cur);
+        }
+        ArrayModifiableDBIDs rest = DBIDUtil.newArray();
+        collect(c, id, rest);
+        for(DBIDIter it = rest.iter(); it.valid(); it.advance()) {
+          insert(relation.get(it), it);
+        }
+        return true;
+      }
+    }
+    for(Node c : cur.children) {
+      if(Math.abs(d - c.parentDist) > c.maxDist) {
+        continue;
+      }
+      final double dist = c.parentDist == 0. && DBIDUtil.equal(c.singletons.iter(), cur.singletons.iter()) ? d : distance(obj, c.singletons.iter());
+      if(dist <= c.maxDist && delete(c, dist, obj, id)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Convert an inner node without children into a leaf.
+   *
+   * @param node Node
+   */
+  private static void makeLeaf(Node node) {
+    // The routing object is also a singleton of the inner node:
+    DoubleDBIDListIter it = node.singletons.iter();
+    final DBIDVar r = DBIDUtil.newVar(it);
+    for(it.advance(); it.valid(); it.advance()) {
+      if(DBIDUtil.equal(it, r)) {
+        node.singletons.removeSwap(it.getOffset());
+        break;
+      }
+    }
+    node.children = null;
+  }
+
+  /**
+   * Collect all objects of a subtree.
+   *
+   * @param cur Subtree root
+   * @param exclude Object to exclude
+   * @param out Output
+   */
+  private static void collect(Node cur, DBIDRef exclude, ArrayModifiableDBIDs out) {
+    DoubleDBIDListIter it = cur.singletons.iter();
+    if(!cur.isLeaf()) {
+      it.advance(); // Routing object is part of a child, or a singleton.
+      for(Node c : cur.children) {
+        collect(c, exclude, out);
+      }
+    }
+    for(; it.valid(); it.advance()) {
+      if(!DBIDUtil.equal(it, exclude)) {
+        out.add(it);
+      }
+    }
+  }
+
   /**
    * Collect some statistics on the tree.
    *
@@ -353,10 +702,14 @@ public class CoverTree<O> extends AbstractCoverTree<O>implements RangeIndex<O>,
 
     @Override
     public void getRangeForObject(O obj, double range, ModifiableDoubleDBIDList ret) {
+      if(root == null) {
+        return;
+      }
       ArrayList<Node> open = new ArrayList<Node>(); // LIFO stack
       open.add(root);
       while(!open.isEmpty()) {
         final Node cur = open.remove(open.size() - 1); // pop()
+        QueryCounters.countNodeVisit();
         final DoubleDBIDListIter it = cur.singletons.iter();
         final double d = distance(obj, it);
         // Covered area not in range (metric assumption!):
@@ -416,6 +769,9 @@ public class CoverTree<O> extends AbstractCoverTree<O>implements RangeIndex<O>,
 
       KNNHeap knnList = DBIDUtil.newHeap(k);
       double d_k = Double.POSITIVE_INFINITY;
+      if(root == null) {
+        return knnList.toKNNList();
+      }
 
       final DoubleObjectMinHeap<Node> pq = new DoubleObjectMinHeap<>();
 
@@ -429,6 +785,7 @@ public class CoverTree<O> extends AbstractCoverTree<O>implements RangeIndex<O>,
         final double prio = pq.peekKey(); // Minimum distance to cover
         final double d = prio + cur.maxDist; // Restore distance to center.
         pq.poll(); // Remove
+        QueryCounters.countNodeVisit();
 
         if(knnList.size() >= k && prio > d_k) {
           continue;
@@ -0,0 +1,175 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2017
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.lmu.ifi.dbs.elki.index.tree.spatial.kd;
+
+import de.lmu.ifi.dbs.elki.distance.distancefunction.ArrayDistanceKernels;
+import de.lmu.ifi.dbs.elki.distance.distancefunction.DistanceFunction;
+import de.lmu.ifi.dbs.elki.distance.distancefunction.WeightedNumberVectorDistanceFunction;
+import de.lmu.ifi.dbs.elki.distance.distancefunction.minkowski.LPNormDistanceFunction;
+import de.lmu.ifi.dbs.elki.distance.distancefunction.minkowski.SparseLPNormDistanceFunction;
+import de.lmu.ifi.dbs.elki.distance.distancefunction.minkowski.SquaredEuclideanDistanceFunction;
+import de.lmu.ifi.dbs.elki.utilities.documentation.Reference;
+import net.jafama.FastMath;
+
+/**
+ * Incremental computation of the minimum distance of a query point to the
+ * cell of a k-d-tree node, for Minkowski norms.
+ *
+ * The distance is kept in "raw" form (the sum of powers, before taking the
+ * root), together with the offset of the query to the cell in each dimension.
+ * When descending to a child on the other side of the splitting plane, only
+ * the offset in the splitting dimension changes, so the distance can be
+ * updated in constant time.
+ *
+ * The raw distances of points stored in packed coordinate arrays are computed
+ * in the same way, such that they can be compared to the cell distances.
+ *
+ * Reference:
+ * <p>
+ * S. Arya, D. M. Mount<br />
+ * Algorithms for fast vector quantization<br />
+ * Proc. Data Compression Conference (DCC 1993)
+ * </p>
+ *
+ * @author Erich Schubert
+ * @since 0.7.2
+ */
+@Reference(authors = "S. Arya, D. M. Mount", //
+    title = "Algorithms for fast vector quantization", //
+    booktitle = "Proc. Data Compression Conference (DCC 1993)", //
+    url = "http://dx.doi.org/10.1109/DCC.1993.253111")
+public final class IncrementalBoxDistance {
+  /**
+   * Exponent of the norm, infinity for the maximum norm.
+   */
+  private final double p;
+
+  /**
+   * Take the root for the final distance.
+   */
+  private final boolean root;
+
+  /**
+   * Constructor.
+   *
+   * @param p Exponent of the norm
+   * @param root Take the root for the final distance
+   */
+  private IncrementalBoxDistance(double p, boolean root) {
+    super();
+    this.p = p;
+    this.root = root;
+  }
+
+  /**
+   * Get the incremental distance for a distance function.
+   *
+   * @param df Distance function
+   * @return Incremental distance, or {@code null} if not supported.
+   */
+  public static IncrementalBoxDistance of(DistanceFunction<?> df) {
+    if(df instanceof WeightedNumberVectorDistanceFunction) {
+      return null;
+    }
+    if(df instanceof SquaredEuclideanDistanceFunction) {
+      return new IncrementalBoxDistance(2., false);
+    }
+    if(df instanceof LPNormDistanceFunction) {
+      return new IncrementalBoxDistance(((LPNormDistanceFunction) df).getP(), true);
+    }
+    if(df instanceof SparseLPNormDistanceFunction) {
+      return new IncrementalBoxDistance(((SparseLPNormDistanceFunction) df).getP(), true);
+    }
+    return null;
+  }
+
+  /**
+   * Contribution of a single dimension to the raw distance.
+   *
+   * @param delta Offset in this dimension
+   * @return Contribution
+   */
+  private double contribution(double delta) {
+    delta = Math.abs(delta);
+    return p == 2. ? delta * delta : (p == 1. || p == Double.POSITIVE_INFINITY) ? delta : FastMath.pow(delta, p);
+  }
+
+  /**
+   * Update the raw distance, when the offset in one dimension increases.
+   *
+   * @param raw Previous raw distance
+   * @param oldoff Previous offset in the dimension
+   * @param newoff New offset in the dimension
+   * @return New raw distance
+   */
+  public double update(double raw, double oldoff, double newoff) {
+    if(p == Double.POSITIVE_INFINITY) {
+      return Math.max(raw, Math.abs(newoff));
+    }
+    return raw + contribution(newoff) - contribution(oldoff);
+  }
+
+  /**
+   * Raw distance of a query to a point stored in a packed array.
+   *
+   * @param data Packed coordinates
+   * @param off Offset of the point in the array
+   * @param q Query coordinates
+   * @return Raw distance
+   */
+  public double rawDistance(double[] data, int off, double[] q) {
+    final int len = q.length;
+    if(p == 2.) {
+      return ArrayDistanceKernels.squaredEuclidean(data, off, q, 0, len);
+    }
+    double agg = 0.;
+    if(p == Double.POSITIVE_INFINITY) {
+      for(int d = 0; d < len; d++) {
+        final double v = Math.abs(data[off + d] - q[d]);
+        agg = v > agg ? v : agg;
+      }
+    }
+    else if(p == 1.) {
+      for(int d = 0; d < len; d++) {
+        agg += Math.abs(data[off + d] - q[d]);
+      }
+    }
+    else {
+      for(int d = 0; d < len; d++) {
+        agg += FastMath.pow(Math.abs(data[off + d] - q[d]), p);
+      }
+    }
+    return agg;
+  }
+
+  /**
+   * Convert a raw distance to the final distance.
+   *
+   * @param raw Raw distance
+   * @return Distance
+   */
+  public double toDistance(double raw) {
+    if(!root || p == 1. || p == Double.POSITIVE_INFINITY) {
+      return raw;
+    }
+    return p == 2. ? FastMath.sqrt(raw) : FastMath.pow(raw, 1. / p);
+  }
+}
@@ -0,0 +1,564 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2017
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.lmu.ifi.dbs.elki.index.tree.spatial.kd;
+
+import java.util.Arrays;
+
+import de.lmu.ifi.dbs.elki.data.NumberVector;
+import de.lmu.ifi.dbs.elki.data.type.TypeInformation;
+import de.lmu.ifi.dbs.elki.data.type.TypeUtil;
+import de.lmu.ifi.dbs.elki.database.ids.ArrayDBIDs;
+import de.lmu.ifi.dbs.elki.database.ids.ArrayModifiableDBIDs;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDArrayIter;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDUtil;
+import de.lmu.ifi.dbs.elki.database.ids.KNNHeap;
+import de.lmu.ifi.dbs.elki.database.ids.KNNList;
+import de.lmu.ifi.dbs.elki.database.ids.ModifiableDoubleDBIDList;
+import de.lmu.ifi.dbs.elki.database.query.distance.DistanceQuery;
+import de.lmu.ifi.dbs.elki.database.query.knn.AbstractDistanceKNNQuery;
+import de.lmu.ifi.dbs.elki.database.query.knn.KNNQuery;
+import de.lmu.ifi.dbs.elki.database.query.range.AbstractDistanceRangeQuery;
+import de.lmu.ifi.dbs.elki.database.query.range.RangeQuery;
+import de.lmu.ifi.dbs.elki.database.relation.Relation;
+import de.lmu.ifi.dbs.elki.database.relation.RelationUtil;
+import de.lmu.ifi.dbs.elki.index.AbstractIndex;
+import de.lmu.ifi.dbs.elki.index.IndexFactory;
+import de.lmu.ifi.dbs.elki.index.KNNIndex;
+import de.lmu.ifi.dbs.elki.index.RangeIndex;
+import de.lmu.ifi.dbs.elki.logging.Logging;
+import de.lmu.ifi.dbs.elki.logging.statistics.Counter;
+import de.lmu.ifi.dbs.elki.logging.statistics.LongStatistic;
+import de.lmu.ifi.dbs.elki.logging.statistics.QueryCounters;
+import de.lmu.ifi.dbs.elki.utilities.Alias;
+import de.lmu.ifi.dbs.elki.utilities.datastructures.QuickSelect;
+import de.lmu.ifi.dbs.elki.utilities.documentation.Reference;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.AbstractParameterizer;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.constraints.CommonConstraints;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameterization.Parameterization;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameters.IntParameter;
+
+/**
+ * Static in-memory k-d-tree with a packed, cache-conscious memory layout.
+ *
+ * The coordinates of all points are copied into a single {@code double[]} in
+ * the order of the leaves, next to an array of the object IDs in the same
+ * order. Leaves are buckets of points, such that a leaf scan is a sequential
+ * sweep over memory, without accessing the relation. The inner nodes are
+ * stored in flat arrays (splitting dimension, splitting value, and the
+ * position of the children), and are split at the median of the dimension of
+ * largest extent.
+ *
+ * This uses more memory than {@link SmallMemoryKDTree}, as the data is copied,
+ * but is considerably faster for low-dimensional data. Queries use the
+ * incremental distance to the cells for pruning, and are supported for
+ * unweighted Minkowski norms and the squared Euclidean distance.
+ *
+ * Reference:
+ * <p>
+ * J. L. Bentley<br/>
+ * Multidimensional binary search trees used for associative searching<br />
+ * Communications of the ACM, Vol. 18 Issue 9, Sept. 1975
+ * </p>
+ *
+ * @author Erich Schubert
+ * @since 0.7.2
+ *
+ * @apiviz.has KDTreeKNNQuery
+ * @apiviz.has KDTreeRangeQuery
+ *
+ * @param <O> Vector type
+ */
+@Reference(authors = "J. L. Bentley", //
+    title = "Multidimensional binary search trees used for associative searching", //
+    booktitle = "Communications of the ACM, Vol. 18 Issue 9, Sept. 1975", //
+    url = "http://dx.doi.org/10.1145/361002.361007")
+public class PackedKDTree<O extends NumberVector> extends AbstractIndex<O> implements KNNIndex<O>, RangeIndex<O> {
+  /**
+   * Class logger
+   */
+  private static final Logging LOG = Logging.getLogger(PackedKDTree.class);
+
+  /**
+   * Object IDs, in the order of the leaves.
+   */
+  ArrayModifiableDBIDs ids;
+
+  /**
+   * Packed coordinates, in the order of the leaves.
+   */
+  double[] coords;
+
+  /**
+   * Splitting dimension of each node, -1 for leaves.
+   */
+  int[] splitdim;
+
+  /**
+   * Splitting value of each node. Points less than the splitting value are in
+   * the left child, larger points in the right child.
+   */
+  double[] splitval;
+
+  /**
+   * Index of the left child of inner nodes (the right child follows directly),
+   * first point of leaves.
+   */
+  int[] first;
+
+  /**
+   * End of the point range of each node (exclusive).
+   */
+  int[] end;
+
+  /**
+   * Number of nodes.
+   */
+  int numnodes;
+
+  /**
+   * The number of dimensions.
+   */
+  int dims = -1;
+
+  /**
+   * Maximum size of leaf nodes.
+   */
+  int leafsize;
+
+  /**
+   * Counter for distance computations.
+   */
+  final Counter distcalc;
+
+  /**
+   * Constructor.
+   *
+   * @param relation Relation to index
+   * @param leafsize Maximum size of leaf nodes
+   */
+  public PackedKDTree(Relation<O> relation, int leafsize) {
+    super(relation);
+    this.leafsize = leafsize;
+    assert (leafsize >= 1);
+    this.distcalc = LOG.isStatistics() ? LOG.newCounter(this.getClass().getName() + ".distancecalcs") : null;
+  }
+
+  @Override
+  public void initialize() {
+    final int size = relation.size();
+    dims = RelationUtil.dimensionality(relation);
+    ArrayDBIDs orig = DBIDUtil.ensureArray(relation.getDBIDs());
+    // Unsorted coordinates, and the permutation to sort them:
+    final double[] data = new double[size * dims];
+    final int[] perm = new int[size];
+    int i = 0;
+    for(DBIDArrayIter it = orig.iter(); it.valid(); it.advance(), i++) {
+      final O v = relation.get(it);
+      for(int d = 0, off = i * dims; d < dims; d++) {
+        data[off + d] = v.doubleValue(d);
+      }
+      perm[i] = i;
+    }
+    final int capacity = (size / leafsize + 1) << 2;
+    splitdim = new int[capacity];
+    splitval = new double[capacity];
+    first = new int[capacity];
+    end = new int[capacity];
+    numnodes = 1;
+    if(size > 0) {
+      buildTree(0, 0, size, data, perm, new double[dims << 1]);
+    }
+    else {
+      splitdim[0] = -1;
+    }
+    // Pack the coordinates and object IDs in tree order:
+    coords = new double[size * dims];
+    ids = DBIDUtil.newArray(size);
+    DBIDArrayIter it = orig.iter();
+    for(i = 0; i < size; i++) {
+      System.arraycopy(data, perm[i] * dims, coords, i * dims, dims);
+      ids.add(it.seek(perm[i]));
+    }
+    // Trim the node arrays:
+    splitdim = Arrays.copyOf(splitdim, numnodes);
+    splitval = Arrays.copyOf(splitval, numnodes);
+    first = Arrays.copyOf(first, numnodes);
+    end = Arrays.copyOf(end, numnodes);
+  }
+
+  /**
+   * Recursively build the tree, by splitting at the median of the dimension
+   * of largest extent.
+   *
+   * @param node Node to build
+   * @param left Interval minimum
+   * @param right Interval maximum (exclusive)
+   * @param data Unsorted coordinates
+   * @param perm Permutation of the points
+   * @param minmax Scratch buffer for the extent
+   */
+  private void buildTree(int node, int left, int right, double[] data, int[] perm, double[] minmax) {
+    end[node] = right;
+    if(right - left <= leafsize) {
+      splitdim[node] = -1;
+      first[node] = left;
+      return;
+    }
+    // Find the dimension of largest extent:
+    Arrays.fill(minmax, 0, dims, Double.POSITIVE_INFINITY);
+    Arrays.fill(minmax, dims, dims << 1, Double.NEGATIVE_INFINITY);
+    for(int i = left; i < right; i++) {
+      for(int d = 0, off = perm[i] * dims; d < dims; d++) {
+        final double v = data[off + d];
+        minmax[d] = v < minmax[d] ? v : minmax[d];
+        minmax[dims + d] = v > minmax[dims + d] ? v : minmax[dims + d];
+      }
+    }
+    int axis = 0;
+    double extent = minmax[dims] - minmax[0];
+    for(int d = 1; d < dims; d++) {
+      final double e = minmax[dims + d] - minmax[d];
+      if(e > extent) {
+        axis = d;
+        extent = e;
+      }
+    }
+    if(!(extent > 0)) { // All points are identical.
+      splitdim[node] = -1;
+      first[node] = left;
+      return;
+    }
+    final int middle = (left + right) >>> 1;
+    QuickSelect.quickSelect(perm, new CoordinateAdapter(data, dims, axis), left, right, middle);
+    final int child = numnodes;
+    numnodes += 2;
+    if(numnodes > splitdim.length) {
+      final int newsize = splitdim.length + (splitdim.length >> 1) + 2;
+      splitdim = Arrays.copyOf(splitdim, newsize);
+      splitval = Arrays.copyOf(splitval, newsize);
+      first = Arrays.copyOf(first, newsize);
+      end = Arrays.copyOf(end, newsize);
+    }
+    splitdim[node] = axis;
+    splitval[node] = data[perm[middle] * dims + axis];
+    first[node] = child;
+    buildTree(child, left, middle, data, perm, minmax);
+    buildTree(child + 1, middle, right, data, perm, minmax);
+  }
+
+  /**
+   * Adapter to partition the permutation by one coordinate.
+   *
+   * @author Erich Schubert
+   *
+   * @apiviz.exclude
+   */
+  private static class CoordinateAdapter implements QuickSelect.Adapter<int[]> {
+    /**
+     * Unsorted coordinates.
+     */
+    private final double[] data;
+
+    /**
+     * Dimensionality and partitioning dimension.
+     */
+    private final int dims, axis;
+
+    /**
+     * Constructor.
+     *
+     * @param data Unsorted coordinates
+     * @param dims Dimensionality
+     * @param axis Partitioning dimension
+     */
+    public CoordinateAdapter(double[] data, int dims, int axis) {
+      this.data = data;
+      this.dims = dims;
+      this.axis = axis;
+    }
+
+    @Override
+    public void swap(int[] perm, int i, int j) {
+      final int tmp = perm[i];
+      perm[i] = perm[j];
+      perm[j] = tmp;
+    }
+
+    @Override
+    public boolean compareGreater(int[] perm, int i, int j) {
+      return data[perm[i] * dims + axis] > data[perm[j] * dims + axis];
+    }
+  }
+
+  @Override
+  public String getLongName() {
+    return "packed kd-tree";
+  }
+
+  @Override
+  public String getShortName() {
+    return "packed-kd-tree";
+  }
+
+  @Override
+  public void logStatistics() {
+    LOG.statistics(new LongStatistic(this.getClass().getName() + ".nodes", numnodes));
+    if(distcalc != null) {
+      LOG.statistics(distcalc);
+    }
+  }
+
+  /**
+   * Count distance computations.
+   *
+   * @param n Number of distance computations
+   */
+  protected void countDistanceComputations(int n) {
+    if(distcalc != null) {
+      distcalc.increment(n);
+    }
+    QueryCounters.countDistances(n);
+  }
+
+  /**
+   * Get the query coordinates.
+   *
+   * @param obj Query object
+   * @return Coordinates
+   */
+  private double[] toQuery(O obj) {
+    final double[] q = new double[dims];
+    for(int d = 0; d < dims; d++) {
+      q[d] = obj.doubleValue(d);
+    }
+    return q;
+  }
+
+  @Override
+  public KNNQuery<O> getKNNQuery(DistanceQuery<O> distanceQuery, Object... hints) {
+    IncrementalBoxDistance box = IncrementalBoxDistance.of(distanceQuery.getDistanceFunction());
+    return box != null ? new KDTreeKNNQuery(distanceQuery, box) : null;
+  }
+
+  @Override
+  public RangeQuery<O> getRangeQuery(DistanceQuery<O> distanceQuery, Object... hints) {
+    IncrementalBoxDistance box = IncrementalBoxDistance.of(distanceQuery.getDistanceFunction());
+    return box != null ? new KDTreeRangeQuery(distanceQuery, box) : null;
+  }
+
+  /**
+   * kNN query for the packed k-d-tree.
+   *
+   * @author Erich Schubert
+   */
+  public class KDTreeKNNQuery extends AbstractDistanceKNNQuery<O> {
+    /**
+     * Incremental cell distance.
+     */
+    private IncrementalBoxDistance box;
+
+    /**
+     * Constructor.
+     *
+     * @param distanceQuery Distance query
+     * @param box Incremental cell distance for the norm
+     */
+    public KDTreeKNNQuery(DistanceQuery<O> distanceQuery, IncrementalBoxDistance box) {
+      super(distanceQuery);
+      this.box = box;
+    }
+
+    @Override
+    public KNNList getKNNForObject(O obj, int k) {
+      final KNNHeap knns = DBIDUtil.newHeap(k);
+      kdKNNSearch(0, 0., new double[dims], toQuery(obj), knns, ids.iter());
+      return knns.toKNNList();
+    }
+
+    /**
+     * Perform a kNN search on the kd-tree, nearer child first.
+     *
+     * @param node Current node
+     * @param raw Raw distance of the query to the node cell
+     * @param offsets Offsets of the query to the cell (modified temporarily)
+     * @param q Query coordinates
+     * @param knns kNN heap
+     * @param iter Iterator variable
+     */
+    private void kdKNNSearch(int node, double raw, double[] offsets, double[] q, KNNHeap knns, DBIDArrayIter iter) {
+      QueryCounters.countNodeVisit();
+      final int axis = splitdim[node];
+      if(axis < 0) {
+        final int right = end[node];
+        for(int i = first[node], off = i * dims; i < right; i++, off += dims) {
+          final double dist = box.toDistance(box.rawDistance(coords, off, q));
+          if(dist <= knns.getKNNDistance()) {
+            knns.insert(dist, iter.seek(i));
+          }
+        }
+        countDistanceComputations(right - first[node]);
+        return;
+      }
+      final double delta = q[axis] - splitval[node];
+      final int lchild = first[node], near = delta < 0 ? lchild : lchild + 1, far = delta < 0 ? lchild + 1 : lchild;
+      kdKNNSearch(near, raw, offsets, q, knns, iter);
+      final double old = offsets[axis];
+      final double fraw = box.update(raw, old, delta);
+      if(box.toDistance(fraw) <= knns.getKNNDistance()) {
+        offsets[axis] = Math.abs(delta);
+        kdKNNSearch(far, fraw, offsets, q, knns, iter);
+        offsets[axis] = old;
+      }
+    }
+  }
+
+  /**
+   * Range query for the packed k-d-tree.
+   *
+   * @author Erich Schubert
+   */
+  public class KDTreeRangeQuery extends AbstractDistanceRangeQuery<O> {
+    /**
+     * Incremental cell distance.
+     */
+    private IncrementalBoxDistance box;
+
+    /**
+     * Constructor.
+     *
+     * @param distanceQuery Distance query
+     * @param box Incremental cell distance for the norm
+     */
+    public KDTreeRangeQuery(DistanceQuery<O> distanceQuery, IncrementalBoxDistance box) {
+      super(distanceQuery);
+      this.box = box;
+    }
+
+    @Override
+    public void getRangeForObject(O obj, double range, ModifiableDoubleDBIDList result) {
+      kdRangeSearch(0, 0., new double[dims], toQuery(obj), range, result, ids.iter());
+    }
+
+    /**
+     * Perform a range search on the kd-tree.
+     *
+     * @param node Current node
+     * @param raw Raw distance of the query to the node cell
+     * @param offsets Offsets of the query to the cell (modified temporarily)
+     * @param q Query coordinates
+     * @param range Query radius
+     * @param res Result list
+     * @param iter Iterator variable
+     */
+    private void kdRangeSearch(int node, double raw, double[] offsets, double[] q, double range, ModifiableDoubleDBIDList res, DBIDArrayIter iter) {
+      QueryCounters.countNodeVisit();
+      final int axis = splitdim[node];
+      if(axis < 0) {
+        final int right = end[node];
+        for(int i = first[node], off = i * dims; i < right; i++, off += dims) {
+          final double dist = box.toDistance(box.rawDistance(coords, off, q));
+          if(dist <= range) {
+            res.add(dist, iter.seek(i));
+          }
+        }
+        countDistanceComputations(right - first[node]);
+        return;
+      }
+      final double delta = q[axis] - splitval[node];
+      final int lchild = first[node], near = delta < 0 ? lchild : lchild + 1, far = delta < 0 ? lchild + 1 : lchild;
+      kdRangeSearch(near, raw, offsets, q, range, res, iter);
+      final double old = offsets[axis];
+      final double fraw = box.update(raw, old, delta);
+      if(box.toDistance(fraw) <= range) {
+        offsets[axis] = Math.abs(delta);
+        kdRangeSearch(far, fraw, offsets, q, range, res, iter);
+        offsets[axis] = old;
+      }
+    }
+  }
+
+  /**
+   * Factory class
+   *
+   * @author Erich Schubert
+   *
+   * @apiviz.stereotype factory
+   * @apiviz.has PackedKDTree
+   *
+   * @param <O> Vector type
+   */
+  @Alias({ "packedkd" })
+  public static class Factory<O extends NumberVector> implements IndexFactory<O, PackedKDTree<O>> {
+    /**
+     * Maximum size of leaf nodes.
+     */
+    int leafsize;
+
+    /**
+     * Constructor.
+     *
+     * @param leafsize Maximum size of leaf nodes.
+     */
+    public Factory(int leafsize) {
+      super();
+      this.leafsize = leafsize;
+    }
+
+    @Override
+    public PackedKDTree<O> instantiate(Relation<O> relation) {
+      return new PackedKDTree<>(relation, leafsize);
+    }
+
+    @Override
+    public TypeInformation getInputTypeRestriction() {
+      return TypeUtil.NUMBER_VECTOR_FIELD;
+    }
+
+    /**
+     * Parameterization class.
+     *
+     * @author Erich Schubert
+     *
+     * @apiviz.exclude
+     */
+    public static class Parameterizer<O extends NumberVector> extends AbstractParameterizer {
+      /**
+       * Maximum size of leaf nodes.
+       */
+      int leafsize;
+
+      @Override
+      protected void makeOptions(Parameterization config) {
+        super.makeOptions(config);
+        IntParameter leafP = new IntParameter(MinimalisticMemoryKDTree.Factory.Parameterizer.LEAFSIZE_P, 16) //
+            .addConstraint(CommonConstraints.GREATER_EQUAL_ONE_INT);
+        if(config.grab(leafP)) {
+          leafsize = leafP.intValue();
+        }
+      }
+
+      @Override
+      protected Factory<O> makeInstance() {
+        return new Factory<>(leafsize);
+      }
+    }
+  }
+}
@@ -0,0 +1,61 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2017
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.lmu.ifi.dbs.elki.index.tree.spatial.kd;
+
+/**
+ * Subtree of a k-d-tree in the queue of the best-first search.
+ *
+ * @author Erich Schubert
+ * @since 0.7.2
+ */
+final class PrioritySearchBranch {
+  /**
+   * Subtree begin and end (exclusive), splitting axis.
+   */
+  final int left, right, axis;
+
+  /**
+   * Raw distance of the query to the cell, see {@link IncrementalBoxDistance}.
+   */
+  final double raw;
+
+  /**
+   * Offsets of the query to the cell, in each dimension.
+   */
+  final double[] offsets;
+
+  /**
+   * Constructor.
+   *
+   * @param left Subtree begin
+   * @param right Subtree end (exclusive)
+   * @param axis Splitting axis
+   * @param raw Raw distance
+   * @param offsets Offsets of the query to the cell
+   */
+  PrioritySearchBranch(int left, int right, int axis, double raw, double[] offsets) {
+    this.left = left;
+    this.right = right;
+    this.axis = axis;
+    this.raw = raw;
+    this.offsets = offsets;
+  }
+}
@@ -20,6 +20,8 @@
  */
 package de.lmu.ifi.dbs.elki.index.tree.spatial.kd;
 
+import java.util.concurrent.RecursiveAction;
+
 import de.lmu.ifi.dbs.elki.data.NumberVector;
 import de.lmu.ifi.dbs.elki.data.type.TypeInformation;
 import de.lmu.ifi.dbs.elki.data.type.TypeUtil;
@@ -31,6 +33,7 @@ import de.lmu.ifi.dbs.elki.database.ids.KNNHeap;
 import de.lmu.ifi.dbs.elki.database.ids.KNNList;
 import de.lmu.ifi.dbs.elki.database.ids.ModifiableDoubleDBIDList;
 import de.lmu.ifi.dbs.elki.database.ids.QuickSelectDBIDs;
+import de.lmu.ifi.dbs.elki.database.query.DatabaseQuery;
 import de.lmu.ifi.dbs.elki.database.query.distance.DistanceQuery;
 import de.lmu.ifi.dbs.elki.database.query.knn.AbstractDistanceKNNQuery;
 import de.lmu.ifi.dbs.elki.database.query.knn.KNNQuery;
@@ -49,11 +52,16 @@ import de.lmu.ifi.dbs.elki.index.KNNIndex;
 import de.lmu.ifi.dbs.elki.index.RangeIndex;
 import de.lmu.ifi.dbs.elki.logging.Logging;
 import de.lmu.ifi.dbs.elki.logging.statistics.Counter;
+import de.lmu.ifi.dbs.elki.logging.statistics.QueryCounters;
+import de.lmu.ifi.dbs.elki.parallel.ParallelCore;
 import de.lmu.ifi.dbs.elki.utilities.Alias;
+import de.lmu.ifi.dbs.elki.utilities.datastructures.heap.DoubleObjectMinHeap;
 import de.lmu.ifi.dbs.elki.utilities.documentation.Reference;
 import de.lmu.ifi.dbs.elki.utilities.optionhandling.AbstractParameterizer;
 import de.lmu.ifi.dbs.elki.utilities.optionhandling.constraints.CommonConstraints;
 import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameterization.Parameterization;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameters.DoubleParameter;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameters.Flag;
 import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameters.IntParameter;
 
 /**
@@ -93,6 +101,11 @@ public class SmallMemoryKDTree<O extends NumberVector> extends AbstractIndex<O>i
    */
   private static final Logging LOG = Logging.getLogger(SmallMemoryKDTree.class);
 
+  /**
+   * Minimum partition size to build subtrees in parallel.
+   */
+  static final int PARALLEL_THRESHOLD = 1 << 14;
+
   /**
    * The actual "tree" as a sorted array.
    */
@@ -108,6 +121,21 @@ public class SmallMemoryKDTree<O extends NumberVector> extends AbstractIndex<O>i
    */
   int leafsize;
 
+  /**
+   * Use best-first (priority) search for kNN queries.
+   */
+  boolean bestfirst;
+
+  /**
+   * Approximation factor for best-first search.
+   */
+  double eps;
+
+  /**
+   * Maximum number of leaves to visit in best-first search.
+   */
+  int maxleaves;
+
   /**
    * Counter for comparisons.
    */
@@ -125,8 +153,24 @@ public class SmallMemoryKDTree<O extends NumberVector> extends AbstractIndex<O>i
    * @param leafsize Maximum size of leaf nodes
    */
   public SmallMemoryKDTree(Relation<O> relation, int leafsize) {
+    this(relation, leafsize, false, 0., Integer.MAX_VALUE);
+  }
+
+  /**
+   * Constructor.
+   *
+   * @param relation Relation to index
+   * @param leafsize Maximum size of leaf nodes
+   * @param bestfirst Use best-first search for kNN queries
+   * @param eps Approximation factor for best-first search (0 for exact)
+   * @param maxleaves Maximum number of leaves to visit in best-first search
+   */
+  public SmallMemoryKDTree(Relation<O> relation, int leafsize, boolean bestfirst, double eps, int maxleaves) {
     super(relation);
     this.leafsize = leafsize;
+    this.bestfirst = bestfirst;
+    this.eps = eps;
+    this.maxleaves = maxleaves;
     assert(leafsize >= 1);
     if(LOG.isStatistics()) {
       String prefix = this.getClass().getName();
@@ -146,6 +190,11 @@ public class SmallMemoryKDTree<O extends NumberVector> extends AbstractIndex<O>i
     for(DBIDIter it = relation.iterDBIDs(); it.valid(); it.advance()) {
       sorted.add(Double.NaN, it);
     }
+    // Counters are not thread safe, so only build in parallel without them.
+    if(objaccess == null && sorted.size() >= PARALLEL_THRESHOLD && ParallelCore.getCore().getParallelism() > 1) {
+      buildTreeParallel(0, sorted.size(), 0);
+      return;
+    }
     buildTree(0, sorted.size(), 0, sorted.iter());
   }
 
@@ -159,7 +208,7 @@ public class SmallMemoryKDTree<O extends NumberVector> extends AbstractIndex<O>i
    * @param axis Current splitting axis
    * @param iter Iterator
    */
-  private void buildTree(int left, int right, int axis, DoubleDBIDListMIter iter) {
+  void buildTree(int left, int right, int axis, DoubleDBIDListMIter iter) {
     assert(left < right);
     for(iter.seek(left); iter.getOffset() < right; iter.advance()) {
       iter.setDouble(relation.get(iter).doubleValue(axis));
@@ -181,6 +230,72 @@ public class SmallMemoryKDTree<O extends NumberVector> extends AbstractIndex<O>i
     }
   }
 
+  /**
+   * Build the tree in parallel, using fork-join tasks for large subtrees.
+   *
+   * @param left Interval minimum
+   * @param right Interval maximum
+   * @param axis Current splitting axis
+   */
+  void buildTreeParallel(int left, int right, int axis) {
+    ParallelCore.getCore().invoke(new BuildTask(left, right, axis));
+  }
+
+  /**
+   * Fork-join task to build subtrees in parallel.
+   *
+   * Partitioning is deterministic and the subtrees cover disjoint ranges of
+   * the list, so the result is the same as with the serial build.
+   *
+   * @author Erich Schubert
+   *
+   * @apiviz.exclude
+   */
+  private class BuildTask extends RecursiveAction {
+    /**
+     * Serialization version.
+     */
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * Interval minimum and maximum, splitting axis.
+     */
+    private final int left, right, axis;
+
+    /**
+     * Constructor.
+     *
+     * @param left Interval minimum
+     * @param right Interval maximum
+     * @param axis Current splitting axis
+     */
+    public BuildTask(int left, int right, int axis) {
+      super();
+      this.left = left;
+      this.right = right;
+      this.axis = axis;
+    }
+
+    @Override
+    protected void compute() {
+      // Iterators are stateful, each task uses its own.
+      final DoubleDBIDListMIter iter = sorted.iter();
+      if(right - left < PARALLEL_THRESHOLD || right - left <= leafsize) {
+        buildTree(left, right, axis, iter);
+        return;
+      }
+      for(iter.seek(left); iter.getOffset() < right; iter.advance()) {
+        iter.setDouble(relation.get(iter).doubleValue(axis));
+      }
+      final int middle = (left + right) >>> 1;
+      QuickSelectDBIDs.quickSelect(sorted, left, right, middle);
+
+      final int next = (axis + 1) % dims;
+      // Both halves are non-empty, as the partition exceeds the threshold.
+      invokeAll(new BuildTask(left, middle, next), new BuildTask(middle + 1, right, next));
+    }
+  }
+
   @Override
   public String getLongName() {
     return "kd-tree";
@@ -217,6 +332,7 @@ public class SmallMemoryKDTree<O extends NumberVector> extends AbstractIndex<O>i
     if(distcalc != null) {
       distcalc.increment();
     }
+    QueryCounters.countDistance();
   }
 
   @Override
@@ -224,17 +340,38 @@ public class SmallMemoryKDTree<O extends NumberVector> extends AbstractIndex<O>i
     DistanceFunction<? super O> df = distanceQuery.getDistanceFunction();
     // TODO: if we know this works for other distance functions, add them, too!
     if(df instanceof LPNormDistanceFunction) {
-      return new KDTreeKNNQuery(distanceQuery, (Norm<? super O>) df);
+      return makeKNNQuery(distanceQuery, (Norm<? super O>) df, hints);
     }
     if(df instanceof SquaredEuclideanDistanceFunction) {
-      return new KDTreeKNNQuery(distanceQuery, (Norm<? super O>) df);
+      return makeKNNQuery(distanceQuery, (Norm<? super O>) df, hints);
     }
     if(df instanceof SparseLPNormDistanceFunction) {
-      return new KDTreeKNNQuery(distanceQuery, (Norm<? super O>) df);
+      return makeKNNQuery(distanceQuery, (Norm<? super O>) df, hints);
     }
     return null;
   }
 
+  /**
+   * Choose the kNN query for the configured search mode.
+   *
+   * @param distanceQuery Distance query
+   * @param norm Norm to use
+   * @param hints Optimizer hints
+   * @return kNN query
+   */
+  private KNNQuery<O> makeKNNQuery(DistanceQuery<O> distanceQuery, Norm<? super O> norm, Object... hints) {
+    IncrementalBoxDistance box = bestfirst ? IncrementalBoxDistance.of(norm) : null;
+    if(box == null) {
+      return new KDTreeKNNQuery(distanceQuery, norm);
+    }
+    for(Object hint : hints) {
+      if(hint == DatabaseQuery.HINT_EXACT) {
+        return new KDTreePrioritySearchKNNQuery(distanceQuery, norm, box, 0., Integer.MAX_VALUE);
+      }
+    }
+    return new KDTreePrioritySearchKNNQuery(distanceQuery, norm, box, eps, maxleaves);
+  }
+
   @Override
   public RangeQuery<O> getRangeQuery(DistanceQuery<O> distanceQuery, Object... hints) {
     DistanceFunction<? super O> df = distanceQuery.getDistanceFunction();
@@ -293,6 +430,7 @@ public class SmallMemoryKDTree<O extends NumberVector> extends AbstractIndex<O>i
      * @return New upper bound of kNN distance.
      */
     private double kdKNNSearch(int left, int right, int axis, O query, KNNHeap knns, DoubleDBIDListIter iter, double maxdist) {
+      QueryCounters.countNodeVisit();
       if(right - left <= leafsize) {
         for(iter.seek(left); iter.getOffset() < right; iter.advance()) {
           double dist = norm.distance(query, relation.get(iter));
@@ -382,6 +520,137 @@ public class SmallMemoryKDTree<O extends NumberVector> extends AbstractIndex<O>i
     }
   }
 
+  /**
+   * Best-first kNN query for the k-d-tree, also known as priority search.
+   *
+   * Subtrees are visited in the order of the minimum distance of the query to
+   * their cells, which is computed incrementally. Optionally, the search is
+   * approximate: subtrees are skipped if their minimum distance times (1+eps)
+   * exceeds the current kNN distance, and the search stops after a maximum
+   * number of leaves once k neighbors have been found.
+   *
+   * Reference:
+   * <p>
+   * S. Arya, D. M. Mount, N. S. Netanyahu, R. Silverman, A. Y. Wu<br />
+   * An optimal algorithm for approximate nearest neighbor searching in fixed
+   * dimensions<br />
+   * Journal of the ACM 45(6)
+   * </p>
+   *
+   * @author Erich Schubert
+   */
+  @Reference(authors = "S. Arya, D. M. Mount, N. S. Netanyahu, R. Silverman, A. Y. Wu", //
+      title = "An optimal algorithm for approximate nearest neighbor searching in fixed dimensions", //
+      booktitle = "Journal of the ACM 45(6)", //
+      url = "http://dx.doi.org/10.1145/293347.293348")
+  public class KDTreePrioritySearchKNNQuery extends AbstractDistanceKNNQuery<O> {
+    /**
+     * Norm to use.
+     */
+    private Norm<? super O> norm;
+
+    /**
+     * Incremental cell distance.
+     */
+    private IncrementalBoxDistance box;
+
+    /**
+     * Approximation factor, 1 + eps.
+     */
+    private double epsp1;
+
+    /**
+     * Maximum number of leaves to visit.
+     */
+    private int maxleaves;
+
+    /**
+     * Constructor.
+     *
+     * @param distanceQuery Distance query
+     * @param norm Norm to use
+     * @param box Incremental cell distance for this norm
+     * @param eps Approximation factor (0 for exact search)
+     * @param maxleaves Maximum number of leaves to visit
+     */
+    public KDTreePrioritySearchKNNQuery(DistanceQuery<O> distanceQuery, Norm<? super O> norm, IncrementalBoxDistance box, double eps, int maxleaves) {
+      super(distanceQuery);
+      this.norm = norm;
+      this.box = box;
+      this.epsp1 = 1. + eps;
+      this.maxleaves = maxleaves;
+    }
+
+    @Override
+    public KNNList getKNNForObject(O obj, int k) {
+      final KNNHeap knns = DBIDUtil.newHeap(k);
+      final DoubleDBIDListIter iter = sorted.iter();
+      final DoubleObjectMinHeap<PrioritySearchBranch> pq = new DoubleObjectMinHeap<>();
+      pq.add(0., new PrioritySearchBranch(0, sorted.size(), 0, 0., new double[dims]));
+      int leaves = 0;
+      while(!pq.isEmpty()) {
+        final double mindist = pq.peekKey();
+        final PrioritySearchBranch branch = pq.peekValue();
+        pq.poll();
+        if(mindist * epsp1 > knns.getKNNDistance()) {
+          break; // All remaining subtrees are farther away.
+        }
+        // Descend towards the query, and queue the other sides:
+        final double[] offsets = branch.offsets;
+        int left = branch.left, right = branch.right, axis = branch.axis;
+        while(right - left > leafsize) {
+          QueryCounters.countNodeVisit();
+          final int middle = (left + right) >>> 1;
+          // Distance to the splitting plane:
+          final double delta = iter.seek(middle).doubleValue() - obj.doubleValue(axis);
+          final int next = (axis + 1) % dims;
+          // The query offset changes on the other side of the plane only:
+          final double raw = box.update(branch.raw, offsets[axis], delta);
+          final double fardist = box.toDistance(raw);
+          if(fardist * epsp1 <= knns.getKNNDistance()) {
+            // The splitting object is on the plane.
+            O split = relation.get(iter.seek(middle));
+            countObjectAccess();
+            double dist = norm.distance(obj, split);
+            countDistanceComputation();
+            if(dist <= knns.getKNNDistance()) {
+              knns.insert(dist, iter.seek(middle));
+            }
+            final int fleft = delta >= 0 ? middle + 1 : left, fright = delta >= 0 ? right : middle;
+            if(fleft < fright) {
+              double[] foffsets = offsets.clone();
+              foffsets[axis] = Math.abs(delta);
+              pq.add(fardist, new PrioritySearchBranch(fleft, fright, next, raw, foffsets));
+            }
+          }
+          if(delta >= 0) {
+            right = middle;
+          }
+          else {
+            left = middle + 1;
+          }
+          axis = next;
+        }
+        if(left >= right) {
+          continue; // Empty side
+        }
+        QueryCounters.countNodeVisit();
+        for(iter.seek(left); iter.getOffset() < right; iter.advance()) {
+          double dist = norm.distance(obj, relation.get(iter));
+          countObjectAccess();
+          countDistanceComputation();
+          if(dist <= knns.getKNNDistance()) {
+            knns.insert(dist, iter);
+          }
+        }
+        if(++leaves >= maxleaves && knns.size() >= k) {
+          break; // Budget exhausted.
+        }
+      }
+      return knns.toKNNList();
+    }
+  }
+
   /**
    * kNN query for the k-d-tree.
    *
@@ -421,6 +690,7 @@ public class SmallMemoryKDTree<O extends NumberVector> extends AbstractIndex<O>i
      * @param radius Query radius
      */
     private void kdRangeSearch(int left, int right, int axis, O query, ModifiableDoubleDBIDList res, DoubleDBIDListIter iter, double radius) {
+      QueryCounters.countNodeVisit();
       if(right - left <= leafsize) {
         for(iter.seek(left); iter.getOffset() < right; iter.advance()) {
           double dist = norm.distance(query, relation.get(iter));
@@ -481,6 +751,21 @@ public class SmallMemoryKDTree<O extends NumberVector> extends AbstractIndex<O>i
      */
     int leafsize;
 
+    /**
+     * Use best-first search for kNN queries.
+     */
+    boolean bestfirst;
+
+    /**
+     * Approximation factor for best-first search.
+     */
+    double eps;
+
+    /**
+     * Maximum number of leaves to visit in best-first search.
+     */
+    int maxleaves;
+
     /**
      * Constructor.
      */
@@ -494,13 +779,28 @@ public class SmallMemoryKDTree<O extends NumberVector> extends AbstractIndex<O>i
      * @param leafsize Maximum size of leaf nodes.
      */
     public Factory(int leafsize) {
+      this(leafsize, false, 0., Integer.MAX_VALUE);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param leafsize Maximum size of leaf nodes.
+     * @param bestfirst Use best-first search for kNN queries
+     * @param eps Approximation factor for best-first search (0 for exact)
+     * @param maxleaves Maximum number of leaves to visit in best-first search
+     */
+    public Factory(int leafsize, boolean bestfirst, double eps, int maxleaves) {
       super();
       this.leafsize = leafsize;
+      this.bestfirst = bestfirst;
+      this.eps = eps;
+      this.maxleaves = maxleaves;
     }
 
     @Override
     public SmallMemoryKDTree<O> instantiate(Relation<O> relation) {
-      return new SmallMemoryKDTree<>(relation, leafsize);
+      return new SmallMemoryKDTree<>(relation, leafsize, bestfirst, eps, maxleaves);
     }
 
     @Override
@@ -521,6 +821,21 @@ public class SmallMemoryKDTree<O extends NumberVector> extends AbstractIndex<O>i
        */
       int leafsize;
 
+      /**
+       * Use best-first search for kNN queries.
+       */
+      boolean bestfirst;
+
+      /**
+       * Approximation factor for best-first search.
+       */
+      double eps = 0.;
+
+      /**
+       * Maximum number of leaves to visit in best-first search.
+       */
+      int maxleaves = Integer.MAX_VALUE;
+
       @Override
       protected void makeOptions(Parameterization config) {
         super.makeOptions(config);
@@ -529,11 +844,28 @@ public class SmallMemoryKDTree<O extends NumberVector> extends AbstractIndex<O>i
         if(config.grab(leafP)) {
           leafsize = leafP.intValue();
         }
+        Flag bestfirstF = new Flag(MinimalisticMemoryKDTree.Factory.Parameterizer.BESTFIRST_ID);
+        if(config.grab(bestfirstF)) {
+          bestfirst = bestfirstF.isTrue();
+        }
+        if(bestfirst) {
+          DoubleParameter epsP = new DoubleParameter(MinimalisticMemoryKDTree.Factory.Parameterizer.EPSILON_ID, 0.) //
+              .addConstraint(CommonConstraints.GREATER_EQUAL_ZERO_DOUBLE);
+          if(config.grab(epsP)) {
+            eps = epsP.doubleValue();
+          }
+          IntParameter maxleavesP = new IntParameter(MinimalisticMemoryKDTree.Factory.Parameterizer.MAXLEAVES_ID) //
+              .addConstraint(CommonConstraints.GREATER_EQUAL_ONE_INT);
+          maxleavesP.setOptional(true);
+          if(config.grab(maxleavesP)) {
+            maxleaves = maxleavesP.intValue();
+          }
+        }
       }
 
       @Override
       protected Factory<O> makeInstance() {
-        return new Factory<>(leafsize);
+        return new Factory<>(leafsize, bestfirst, eps, maxleaves);
       }
     }
   }
@@ -20,15 +20,18 @@
  */
 package de.lmu.ifi.dbs.elki.index.vafile;
 
-import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.List;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.AtomicLong;
 
 import de.lmu.ifi.dbs.elki.data.NumberVector;
 import de.lmu.ifi.dbs.elki.data.type.TypeInformation;
 import de.lmu.ifi.dbs.elki.data.type.TypeUtil;
+import de.lmu.ifi.dbs.elki.database.ids.ArrayDBIDs;
 import de.lmu.ifi.dbs.elki.database.ids.DBID;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDArrayIter;
 import de.lmu.ifi.dbs.elki.database.ids.DBIDIter;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDRef;
 import de.lmu.ifi.dbs.elki.database.ids.DBIDUtil;
 import de.lmu.ifi.dbs.elki.database.ids.DoubleDBIDListIter;
 import de.lmu.ifi.dbs.elki.database.ids.KNNHeap;
@@ -46,6 +49,7 @@ import de.lmu.ifi.dbs.elki.index.IndexFactory;
 import de.lmu.ifi.dbs.elki.index.KNNIndex;
 import de.lmu.ifi.dbs.elki.index.RangeIndex;
 import de.lmu.ifi.dbs.elki.logging.Logging;
+import de.lmu.ifi.dbs.elki.parallel.ParallelCore;
 import de.lmu.ifi.dbs.elki.persistent.AbstractPageFileFactory;
 import de.lmu.ifi.dbs.elki.utilities.datastructures.heap.DoubleMaxHeap;
 import de.lmu.ifi.dbs.elki.utilities.documentation.Reference;
@@ -60,6 +64,10 @@ import net.jafama.FastMath;
 /**
  * Vector-approximation file (VAFile)
  * 
+ * The approximations are stored as one packed array (one byte per dimension
+ * for up to 256 partitions, two bytes otherwise). The filter step uses
+ * per-query lookup tables, and scans large data sets in parallel.
+ * 
  * Reference:
  * <p>
  * Weber, R. and Blott, S.<br>
@@ -92,9 +100,30 @@ public class VAFile<V extends NumberVector> extends AbstractRefiningIndex<V> imp
   private static final Logging LOG = Logging.getLogger(VAFile.class);
 
   /**
-   * Approximation index.
+   * Minimum data set size for scanning in parallel.
+   */
+  static final int PARALLEL_THRESHOLD = 1 << 15;
+
+  /**
+   * Number of approximations scanned by a single task.
+   */
+  static final int BLOCK_SIZE = 4096;
+
+  /**
+   * Object ids, in the order of the approximations.
+   */
+  private ArrayDBIDs ids;
+
+  /**
+   * Packed approximations, one byte per dimension (up to 256 partitions).
+   */
+  private byte[] codes;
+
+  /**
+   * Packed approximations, one short per dimension (more than 256
+   * partitions).
    */
-  private List<VectorApproximation> vectorApprox;
+  private short[] wideCodes;
 
   /**
    * Number of partitions.
@@ -116,6 +145,11 @@ public class VAFile<V extends NumberVector> extends AbstractRefiningIndex<V> imp
    */
   int scans;
 
+  /**
+   * Minimum size to scan in parallel.
+   */
+  int parallelThreshold = ParallelCore.getCore().getParallelism() > 1 ? PARALLEL_THRESHOLD : Integer.MAX_VALUE;
+
   /**
    * Constructor.
    * 
@@ -128,15 +162,32 @@ public class VAFile<V extends NumberVector> extends AbstractRefiningIndex<V> imp
     this.partitions = partitions;
     this.pageSize = pageSize;
     this.scans = 0;
-    this.vectorApprox = new ArrayList<>();
   }
 
   @Override
   public void initialize() {
     setPartitions(relation);
-    for(DBIDIter iter = relation.iterDBIDs(); iter.valid(); iter.advance()) {
-      DBID id = DBIDUtil.deref(iter);
-      vectorApprox.add(calculateApproximation(id, relation.get(id)));
+    ids = DBIDUtil.ensureArray(relation.getDBIDs());
+    final int dimensions = splitPositions.length;
+    final int size = ids.size() * dimensions;
+    if(partitions <= 256) {
+      codes = new byte[size];
+    }
+    else {
+      wideCodes = new short[size];
+    }
+    int p = 0;
+    for(DBIDArrayIter iter = ids.iter(); iter.valid(); iter.advance()) {
+      V dv = relation.get(iter);
+      for(int d = 0; d < dimensions; d++, p++) {
+        final int cell = calculateCell(iter, d, dv.doubleValue(d));
+        if(codes != null) {
+          codes[p] = (byte) cell;
+        }
+        else {
+          wideCodes[p] = (short) cell;
+        }
+      }
     }
   }
 
@@ -150,6 +201,9 @@ public class VAFile<V extends NumberVector> extends AbstractRefiningIndex<V> imp
     if((FastMath.log(partitions) / FastMath.log(2)) != (int) (FastMath.log(partitions) / FastMath.log(2))) {
       throw new IllegalArgumentException("Number of partitions must be a power of 2!");
     }
+    if(partitions > 1 << 16) {
+      throw new IllegalArgumentException("Number of partitions must be at most 65536!");
+    }
 
     final int dimensions = RelationUtil.dimensionality(relation);
     final int size = relation.size();
@@ -183,32 +237,40 @@ public class VAFile<V extends NumberVector> extends AbstractRefiningIndex<V> imp
   public VectorApproximation calculateApproximation(DBID id, V dv) {
     int[] approximation = new int[dv.getDimensionality()];
     for(int d = 0; d < splitPositions.length; d++) {
-      final double val = dv.doubleValue(d);
-      final int lastBorderIndex = splitPositions[d].length - 1;
-
-      // Value is below data grid
-      if(val < splitPositions[d][0]) {
-        approximation[d] = 0;
-        if(id != null) {
-          LOG.warning("Vector outside of VAFile grid!");
-        }
-      } // Value is above data grid
-      else if(val > splitPositions[d][lastBorderIndex]) {
-        approximation[d] = lastBorderIndex - 1;
-        if(id != null) {
-          LOG.warning("Vector outside of VAFile grid!");
-        }
-      } // normal case
-      else {
-        // Search grid position
-        int pos = Arrays.binarySearch(splitPositions[d], val);
-        pos = (pos >= 0) ? pos : ((-pos) - 2);
-        approximation[d] = pos;
-      }
+      approximation[d] = calculateCell(id, d, dv.doubleValue(d));
     }
     return new VectorApproximation(id, approximation);
   }
 
+  /**
+   * Calculate the grid cell of a single value.
+   * 
+   * @param id Object ID, {@code null} for query objects
+   * @param d Dimension
+   * @param val Value
+   * @return Cell number
+   */
+  private int calculateCell(DBIDRef id, int d, double val) {
+    final int lastBorderIndex = splitPositions[d].length - 1;
+
+    // Value is below data grid
+    if(val < splitPositions[d][0]) {
+      if(id != null) {
+        LOG.warning("Vector outside of VAFile grid!");
+      }
+      return 0;
+    } // Value is above data grid
+    else if(val > splitPositions[d][lastBorderIndex]) {
+      if(id != null) {
+        LOG.warning("Vector outside of VAFile grid!");
+      }
+      return lastBorderIndex - 1;
+    } // normal case
+    // Search grid position
+    int pos = Arrays.binarySearch(splitPositions[d], val);
+    return (pos >= 0) ? pos : ((-pos) - 2);
+  }
+
   /**
    * Get the number of scanned bytes.
    * 
@@ -216,7 +278,7 @@ public class VAFile<V extends NumberVector> extends AbstractRefiningIndex<V> imp
    */
   public long getScannedPages() {
     int vacapacity = pageSize / VectorApproximation.byteOnDisk(splitPositions.length, partitions);
-    long vasize = (long) Math.ceil((vectorApprox.size()) / (1.0 * vacapacity));
+    long vasize = (long) Math.ceil((ids.size()) / (1.0 * vacapacity));
     return vasize * scans;
   }
 
@@ -264,6 +326,168 @@ public class VAFile<V extends NumberVector> extends AbstractRefiningIndex<V> imp
     return null;
   }
 
+  /**
+   * Run the filter step, in parallel for large data sets.
+   * 
+   * @param scan Scan state
+   * @return Candidates, with their minimum distance
+   */
+  private ModifiableDoubleDBIDList filter(FilterScan scan) {
+    // Count a VA file scan
+    scans += 1;
+    final int size = ids.size();
+    return size >= parallelThreshold ? ParallelCore.getCore().invoke(new FilterTask(scan, 0, size)) : scan.scan(0, size);
+  }
+
+  /**
+   * Filter step of a single query: scan the packed approximations for
+   * candidates, whose minimum distance does not exceed the bound.
+   * 
+   * For kNN queries, the bound is the smallest known k-th maximum distance;
+   * it is shared across threads, as each thread's k smallest maximum distances
+   * are valid bounds for the complete result.
+   * 
+   * @author Erich Schubert
+   * 
+   * @apiviz.exclude
+   */
+  private class FilterScan {
+    /**
+     * Approximative distance function.
+     */
+    final VALPNormDistance vadist;
+
+    /**
+     * Number of neighbors, 0 for a fixed bound (range queries).
+     */
+    final int k;
+
+    /**
+     * Shared raw distance bound, as double bits.
+     */
+    final AtomicLong bound;
+
+    /**
+     * Constructor.
+     * 
+     * @param vadist Approximative distance function
+     * @param k Number of neighbors, 0 for a fixed bound
+     * @param bound Initial bound
+     */
+    FilterScan(VALPNormDistance vadist, int k, double bound) {
+      this.vadist = vadist;
+      this.k = k;
+      this.bound = new AtomicLong(Double.doubleToLongBits(vadist.raw(bound)));
+    }
+
+    /**
+     * Scan a range of approximations.
+     * 
+     * @param begin First approximation
+     * @param end End (exclusive)
+     * @return Candidates, with their minimum distance
+     */
+    ModifiableDoubleDBIDList scan(int begin, int end) {
+      final int dimensions = splitPositions.length;
+      ModifiableDoubleDBIDList candidates = DBIDUtil.newDistanceDBIDList();
+      // Heap for the kth smallest maximum distance (yes, we need a max heap!)
+      DoubleMaxHeap minMaxHeap = k > 0 ? new DoubleMaxHeap(k + 1) : null;
+      double minMaxDist = Double.longBitsToDouble(bound.get());
+      DBIDArrayIter iter = ids.iter();
+      for(int i = begin, off = begin * dimensions; i < end; i++, off += dimensions) {
+        if(k > 0 && (i & 0xFF) == 0) {
+          minMaxDist = Math.min(minMaxDist, Double.longBitsToDouble(bound.get()));
+        }
+        final double minDist = codes != null ? vadist.getRawMinDist(codes, off) : vadist.getRawMinDist(wideCodes, off);
+        // Skip excess candidate generation:
+        if(minDist > minMaxDist) {
+          continue;
+        }
+        candidates.add(vadist.root(minDist), iter.seek(i));
+        if(k > 0) {
+          // Update candidate pruning heap
+          minMaxHeap.add(codes != null ? vadist.getRawMaxDist(codes, off) : vadist.getRawMaxDist(wideCodes, off), k);
+          if(minMaxHeap.size() >= k && minMaxHeap.peek() < minMaxDist) {
+            minMaxDist = minMaxHeap.peek();
+            updateBound(minMaxDist);
+          }
+        }
+      }
+      return candidates;
+    }
+
+    /**
+     * Lower the shared bound.
+     * 
+     * @param newbound New bound
+     */
+    private void updateBound(double newbound) {
+      final long bits = Double.doubleToLongBits(newbound);
+      for(long cur = bound.get(); newbound < Double.longBitsToDouble(cur); cur = bound.get()) {
+        if(bound.compareAndSet(cur, bits)) {
+          return;
+        }
+      }
+    }
+  }
+
+  /**
+   * Task to run the filter step on a range of approximations.
+   * 
+   * @author Erich Schubert
+   * 
+   * @apiviz.exclude
+   */
+  private class FilterTask extends RecursiveTask<ModifiableDoubleDBIDList> {
+    /**
+     * Serialization version.
+     */
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * Scan state.
+     */
+    private final FilterScan scan;
+
+    /**
+     * Range of approximations to scan.
+     */
+    private final int begin, end;
+
+    /**
+     * Constructor.
+     * 
+     * @param scan Scan state
+     * @param begin First approximation
+     * @param end End (exclusive)
+     */
+    FilterTask(FilterScan scan, int begin, int end) {
+      this.scan = scan;
+      this.begin = begin;
+      this.end = end;
+    }
+
+    @Override
+    protected ModifiableDoubleDBIDList compute() {
+      if(end - begin <= BLOCK_SIZE) {
+        return scan.scan(begin, end);
+      }
+      final int mid = (begin + end) >>> 1;
+      FilterTask second = new FilterTask(scan, mid, end);
+      second.fork();
+      ModifiableDoubleDBIDList candidates = new FilterTask(scan, begin, mid).compute();
+      ModifiableDoubleDBIDList more = second.join();
+      // Drop candidates excluded by the final bound:
+      final double bound = scan.vadist.root(Double.longBitsToDouble(scan.bound.get()));
+      for(DoubleDBIDListIter iter = more.iter(); iter.valid(); iter.advance()) {
+        if(iter.doubleValue() <= bound) {
+          candidates.add(iter.doubleValue(), iter);
+        }
+      }
+      return candidates;
+    }
+  }
+
   /**
    * Range query for this index.
    * 
@@ -295,25 +519,17 @@ public class VAFile<V extends NumberVector> extends AbstractRefiningIndex<V> imp
       // Approximative distance function
       VALPNormDistance vadist = new VALPNormDistance(p, splitPositions, query, queryApprox);
 
-      // Count a VA file scan
-      scans += 1;
-
       // Approximation step
-      for(int i = 0; i < vectorApprox.size(); i++) {
-        VectorApproximation va = vectorApprox.get(i);
-        double minDist = vadist.getMinDist(va);
-
-        if(minDist > eps) {
-          continue;
-        }
+      ModifiableDoubleDBIDList candidates = filter(new FilterScan(vadist, 0, eps));
 
-        // TODO: we don't need to refine always (maxDist < eps), if we are
-        // interested in the DBID only! But this needs an API change.
+      // TODO: we don't need to refine always (maxDist < eps), if we are
+      // interested in the DBID only! But this needs an API change.
 
-        // refine the next element
-        final double dist = refine(va.id, query);
+      // refine the candidates
+      for(DoubleDBIDListIter iter = candidates.iter(); iter.valid(); iter.advance()) {
+        final double dist = refine(iter, query);
         if(dist <= eps) {
-          result.add(dist, va.id);
+          result.add(dist, iter);
         }
       }
     }
@@ -349,33 +565,8 @@ public class VAFile<V extends NumberVector> extends AbstractRefiningIndex<V> imp
       // Approximative distance function
       VALPNormDistance vadist = new VALPNormDistance(p, splitPositions, query, queryApprox);
 
-      // Heap for the kth smallest maximum distance (yes, we need a max heap!)
-      DoubleMaxHeap minMaxHeap = new DoubleMaxHeap(k + 1);
-      double minMaxDist = Double.POSITIVE_INFINITY;
-      // Candidates with minDist <= kth maxDist
-      ModifiableDoubleDBIDList candidates = DBIDUtil.newDistanceDBIDList(vectorApprox.size());
-
-      // Count a VA file scan
-      scans += 1;
-
-      // Approximation step
-      for(int i = 0; i < vectorApprox.size(); i++) {
-        VectorApproximation va = vectorApprox.get(i);
-        double minDist = vadist.getMinDist(va);
-        double maxDist = vadist.getMaxDist(va);
-
-        // Skip excess candidate generation:
-        if(minDist > minMaxDist) {
-          continue;
-        }
-        candidates.add(minDist, va.id);
-
-        // Update candidate pruning heap
-        minMaxHeap.add(maxDist, k);
-        if(minMaxHeap.size() >= k) {
-          minMaxDist = minMaxHeap.peek();
-        }
-      }
+      // Approximation step: candidates with minDist <= kth maxDist
+      ModifiableDoubleDBIDList candidates = filter(new FilterScan(vadist, k, Double.POSITIVE_INFINITY));
       // sort candidates by lower bound (minDist)
       candidates.sort();
 
@@ -399,7 +590,7 @@ public class VAFile<V extends NumberVector> extends AbstractRefiningIndex<V> imp
       }
       if(LOG.isDebuggingFinest()) {
         LOG.finest("query = (" + query + ")");
-        LOG.finest("database: " + vectorApprox.size() + ", candidates: " + candidates.size() + ", results: " + result.size());
+        LOG.finest("database: " + ids.size() + ", candidates: " + candidates.size() + ", results: " + result.size());
       }
 
       return result.toKNNList();
@@ -26,6 +26,10 @@ import net.jafama.FastMath;
 /**
  * Lp-Norm distance function for partially computed objects.
  * 
+ * For scanning packed approximations, the per-cell contributions of each
+ * dimension are also precomputed into flat tables, and the bounds are
+ * accumulated without taking the root; use {@link #root} to obtain distances.
+ * 
  * @author Erich Schubert
  * @since 0.5.0
  */
@@ -45,6 +49,21 @@ public class VALPNormDistance {
    */
   private VectorApproximation queryApprox;
 
+  /**
+   * Number of cells per dimension.
+   */
+  private int cells;
+
+  /**
+   * Minimum distance contributions, {@code cells} entries per dimension.
+   */
+  private double[] minTable;
+
+  /**
+   * Maximum distance contributions, {@code cells} entries per dimension.
+   */
+  private double[] maxTable;
+
   /**
    * Constructor.
    * 
@@ -58,6 +77,7 @@ public class VALPNormDistance {
     this.onebyp = 1.0 / p;
     this.queryApprox = queryApprox;
     initializeLookupTable(splitPositions, query, p);
+    initializeCellTables();
   }
 
   /**
@@ -147,6 +167,90 @@ public class VALPNormDistance {
     return max;
   }
 
+  /**
+   * Get the minimum distance to a packed approximation, without the root.
+   * 
+   * @param codes Packed cell numbers, one byte per dimension
+   * @param off Offset of the approximation
+   * @return Minimum distance to the power of p
+   */
+  public double getRawMinDist(byte[] codes, int off) {
+    final double[] table = minTable;
+    double minDist = 0;
+    for(int o = 0, end = off + lookup.length; off < end; off++, o += cells) {
+      minDist += table[o + (codes[off] & 0xFF)];
+    }
+    return minDist;
+  }
+
+  /**
+   * Get the maximum distance to a packed approximation, without the root.
+   * 
+   * @param codes Packed cell numbers, one byte per dimension
+   * @param off Offset of the approximation
+   * @return Maximum distance to the power of p
+   */
+  public double getRawMaxDist(byte[] codes, int off) {
+    final double[] table = maxTable;
+    double maxDist = 0;
+    for(int o = 0, end = off + lookup.length; off < end; off++, o += cells) {
+      maxDist += table[o + (codes[off] & 0xFF)];
+    }
+    return maxDist;
+  }
+
+  /**
+   * Get the minimum distance to a packed approximation, without the root.
+   * 
+   * @param codes Packed cell numbers, one short per dimension
+   * @param off Offset of the approximation
+   * @return Minimum distance to the power of p
+   */
+  public double getRawMinDist(short[] codes, int off) {
+    final double[] table = minTable;
+    double minDist = 0;
+    for(int o = 0, end = off + lookup.length; off < end; off++, o += cells) {
+      minDist += table[o + (codes[off] & 0xFFFF)];
+    }
+    return minDist;
+  }
+
+  /**
+   * Get the maximum distance to a packed approximation, without the root.
+   * 
+   * @param codes Packed cell numbers, one short per dimension
+   * @param off Offset of the approximation
+   * @return Maximum distance to the power of p
+   */
+  public double getRawMaxDist(short[] codes, int off) {
+    final double[] table = maxTable;
+    double maxDist = 0;
+    for(int o = 0, end = off + lookup.length; off < end; off++, o += cells) {
+      maxDist += table[o + (codes[off] & 0xFFFF)];
+    }
+    return maxDist;
+  }
+
+  /**
+   * Convert a raw (accumulated) distance into a distance.
+   * 
+   * @param raw Raw distance
+   * @return Distance
+   */
+  public double root(double raw) {
+    return FastMath.pow(raw, onebyp);
+  }
+
+  /**
+   * Convert a distance into a raw distance, for comparing with the raw bounds.
+   * 
+   * @param dist Distance
+   * @return Distance to the power of p
+   */
+  public double raw(double dist) {
+    return FastMath.pow(dist, 1. / onebyp);
+  }
+
   /**
    * Initialize the lookup table.
    * 
@@ -161,7 +265,23 @@ public class VALPNormDistance {
     for(int d = 0; d < dimensions; d++) {
       final double val = query.doubleValue(d);
       for(int i = 0; i < bordercount; i++) {
-        lookup[d][i] = FastMath.pow(splitPositions[d][i] - val, p);
+        lookup[d][i] = FastMath.pow(Math.abs(splitPositions[d][i] - val), p);
+      }
+    }
+  }
+
+  /**
+   * Initialize the flat per-cell tables for scanning packed approximations.
+   */
+  private void initializeCellTables() {
+    final int dimensions = lookup.length;
+    cells = lookup[0].length - 1;
+    minTable = new double[dimensions * cells];
+    maxTable = new double[dimensions * cells];
+    for(int d = 0, o = 0; d < dimensions; d++) {
+      for(int c = 0; c < cells; c++, o++) {
+        minTable[o] = getPartialMinDist(d, c);
+        maxTable[o] = getPartialMaxDist(d, c);
       }
     }
   }
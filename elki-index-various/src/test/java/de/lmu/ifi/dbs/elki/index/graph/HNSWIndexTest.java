@@ -0,0 +1,150 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2017
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.lmu.ifi.dbs.elki.index.graph;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+
+import org.junit.Test;
+
+import de.lmu.ifi.dbs.elki.data.NumberVector;
+import de.lmu.ifi.dbs.elki.database.QueryUtil;
+import de.lmu.ifi.dbs.elki.database.StaticArrayDatabase;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDIter;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDUtil;
+import de.lmu.ifi.dbs.elki.database.ids.DoubleDBIDListIter;
+import de.lmu.ifi.dbs.elki.database.ids.KNNList;
+import de.lmu.ifi.dbs.elki.database.query.DatabaseQuery;
+import de.lmu.ifi.dbs.elki.database.query.distance.DistanceQuery;
+import de.lmu.ifi.dbs.elki.database.query.knn.KNNQuery;
+import de.lmu.ifi.dbs.elki.database.relation.Relation;
+import de.lmu.ifi.dbs.elki.distance.distancefunction.minkowski.EuclideanDistanceFunction;
+import de.lmu.ifi.dbs.elki.distance.distancefunction.minkowski.ManhattanDistanceFunction;
+import de.lmu.ifi.dbs.elki.index.AbstractIndexStructureTest;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameterization.ListParameterization;
+import de.lmu.ifi.dbs.elki.utilities.random.RandomFactory;
+
+/**
+ * Unit test for the HNSW graph index.
+ *
+ * @author Erich Schubert
+ * @since 0.7.2
+ */
+public class HNSWIndexTest extends AbstractIndexStructureTest {
+  /**
+   * Test {@link HNSWIndex} using a file based database connection.
+   */
+  @Test
+  public void testHNSW() {
+    ListParameterization params = new ListParameterization();
+    params.addParameter(StaticArrayDatabase.Parameterizer.INDEX_ID, HNSWIndex.Factory.class);
+    params.addParameter(HNSWIndex.Factory.Parameterizer.SEED_ID, 0L);
+    testExactEuclidean(params, HNSWIndex.HNSWKNNQuery.class, null);
+  }
+
+  /**
+   * Test the recall of serial and parallel construction.
+   */
+  @Test
+  public void testRecall() {
+    Relation<NumberVector> rel = makeRandomRelation(2000, 8);
+    DistanceQuery<NumberVector> dq = rel.getDistanceQuery(EuclideanDistanceFunction.STATIC);
+    for(boolean parallel : new boolean[] { false, true }) {
+      HNSWIndex<NumberVector> index = new HNSWIndex<>(rel, EuclideanDistanceFunction.STATIC, 8, 50, 40, RandomFactory.get(0L), null);
+      index.initialize(); // Serial build
+      if(parallel) {
+        index.build(true);
+      }
+      assertTrue("Recall too low, parallel: " + parallel, recall(rel, dq, index.getKNNQuery(dq)) > .95);
+    }
+    HNSWIndex<NumberVector> index = new HNSWIndex<>(rel, EuclideanDistanceFunction.STATIC, 8, 50, 40, RandomFactory.get(0L), null);
+    index.initialize();
+    assertNull("Approximate index used for exact queries.", index.getKNNQuery(dq, DatabaseQuery.HINT_EXACT));
+  }
+
+  /**
+   * Test storing and memory-mapping the graph.
+   *
+   * @throws IOException on errors
+   */
+  @Test
+  public void testPersistence() throws IOException {
+    File file = File.createTempFile("elki-hnsw", ".graph");
+    file.deleteOnExit();
+    file.delete();
+    Relation<NumberVector> rel = makeRandomRelation(500, 5);
+    DistanceQuery<NumberVector> dq = rel.getDistanceQuery(EuclideanDistanceFunction.STATIC);
+    HNSWIndex<NumberVector> built = new HNSWIndex<>(rel, EuclideanDistanceFunction.STATIC, 6, 40, 20, RandomFactory.get(0L), file);
+    built.initialize();
+    assertTrue("Graph not saved.", file.length() > HNSWIndex.HEADER_SIZE);
+    // A different seed yields a different graph, unless it is loaded:
+    HNSWIndex<NumberVector> loaded = new HNSWIndex<>(rel, EuclideanDistanceFunction.STATIC, 6, 40, 20, RandomFactory.get(1L), file);
+    loaded.initialize();
+    assertTrue("Graph not loaded.", loaded.mapped != null);
+    KNNQuery<NumberVector> q1 = built.getKNNQuery(dq), q2 = loaded.getKNNQuery(dq);
+    for(DBIDIter it = rel.iterDBIDs(); it.valid(); it.advance()) {
+      KNNList l1 = q1.getKNNForDBID(it, 5), l2 = q2.getKNNForDBID(it, 5);
+      assertEquals("Result size", l1.size(), l2.size());
+      for(DoubleDBIDListIter i1 = l1.iter(), i2 = l2.iter(); i1.valid(); i1.advance(), i2.advance()) {
+        assertTrue("Results differ", DBIDUtil.equal(i1, i2));
+      }
+    }
+    // Different parameters, distances or data must not use the file:
+    HNSWIndex<NumberVector> other = new HNSWIndex<>(rel, EuclideanDistanceFunction.STATIC, 4, 40, 20, RandomFactory.get(0L), null);
+    other.initialize();
+    assertTrue("Mismatching graph loaded.", !other.load(file));
+    other = new HNSWIndex<>(rel, EuclideanDistanceFunction.STATIC, 6, 50, 20, RandomFactory.get(0L), null);
+    other.initialize();
+    assertTrue("Graph with different efConstruction loaded.", !other.load(file));
+    other = new HNSWIndex<>(rel, ManhattanDistanceFunction.STATIC, 6, 40, 20, RandomFactory.get(0L), null);
+    other.initialize();
+    assertTrue("Graph with different distance loaded.", !other.load(file));
+    other = new HNSWIndex<>(makeRandomRelation(500, 5), EuclideanDistanceFunction.STATIC, 6, 40, 20, RandomFactory.get(0L), null);
+    other.initialize();
+    assertTrue("Graph of different DBIDs loaded.", !other.load(file));
+    assertNull("Built graph reported as mapped.", built.mapped);
+    loaded.close();
+    assertNull("Mapping not released.", loaded.mapped);
+  }
+
+  /**
+   * Compute the average recall of an approximate query.
+   *
+   * @param rel Relation
+   * @param dq Distance query
+   * @param knnq Approximate kNN query
+   * @return Recall
+   */
+  private static double recall(Relation<NumberVector> rel, DistanceQuery<NumberVector> dq, KNNQuery<NumberVector> knnq) {
+    KNNQuery<NumberVector> exact = QueryUtil.getLinearScanKNNQuery(dq);
+    int found = 0, total = 0;
+    for(DBIDIter it = rel.iterDBIDs(); it.valid(); it.advance()) {
+      KNNList expect = exact.getKNNForDBID(it, 10), actual = knnq.getKNNForDBID(it, 10);
+      found += DBIDUtil.intersectionSize(expect, actual);
+      total += expect.size();
+    }
+    return found / (double) total;
+  }
+}
@@ -0,0 +1,184 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2017
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.lmu.ifi.dbs.elki.index.tree.metrical.covertree;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+import de.lmu.ifi.dbs.elki.algorithm.AbstractSimpleAlgorithmTest;
+import de.lmu.ifi.dbs.elki.data.DoubleVector;
+import de.lmu.ifi.dbs.elki.data.VectorUtil;
+import de.lmu.ifi.dbs.elki.data.type.TypeUtil;
+import de.lmu.ifi.dbs.elki.database.AbstractDatabase;
+import de.lmu.ifi.dbs.elki.database.HashmapDatabase;
+import de.lmu.ifi.dbs.elki.database.UpdatableDatabase;
+import de.lmu.ifi.dbs.elki.database.ids.ArrayModifiableDBIDs;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDIter;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDUtil;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDs;
+import de.lmu.ifi.dbs.elki.database.ids.DoubleDBIDList;
+import de.lmu.ifi.dbs.elki.database.ids.DoubleDBIDListIter;
+import de.lmu.ifi.dbs.elki.database.ids.ModifiableDoubleDBIDList;
+import de.lmu.ifi.dbs.elki.database.query.distance.DistanceQuery;
+import de.lmu.ifi.dbs.elki.database.query.knn.KNNQuery;
+import de.lmu.ifi.dbs.elki.database.query.knn.LinearScanDistanceKNNQuery;
+import de.lmu.ifi.dbs.elki.database.query.range.LinearScanDistanceRangeQuery;
+import de.lmu.ifi.dbs.elki.database.query.range.RangeQuery;
+import de.lmu.ifi.dbs.elki.database.relation.Relation;
+import de.lmu.ifi.dbs.elki.datasource.InputStreamDatabaseConnection;
+import de.lmu.ifi.dbs.elki.datasource.bundle.MultipleObjectsBundle;
+import de.lmu.ifi.dbs.elki.datasource.parser.NumberVectorLabelParser;
+import de.lmu.ifi.dbs.elki.distance.distancefunction.minkowski.EuclideanDistanceFunction;
+import de.lmu.ifi.dbs.elki.utilities.ClassGenericsUtil;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameterization.ListParameterization;
+
+/**
+ * Validate the cover trees when built by insertions and modified by deletions.
+ *
+ * @author Erich Schubert
+ * @since 0.7.2
+ */
+public class DynamicCoverTreeTest {
+  static String dataset = "elki/testdata/unittests/hierarchical-3d2d1d.csv";
+
+  @Test
+  public void testCoverTree() {
+    testDynamic(CoverTree.Factory.class, CoverTree.CoverTreeKNNQuery.class, CoverTree.CoverTreeRangeQuery.class);
+  }
+
+  @Test
+  public void testSimplifiedCoverTree() {
+    testDynamic(SimplifiedCoverTree.Factory.class, SimplifiedCoverTree.CoverTreeKNNQuery.class, SimplifiedCoverTree.CoverTreeRangeQuery.class);
+  }
+
+  /**
+   * Build the index incrementally, insert and delete objects, and compare the
+   * results to a linear scan.
+   *
+   * @param factory Index factory
+   * @param expectKNNQuery Expected kNN query class
+   * @param expectRangeQuery Expected range query class
+   */
+  private void testDynamic(Class<?> factory, Class<?> expectKNNQuery, Class<?> expectRangeQuery) {
+    UpdatableDatabase db;
+    try (InputStream is = AbstractSimpleAlgorithmTest.open(dataset)) {
+      ListParameterization params = new ListParameterization();
+      NumberVectorLabelParser<DoubleVector> parser = new NumberVectorLabelParser<>(DoubleVector.FACTORY);
+      params.addParameter(AbstractDatabase.Parameterizer.DATABASE_CONNECTION_ID, new InputStreamDatabaseConnection(is, new ArrayList<>(), parser));
+      params.addParameter(AbstractDatabase.Parameterizer.INDEX_ID, factory);
+      params.addParameter(AbstractCoverTree.Factory.Parameterizer.DISTANCE_FUNCTION_ID, EuclideanDistanceFunction.class);
+      db = ClassGenericsUtil.parameterizeOrAbort(HashmapDatabase.class, params);
+      db.initialize();
+    }
+    catch(IOException e) {
+      fail("Test data " + dataset + " not found.");
+      return;
+    }
+    Relation<DoubleVector> rel = db.getRelation(TypeUtil.DOUBLE_VECTOR_FIELD);
+    DistanceQuery<DoubleVector> dq = db.getDistanceQuery(rel, EuclideanDistanceFunction.STATIC);
+    KNNQuery<DoubleVector> knnq = db.getKNNQuery(dq, 10);
+    RangeQuery<DoubleVector> rangeq = db.getRangeQuery(dq, .1);
+    assertTrue("Index not used for kNN: " + knnq.getClass(), expectKNNQuery.isInstance(knnq));
+    assertTrue("Index not used for range: " + rangeq.getClass(), expectRangeQuery.isInstance(rangeq));
+    KNNQuery<DoubleVector> linknn = new LinearScanDistanceKNNQuery<>(dq);
+    RangeQuery<DoubleVector> linrange = new LinearScanDistanceRangeQuery<>(dq);
+    assertEquals("Data set size", 600, rel.size());
+    compareQueries(rel, knnq, rangeq, linknn, linrange);
+
+    // Insert new objects:
+    Random random = new Random(0L);
+    List<DoubleVector> insertions = new ArrayList<>();
+    for(int i = 0; i < 100; i++) {
+      insertions.add(VectorUtil.randomVector(DoubleVector.FACTORY, 3, random));
+    }
+    DBIDs inserted = db.insert(MultipleObjectsBundle.makeSimple(rel.getDataTypeInformation(), insertions));
+    assertEquals("Data set size", 700, rel.size());
+    compareQueries(rel, knnq, rangeq, linknn, linrange);
+
+    // Delete every third object (including the first, which is the root):
+    ArrayModifiableDBIDs deletions = DBIDUtil.newArray(inserted);
+    int i = 0;
+    for(DBIDIter it = rel.iterDBIDs(); it.valid(); it.advance(), i++) {
+      if(i % 3 == 0 && !inserted.contains(it)) {
+        deletions.add(it);
+      }
+    }
+    db.delete(deletions);
+    assertEquals("Data set size", 700 - deletions.size(), rel.size());
+    compareQueries(rel, knnq, rangeq, linknn, linrange);
+  }
+
+  /**
+   * Compare the index queries to linear scans for every object.
+   *
+   * @param rel Relation
+   * @param knnq kNN query
+   * @param rangeq Range query
+   * @param linknn Linear scan kNN query
+   * @param linrange Linear scan range query
+   */
+  private void compareQueries(Relation<DoubleVector> rel, KNNQuery<DoubleVector> knnq, RangeQuery<DoubleVector> rangeq, KNNQuery<DoubleVector> linknn, RangeQuery<DoubleVector> linrange) {
+    for(DBIDIter it = rel.iterDBIDs(); it.valid(); it.advance()) {
+      DoubleVector obj = rel.get(it);
+      assertSameDistances(linknn.getKNNForObject(obj, 10), knnq.getKNNForObject(obj, 10));
+      DoubleDBIDList expect = linrange.getRangeForObject(obj, .1), actual = rangeq.getRangeForObject(obj, .1);
+      assertEquals("Range query sizes differ", expect.size(), actual.size());
+      assertSameDistances(sorted(expect), sorted(actual));
+    }
+  }
+
+  /**
+   * Sort a result list by distance.
+   *
+   * @param list Result list
+   * @return Sorted copy
+   */
+  private static DoubleDBIDList sorted(DoubleDBIDList list) {
+    ModifiableDoubleDBIDList copy = DBIDUtil.newDistanceDBIDList(list.size());
+    for(DoubleDBIDListIter it = list.iter(); it.valid(); it.advance()) {
+      copy.add(it.doubleValue(), it);
+    }
+    copy.sort();
+    return copy;
+  }
+
+  /**
+   * Compare the distances in two result lists.
+   *
+   * @param expect Expected result
+   * @param actual Actual result
+   */
+  private static void assertSameDistances(DoubleDBIDList expect, DoubleDBIDList actual) {
+    assertEquals("Result sizes differ", expect.size(), actual.size());
+    for(DoubleDBIDListIter i1 = expect.iter(), i2 = actual.iter(); i1.valid(); i1.advance(), i2.advance()) {
+      assertEquals("Distances differ", i1.doubleValue(), i2.doubleValue(), 1e-15);
+    }
+  }
+}
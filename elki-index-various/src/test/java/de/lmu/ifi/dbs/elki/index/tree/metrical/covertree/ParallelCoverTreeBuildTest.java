@@ -0,0 +1,110 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2017
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.lmu.ifi.dbs.elki.index.tree.metrical.covertree;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import de.lmu.ifi.dbs.elki.data.NumberVector;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDIter;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDUtil;
+import de.lmu.ifi.dbs.elki.database.ids.DoubleDBIDList;
+import de.lmu.ifi.dbs.elki.database.ids.DoubleDBIDListIter;
+import de.lmu.ifi.dbs.elki.database.query.distance.DistanceQuery;
+import de.lmu.ifi.dbs.elki.database.query.knn.KNNQuery;
+import de.lmu.ifi.dbs.elki.database.query.range.RangeQuery;
+import de.lmu.ifi.dbs.elki.database.relation.Relation;
+import de.lmu.ifi.dbs.elki.distance.distancefunction.minkowski.EuclideanDistanceFunction;
+import de.lmu.ifi.dbs.elki.index.AbstractIndexStructureTest;
+
+/**
+ * Verify that the parallel bulk load of the cover trees yields the same tree
+ * as the serial bulk load: queries must return the same results, with the
+ * same number of distance computations.
+ *
+ * @author Erich Schubert
+ * @since 0.7.2
+ */
+public class ParallelCoverTreeBuildTest extends AbstractIndexStructureTest {
+  @Test
+  public void testCoverTree() {
+    Relation<NumberVector> rel = makeRandomRelation(AbstractCoverTree.PARALLEL_THRESHOLD * 5, 3);
+    CoverTree<NumberVector> serial = new CoverTree<>(rel, EuclideanDistanceFunction.STATIC, 1.3, 10);
+    serial.bulkLoad(rel.getDBIDs(), false);
+    CoverTree<NumberVector> parallel = new CoverTree<>(rel, EuclideanDistanceFunction.STATIC, 1.3, 10);
+    parallel.bulkLoad(rel.getDBIDs(), true);
+    DistanceQuery<NumberVector> dq = rel.getDistanceQuery(EuclideanDistanceFunction.STATIC);
+    compareQueries(rel, serial, serial.getKNNQuery(dq), serial.getRangeQuery(dq), //
+        parallel, parallel.getKNNQuery(dq), parallel.getRangeQuery(dq));
+  }
+
+  @Test
+  public void testSimplifiedCoverTree() {
+    Relation<NumberVector> rel = makeRandomRelation(AbstractCoverTree.PARALLEL_THRESHOLD * 5, 3);
+    SimplifiedCoverTree<NumberVector> serial = new SimplifiedCoverTree<>(rel, EuclideanDistanceFunction.STATIC, 1.3, 10);
+    serial.bulkLoad(rel.getDBIDs(), false);
+    SimplifiedCoverTree<NumberVector> parallel = new SimplifiedCoverTree<>(rel, EuclideanDistanceFunction.STATIC, 1.3, 10);
+    parallel.bulkLoad(rel.getDBIDs(), true);
+    DistanceQuery<NumberVector> dq = rel.getDistanceQuery(EuclideanDistanceFunction.STATIC);
+    compareQueries(rel, serial, serial.getKNNQuery(dq), serial.getRangeQuery(dq), //
+        parallel, parallel.getKNNQuery(dq), parallel.getRangeQuery(dq));
+  }
+
+  /**
+   * Compare the query results and costs of both trees.
+   *
+   * @param rel Relation
+   * @param t1 First tree
+   * @param knn1 First kNN query
+   * @param range1 First range query
+   * @param t2 Second tree
+   * @param knn2 Second kNN query
+   * @param range2 Second range query
+   */
+  private static void compareQueries(Relation<NumberVector> rel, AbstractCoverTree<?> t1, KNNQuery<NumberVector> knn1, RangeQuery<NumberVector> range1, AbstractCoverTree<?> t2, KNNQuery<NumberVector> knn2, RangeQuery<NumberVector> range2) {
+    int i = 0;
+    for(DBIDIter it = rel.iterDBIDs(); it.valid(); it.advance(), i++) {
+      if(i % 100 != 0) {
+        continue;
+      }
+      long c1 = t1.distComputations, c2 = t2.distComputations;
+      assertSameList(knn1.getKNNForDBID(it, 10), knn2.getKNNForDBID(it, 10));
+      assertSameList(range1.getRangeForDBID(it, .05), range2.getRangeForDBID(it, .05));
+      assertEquals("Query costs differ", t1.distComputations - c1, t2.distComputations - c2);
+    }
+  }
+
+  /**
+   * Compare two result lists.
+   *
+   * @param expect Expected result
+   * @param actual Actual result
+   */
+  private static void assertSameList(DoubleDBIDList expect, DoubleDBIDList actual) {
+    assertEquals("Result sizes differ", expect.size(), actual.size());
+    for(DoubleDBIDListIter i1 = expect.iter(), i2 = actual.iter(); i1.valid(); i1.advance(), i2.advance()) {
+      assertEquals("Distances differ", i1.doubleValue(), i2.doubleValue(), 0.);
+      assertTrue("Results differ", DBIDUtil.equal(i1, i2));
+    }
+  }
+}
@@ -0,0 +1,123 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2017
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.lmu.ifi.dbs.elki.index.tree.spatial.kd;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import de.lmu.ifi.dbs.elki.algorithm.AbstractSimpleAlgorithmTest;
+import de.lmu.ifi.dbs.elki.data.NumberVector;
+import de.lmu.ifi.dbs.elki.data.type.TypeUtil;
+import de.lmu.ifi.dbs.elki.database.QueryUtil;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDIter;
+import de.lmu.ifi.dbs.elki.database.ids.DoubleDBIDListIter;
+import de.lmu.ifi.dbs.elki.database.ids.KNNList;
+import de.lmu.ifi.dbs.elki.database.query.DatabaseQuery;
+import de.lmu.ifi.dbs.elki.database.query.distance.DistanceQuery;
+import de.lmu.ifi.dbs.elki.database.query.knn.KNNQuery;
+import de.lmu.ifi.dbs.elki.database.relation.Relation;
+import de.lmu.ifi.dbs.elki.distance.distancefunction.minkowski.EuclideanDistanceFunction;
+import de.lmu.ifi.dbs.elki.distance.distancefunction.minkowski.LPNormDistanceFunction;
+import de.lmu.ifi.dbs.elki.distance.distancefunction.minkowski.ManhattanDistanceFunction;
+import de.lmu.ifi.dbs.elki.distance.distancefunction.minkowski.MaximumDistanceFunction;
+import de.lmu.ifi.dbs.elki.distance.distancefunction.minkowski.SquaredEuclideanDistanceFunction;
+import de.lmu.ifi.dbs.elki.index.KNNIndex;
+
+/**
+ * Validate the best-first kNN search of the k-d-trees, exact and approximate.
+ *
+ * @author Erich Schubert
+ * @since 0.7.2
+ */
+public class KDTreePrioritySearchTest {
+  static final String dataset = "elki/testdata/unittests/hierarchical-3d2d1d.csv";
+
+  @Test
+  public void testExact() {
+    Relation<NumberVector> rel = AbstractSimpleAlgorithmTest.makeSimpleDatabase(dataset, 600).getRelation(TypeUtil.NUMBER_VECTOR_FIELD);
+    for(int leafsize : new int[] { 1, 7 }) {
+      MinimalisticMemoryKDTree<NumberVector> mini = new MinimalisticMemoryKDTree<>(rel, leafsize, true, 0., Integer.MAX_VALUE);
+      mini.initialize();
+      SmallMemoryKDTree<NumberVector> small = new SmallMemoryKDTree<>(rel, leafsize, true, 0., Integer.MAX_VALUE);
+      small.initialize();
+      for(LPNormDistanceFunction df : new LPNormDistanceFunction[] { EuclideanDistanceFunction.STATIC, ManhattanDistanceFunction.STATIC, MaximumDistanceFunction.STATIC, new LPNormDistanceFunction(3.) }) {
+        DistanceQuery<NumberVector> dq = rel.getDistanceQuery(df);
+        compare(rel, QueryUtil.getLinearScanKNNQuery(dq), mini, dq, 0.);
+        compare(rel, QueryUtil.getLinearScanKNNQuery(dq), small, dq, 0.);
+      }
+      DistanceQuery<NumberVector> dq = rel.getDistanceQuery(SquaredEuclideanDistanceFunction.STATIC);
+      compare(rel, QueryUtil.getLinearScanKNNQuery(dq), mini, dq, 0.);
+      compare(rel, QueryUtil.getLinearScanKNNQuery(dq), small, dq, 0.);
+    }
+  }
+
+  @Test
+  public void testApproximate() {
+    Relation<NumberVector> rel = AbstractSimpleAlgorithmTest.makeSimpleDatabase(dataset, 600).getRelation(TypeUtil.NUMBER_VECTOR_FIELD);
+    DistanceQuery<NumberVector> dq = rel.getDistanceQuery(EuclideanDistanceFunction.STATIC);
+    KNNQuery<NumberVector> lin = QueryUtil.getLinearScanKNNQuery(dq);
+    MinimalisticMemoryKDTree<NumberVector> mini = new MinimalisticMemoryKDTree<>(rel, 3, true, .5, Integer.MAX_VALUE);
+    mini.initialize();
+    compare(rel, lin, mini, dq, .5);
+    SmallMemoryKDTree<NumberVector> small = new SmallMemoryKDTree<>(rel, 3, true, .5, Integer.MAX_VALUE);
+    small.initialize();
+    compare(rel, lin, small, dq, .5);
+
+    // A leaf budget still yields k results, but the exact hint disables it:
+    mini = new MinimalisticMemoryKDTree<>(rel, 3, true, 0., 1);
+    mini.initialize();
+    KNNQuery<NumberVector> budget = mini.getKNNQuery(dq);
+    for(DBIDIter it = rel.iterDBIDs(); it.valid(); it.advance()) {
+      assertEquals("Too few results", 10, budget.getKNNForDBID(it, 10).size());
+    }
+    compare(rel, lin, mini, dq, 0., DatabaseQuery.HINT_EXACT);
+  }
+
+  /**
+   * Compare the index results to the exact results.
+   *
+   * @param rel Relation
+   * @param exact Exact kNN query
+   * @param index Index
+   * @param dq Distance query
+   * @param eps Approximation factor
+   * @param hints Query hints
+   */
+  private static void compare(Relation<NumberVector> rel, KNNQuery<NumberVector> exact, KNNIndex<NumberVector> index, DistanceQuery<NumberVector> dq, double eps, Object... hints) {
+    KNNQuery<NumberVector> knnq = index.getKNNQuery(dq, hints);
+    assertTrue("Not a best-first query: " + knnq.getClass(), knnq instanceof MinimalisticMemoryKDTree.KDTreePrioritySearchKNNQuery || knnq instanceof SmallMemoryKDTree.KDTreePrioritySearchKNNQuery);
+    for(DBIDIter it = rel.iterDBIDs(); it.valid(); it.advance()) {
+      KNNList expect = exact.getKNNForDBID(it, 10), actual = knnq.getKNNForDBID(it, 10);
+      assertEquals("Result size", expect.size(), actual.size());
+      if(eps == 0.) {
+        for(DoubleDBIDListIter i1 = expect.iter(), i2 = actual.iter(); i1.valid(); i1.advance(), i2.advance()) {
+          assertEquals("Distance differs", i1.doubleValue(), i2.doubleValue(), 0.);
+        }
+      }
+      else {
+        final double bound = expect.getKNNDistance() * (1 + eps);
+        assertTrue("Approximation too bad", actual.getKNNDistance() <= bound);
+      }
+    }
+  }
+}
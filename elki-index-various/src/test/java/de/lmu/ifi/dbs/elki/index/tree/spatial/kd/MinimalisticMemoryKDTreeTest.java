@@ -42,4 +42,15 @@ public class MinimalisticMemoryKDTreeTest extends AbstractIndexStructureTest {
     spatparams.addParameter(StaticArrayDatabase.Parameterizer.INDEX_ID, MinimalisticMemoryKDTree.Factory.class);
     testExactEuclidean(spatparams, MinimalisticMemoryKDTree.KDTreeKNNQuery.class, MinimalisticMemoryKDTree.KDTreeRangeQuery.class);
   }
+
+  /**
+   * Test {@link MinimalisticMemoryKDTree} with best-first kNN search.
+   */
+  @Test
+  public void testMinimalisticMemoryKDTreeBestFirst() {
+    ListParameterization spatparams = new ListParameterization();
+    spatparams.addParameter(StaticArrayDatabase.Parameterizer.INDEX_ID, MinimalisticMemoryKDTree.Factory.class);
+    spatparams.addFlag(MinimalisticMemoryKDTree.Factory.Parameterizer.BESTFIRST_ID);
+    testExactEuclidean(spatparams, MinimalisticMemoryKDTree.KDTreePrioritySearchKNNQuery.class, MinimalisticMemoryKDTree.KDTreeRangeQuery.class);
+  }
 }
@@ -0,0 +1,115 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2017
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.lmu.ifi.dbs.elki.index.tree.spatial.kd;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+
+import org.junit.Test;
+
+import de.lmu.ifi.dbs.elki.algorithm.AbstractSimpleAlgorithmTest;
+import de.lmu.ifi.dbs.elki.data.NumberVector;
+import de.lmu.ifi.dbs.elki.data.type.TypeUtil;
+import de.lmu.ifi.dbs.elki.database.QueryUtil;
+import de.lmu.ifi.dbs.elki.database.StaticArrayDatabase;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDIter;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDUtil;
+import de.lmu.ifi.dbs.elki.database.ids.DoubleDBIDList;
+import de.lmu.ifi.dbs.elki.database.ids.DoubleDBIDListIter;
+import de.lmu.ifi.dbs.elki.database.ids.KNNList;
+import de.lmu.ifi.dbs.elki.database.query.distance.DistanceQuery;
+import de.lmu.ifi.dbs.elki.database.query.knn.KNNQuery;
+import de.lmu.ifi.dbs.elki.database.query.range.RangeQuery;
+import de.lmu.ifi.dbs.elki.database.relation.Relation;
+import de.lmu.ifi.dbs.elki.distance.distancefunction.DistanceFunction;
+import de.lmu.ifi.dbs.elki.distance.distancefunction.minkowski.EuclideanDistanceFunction;
+import de.lmu.ifi.dbs.elki.distance.distancefunction.minkowski.LPNormDistanceFunction;
+import de.lmu.ifi.dbs.elki.distance.distancefunction.minkowski.ManhattanDistanceFunction;
+import de.lmu.ifi.dbs.elki.distance.distancefunction.minkowski.MaximumDistanceFunction;
+import de.lmu.ifi.dbs.elki.distance.distancefunction.minkowski.SquaredEuclideanDistanceFunction;
+import de.lmu.ifi.dbs.elki.distance.distancefunction.minkowski.WeightedEuclideanDistanceFunction;
+import de.lmu.ifi.dbs.elki.index.AbstractIndexStructureTest;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameterization.ListParameterization;
+
+/**
+ * Unit test for the packed k-d-tree index.
+ *
+ * @author Erich Schubert
+ * @since 0.7.2
+ */
+public class PackedKDTreeTest extends AbstractIndexStructureTest {
+  /**
+   * Test {@link PackedKDTree} using a file based database connection.
+   */
+  @Test
+  public void testPackedKDTree() {
+    ListParameterization spatparams = new ListParameterization();
+    spatparams.addParameter(StaticArrayDatabase.Parameterizer.INDEX_ID, PackedKDTree.Factory.class);
+    testExactEuclidean(spatparams, PackedKDTree.KDTreeKNNQuery.class, PackedKDTree.KDTreeRangeQuery.class);
+  }
+
+  /**
+   * Compare to a linear scan for different norms and leaf sizes.
+   */
+  @Test
+  public void testNorms() {
+    Relation<NumberVector> rel = AbstractSimpleAlgorithmTest.makeSimpleDatabase("elki/testdata/unittests/hierarchical-3d2d1d.csv", 600).getRelation(TypeUtil.NUMBER_VECTOR_FIELD);
+    for(int leafsize : new int[] { 1, 5, 64 }) {
+      PackedKDTree<NumberVector> tree = new PackedKDTree<>(rel, leafsize);
+      tree.initialize();
+      for(DistanceFunction<? super NumberVector> df : Arrays.<DistanceFunction<? super NumberVector>> asList(EuclideanDistanceFunction.STATIC, ManhattanDistanceFunction.STATIC, MaximumDistanceFunction.STATIC, new LPNormDistanceFunction(3.), SquaredEuclideanDistanceFunction.STATIC)) {
+        DistanceQuery<NumberVector> dq = rel.getDistanceQuery(df);
+        KNNQuery<NumberVector> lin = QueryUtil.getLinearScanKNNQuery(dq), knnq = tree.getKNNQuery(dq);
+        RangeQuery<NumberVector> linr = QueryUtil.getLinearScanRangeQuery(dq), rangeq = tree.getRangeQuery(dq);
+        for(DBIDIter it = rel.iterDBIDs(); it.valid(); it.advance()) {
+          KNNList expect = lin.getKNNForDBID(it, 10), actual = knnq.getKNNForDBID(it, 10);
+          assertEquals("Result size", expect.size(), actual.size());
+          for(DoubleDBIDListIter i1 = expect.iter(), i2 = actual.iter(); i1.valid(); i1.advance(), i2.advance()) {
+            assertEquals("Distance differs for " + df, i1.doubleValue(), i2.doubleValue(), 1e-15 * i1.doubleValue());
+          }
+          final double r = expect.getKNNDistance();
+          DoubleDBIDList rexpect = linr.getRangeForDBID(it, r), ractual = rangeq.getRangeForDBID(it, r);
+          assertEquals("Range result size for " + df, rexpect.size(), ractual.size());
+          for(DoubleDBIDListIter i1 = ractual.iter(); i1.valid(); i1.advance()) {
+            assertTrue("Too far", i1.doubleValue() <= r);
+            assertTrue("Not in the relation", rel.getDBIDs().contains(i1));
+          }
+        }
+      }
+    }
+  }
+
+  /**
+   * Weighted distances are not supported.
+   */
+  @Test
+  public void testUnsupported() {
+    Relation<NumberVector> rel = AbstractSimpleAlgorithmTest.makeSimpleDatabase("elki/testdata/unittests/hierarchical-3d2d1d.csv", 600).getRelation(TypeUtil.NUMBER_VECTOR_FIELD);
+    PackedKDTree<NumberVector> tree = new PackedKDTree<>(rel, 8);
+    tree.initialize();
+    DistanceQuery<NumberVector> dq = rel.getDistanceQuery(new WeightedEuclideanDistanceFunction(new double[] { 1., 2., 3. }));
+    assertNull("Weighted distance should not be supported", tree.getKNNQuery(dq));
+    assertEquals("Not all objects indexed", rel.size(), DBIDUtil.intersectionSize(tree.ids, rel.getDBIDs()));
+  }
+}
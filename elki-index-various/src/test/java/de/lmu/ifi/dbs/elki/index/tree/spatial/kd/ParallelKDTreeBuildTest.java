@@ -0,0 +1,116 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2017
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.lmu.ifi.dbs.elki.index.tree.spatial.kd;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+import de.lmu.ifi.dbs.elki.data.NumberVector;
+import de.lmu.ifi.dbs.elki.data.VectorUtil.SortDBIDsBySingleDimension;
+import de.lmu.ifi.dbs.elki.database.ids.ArrayDBIDs;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDArrayIter;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDIter;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDUtil;
+import de.lmu.ifi.dbs.elki.database.ids.DoubleDBIDListIter;
+import de.lmu.ifi.dbs.elki.database.ids.ModifiableDoubleDBIDList;
+import de.lmu.ifi.dbs.elki.database.relation.Relation;
+import de.lmu.ifi.dbs.elki.index.AbstractIndexStructureTest;
+
+/**
+ * Verify that the parallel construction of the k-d-trees yields exactly the
+ * same tree as the serial construction.
+ *
+ * @author Erich Schubert
+ * @since 0.7.2
+ */
+public class ParallelKDTreeBuildTest extends AbstractIndexStructureTest {
+  /**
+   * Large enough for several levels of parallel tasks.
+   */
+  static final int SIZE = MinimalisticMemoryKDTree.PARALLEL_THRESHOLD * 5 + 17;
+
+  @Test
+  public void testMinimalisticMemoryKDTree() {
+    Relation<NumberVector> rel = makeRelation(randomData());
+    MinimalisticMemoryKDTree<NumberVector> tree = new MinimalisticMemoryKDTree<>(rel, 1);
+    tree.dims = 3;
+    tree.sorted = DBIDUtil.newArray(rel.getDBIDs());
+    tree.buildTree(0, SIZE, 0, new SortDBIDsBySingleDimension(rel));
+    ArrayDBIDs serial = tree.sorted;
+    tree.sorted = DBIDUtil.newArray(rel.getDBIDs());
+    tree.buildTreeParallel(0, SIZE, 0);
+    assertEquals("Size differs", serial.size(), tree.sorted.size());
+    for(DBIDArrayIter i1 = serial.iter(), i2 = tree.sorted.iter(); i1.valid(); i1.advance(), i2.advance()) {
+      assertTrue("Tree differs at " + i1.getOffset(), DBIDUtil.equal(i1, i2));
+    }
+  }
+
+  @Test
+  public void testSmallMemoryKDTree() {
+    Relation<NumberVector> rel = makeRelation(randomData());
+    SmallMemoryKDTree<NumberVector> tree = new SmallMemoryKDTree<>(rel, 1);
+    tree.dims = 3;
+    tree.sorted = unsorted(rel);
+    tree.buildTree(0, SIZE, 0, tree.sorted.iter());
+    ModifiableDoubleDBIDList serial = tree.sorted;
+    tree.sorted = unsorted(rel);
+    tree.buildTreeParallel(0, SIZE, 0);
+    assertEquals("Size differs", serial.size(), tree.sorted.size());
+    for(DoubleDBIDListIter i1 = serial.iter(), i2 = tree.sorted.iter(); i1.valid(); i1.advance(), i2.advance()) {
+      assertTrue("Tree differs at " + i1.getOffset(), DBIDUtil.equal(i1, i2));
+      assertEquals("Split value differs at " + i1.getOffset(), i1.doubleValue(), i2.doubleValue(), 0.);
+    }
+  }
+
+  /**
+   * Initial state of the small memory k-d-tree.
+   *
+   * @param rel Relation
+   * @return List of all objects
+   */
+  private static ModifiableDoubleDBIDList unsorted(Relation<NumberVector> rel) {
+    ModifiableDoubleDBIDList list = DBIDUtil.newDistanceDBIDList(rel.size());
+    for(DBIDIter it = rel.iterDBIDs(); it.valid(); it.advance()) {
+      list.add(Double.NaN, it);
+    }
+    return list;
+  }
+
+  /**
+   * Generate a random data set, with duplicate coordinates.
+   *
+   * @return Data
+   */
+  private static double[][] randomData() {
+    Random r = new Random(0L);
+    double[][] data = new double[SIZE][3];
+    for(double[] row : data) {
+      for(int d = 0; d < row.length; d++) {
+        row[d] = r.nextInt(1000) / 1000.;
+      }
+    }
+    return data;
+  }
+}
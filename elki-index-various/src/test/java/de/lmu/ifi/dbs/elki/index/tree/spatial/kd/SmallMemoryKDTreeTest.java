@@ -42,4 +42,15 @@ public class SmallMemoryKDTreeTest extends AbstractIndexStructureTest {
     spatparams.addParameter(StaticArrayDatabase.Parameterizer.INDEX_ID, SmallMemoryKDTree.Factory.class);
     testExactEuclidean(spatparams, SmallMemoryKDTree.KDTreeKNNQuery.class, SmallMemoryKDTree.KDTreeRangeQuery.class);
   }
+
+  /**
+   * Test {@link SmallMemoryKDTree} with best-first kNN search.
+   */
+  @Test
+  public void testSmallMemoryKDTreeBestFirst() {
+    ListParameterization spatparams = new ListParameterization();
+    spatparams.addParameter(StaticArrayDatabase.Parameterizer.INDEX_ID, SmallMemoryKDTree.Factory.class);
+    spatparams.addFlag(MinimalisticMemoryKDTree.Factory.Parameterizer.BESTFIRST_ID);
+    testExactEuclidean(spatparams, SmallMemoryKDTree.KDTreePrioritySearchKNNQuery.class, SmallMemoryKDTree.KDTreeRangeQuery.class);
+  }
 }
@@ -20,9 +20,27 @@
  */
 package de.lmu.ifi.dbs.elki.index.vafile;
 
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+
 import org.junit.Test;
 
+import de.lmu.ifi.dbs.elki.data.NumberVector;
+import de.lmu.ifi.dbs.elki.database.QueryUtil;
 import de.lmu.ifi.dbs.elki.database.StaticArrayDatabase;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDIter;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDUtil;
+import de.lmu.ifi.dbs.elki.database.ids.DoubleDBIDList;
+import de.lmu.ifi.dbs.elki.database.ids.DoubleDBIDListIter;
+import de.lmu.ifi.dbs.elki.database.ids.KNNList;
+import de.lmu.ifi.dbs.elki.database.query.distance.DistanceQuery;
+import de.lmu.ifi.dbs.elki.database.query.knn.KNNQuery;
+import de.lmu.ifi.dbs.elki.database.query.range.RangeQuery;
+import de.lmu.ifi.dbs.elki.database.relation.Relation;
+import de.lmu.ifi.dbs.elki.distance.distancefunction.minkowski.EuclideanDistanceFunction;
+import de.lmu.ifi.dbs.elki.distance.distancefunction.minkowski.ManhattanDistanceFunction;
 import de.lmu.ifi.dbs.elki.index.AbstractIndexStructureTest;
 import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameterization.ListParameterization;
 
@@ -43,4 +61,36 @@ public class VAFileTest extends AbstractIndexStructureTest {
     spatparams.addParameter(VAFile.Factory.PARTITIONS_ID, 4);
     testExactEuclidean(spatparams, VAFile.VAFileKNNQuery.class, VAFile.VAFileRangeQuery.class);
   }
+
+  /**
+   * Test the parallel scan, and the wide (two byte) approximations.
+   */
+  @Test
+  public void testParallelScan() {
+    Relation<NumberVector> rel = makeRandomRelation(3 * VAFile.BLOCK_SIZE, 6);
+    for(int partitions : new int[] { 8, 512 }) {
+      VAFile<NumberVector> index = new VAFile<>(1024, rel, partitions);
+      index.initialize();
+      index.parallelThreshold = 0;
+      for(DistanceQuery<NumberVector> dq : Arrays.asList(rel.getDistanceQuery(EuclideanDistanceFunction.STATIC), rel.getDistanceQuery(ManhattanDistanceFunction.STATIC))) {
+        KNNQuery<NumberVector> exact = QueryUtil.getLinearScanKNNQuery(dq);
+        RangeQuery<NumberVector> exactr = QueryUtil.getLinearScanRangeQuery(dq);
+        KNNQuery<NumberVector> knnq = index.getKNNQuery(dq);
+        RangeQuery<NumberVector> rangeq = index.getRangeQuery(dq);
+        int i = 0;
+        for(DBIDIter it = rel.iterDBIDs(); it.valid() && i < 50; it.advance(), i++) {
+          KNNList expect = exact.getKNNForDBID(it, 10), actual = knnq.getKNNForDBID(it, 10);
+          assertEquals("kNN size", expect.size(), actual.size());
+          for(DoubleDBIDListIter i1 = expect.iter(), i2 = actual.iter(); i1.valid(); i1.advance(), i2.advance()) {
+            assertEquals("kNN distances differ", i1.doubleValue(), i2.doubleValue(), 0.);
+          }
+          final double eps = expect.getKNNDistance();
+          DoubleDBIDList expectr = exactr.getRangeForDBID(it, eps), actualr = rangeq.getRangeForDBID(it, eps);
+          assertEquals("Range size", expectr.size(), actualr.size());
+          assertEquals("Range results differ", expectr.size(), DBIDUtil.intersectionSize(expectr, actualr));
+        }
+      }
+      assertTrue("No scans counted.", index.scans > 0);
+    }
+  }
 }
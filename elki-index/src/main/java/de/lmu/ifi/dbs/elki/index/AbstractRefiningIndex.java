@@ -28,6 +28,7 @@ import de.lmu.ifi.dbs.elki.database.query.range.AbstractDistanceRangeQuery;
 import de.lmu.ifi.dbs.elki.database.relation.Relation;
 import de.lmu.ifi.dbs.elki.logging.Logging;
 import de.lmu.ifi.dbs.elki.logging.statistics.Counter;
+import de.lmu.ifi.dbs.elki.logging.statistics.QueryCounters;
 
 /**
  * Abstract base class for Filter-refinement indexes.
@@ -76,6 +77,7 @@ public abstract class AbstractRefiningIndex<O> extends AbstractIndex<O> {
     if(refinements != null) {
       refinements.increment(i);
     }
+    QueryCounters.countDistances(i);
   }
 
   @Override
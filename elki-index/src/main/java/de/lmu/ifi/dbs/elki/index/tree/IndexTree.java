@@ -23,6 +23,7 @@ package de.lmu.ifi.dbs.elki.index.tree;
 import de.lmu.ifi.dbs.elki.index.Index;
 import de.lmu.ifi.dbs.elki.logging.Logging;
 import de.lmu.ifi.dbs.elki.logging.statistics.LongStatistic;
+import de.lmu.ifi.dbs.elki.logging.statistics.QueryCounters;
 import de.lmu.ifi.dbs.elki.persistent.PageFile;
 import de.lmu.ifi.dbs.elki.utilities.exceptions.AbortException;
 
@@ -131,6 +132,7 @@ public abstract class IndexTree<N extends Node<E>, E extends Entry> implements I
    * @return the root node of this index
    */
   public N getRoot() {
+    QueryCounters.countNodeVisit();
     return file.readPage(getPageID(rootEntry));
   }
 
@@ -168,10 +170,21 @@ public abstract class IndexTree<N extends Node<E>, E extends Entry> implements I
       return getRoot();
     }
     else {
+      QueryCounters.countNodeVisit();
       return file.readPage(nodeID);
     }
   }
 
+  /**
+   * Hint that the node with the specified id will be accessed soon, so that
+   * the page file may load it asynchronously.
+   *
+   * @param nodeID the page id of the node
+   */
+  public void prefetchNode(int nodeID) {
+    file.prefetch(nodeID);
+  }
+
   /**
    * Returns the node that is represented by the specified entry.
    *
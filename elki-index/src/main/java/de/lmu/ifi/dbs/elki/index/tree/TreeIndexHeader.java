@@ -39,11 +39,11 @@ import de.lmu.ifi.dbs.elki.persistent.DefaultPageHeader;
  */
 public class TreeIndexHeader extends DefaultPageHeader {
   /**
-   * The size of this header in Bytes, which is 20 Bytes ( 4 Bytes for
+   * The size of this header in Bytes, which is 24 Bytes ( 4 Bytes for
    * {@link #dirCapacity}, {@link #leafCapacity}, {@link #dirMinimum},
-   * {@link #leafMinimum}, and {@link #emptyPagesSize}).
+   * {@link #leafMinimum}, {@link #emptyPagesSize}, and {@link #largestPageID}).
    */
-  private static int SIZE = 20;
+  private static int SIZE = 24;
 
   /**
    * The capacity of a directory node (= 1 + maximum number of entries in a
@@ -0,0 +1,290 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2017
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.lmu.ifi.dbs.elki.datasource;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.util.List;
+
+import de.lmu.ifi.dbs.elki.data.DoubleVector;
+import de.lmu.ifi.dbs.elki.data.FloatVector;
+import de.lmu.ifi.dbs.elki.data.MappedVectorStore;
+import de.lmu.ifi.dbs.elki.data.NumberVector;
+import de.lmu.ifi.dbs.elki.data.PackedVectorStore;
+import de.lmu.ifi.dbs.elki.data.type.SimpleTypeInformation;
+import de.lmu.ifi.dbs.elki.data.type.TypeInformationSerializer;
+import de.lmu.ifi.dbs.elki.data.type.VectorFieldTypeInformation;
+import de.lmu.ifi.dbs.elki.database.ids.ArrayModifiableDBIDs;
+import de.lmu.ifi.dbs.elki.database.ids.DBID;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDUtil;
+import de.lmu.ifi.dbs.elki.datasource.bundle.BundleReader;
+import de.lmu.ifi.dbs.elki.datasource.bundle.MultipleObjectsBundle;
+import de.lmu.ifi.dbs.elki.datasource.filter.ObjectFilter;
+import de.lmu.ifi.dbs.elki.logging.Logging;
+import de.lmu.ifi.dbs.elki.utilities.exceptions.AbortException;
+import de.lmu.ifi.dbs.elki.utilities.io.ByteArrayUtil;
+import de.lmu.ifi.dbs.elki.utilities.io.ByteBufferSerializer;
+import de.lmu.ifi.dbs.elki.utilities.io.FixedSizeByteBufferSerializer;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.OptionID;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameterization.Parameterization;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameters.FileParameter;
+
+/**
+ * Class to serve a database from a memory mapped bundle file, without loading
+ * the vectors onto the Java heap.
+ *
+ * This requires all records of the bundle to have the same width: every
+ * column must contain dense {@link DoubleVector}s or {@link FloatVector}s of a
+ * fixed dimensionality. Vector columns are then served as
+ * {@link MappedVectorStore}, which reads the values from the mapped file on
+ * access. Startup time does not depend on the file size, and the operating
+ * system page cache is shared by all processes mapping the same file.
+ *
+ * Object IDs are supported if written with a
+ * {@link FixedSizeByteBufferSerializer}, but require a pass over the file to
+ * read them. For other files, such as files with labels, use
+ * {@link BundleDatabaseConnection} instead.
+ *
+ * @author Erich Schubert
+ * @since 0.7.2
+ *
+ * @apiviz.composedOf MappedVectorStore
+ */
+public class MappedBundleDatabaseConnection extends AbstractDatabaseConnection {
+  /**
+   * Class logger.
+   */
+  private static final Logging LOG = Logging.getLogger(MappedBundleDatabaseConnection.class);
+
+  /**
+   * Initial size of the header mapping.
+   */
+  private static final int HEADER_SIZE = 1 << 12;
+
+  /**
+   * File to map.
+   */
+  private File infile;
+
+  /**
+   * Constructor.
+   *
+   * @param filters Filters
+   * @param infile Input file
+   */
+  public MappedBundleDatabaseConnection(List<ObjectFilter> filters, File infile) {
+    super(filters);
+    this.infile = infile;
+  }
+
+  @Override
+  public MultipleObjectsBundle loadData() {
+    try (FileInputStream fis = new FileInputStream(infile); //
+        FileChannel channel = fis.getChannel()) {
+      final long filesize = channel.size();
+      // Map only the header, growing the mapping until it fits:
+      SimpleTypeInformation<?>[] types = null;
+      long start = 0;
+      for(long hlen = Math.min(filesize, HEADER_SIZE); types == null; hlen = Math.min(filesize, Math.min(hlen << 1, Integer.MAX_VALUE))) {
+        MappedByteBuffer header = channel.map(MapMode.READ_ONLY, 0, hlen);
+        try {
+          types = readHeader(header);
+          start = header.position();
+        }
+        catch(BufferUnderflowException e) {
+          if(hlen >= filesize || hlen >= Integer.MAX_VALUE) {
+            throw new AbortException("Bundle file header is truncated.");
+          }
+        }
+        finally {
+          ByteArrayUtil.unmapByteBuffer(header);
+        }
+      }
+      final int numcol = types.length;
+      int[] offsets = new int[numcol + 1];
+      for(int i = 0; i < numcol; i++) {
+        offsets[i + 1] = offsets[i] + columnWidth(types[i], i);
+      }
+      final int stride = offsets[numcol];
+      if(stride <= 0 || (filesize - start) % stride != 0) {
+        throw new AbortException("Bundle file does not consist of fixed-width records.");
+      }
+      if((filesize - start) / stride > Integer.MAX_VALUE) {
+        throw new AbortException("Bundle file contains too many records.");
+      }
+      final int size = (int) ((filesize - start) / stride);
+      if(LOG.isVerbose()) {
+        LOG.verbose("Mapping " + size + " records of " + stride + " bytes.");
+      }
+
+      MultipleObjectsBundle bundle = new MultipleObjectsBundle();
+      for(int i = 0; i < numcol; i++) {
+        if(i == 0 && DBID.class.isAssignableFrom(types[i].getRestrictionClass())) {
+          bundle.setDBIDs(readDBIDs(channel, start, size, stride, types[0].getSerializer()));
+          continue;
+        }
+        VectorFieldTypeInformation<?> vtype = (VectorFieldTypeInformation<?>) types[i];
+        final int dim = vtype.getDimensionality();
+        final boolean isfloat = FloatVector.class.isAssignableFrom(vtype.getRestrictionClass());
+        final int prefix = offsets[i + 1] - offsets[i] - dim * (isfloat ? ByteArrayUtil.SIZE_FLOAT : ByteArrayUtil.SIZE_DOUBLE);
+        MappedVectorStore store = new MappedVectorStore(channel, start, size, dim, stride, offsets[i] + prefix, isfloat);
+        String[] labels = new String[dim];
+        boolean haslabels = false;
+        for(int d = 0; d < dim; d++) {
+          haslabels |= (labels[d] = vtype.getLabel(d)) != null;
+        }
+        bundle.appendColumn(new VectorFieldTypeInformation<NumberVector>(PackedVectorStore.FACTORY, dim, haslabels ? labels : null, PackedVectorStore.VARIABLE_SERIALIZER), store);
+      }
+      return invokeBundleFilters(bundle);
+    }
+    catch(IOException e) {
+      throw new AbortException("IO error mapping bundle", e);
+    }
+  }
+
+  /**
+   * Read the column types from the bundle header.
+   *
+   * @param header Buffer starting at the beginning of the file; the position
+   *        is left after the header.
+   * @return Column types
+   * @throws IOException on serialization errors
+   * @throws BufferUnderflowException if the buffer does not contain the
+   *         entire header
+   */
+  private static SimpleTypeInformation<?>[] readHeader(ByteBuffer header) throws IOException {
+    if(header.getInt() != BundleReader.MAGIC) {
+      throw new AbortException("File does not start with expected magic.");
+    }
+    final int numcol = header.getInt();
+    SimpleTypeInformation<?>[] types = new SimpleTypeInformation<?>[numcol];
+    for(int i = 0; i < numcol; i++) {
+      types[i] = (SimpleTypeInformation<?>) TypeInformationSerializer.STATIC.fromByteBuffer(header);
+    }
+    return types;
+  }
+
+  /**
+   * Get the width of a column in each record.
+   *
+   * @param type Column type
+   * @param col Column number
+   * @return Width in bytes
+   * @throws IOException on serialization errors
+   */
+  private static int columnWidth(SimpleTypeInformation<?> type, int col) throws IOException {
+    final ByteBufferSerializer<?> ser = type.getSerializer();
+    if(col == 0 && DBID.class.isAssignableFrom(type.getRestrictionClass())) {
+      if(ser instanceof FixedSizeByteBufferSerializer) {
+        return ((FixedSizeByteBufferSerializer<?>) ser).getFixedByteSize();
+      }
+      throw new AbortException("Bundle contains variable-width object IDs, and cannot be memory mapped.");
+    }
+    if(type instanceof VectorFieldTypeInformation) {
+      VectorFieldTypeInformation<?> vtype = (VectorFieldTypeInformation<?>) type;
+      if(vtype.mindim() == vtype.maxdim()) {
+        final int dim = vtype.getDimensionality();
+        if(ser instanceof DoubleVector.SmallSerializer || ser instanceof DoubleVector.ShortSerializer || ser instanceof DoubleVector.VariableSerializer) {
+          @SuppressWarnings("unchecked")
+          ByteBufferSerializer<DoubleVector> dser = (ByteBufferSerializer<DoubleVector>) ser;
+          return dser.getByteSize(new DoubleVector(new double[dim]));
+        }
+        if(ser instanceof FloatVector.SmallSerializer || ser instanceof FloatVector.ShortSerializer || ser instanceof FloatVector.VariableSerializer) {
+          @SuppressWarnings("unchecked")
+          ByteBufferSerializer<FloatVector> fser = (ByteBufferSerializer<FloatVector>) ser;
+          return fser.getByteSize(new FloatVector(new float[dim]));
+        }
+      }
+    }
+    throw new AbortException("Column type " + type + " cannot be memory mapped, as it is not a dense vector field of fixed width.");
+  }
+
+  /**
+   * Read the object IDs stored in the first column.
+   *
+   * @param channel File channel
+   * @param start Position of the first record
+   * @param size Number of records
+   * @param stride Record width
+   * @param ser DBID serializer
+   * @return Object IDs
+   * @throws IOException on IO errors
+   */
+  private static ArrayModifiableDBIDs readDBIDs(FileChannel channel, long start, int size, int stride, ByteBufferSerializer<?> ser) throws IOException {
+    ArrayModifiableDBIDs ids = DBIDUtil.newArray(size);
+    final int perchunk = Math.max(1, Integer.MAX_VALUE / stride);
+    for(int i = 0; i < size; i += perchunk) {
+      final int rows = Math.min(perchunk, size - i);
+      MappedByteBuffer buffer = channel.map(MapMode.READ_ONLY, start + i * (long) stride, rows * (long) stride);
+      for(int j = 0; j < rows; j++) {
+        buffer.position(j * stride);
+        ids.add((DBID) ser.fromByteBuffer(buffer));
+      }
+      ByteArrayUtil.unmapByteBuffer(buffer);
+    }
+    return ids;
+  }
+
+  @Override
+  protected Logging getLogger() {
+    return LOG;
+  }
+
+  /**
+   * Parameterization class.
+   *
+   * @author Erich Schubert
+   *
+   * @apiviz.exclude
+   */
+  public static class Parameterizer extends AbstractDatabaseConnection.Parameterizer {
+    /**
+     * Option ID for the bundle parameter.
+     */
+    private static final OptionID BUNDLE_ID = new OptionID("bundle.mapped", "Bundle file of fixed-width vector records to memory map.");
+
+    /**
+     * File to map.
+     */
+    private File infile;
+
+    @Override
+    protected void makeOptions(Parameterization config) {
+      super.makeOptions(config);
+      configFilters(config);
+      FileParameter infileP = new FileParameter(BUNDLE_ID, FileParameter.FileType.INPUT_FILE);
+      if(config.grab(infileP)) {
+        infile = infileP.getValue();
+      }
+    }
+
+    @Override
+    protected MappedBundleDatabaseConnection makeInstance() {
+      return new MappedBundleDatabaseConnection(filters, infile);
+    }
+  }
+}
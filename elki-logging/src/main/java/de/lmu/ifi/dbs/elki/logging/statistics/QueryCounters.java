@@ -0,0 +1,216 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2017
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.lmu.ifi.dbs.elki.logging.statistics;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Per-thread event counters for query instrumentation.
+ *
+ * Index structures report distance computations, node visits and heap
+ * insertions here, and instrumented queries take snapshots before and after
+ * each query to attribute the costs to individual queries.
+ *
+ * Work that a query hands off to other threads (e.g. fork-join tasks) is
+ * counted in separate task counters, that are merged into the counters of the
+ * thread that created the task when the task completes; see
+ * {@link #beginTask} and {@link #endTask}.
+ *
+ * Instrumentation is disabled by default, and then every hook only checks a
+ * static flag. The flag is intentionally not volatile; it should be set before
+ * running queries.
+ *
+ * @author Erich Schubert
+ * @since 0.7.2
+ */
+public final class QueryCounters {
+  /**
+   * Instrumentation enabled flag.
+   */
+  private static boolean enabled = false;
+
+  /**
+   * Counters of the current thread.
+   */
+  private static final ThreadLocal<QueryCounters> CURRENT = ThreadLocal.withInitial(QueryCounters::new);
+
+  /**
+   * Number of distance computations.
+   */
+  final LongAdder distances = new LongAdder();
+
+  /**
+   * Number of index nodes (pages) visited.
+   */
+  final LongAdder nodes = new LongAdder();
+
+  /**
+   * Number of heap insertions.
+   */
+  final LongAdder heapInserts = new LongAdder();
+
+  /**
+   * Constructor, use {@link #current()}.
+   */
+  private QueryCounters() {
+    super();
+  }
+
+  /**
+   * Enable or disable query instrumentation.
+   *
+   * @param enable New status
+   */
+  public static void setEnabled(boolean enable) {
+    enabled = enable;
+  }
+
+  /**
+   * Test whether query instrumentation is enabled.
+   *
+   * @return {@code true} when enabled
+   */
+  public static boolean isEnabled() {
+    return enabled;
+  }
+
+  /**
+   * Get the counters of the current thread.
+   *
+   * @return Counters
+   */
+  public static QueryCounters current() {
+    return CURRENT.get();
+  }
+
+  /**
+   * Get the counters a task created by the current thread should report to.
+   *
+   * @return Counters of the current thread, or {@code null} when disabled
+   */
+  public static QueryCounters forTask() {
+    return enabled ? CURRENT.get() : null;
+  }
+
+  /**
+   * Begin executing a task on the current thread. If the task was created on
+   * a different thread, subsequent events are counted in fresh task counters
+   * until {@link #endTask} is called.
+   *
+   * @param parent Counters of the creating thread, from {@link #forTask()}
+   * @return Previous counters of this thread, to pass to {@link #endTask}
+   */
+  public static QueryCounters beginTask(QueryCounters parent) {
+    if(parent == null) {
+      return null;
+    }
+    final QueryCounters previous = CURRENT.get();
+    if(previous == parent) {
+      return null; // Same thread (or nested task), count directly.
+    }
+    CURRENT.set(new QueryCounters());
+    return previous;
+  }
+
+  /**
+   * Finish executing a task: merge the task counters into the counters of the
+   * creating thread, and restore the previous counters of this thread.
+   *
+   * @param parent Counters of the creating thread, from {@link #forTask()}
+   * @param previous Return value of {@link #beginTask}
+   */
+  public static void endTask(QueryCounters parent, QueryCounters previous) {
+    if(previous == null) {
+      return;
+    }
+    final QueryCounters task = CURRENT.get();
+    CURRENT.set(previous);
+    parent.distances.add(task.distances.sum());
+    parent.nodes.add(task.nodes.sum());
+    parent.heapInserts.add(task.heapInserts.sum());
+  }
+
+  /**
+   * Count a distance computation.
+   */
+  public static void countDistance() {
+    if(enabled) {
+      CURRENT.get().distances.increment();
+    }
+  }
+
+  /**
+   * Count multiple distance computations.
+   *
+   * @param n Number of distance computations
+   */
+  public static void countDistances(long n) {
+    if(enabled) {
+      CURRENT.get().distances.add(n);
+    }
+  }
+
+  /**
+   * Count a visited index node or page.
+   */
+  public static void countNodeVisit() {
+    if(enabled) {
+      CURRENT.get().nodes.increment();
+    }
+  }
+
+  /**
+   * Count a heap insertion.
+   */
+  public static void countHeapInsert() {
+    if(enabled) {
+      CURRENT.get().heapInserts.increment();
+    }
+  }
+
+  /**
+   * Get the number of distance computations of this thread, including merged
+   * tasks.
+   *
+   * @return Number of distance computations
+   */
+  public long getDistances() {
+    return distances.sum();
+  }
+
+  /**
+   * Get the number of visited nodes of this thread, including merged tasks.
+   *
+   * @return Number of nodes visited
+   */
+  public long getNodeVisits() {
+    return nodes.sum();
+  }
+
+  /**
+   * Get the number of heap insertions of this thread, including merged tasks.
+   *
+   * @return Number of heap insertions
+   */
+  public long getHeapInserts() {
+    return heapInserts.sum();
+  }
+}
@@ -20,6 +20,8 @@
  */
 package de.lmu.ifi.dbs.elki.algorithm.outlier.distance.parallel;
 
+import java.util.List;
+
 import de.lmu.ifi.dbs.elki.algorithm.AbstractDistanceBasedAlgorithm;
 import de.lmu.ifi.dbs.elki.algorithm.outlier.OutlierAlgorithm;
 import de.lmu.ifi.dbs.elki.algorithm.outlier.distance.KNNOutlier;
@@ -29,8 +31,11 @@ import de.lmu.ifi.dbs.elki.database.Database;
 import de.lmu.ifi.dbs.elki.database.datastore.DataStoreFactory;
 import de.lmu.ifi.dbs.elki.database.datastore.DataStoreUtil;
 import de.lmu.ifi.dbs.elki.database.datastore.WritableDoubleDataStore;
-import de.lmu.ifi.dbs.elki.database.ids.DBIDs;
+import de.lmu.ifi.dbs.elki.database.ids.ArrayDBIDs;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDArrayIter;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDUtil;
 import de.lmu.ifi.dbs.elki.database.ids.KNNList;
+import de.lmu.ifi.dbs.elki.database.query.DatabaseQuery;
 import de.lmu.ifi.dbs.elki.database.query.distance.DistanceQuery;
 import de.lmu.ifi.dbs.elki.database.query.knn.KNNQuery;
 import de.lmu.ifi.dbs.elki.database.relation.DoubleRelation;
@@ -39,13 +44,7 @@ import de.lmu.ifi.dbs.elki.database.relation.Relation;
 import de.lmu.ifi.dbs.elki.distance.distancefunction.DistanceFunction;
 import de.lmu.ifi.dbs.elki.logging.Logging;
 import de.lmu.ifi.dbs.elki.math.DoubleMinMax;
-import de.lmu.ifi.dbs.elki.parallel.ParallelExecutor;
-import de.lmu.ifi.dbs.elki.parallel.processor.DoubleMinMaxProcessor;
-import de.lmu.ifi.dbs.elki.parallel.processor.KDistanceProcessor;
-import de.lmu.ifi.dbs.elki.parallel.processor.KNNProcessor;
-import de.lmu.ifi.dbs.elki.parallel.processor.WriteDoubleDataStoreProcessor;
-import de.lmu.ifi.dbs.elki.parallel.variables.SharedDouble;
-import de.lmu.ifi.dbs.elki.parallel.variables.SharedObject;
+import de.lmu.ifi.dbs.elki.parallel.ParallelBulkQuery;
 import de.lmu.ifi.dbs.elki.result.outlier.BasicOutlierScoreMeta;
 import de.lmu.ifi.dbs.elki.result.outlier.OutlierResult;
 import de.lmu.ifi.dbs.elki.result.outlier.OutlierScoreMeta;
@@ -72,11 +71,14 @@ import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameters.IntParameter;
  * Data Mining and Knowledge Discovery, 28(1): 190–237, 2014.
  * </p>
  * 
+ * The neighborhoods are computed with {@link ParallelBulkQuery}, in chunks to
+ * bound the memory used by the kNN lists, such that index structures with a
+ * batched kNN search can share work across queries.
+ * 
  * @author Erich Schubert
  * @since 0.7.0
  * 
- * @apiviz.composedOf KNNProcessor
- * @apiviz.composedOf KDistanceProcessor
+ * @apiviz.uses ParallelBulkQuery
  * 
  * @param <O> Object type
  */
@@ -85,6 +87,11 @@ title = "Local Outlier Detection Reconsidered: a Generalized View on Locality wi
 booktitle = "Data Mining and Knowledge Discovery, 28(1): 190–237, 2014.", //
 url = "http://dx.doi.org/10.1007/s10618-012-0300-z")
 public class ParallelKNNOutlier<O> extends AbstractDistanceBasedAlgorithm<O, OutlierResult> implements OutlierAlgorithm {
+  /**
+   * Number of objects to query at once.
+   */
+  private static final int CHUNKSIZE = 1 << 14;
+
   /**
    * Parameter k
    */
@@ -112,30 +119,23 @@ public class ParallelKNNOutlier<O> extends AbstractDistanceBasedAlgorithm<O, Out
   }
 
   public OutlierResult run(Database database, Relation<O> relation) {
-    DBIDs ids = relation.getDBIDs();
+    ArrayDBIDs ids = DBIDUtil.ensureArray(relation.getDBIDs());
     WritableDoubleDataStore store = DataStoreUtil.makeDoubleStorage(ids, DataStoreFactory.HINT_DB);
     DistanceQuery<O> distq = database.getDistanceQuery(relation, getDistanceFunction());
-    KNNQuery<O> knnq = database.getKNNQuery(distq, k + 1);
+    KNNQuery<O> knnq = database.getKNNQuery(distq, k + 1, DatabaseQuery.HINT_BULK);
 
-    // Compute the kNN
-    KNNProcessor<O> knnm = new KNNProcessor<>(k + 1, knnq);
-    SharedObject<KNNList> knnv = new SharedObject<>();
-    knnm.connectKNNOutput(knnv);
-    // Extract the k-distance
-    KDistanceProcessor kdistm = new KDistanceProcessor(k + 1);
-    SharedDouble kdistv = new SharedDouble();
-    kdistm.connectKNNInput(knnv);
-    kdistm.connectOutput(kdistv);
-    // Store in outlier scores
-    WriteDoubleDataStoreProcessor storem = new WriteDoubleDataStoreProcessor(store);
-    storem.connectInput(kdistv);
-    // Gather statistics
-    DoubleMinMaxProcessor mmm = new DoubleMinMaxProcessor();
-    mmm.connectInput(kdistv);
-
-    ParallelExecutor.run(ids, knnm, kdistm, storem, mmm);
-
-    DoubleMinMax minmax = mmm.getMinMax();
+    DoubleMinMax minmax = new DoubleMinMax();
+    for(int start = 0, size = ids.size(); start < size; start += CHUNKSIZE) {
+      ArrayDBIDs chunk = ids.slice(start, Math.min(start + CHUNKSIZE, size));
+      List<KNNList> knns = ParallelBulkQuery.getKNNForBulkDBIDs(knnq, chunk, k + 1);
+      DBIDArrayIter iter = chunk.iter();
+      for(KNNList knn : knns) {
+        final double kdist = knn.getKNNDistance();
+        store.putDouble(iter, kdist);
+        minmax.put(kdist);
+        iter.advance();
+      }
+    }
     DoubleRelation scoreres = new MaterializedDoubleRelation("kNN Outlier Score", "knn-outlier", store, ids);
     OutlierScoreMeta meta = new BasicOutlierScoreMeta(minmax.getMin(), minmax.getMax(), 0.0, Double.POSITIVE_INFINITY, 0.0);
     return new OutlierResult(meta, scoreres);
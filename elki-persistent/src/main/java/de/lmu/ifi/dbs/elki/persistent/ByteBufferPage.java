@@ -0,0 +1,47 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2017
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.lmu.ifi.dbs.elki.persistent;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Pages that can be stored in a flat binary encoding, bypassing Java object
+ * serialization. Page files use this encoding when the page class supports it.
+ *
+ * @author Erich Schubert
+ * @since 0.7.2
+ */
+public interface ByteBufferPage extends Page {
+  /**
+   * Write the page to the buffer, starting at offset 0.
+   *
+   * @param buffer Buffer to write to
+   * @throws java.nio.BufferOverflowException if the page does not fit
+   */
+  void writeToByteBuffer(ByteBuffer buffer);
+
+  /**
+   * Restore the page from the buffer, starting at offset 0.
+   *
+   * @param buffer Buffer to read from
+   */
+  void readFromByteBuffer(ByteBuffer buffer);
+}
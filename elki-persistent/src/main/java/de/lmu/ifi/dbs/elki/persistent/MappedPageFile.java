@@ -0,0 +1,452 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2017
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.lmu.ifi.dbs.elki.persistent;
+
+import java.io.Externalizable;
+import java.io.File;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.RandomAccessFile;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.InvocationTargetException;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+
+import de.lmu.ifi.dbs.elki.logging.Logging;
+import de.lmu.ifi.dbs.elki.utilities.exceptions.AbortException;
+import de.lmu.ifi.dbs.elki.utilities.io.ByteBufferInputStream;
+import de.lmu.ifi.dbs.elki.utilities.io.ByteBufferOutputStream;
+
+/**
+ * Page file that memory-maps the index file in large segments.
+ * 
+ * Pages are read directly from the mapping, without copying them into a
+ * separate buffer, so reading a page that is resident in the operating system
+ * cache does not require a system call. New segments are mapped as pages are
+ * allocated, and {@link #flush()} forces modified segments to disk.
+ * 
+ * Pages implementing {@link ByteBufferPage} are stored in their flat binary
+ * encoding, other pages need to be {@link Externalizable}. The encoding of
+ * binary pages can also be read without materializing the page, using
+ * {@link #readPageBuffer}.
+ * 
+ * The file consists of the header, then one slot of the page size per page,
+ * starting with a type word (empty or filled). For {@link ByteBufferPage}s,
+ * this is the same encoding as used by the persistent page file. Externalizable
+ * pages are written to an object stream after the raw type word, whereas the
+ * persistent page file also writes the type word to the object stream, so
+ * these files cannot be exchanged. Contrary to the persistent page file,
+ * closing this page file keeps the pages, so that the index can be reopened.
+ * 
+ * @author Erich Schubert
+ * @since 0.7.2
+ * 
+ * @apiviz.composedOf PageHeader
+ * @apiviz.composedOf MappedByteBuffer
+ * 
+ * @param <P> Page type
+ */
+public class MappedPageFile<P extends Page> extends AbstractStoringPageFile<P> {
+  /**
+   * Class logger.
+   */
+  private static final Logging LOG = Logging.getLogger(MappedPageFile.class);
+
+  /**
+   * Indicates an empty page.
+   */
+  private static final int EMPTY_PAGE = 0;
+
+  /**
+   * Indicates a filled page.
+   */
+  private static final int FILLED_PAGE = 1;
+
+  /**
+   * Default segment size: 64 MiB.
+   */
+  public static final int DEFAULT_SEGMENT_SIZE = 1 << 26;
+
+  /**
+   * The file name.
+   */
+  private final File filename;
+
+  /**
+   * Whether the file existed before.
+   */
+  private final boolean existed;
+
+  /**
+   * Constructor of the pages.
+   */
+  private final Constructor<P> pageconstructor;
+
+  /**
+   * Whether the pages use the flat binary encoding.
+   */
+  private final boolean binary;
+
+  /**
+   * Requested segment size in bytes.
+   */
+  private final int segmentSize;
+
+  /**
+   * Number of pages per mapped segment.
+   */
+  private int pagesPerSegment;
+
+  /**
+   * Offset of the first page in the file.
+   */
+  private long base;
+
+  /**
+   * The file storing the pages.
+   */
+  private RandomAccessFile file;
+
+  /**
+   * Channel of the file.
+   */
+  private FileChannel channel;
+
+  /**
+   * Mapped segments. Replaced (not modified) when growing, so that readers do
+   * not need to synchronize.
+   */
+  private volatile MappedByteBuffer[] segments = new MappedByteBuffer[0];
+
+  /**
+   * Segments modified since the last flush.
+   */
+  private boolean[] dirty = new boolean[0];
+
+  /**
+   * The header of this page file.
+   */
+  protected PageHeader header;
+
+  /**
+   * Constructor.
+   * 
+   * @param pageSize Page size
+   * @param fileName File name
+   * @param pageclass Page class
+   * @param segmentSize Size of mapped segments in bytes
+   */
+  public MappedPageFile(int pageSize, String fileName, Class<P> pageclass, int segmentSize) {
+    super(pageSize);
+    this.filename = new File(fileName);
+    this.existed = filename.exists();
+    this.binary = ByteBufferPage.class.isAssignableFrom(pageclass);
+    if(!binary && !Externalizable.class.isAssignableFrom(pageclass)) {
+      throw new AbortException("Pages of type " + pageclass.getName() + " can not be stored in a mapped page file.");
+    }
+    try {
+      // Node classes of some trees are not public.
+      this.pageconstructor = pageclass.getDeclaredConstructor();
+      pageconstructor.setAccessible(true);
+    }
+    catch(NoSuchMethodException e) {
+      throw new AbortException("Pages of type " + pageclass.getName() + " do not have an empty constructor.", e);
+    }
+    this.segmentSize = segmentSize;
+  }
+
+  @Override
+  public P readPage(int pageID) {
+    countRead();
+    ByteBuffer buf = pageBuffer(pageID);
+    int type = buf.getInt(0);
+    if(type == EMPTY_PAGE) {
+      return null;
+    }
+    if(type != FILLED_PAGE) {
+      throw new IllegalArgumentException("Unknown type: " + type);
+    }
+    P page;
+    try {
+      page = pageconstructor.newInstance();
+    }
+    catch(InstantiationException | IllegalAccessException | InvocationTargetException e) {
+      throw new AbortException("Error instanciating an index page", e);
+    }
+    buf.position(4);
+    if(binary) {
+      ((ByteBufferPage) page).readFromByteBuffer(buf.slice());
+      return page;
+    }
+    try (ObjectInputStream ois = new ObjectInputStream(new ByteBufferInputStream(buf.slice()))) {
+      ((Externalizable) page).readExternal(ois);
+    }
+    catch(IOException | ClassNotFoundException e) {
+      throw new AbortException("Error reading page " + pageID, e);
+    }
+    return page;
+  }
+
+  /**
+   * Read the binary encoding of a page directly from the mapping, without
+   * materializing the page.
+   * 
+   * The buffer is a view of the mapping, and hence only valid until the page
+   * is modified.
+   * 
+   * @param pageID Page id
+   * @return Read-only buffer starting at the encoded page, or {@code null} for
+   *         empty pages
+   */
+  public ByteBuffer readPageBuffer(int pageID) {
+    if(!binary) {
+      throw new UnsupportedOperationException("Pages are not stored in a binary encoding.");
+    }
+    countRead();
+    ByteBuffer buf = pageBuffer(pageID);
+    int type = buf.getInt(0);
+    if(type == EMPTY_PAGE) {
+      return null;
+    }
+    if(type != FILLED_PAGE) {
+      throw new IllegalArgumentException("Unknown type: " + type);
+    }
+    buf.position(4);
+    return buf.slice().asReadOnlyBuffer();
+  }
+
+  /**
+   * Test whether the pages are stored in their flat binary encoding, and can be
+   * read using {@link #readPageBuffer}.
+   * 
+   * @return {@code true} for {@link ByteBufferPage}s
+   */
+  public boolean isBinary() {
+    return binary;
+  }
+
+  @Override
+  public void writePage(int pageID, P page) {
+    countWrite();
+    ByteBuffer buf = pageBuffer(pageID);
+    buf.putInt(0, FILLED_PAGE);
+    buf.position(4);
+    try {
+      if(binary) {
+        ((ByteBufferPage) page).writeToByteBuffer(buf.slice());
+      }
+      else {
+        try (ObjectOutputStream oos = new ObjectOutputStream(new ByteBufferOutputStream(buf.slice()))) {
+          ((Externalizable) page).writeExternal(oos);
+        }
+      }
+    }
+    catch(BufferOverflowException e) {
+      throw new IllegalArgumentException("Size of page " + page + " is greater than specified pagesize: " + pageSize);
+    }
+    catch(IOException e) {
+      throw new AbortException("Error writing page " + pageID, e);
+    }
+    markDirty(pageID);
+    page.setDirty(false);
+  }
+
+  @Override
+  public void deletePage(int pageID) {
+    super.deletePage(pageID);
+    countWrite();
+    pageBuffer(pageID).putInt(0, EMPTY_PAGE);
+    markDirty(pageID);
+  }
+
+  @Override
+  public int setPageID(P page) {
+    int pageID = super.setPageID(page);
+    segment(pageID / pagesPerSegment); // Grow the mapping.
+    return pageID;
+  }
+
+  @Override
+  public void setNextPageID(int nextPageID) {
+    this.nextPageID = nextPageID;
+    while(!emptyPages.isEmpty() && emptyPages.peek() >= this.nextPageID) {
+      emptyPages.pop();
+    }
+  }
+
+  /**
+   * Get a buffer for a single page.
+   * 
+   * @param pageID Page id
+   * @return Buffer, starting at the page
+   */
+  private ByteBuffer pageBuffer(int pageID) {
+    final int seg = pageID / pagesPerSegment;
+    ByteBuffer buf = segment(seg).duplicate();
+    final int off = (pageID - seg * pagesPerSegment) * pageSize;
+    buf.limit(off + pageSize);
+    buf.position(off);
+    return buf.slice();
+  }
+
+  /**
+   * Get a mapped segment, mapping it if necessary.
+   * 
+   * @param seg Segment number
+   * @return Mapped segment
+   */
+  private MappedByteBuffer segment(int seg) {
+    MappedByteBuffer[] segs = segments;
+    return seg < segs.length ? segs[seg] : grow(seg);
+  }
+
+  /**
+   * Map additional segments.
+   * 
+   * @param seg Segment needed
+   * @return Mapped segment
+   */
+  private synchronized MappedByteBuffer grow(int seg) {
+    MappedByteBuffer[] segs = segments;
+    if(seg < segs.length) {
+      return segs[seg];
+    }
+    final long len = (long) pagesPerSegment * pageSize;
+    MappedByteBuffer[] nsegs = Arrays.copyOf(segs, seg + 1);
+    try {
+      for(int i = segs.length; i <= seg; i++) {
+        nsegs[i] = channel.map(FileChannel.MapMode.READ_WRITE, base + i * len, len);
+      }
+    }
+    catch(IOException e) {
+      throw new AbortException("Error mapping page file segment " + seg, e);
+    }
+    dirty = Arrays.copyOf(dirty, nsegs.length);
+    segments = nsegs;
+    return nsegs[seg];
+  }
+
+  /**
+   * Mark the segment containing a page as modified.
+   * 
+   * @param pageID Page id
+   */
+  private synchronized void markDirty(int pageID) {
+    dirty[pageID / pagesPerSegment] = true;
+  }
+
+  /**
+   * Force all modified segments to disk.
+   */
+  public synchronized void flush() {
+    final MappedByteBuffer[] segs = segments;
+    for(int i = 0; i < segs.length; i++) {
+      if(dirty[i]) {
+        segs[i].force();
+        dirty[i] = false;
+      }
+    }
+  }
+
+  /**
+   * Get the header of this page file.
+   * 
+   * @return the header used by this page file
+   */
+  public PageHeader getHeader() {
+    return header;
+  }
+
+  @Override
+  public void close() {
+    flush();
+    try {
+      header.writeHeader(file);
+      segments = new MappedByteBuffer[0];
+      channel.close();
+      file.close();
+    }
+    catch(IOException e) {
+      throw new AbortException("Error closing page file.", e);
+    }
+  }
+
+  /**
+   * Remove all pages. The file is not truncated, because concurrent readers
+   * may still access the mapped segments; instead, all pages are marked empty.
+   */
+  @Override
+  public synchronized void clear() {
+    for(int i = 0; i < nextPageID; i++) {
+      pageBuffer(i).putInt(0, EMPTY_PAGE);
+      markDirty(i);
+    }
+    nextPageID = 0;
+    emptyPages.clear();
+  }
+
+  @Override
+  public boolean initialize(PageHeader header) {
+    this.header = header;
+    try {
+      file = new RandomAccessFile(filename, "rw");
+      channel = file.getChannel();
+      if(existed) {
+        LOG.debug("Initializing from an existing page file.");
+        header.readHeader(file);
+      }
+      else {
+        LOG.debug("Initializing with a new page file.");
+        header.writeHeader(file);
+      }
+      super.initialize(header);
+      base = (long) header.getReservedPages() * pageSize;
+      pagesPerSegment = Math.max(1, segmentSize / pageSize);
+      if(existed) {
+        // Scan for empty pages; only those below the next page id are kept.
+        final int numPages = (int) Math.max(0, (file.length() - base) / pageSize);
+        for(int i = 0; i < numPages; i++) {
+          if(pageBuffer(i).getInt(0) == FILLED_PAGE) {
+            nextPageID = i + 1;
+          }
+        }
+        for(int i = nextPageID - 1; i >= 0; i--) {
+          if(pageBuffer(i).getInt(0) == EMPTY_PAGE) {
+            emptyPages.push(i);
+          }
+        }
+      }
+    }
+    catch(IOException e) {
+      throw new AbortException("Error initializing page file.", e);
+    }
+    return existed;
+  }
+
+  @Override
+  protected Logging getLogger() {
+    return LOG;
+  }
+}
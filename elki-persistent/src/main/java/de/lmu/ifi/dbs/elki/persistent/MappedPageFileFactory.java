@@ -0,0 +1,127 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2017
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.lmu.ifi.dbs.elki.persistent;
+
+import de.lmu.ifi.dbs.elki.utilities.exceptions.AbortException;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.OptionID;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.constraints.CommonConstraints;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameterization.Parameterization;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameters.FileParameter;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameters.IntParameter;
+
+/**
+ * Page file factory for memory-mapped page files.
+ * 
+ * @author Erich Schubert
+ * @since 0.7.2
+ * 
+ * @apiviz.has MappedPageFile
+ * 
+ * @param <P> Page type
+ */
+public class MappedPageFileFactory<P extends Page> extends AbstractPageFileFactory<P> {
+  /**
+   * File name.
+   */
+  private String fileName;
+
+  /**
+   * Size of mapped segments.
+   */
+  private int segmentSize;
+
+  /**
+   * Constructor.
+   * 
+   * @param pageSize Page size
+   * @param fileName File name
+   * @param segmentSize Size of mapped segments in bytes
+   */
+  public MappedPageFileFactory(int pageSize, String fileName, int segmentSize) {
+    super(pageSize);
+    this.fileName = fileName;
+    this.segmentSize = segmentSize;
+  }
+
+  @Override
+  public PageFile<P> newPageFile(Class<P> cls) {
+    if(fileName == null) {
+      throw new AbortException("Disk-backed page file may only be instantiated once!");
+    }
+    MappedPageFile<P> pfile = new MappedPageFile<>(pageSize, fileName, cls, segmentSize);
+    fileName = null; // To avoid double instantiation.
+    return pfile;
+  }
+
+  /**
+   * Parameterization class.
+   * 
+   * @apiviz.exclude
+   * 
+   * @author Erich Schubert
+   */
+  public static class Parameterizer extends AbstractPageFileFactory.Parameterizer<Page> {
+    /**
+     * File name.
+     */
+    private String fileName;
+
+    /**
+     * Size of mapped segments.
+     */
+    private int segmentSize;
+
+    /**
+     * Parameter that specifies the name of the file storing the index.
+     * <p>
+     * Key: {@code -pagefile.file}
+     * </p>
+     */
+    public static final OptionID FILE_ID = new OptionID("pagefile.file", "The name of the file storing the page file.");
+
+    /**
+     * Size of the mapped segments in bytes.
+     * <p>
+     * Key: {@code -pagefile.segmentsize}
+     * </p>
+     */
+    public static final OptionID SEGMENT_SIZE_ID = new OptionID("pagefile.segmentsize", "Size of the memory-mapped file segments in bytes.");
+
+    @Override
+    protected void makeOptions(Parameterization config) {
+      super.makeOptions(config);
+      FileParameter fileNameP = new FileParameter(FILE_ID, FileParameter.FileType.OUTPUT_FILE);
+      if(config.grab(fileNameP)) {
+        fileName = fileNameP.getValue().getPath();
+      }
+      IntParameter segmentP = new IntParameter(SEGMENT_SIZE_ID, MappedPageFile.DEFAULT_SEGMENT_SIZE) //
+          .addConstraint(CommonConstraints.GREATER_EQUAL_ONE_INT);
+      if(config.grab(segmentP)) {
+        segmentSize = segmentP.intValue();
+      }
+    }
+
+    @Override
+    protected MappedPageFileFactory<Page> makeInstance() {
+      return new MappedPageFileFactory<>(pageSize, fileName, segmentSize);
+    }
+  }
+}
@@ -56,6 +56,18 @@ public interface PageFile<P extends Page> {
    */
   P readPage(int pageID);
 
+  /**
+   * Hint that the page with the given id will be read soon.
+   * 
+   * Page files that support asynchronous reads may start loading the page in
+   * the background. The default implementation does nothing.
+   * 
+   * @param pageID the id of the page to be read soon
+   */
+  default void prefetch(int pageID) {
+    // Not supported.
+  }
+
   /**
    * Deletes the node with the specified id from this file.
    * 
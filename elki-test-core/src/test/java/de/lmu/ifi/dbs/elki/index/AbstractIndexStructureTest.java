@@ -23,10 +23,14 @@ package de.lmu.ifi.dbs.elki.index;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
 
+import java.util.Random;
+
 import de.lmu.ifi.dbs.elki.algorithm.AbstractSimpleAlgorithmTest;
 import de.lmu.ifi.dbs.elki.data.DoubleVector;
+import de.lmu.ifi.dbs.elki.data.NumberVector;
 import de.lmu.ifi.dbs.elki.data.type.TypeUtil;
 import de.lmu.ifi.dbs.elki.database.Database;
+import de.lmu.ifi.dbs.elki.database.StaticArrayDatabase;
 import de.lmu.ifi.dbs.elki.database.ids.DoubleDBIDList;
 import de.lmu.ifi.dbs.elki.database.ids.DoubleDBIDListIter;
 import de.lmu.ifi.dbs.elki.database.ids.KNNList;
@@ -35,6 +39,7 @@ import de.lmu.ifi.dbs.elki.database.query.knn.KNNQuery;
 import de.lmu.ifi.dbs.elki.database.query.range.RangeQuery;
 import de.lmu.ifi.dbs.elki.database.relation.Relation;
 import de.lmu.ifi.dbs.elki.datasource.AbstractDatabaseConnection;
+import de.lmu.ifi.dbs.elki.datasource.ArrayAdapterDatabaseConnection;
 import de.lmu.ifi.dbs.elki.datasource.filter.FixedDBIDsFilter;
 import de.lmu.ifi.dbs.elki.distance.distancefunction.CosineDistanceFunction;
 import de.lmu.ifi.dbs.elki.distance.distancefunction.minkowski.EuclideanDistanceFunction;
@@ -108,6 +113,36 @@ public abstract class AbstractIndexStructureTest {
 
   double coseps = cosshouldd[cosshouldd.length - 1];
 
+  /**
+   * Generate a relation of uniform random vectors in [0:1], with a fixed seed.
+   *
+   * @param size Number of vectors
+   * @param dim Dimensionality
+   * @return Relation
+   */
+  protected static Relation<NumberVector> makeRandomRelation(int size, int dim) {
+    Random r = new Random(0L);
+    double[][] data = new double[size][dim];
+    for(double[] row : data) {
+      for(int d = 0; d < row.length; d++) {
+        row[d] = r.nextDouble();
+      }
+    }
+    return makeRelation(data);
+  }
+
+  /**
+   * Generate a vector relation from an array.
+   *
+   * @param data Data
+   * @return Relation
+   */
+  protected static Relation<NumberVector> makeRelation(double[][] data) {
+    Database db = new StaticArrayDatabase(new ArrayAdapterDatabaseConnection(data), null);
+    db.initialize();
+    return db.getRelation(TypeUtil.NUMBER_VECTOR_FIELD);
+  }
+
   /**
    * Actual test routine.
    *
@@ -0,0 +1,110 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2017
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.lmu.ifi.dbs.elki.distance.distancefunction.timeseries;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+import de.lmu.ifi.dbs.elki.data.DoubleVector;
+import de.lmu.ifi.dbs.elki.data.NumberVector;
+import de.lmu.ifi.dbs.elki.distance.distancefunction.PrimitiveDistanceFunction;
+
+/**
+ * Unit test for early abandoning of time series distances.
+ *
+ * @author Erich Schubert
+ * @since 0.7.2
+ */
+public class EarlyAbandoningTimeSeriesDistanceTest {
+  @Test
+  public void testDTW() {
+    testEarlyAbandoning(new DTWDistanceFunction());
+    testEarlyAbandoning(new DTWDistanceFunction(.2));
+  }
+
+  @Test
+  public void testDerivativeDTW() {
+    testEarlyAbandoning(new DerivativeDTWDistanceFunction());
+    testEarlyAbandoning(new DerivativeDTWDistanceFunction(.2));
+  }
+
+  @Test
+  public void testERP() {
+    testEarlyAbandoning(new ERPDistanceFunction(1., 0.));
+    testEarlyAbandoning(new ERPDistanceFunction(.2, 1.));
+  }
+
+  @Test
+  public void testEDR() {
+    testEarlyAbandoning(new EDRDistanceFunction(1., 1.));
+    testEarlyAbandoning(new EDRDistanceFunction(.2, .5));
+  }
+
+  @Test
+  public void testLCSS() {
+    testEarlyAbandoning(new LCSSDistanceFunction(.2, 1.));
+    testEarlyAbandoning(new LCSSDistanceFunction(1., .5));
+  }
+
+  /**
+   * Verify that the bounded distance is exact below the threshold, and
+   * exceeds the threshold otherwise.
+   *
+   * @param df Distance function
+   */
+  private static void testEarlyAbandoning(PrimitiveDistanceFunction<? super NumberVector> df) {
+    final Random rnd = new Random(0);
+    for(int i = 0; i < 200; i++) {
+      DoubleVector a = randomSeries(rnd, 3 + rnd.nextInt(20));
+      DoubleVector b = randomSeries(rnd, 3 + rnd.nextInt(20));
+      final double d = df.distance(a, b);
+      for(double t : new double[] { 0., d * .5, Math.nextDown(d), d, Math.nextUp(d), d * 2, Double.POSITIVE_INFINITY }) {
+        final double bounded = df.distance(a, b, t);
+        if(d <= t) {
+          assertEquals(df + " not exact below threshold", d, bounded, 0.);
+        }
+        else {
+          assertTrue(df + " not above threshold", bounded > t);
+        }
+      }
+    }
+  }
+
+  /**
+   * Generate a random walk time series.
+   *
+   * @param rnd Random generator
+   * @param len Length
+   * @return Series
+   */
+  private static DoubleVector randomSeries(Random rnd, int len) {
+    double[] ret = new double[len];
+    double v = 0.;
+    for(int i = 0; i < len; i++) {
+      ret[i] = v += rnd.nextGaussian();
+    }
+    return new DoubleVector(ret);
+  }
+}
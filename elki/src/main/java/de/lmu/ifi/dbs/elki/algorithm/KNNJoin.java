@@ -27,14 +27,19 @@ import java.util.List;
 import de.lmu.ifi.dbs.elki.data.NumberVector;
 import de.lmu.ifi.dbs.elki.data.type.TypeInformation;
 import de.lmu.ifi.dbs.elki.data.type.TypeUtil;
+import de.lmu.ifi.dbs.elki.database.QueryUtil;
 import de.lmu.ifi.dbs.elki.database.datastore.DataStoreFactory;
 import de.lmu.ifi.dbs.elki.database.datastore.DataStoreUtil;
 import de.lmu.ifi.dbs.elki.database.datastore.WritableDataStore;
+import de.lmu.ifi.dbs.elki.database.ids.ArrayDBIDs;
 import de.lmu.ifi.dbs.elki.database.ids.DBID;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDArrayIter;
 import de.lmu.ifi.dbs.elki.database.ids.DBIDUtil;
 import de.lmu.ifi.dbs.elki.database.ids.DBIDs;
 import de.lmu.ifi.dbs.elki.database.ids.KNNHeap;
 import de.lmu.ifi.dbs.elki.database.ids.KNNList;
+import de.lmu.ifi.dbs.elki.database.query.DatabaseQuery;
+import de.lmu.ifi.dbs.elki.database.query.knn.KNNQuery;
 import de.lmu.ifi.dbs.elki.database.relation.MaterializedRelation;
 import de.lmu.ifi.dbs.elki.database.relation.Relation;
 import de.lmu.ifi.dbs.elki.distance.distancefunction.DistanceFunction;
@@ -60,8 +65,10 @@ import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameters.IntParameter;
 
 /**
  * Joins in a given spatial database to each object its k-nearest neighbors.
- * This algorithm only supports spatial databases based on a spatial index
- * structure.
+ * This algorithm is designed for spatial databases based on a spatial index
+ * structure. Without a spatial index, the batch kNN query of the relation is
+ * used in blocks instead, which is a cache-blocked linear scan join for
+ * Euclidean distance.
  *
  * Since this method compares the MBR of every single leaf with every other
  * leaf, it is essentially quadratic in the number of leaves, which may not be
@@ -87,6 +94,11 @@ public class KNNJoin<V extends NumberVector, N extends SpatialNode<N, E>, E exte
    */
   private static final Logging LOG = Logging.getLogger(KNNJoin.class);
 
+  /**
+   * Number of query objects per block, when joining without an index.
+   */
+  private static final int JOIN_BLOCK = 1024;
+
   /**
    * The k parameter.
    */
@@ -130,6 +142,9 @@ public class KNNJoin<V extends NumberVector, N extends SpatialNode<N, E>, E exte
       throw new IllegalStateException("Distance Function must be an instance of " + SpatialPrimitiveDistanceFunction.class.getName());
     }
     Collection<SpatialIndexTree<N, E>> indexes = ResultUtil.filterResults(relation.getHierarchy(), relation, SpatialIndexTree.class);
+    if(indexes.isEmpty()) {
+      return runBlocked(relation, ids);
+    }
     if(indexes.size() != 1) {
       throw new MissingPrerequisitesException("KNNJoin found " + indexes.size() + " spatial indexes, expected exactly one.");
     }
@@ -230,6 +245,35 @@ public class KNNJoin<V extends NumberVector, N extends SpatialNode<N, E>, E exte
     return knnLists;
   }
 
+  /**
+   * Join without a spatial index, using the batch kNN queries in blocks.
+   *
+   * For Euclidean distance, this uses a cache-blocked linear scan join.
+   *
+   * @param relation Data relation
+   * @param ids Object IDs
+   * @return Data store
+   */
+  private WritableDataStore<KNNList> runBlocked(Relation<V> relation, DBIDs ids) {
+    KNNQuery<V> knnq = QueryUtil.getKNNQuery(relation, getDistanceFunction(), k, DatabaseQuery.HINT_BULK, DatabaseQuery.HINT_EXACT);
+    ArrayDBIDs aids = DBIDUtil.ensureArray(ids);
+    WritableDataStore<KNNList> knnLists = DataStoreUtil.makeStorage(ids, DataStoreFactory.HINT_STATIC, KNNList.class);
+    FiniteProgress prog = LOG.isVerbose() ? new FiniteProgress("Joining blocks", aids.size(), LOG) : null;
+    for(int start = 0; start < aids.size(); start += JOIN_BLOCK) {
+      final int end = Math.min(start + JOIN_BLOCK, aids.size());
+      DBIDArrayIter iter = aids.iter().seek(start);
+      for(KNNList knn : knnq.getKNNForBulkDBIDs(aids.slice(start, end), k)) {
+        knnLists.put(iter, knn);
+        iter.advance();
+      }
+      if(prog != null) {
+        prog.setProcessed(end, LOG);
+      }
+    }
+    LOG.ensureCompleted(prog);
+    return knnLists;
+  }
+
   /**
    * Initialize the heaps.
    *
@@ -0,0 +1,338 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2017
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.lmu.ifi.dbs.elki.index.idistance;
+
+import de.lmu.ifi.dbs.elki.database.ids.DBIDRef;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDUtil;
+import de.lmu.ifi.dbs.elki.database.ids.DoubleDBIDListIter;
+import de.lmu.ifi.dbs.elki.database.ids.ModifiableDoubleDBIDList;
+
+/**
+ * Objects of one iDistance partition, sorted by their distance to the
+ * reference point.
+ *
+ * Similar to the leaf level of a B+-tree, the sorted list is split into blocks
+ * of bounded size, with the smallest distance of each block kept in a separate
+ * array for binary search. Insertions and deletions thus only move the entries
+ * of one block, and the block directory when a block is split or becomes
+ * empty.
+ *
+ * @author Erich Schubert
+ * @since 0.7.2
+ */
+class IDistancePartition {
+  /**
+   * Maximum block size; full blocks are split into halves.
+   */
+  static final int BLOCK_SIZE = 256;
+
+  /**
+   * Blocks, sorted by distance.
+   */
+  private ModifiableDoubleDBIDList[] blocks;
+
+  /**
+   * Smallest distance in each block.
+   */
+  private double[] mins;
+
+  /**
+   * Number of blocks in use.
+   */
+  private int numblocks;
+
+  /**
+   * Number of objects.
+   */
+  private int size;
+
+  /**
+   * Constructor.
+   *
+   * @param sorted Initial contents, sorted by distance
+   */
+  IDistancePartition(ModifiableDoubleDBIDList sorted) {
+    // Leave some room for insertions in each block:
+    final int fill = BLOCK_SIZE * 3 / 4;
+    final int n = sorted.size();
+    numblocks = (n + fill - 1) / fill;
+    blocks = new ModifiableDoubleDBIDList[Math.max(numblocks, 4)];
+    mins = new double[blocks.length];
+    DoubleDBIDListIter it = sorted.iter();
+    for(int b = 0; b < numblocks; b++) {
+      ModifiableDoubleDBIDList block = blocks[b] = DBIDUtil.newDistanceDBIDList(BLOCK_SIZE + 1);
+      mins[b] = it.doubleValue();
+      for(int i = 0; i < fill && it.valid(); i++, it.advance()) {
+        block.add(it.doubleValue(), it);
+      }
+    }
+    size = n;
+  }
+
+  /**
+   * Number of objects in this partition.
+   *
+   * @return Size
+   */
+  int size() {
+    return size;
+  }
+
+  /**
+   * Find the last block whose smallest distance is less than the given
+   * distance, or the first block.
+   *
+   * @param d Distance
+   * @return Block number
+   */
+  private int findBlock(double d) {
+    int left = 1, right = numblocks;
+    while(left < right) {
+      final int mid = (left + right) >>> 1;
+      if(mins[mid] < d) {
+        left = mid + 1;
+      }
+      else {
+        right = mid;
+      }
+    }
+    return left - 1;
+  }
+
+  /**
+   * Insert an object.
+   *
+   * @param d Distance to the reference point
+   * @param id Object
+   */
+  void insert(double d, DBIDRef id) {
+    if(numblocks == 0) {
+      blocks[0] = DBIDUtil.newDistanceDBIDList(BLOCK_SIZE + 1);
+      numblocks = 1;
+    }
+    final int b = findBlock(d);
+    ModifiableDoubleDBIDList block = blocks[b];
+    block.add(d, id);
+    // Move the new entry into position:
+    DoubleDBIDListIter it = block.iter();
+    for(int i = block.size() - 1; i > 0 && it.seek(i - 1).doubleValue() > d; i--) {
+      block.swap(i - 1, i);
+    }
+    if(block.size() == 1 || d < mins[b]) {
+      mins[b] = d;
+    }
+    ++size;
+    if(block.size() > BLOCK_SIZE) {
+      split(b);
+    }
+  }
+
+  /**
+   * Split a full block into halves.
+   *
+   * @param b Block number
+   */
+  private void split(int b) {
+    if(numblocks == blocks.length) {
+      final int newlen = blocks.length + (blocks.length >>> 1);
+      ModifiableDoubleDBIDList[] newblocks = new ModifiableDoubleDBIDList[newlen];
+      System.arraycopy(blocks, 0, newblocks, 0, numblocks);
+      double[] newmins = new double[newlen];
+      System.arraycopy(mins, 0, newmins, 0, numblocks);
+      blocks = newblocks;
+      mins = newmins;
+    }
+    System.arraycopy(blocks, b + 1, blocks, b + 2, numblocks - b - 1);
+    System.arraycopy(mins, b + 1, mins, b + 2, numblocks - b - 1);
+    ++numblocks;
+    ModifiableDoubleDBIDList block = blocks[b];
+    ModifiableDoubleDBIDList upper = blocks[b + 1] = DBIDUtil.newDistanceDBIDList(BLOCK_SIZE + 1);
+    final int half = block.size() >>> 1;
+    for(DoubleDBIDListIter it = block.iter().seek(half); it.valid(); it.advance()) {
+      upper.add(it.doubleValue(), it);
+    }
+    for(int i = block.size() - 1; i >= half; i--) {
+      block.remove(i);
+    }
+    mins[b + 1] = upper.iter().doubleValue();
+  }
+
+  /**
+   * Remove an object.
+   *
+   * @param d Distance to the reference point
+   * @param id Object
+   * @return {@code true} if the object was found
+   */
+  boolean delete(double d, DBIDRef id) {
+    if(numblocks == 0) {
+      return false;
+    }
+    // Equal distances may span multiple blocks, start at the first candidate:
+    for(int b = findBlock(d); b < numblocks && !(mins[b] > d); b++) {
+      ModifiableDoubleDBIDList block = blocks[b];
+      for(DoubleDBIDListIter it = block.iter(); it.valid(); it.advance()) {
+        final double v = it.doubleValue();
+        if(v > d) {
+          break;
+        }
+        if(v == d && DBIDUtil.equal(it, id)) {
+          block.remove(it.getOffset());
+          --size;
+          if(block.size() == 0) {
+            System.arraycopy(blocks, b + 1, blocks, b, numblocks - b - 1);
+            System.arraycopy(mins, b + 1, mins, b, numblocks - b - 1);
+            blocks[--numblocks] = null;
+          }
+          else if(it.getOffset() == 0) {
+            mins[b] = block.iter().doubleValue();
+          }
+          return true;
+        }
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Get an iterator, positioned at the first object.
+   *
+   * @return Iterator
+   */
+  Iter iter() {
+    return new Iter();
+  }
+
+  /**
+   * Iterator over a partition, moving across block boundaries.
+   *
+   * @author Erich Schubert
+   */
+  class Iter {
+    /**
+     * Current block number.
+     */
+    private int b;
+
+    /**
+     * Iterator in the current block.
+     */
+    private DoubleDBIDListIter cur;
+
+    /**
+     * Constructor.
+     */
+    Iter() {
+      b = 0;
+      cur = numblocks > 0 ? blocks[0].iter() : null;
+    }
+
+    /**
+     * Seek to the first object with at least the given distance, or to the
+     * last object if there is none.
+     *
+     * @param d Distance
+     * @return {@code this}
+     */
+    Iter seek(double d) {
+      if(numblocks == 0) {
+        return this;
+      }
+      b = findBlock(d);
+      final ModifiableDoubleDBIDList block = blocks[b];
+      cur = block.iter();
+      int left = 0, right = block.size();
+      while(left < right) {
+        final int mid = (left + right) >>> 1;
+        if(cur.seek(mid).doubleValue() < d) {
+          left = mid + 1;
+        }
+        else {
+          right = mid;
+        }
+      }
+      if(left < block.size()) {
+        cur.seek(left);
+      }
+      else if(b + 1 < numblocks) {
+        cur = blocks[++b].iter();
+      }
+      else {
+        cur.seek(left - 1);
+      }
+      return this;
+    }
+
+    /**
+     * Test if the iterator is valid.
+     *
+     * @return {@code true} when the iterator points to an object
+     */
+    boolean valid() {
+      return cur != null && cur.valid();
+    }
+
+    /**
+     * Distance of the current object to the reference point.
+     *
+     * @return Distance
+     */
+    double doubleValue() {
+      return cur.doubleValue();
+    }
+
+    /**
+     * Move to the next object.
+     *
+     * @return {@code this}
+     */
+    Iter advance() {
+      cur.advance();
+      if(!cur.valid() && b + 1 < numblocks) {
+        cur = blocks[++b].iter();
+      }
+      return this;
+    }
+
+    /**
+     * Move to the previous object.
+     *
+     * @return {@code this}
+     */
+    Iter retract() {
+      cur.retract();
+      if(!cur.valid() && b > 0) {
+        final ModifiableDoubleDBIDList block = blocks[--b];
+        cur = block.iter().seek(block.size() - 1);
+      }
+      return this;
+    }
+
+    /**
+     * Iterator of the current block, pointing to the current object.
+     *
+     * @return Block iterator
+     */
+    DoubleDBIDListIter current() {
+      return cur;
+    }
+  }
+}
@@ -25,10 +25,13 @@ import java.util.Arrays;
 import de.lmu.ifi.dbs.elki.algorithm.clustering.kmeans.initialization.KMedoidsInitialization;
 import de.lmu.ifi.dbs.elki.data.type.TypeInformation;
 import de.lmu.ifi.dbs.elki.database.ids.ArrayDBIDs;
+import de.lmu.ifi.dbs.elki.database.ids.ArrayModifiableDBIDs;
 import de.lmu.ifi.dbs.elki.database.ids.DBIDArrayIter;
 import de.lmu.ifi.dbs.elki.database.ids.DBIDIter;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDRef;
 import de.lmu.ifi.dbs.elki.database.ids.DBIDUtil;
-import de.lmu.ifi.dbs.elki.database.ids.DoubleDBIDListIter;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDVar;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDs;
 import de.lmu.ifi.dbs.elki.database.ids.KNNHeap;
 import de.lmu.ifi.dbs.elki.database.ids.KNNList;
 import de.lmu.ifi.dbs.elki.database.ids.ModifiableDoubleDBIDList;
@@ -38,6 +41,7 @@ import de.lmu.ifi.dbs.elki.database.query.range.RangeQuery;
 import de.lmu.ifi.dbs.elki.database.relation.Relation;
 import de.lmu.ifi.dbs.elki.distance.distancefunction.DistanceFunction;
 import de.lmu.ifi.dbs.elki.index.AbstractRefiningIndex;
+import de.lmu.ifi.dbs.elki.index.DynamicIndex;
 import de.lmu.ifi.dbs.elki.index.IndexFactory;
 import de.lmu.ifi.dbs.elki.index.KNNIndex;
 import de.lmu.ifi.dbs.elki.index.RangeIndex;
@@ -50,6 +54,7 @@ import de.lmu.ifi.dbs.elki.utilities.optionhandling.AbstractParameterizer;
 import de.lmu.ifi.dbs.elki.utilities.optionhandling.OptionID;
 import de.lmu.ifi.dbs.elki.utilities.optionhandling.constraints.CommonConstraints;
 import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameterization.Parameterization;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameters.DoubleParameter;
 import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameters.IntParameter;
 import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameters.ObjectParameter;
 import de.lmu.ifi.dbs.elki.utilities.pairs.DoubleIntPair;
@@ -65,6 +70,15 @@ import de.lmu.ifi.dbs.elki.utilities.pairs.DoubleIntPair;
  * data structure, but simple in-memory lists. Therefore, we cannot report page
  * accesses needed.
  * 
+ * The index supports insertions and deletions: each partition is kept in
+ * sorted blocks of bounded size, similar to the leaves of a B+-tree. Objects
+ * are inserted into the partition of the closest reference point. When a
+ * reference point is deleted, the closest object of its partition becomes the
+ * new reference point. Updates can make the partitions imbalanced; then
+ * {@link #repartition()} chooses new reference points, either on demand or
+ * automatically when the largest partition exceeds the mean partition size by
+ * a given factor.
+ * 
  * Feel free to contribute improved query strategies. All the code is
  * essentially here, you only need to query every reference point list, not just
  * the best.
@@ -89,7 +103,7 @@ import de.lmu.ifi.dbs.elki.utilities.pairs.DoubleIntPair;
  * @param <O> Object type
  */
 @Reference(authors = "C. Yu, B. C. Ooi, K. L. Tan, H. V. Jagadish", title = "Indexing the distance: An efficient method to knn processing", booktitle = "In Proceedings of the 27th International Conference on Very Large Data Bases", url = "http://www.vldb.org/conf/2001/P421.pdf")
-public class InMemoryIDistanceIndex<O> extends AbstractRefiningIndex<O> implements RangeIndex<O>, KNNIndex<O> {
+public class InMemoryIDistanceIndex<O> extends AbstractRefiningIndex<O> implements RangeIndex<O>, KNNIndex<O>, DynamicIndex {
   /**
    * Class logger.
    */
@@ -113,12 +127,22 @@ public class InMemoryIDistanceIndex<O> extends AbstractRefiningIndex<O> implemen
   /**
    * Reference points.
    */
-  private ArrayDBIDs referencepoints;
+  private ArrayModifiableDBIDs referencepoints;
 
   /**
    * The actual index.
    */
-  private ModifiableDoubleDBIDList[] index;
+  private IDistancePartition[] index;
+
+  /**
+   * Imbalance factor for automatic repartitioning, 0 to disable.
+   */
+  private double rebalance;
+
+  /**
+   * Number of updates since the partitions were built.
+   */
+  private int updates;
 
   /**
    * Second reference, for documentation generation.
@@ -135,10 +159,25 @@ public class InMemoryIDistanceIndex<O> extends AbstractRefiningIndex<O> implemen
    * @param numref Number of reference points
    */
   public InMemoryIDistanceIndex(Relation<O> relation, DistanceQuery<O> distance, KMedoidsInitialization<O> initialization, int numref) {
+    this(relation, distance, initialization, numref, 0.);
+  }
+
+  /**
+   * Constructor.
+   * 
+   * @param relation Data relation
+   * @param distance Distance
+   * @param initialization Initialization method
+   * @param numref Number of reference points
+   * @param rebalance Imbalance factor for automatic repartitioning, 0 to
+   *        disable
+   */
+  public InMemoryIDistanceIndex(Relation<O> relation, DistanceQuery<O> distance, KMedoidsInitialization<O> initialization, int numref, double rebalance) {
     super(relation);
     this.distanceQuery = distance;
     this.initialization = initialization;
     this.numref = numref;
+    this.rebalance = rebalance;
     if(!distance.getDistanceFunction().isMetric()) {
       LOG.warning("iDistance assumes metric distance functions.\n" //
           + distance.getDistanceFunction().getClass() + " does not report itself as metric.\n" //
@@ -148,15 +187,26 @@ public class InMemoryIDistanceIndex<O> extends AbstractRefiningIndex<O> implemen
 
   @Override
   public void initialize() {
-    referencepoints = DBIDUtil.ensureArray(initialization.chooseInitialMedoids(numref, relation.getDBIDs(), distanceQuery));
+    repartition();
+  }
+
+  /**
+   * Choose new reference points, and rebuild the partitions.
+   * 
+   * This can be called at any time, e.g. when {@link #getImbalance()} reports
+   * that updates have made the partitions skewed.
+   */
+  public void repartition() {
+    final DBIDs ids = relation.getDBIDs();
+    referencepoints = DBIDUtil.newArray(ids.size() <= numref ? ids : initialization.chooseInitialMedoids(numref, ids, distanceQuery));
     final int k = referencepoints.size(); // should be the same k anyway.
-    index = new ModifiableDoubleDBIDList[k];
+    ModifiableDoubleDBIDList[] lists = new ModifiableDoubleDBIDList[k];
     for(int i = 0; i < k; i++) {
-      index[i] = DBIDUtil.newDistanceDBIDList(relation.size() / (2 * k));
+      lists[i] = DBIDUtil.newDistanceDBIDList(relation.size() / (2 * k));
     }
     // TODO: add optimized codepath for primitive distances.
     DBIDArrayIter riter = referencepoints.iter();
-    for(DBIDIter oiter = relation.iterDBIDs(); oiter.valid(); oiter.advance()) {
+    for(DBIDIter oiter = ids.iter(); oiter.valid(); oiter.advance()) {
       double bestd = Double.POSITIVE_INFINITY;
       int besti = -1;
       for(riter.seek(0); riter.valid(); riter.advance()) {
@@ -167,12 +217,125 @@ public class InMemoryIDistanceIndex<O> extends AbstractRefiningIndex<O> implemen
         }
       }
       assert (besti >= 0 && besti < k);
-      index[besti].add(bestd, oiter);
+      lists[besti].add(bestd, oiter);
     }
 
     // Sort index.
+    index = new IDistancePartition[k];
     for(int i = 0; i < k; i++) {
-      index[i].sort();
+      lists[i].sort();
+      index[i] = new IDistancePartition(lists[i]);
+    }
+    updates = 0;
+  }
+
+  /**
+   * Get the imbalance of the partitions, the size of the largest partition
+   * divided by the mean partition size.
+   * 
+   * @return Imbalance factor, 1 if all partitions have the same size
+   */
+  public double getImbalance() {
+    int max = 0, sum = 0;
+    for(IDistancePartition part : index) {
+      max = Math.max(max, part.size());
+      sum += part.size();
+    }
+    return sum > 0 ? max * index.length / (double) sum : 1.;
+  }
+
+  @Override
+  public void insert(DBIDRef id) {
+    if(referencepoints.size() < numref) {
+      // Too few objects, or reference points were removed.
+      repartition();
+      return;
+    }
+    double bestd = Double.POSITIVE_INFINITY;
+    int besti = -1;
+    for(DBIDArrayIter riter = referencepoints.iter(); riter.valid(); riter.advance()) {
+      double dist = distanceQuery.distance(id, riter);
+      if(dist < bestd) {
+        bestd = dist;
+        besti = riter.getOffset();
+      }
+    }
+    index[besti].insert(bestd, id);
+    updated();
+  }
+
+  @Override
+  public void insertAll(DBIDs ids) {
+    for(DBIDIter iter = ids.iter(); iter.valid(); iter.advance()) {
+      insert(iter);
+    }
+  }
+
+  @Override
+  public boolean delete(DBIDRef id) {
+    // Usually in the partition of the nearest reference point, but not after
+    // a reference point was replaced.
+    boolean found = false;
+    for(DoubleIntPair pair : rankReferencePoints(distanceQuery, relation.get(id), referencepoints)) {
+      if(index[pair.second].delete(pair.first, id)) {
+        found = true;
+        break;
+      }
+    }
+    for(DBIDArrayIter riter = referencepoints.iter(); riter.valid(); riter.advance()) {
+      if(DBIDUtil.equal(riter, id)) {
+        replaceReferencePoint(riter.getOffset());
+        break;
+      }
+    }
+    if(found) {
+      updated();
+    }
+    return found;
+  }
+
+  @Override
+  public void deleteAll(DBIDs ids) {
+    for(DBIDIter iter = ids.iter(); iter.valid(); iter.advance()) {
+      delete(iter);
+    }
+  }
+
+  /**
+   * Replace a deleted reference point by the closest object of its partition.
+   * 
+   * @param i Partition number
+   */
+  private void replaceReferencePoint(int i) {
+    final IDistancePartition part = index[i];
+    if(part.size() == 0) {
+      referencepoints.remove(i);
+      IDistancePartition[] newindex = new IDistancePartition[index.length - 1];
+      System.arraycopy(index, 0, newindex, 0, i);
+      System.arraycopy(index, i + 1, newindex, i, newindex.length - i);
+      index = newindex;
+      return;
+    }
+    IDistancePartition.Iter iter = part.iter();
+    DBIDVar ref = DBIDUtil.newVar(iter.current());
+    ModifiableDoubleDBIDList list = DBIDUtil.newDistanceDBIDList(part.size());
+    for(; iter.valid(); iter.advance()) {
+      list.add(distanceQuery.distance(iter.current(), ref), iter.current());
+    }
+    list.sort();
+    index[i] = new IDistancePartition(list);
+    referencepoints.set(i, ref);
+  }
+
+  /**
+   * Count an update, and repartition if the partitions became too imbalanced.
+   * 
+   * Checking only after a number of updates proportional to the data size
+   * amortizes the cost of repartitioning.
+   */
+  private void updated() {
+    if(++updates >= (relation.size() >>> 1) && rebalance > 0 && getImbalance() > rebalance) {
+      repartition();
     }
   }
 
@@ -242,6 +405,7 @@ public class InMemoryIDistanceIndex<O> extends AbstractRefiningIndex<O> implemen
     LOG.statistics(new LongStatistic(InMemoryIDistanceIndex.class.getName() + ".size.min", (int) mm.getMin()));
     LOG.statistics(new DoubleStatistic(InMemoryIDistanceIndex.class.getName() + ".size.mean", mm.getMean()));
     LOG.statistics(new LongStatistic(InMemoryIDistanceIndex.class.getName() + ".size.max", (int) mm.getMax()));
+    LOG.statistics(new DoubleStatistic(InMemoryIDistanceIndex.class.getName() + ".imbalance", getImbalance()));
   }
 
   /**
@@ -264,36 +428,6 @@ public class InMemoryIDistanceIndex<O> extends AbstractRefiningIndex<O> implemen
     return priority;
   }
 
-  /**
-   * Seek an iterator to the desired position, using binary search.
-   * 
-   * @param index Index to search
-   * @param iter Iterator
-   * @param val Distance to search to
-   */
-  protected static void binarySearch(ModifiableDoubleDBIDList index, DoubleDBIDListIter iter, double val) {
-    // Binary search. TODO: move this into the DoubleDBIDList class.
-    int left = 0, right = index.size();
-    while(left < right) {
-      final int mid = (left + right) >>> 1;
-      final double curd = iter.seek(mid).doubleValue();
-      if(val < curd) {
-        right = mid;
-      }
-      else if(val > curd) {
-        left = mid + 1;
-      }
-      else {
-        left = mid;
-        break;
-      }
-    }
-    if(left >= index.size()) {
-      --left;
-    }
-    iter.seek(left);
-  }
-
   /**
    * kNN query implementation.
    * 
@@ -318,12 +452,13 @@ public class InMemoryIDistanceIndex<O> extends AbstractRefiningIndex<O> implemen
       KNNHeap heap = DBIDUtil.newHeap(k);
 
       for(DoubleIntPair pair : priority) {
-        final ModifiableDoubleDBIDList nindex = index[pair.second];
+        final IDistancePartition nindex = index[pair.second];
         final double refd = pair.first;
 
-        final DoubleDBIDListIter ifwd = nindex.iter(), ibwd = nindex.iter();
-        binarySearch(nindex, ibwd, refd);
-        ifwd.seek(ibwd.getOffset() + 1);
+        final IDistancePartition.Iter ifwd = nindex.iter().seek(refd), ibwd = nindex.iter().seek(refd);
+        if(ifwd.valid()) {
+          ifwd.advance();
+        }
 
         // This assumes a metric, as we exploit triangle inequality:
         // Lower bound for candidates further from the reference object:
@@ -343,9 +478,9 @@ public class InMemoryIDistanceIndex<O> extends AbstractRefiningIndex<O> implemen
           }
           // Careful: NaN handling: not NaN and not worse than fwd (may be NaN).
           if(lbfwd <= kdist && !(lbfwd > lbbwd)) {
-            final double dist = refine(ifwd, obj);
+            final double dist = refine(ifwd.current(), obj);
             if(dist <= kdist) {
-              heap.insert(dist, ifwd);
+              heap.insert(dist, ifwd.current());
               kdist = heap.getKNNDistance();
             }
             // Advance iterator:
@@ -353,9 +488,9 @@ public class InMemoryIDistanceIndex<O> extends AbstractRefiningIndex<O> implemen
             lbfwd = ifwd.valid() ? Math.abs(ifwd.doubleValue() - refd) : Double.NaN;
           }
           if(lbbwd <= kdist && !(lbbwd > lbfwd)) {
-            final double dist = refine(ibwd, obj);
+            final double dist = refine(ibwd.current(), obj);
             if(dist <= kdist) {
-              heap.insert(dist, ibwd);
+              heap.insert(dist, ibwd.current());
               kdist = heap.getKNNDistance();
             }
             // Retract iterator:
@@ -390,12 +525,13 @@ public class InMemoryIDistanceIndex<O> extends AbstractRefiningIndex<O> implemen
     public void getRangeForObject(O obj, double range, ModifiableDoubleDBIDList result) {
       DoubleIntPair[] priority = rankReferencePoints(distanceQuery, obj, referencepoints);
       for(DoubleIntPair pair : priority) {
-        final ModifiableDoubleDBIDList nindex = index[pair.second];
+        final IDistancePartition nindex = index[pair.second];
         final double refd = pair.first;
 
-        DoubleDBIDListIter ifwd = nindex.iter(), ibwd = nindex.iter();
-        binarySearch(nindex, ibwd, refd);
-        ifwd.seek(ibwd.getOffset() + 1);
+        final IDistancePartition.Iter ifwd = nindex.iter().seek(refd), ibwd = nindex.iter().seek(refd);
+        if(ifwd.valid()) {
+          ifwd.advance();
+        }
 
         // This assumes a metric, as we exploit triangle inequality:
         // Lower bound for candidates further from the reference object:
@@ -413,18 +549,18 @@ public class InMemoryIDistanceIndex<O> extends AbstractRefiningIndex<O> implemen
           }
           // Careful: NaN handling: not NaN and not worse than fwd (may be NaN).
           if(lbfwd <= range && !(lbfwd > lbbwd)) {
-            final double dist = refine(ifwd, obj);
+            final double dist = refine(ifwd.current(), obj);
             if(dist <= range) {
-              result.add(dist, ifwd);
+              result.add(dist, ifwd.current());
             }
             // Advance iterator:
             ifwd.advance();
             lbfwd = ifwd.valid() ? Math.abs(ifwd.doubleValue() - refd) : Double.NaN;
           }
           if(lbbwd <= range && !(lbbwd > lbfwd)) {
-            final double dist = refine(ibwd, obj);
+            final double dist = refine(ibwd.current(), obj);
             if(dist <= range) {
-              result.add(dist, ibwd);
+              result.add(dist, ibwd.current());
             }
             // Retract iterator:
             ibwd.retract();
@@ -460,6 +596,11 @@ public class InMemoryIDistanceIndex<O> extends AbstractRefiningIndex<O> implemen
      */
     int k;
 
+    /**
+     * Imbalance factor for automatic repartitioning, 0 to disable.
+     */
+    double rebalance;
+
     /**
      * Constructor.
      * 
@@ -468,15 +609,29 @@ public class InMemoryIDistanceIndex<O> extends AbstractRefiningIndex<O> implemen
      * @param k Number of reference points
      */
     public Factory(DistanceFunction<? super V> distance, KMedoidsInitialization<V> initialization, int k) {
+      this(distance, initialization, k, 0.);
+    }
+
+    /**
+     * Constructor.
+     * 
+     * @param distance Distance function
+     * @param initialization Initialization method
+     * @param k Number of reference points
+     * @param rebalance Imbalance factor for automatic repartitioning, 0 to
+     *        disable
+     */
+    public Factory(DistanceFunction<? super V> distance, KMedoidsInitialization<V> initialization, int k, double rebalance) {
       super();
       this.distance = distance;
       this.initialization = initialization;
       this.k = k;
+      this.rebalance = rebalance;
     }
 
     @Override
     public InMemoryIDistanceIndex<V> instantiate(Relation<V> relation) {
-      return new InMemoryIDistanceIndex<>(relation, distance.instantiate(relation), initialization, k);
+      return new InMemoryIDistanceIndex<>(relation, distance.instantiate(relation), initialization, k, rebalance);
     }
 
     @Override
@@ -509,6 +664,11 @@ public class InMemoryIDistanceIndex<O> extends AbstractRefiningIndex<O> implemen
        */
       public static final OptionID K_ID = new OptionID("idistance.k", "Number of reference points to use.");
 
+      /**
+       * Imbalance factor for automatic repartitioning.
+       */
+      public static final OptionID REBALANCE_ID = new OptionID("idistance.rebalance", "Choose new reference points after updates, when the largest partition exceeds the mean partition size by this factor.");
+
       /**
        * Distance function to use.
        */
@@ -524,6 +684,11 @@ public class InMemoryIDistanceIndex<O> extends AbstractRefiningIndex<O> implemen
        */
       int k;
 
+      /**
+       * Imbalance factor for automatic repartitioning, 0 to disable.
+       */
+      double rebalance;
+
       @Override
       protected void makeOptions(Parameterization config) {
         super.makeOptions(config);
@@ -542,11 +707,18 @@ public class InMemoryIDistanceIndex<O> extends AbstractRefiningIndex<O> implemen
         if(config.grab(kP)) {
           k = kP.intValue();
         }
+
+        DoubleParameter rebalanceP = new DoubleParameter(REBALANCE_ID) //
+            .addConstraint(CommonConstraints.GREATER_THAN_ONE_DOUBLE);
+        rebalanceP.setOptional(true);
+        if(config.grab(rebalanceP)) {
+          rebalance = rebalanceP.doubleValue();
+        }
       }
 
       @Override
       protected InMemoryIDistanceIndex.Factory<V> makeInstance() {
-        return new InMemoryIDistanceIndex.Factory<>(distance, initialization, k);
+        return new InMemoryIDistanceIndex.Factory<>(distance, initialization, k, rebalance);
       }
     }
   }
@@ -0,0 +1,535 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2017
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.lmu.ifi.dbs.elki.index.vafile;
+
+import java.util.List;
+
+import de.lmu.ifi.dbs.elki.algorithm.clustering.kmeans.KMeans;
+import de.lmu.ifi.dbs.elki.algorithm.clustering.kmeans.KMeansHamerly;
+import de.lmu.ifi.dbs.elki.algorithm.clustering.kmeans.initialization.KMeansInitialization;
+import de.lmu.ifi.dbs.elki.algorithm.clustering.kmeans.initialization.RandomlyChosenInitialMeans;
+import de.lmu.ifi.dbs.elki.data.Cluster;
+import de.lmu.ifi.dbs.elki.data.NumberVector;
+import de.lmu.ifi.dbs.elki.data.model.MeanModel;
+import de.lmu.ifi.dbs.elki.data.projection.NumericalFeatureSelection;
+import de.lmu.ifi.dbs.elki.data.type.TypeInformation;
+import de.lmu.ifi.dbs.elki.data.type.TypeUtil;
+import de.lmu.ifi.dbs.elki.database.ProxyDatabase;
+import de.lmu.ifi.dbs.elki.database.ids.ArrayDBIDs;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDArrayIter;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDUtil;
+import de.lmu.ifi.dbs.elki.database.ids.KNNHeap;
+import de.lmu.ifi.dbs.elki.database.ids.KNNList;
+import de.lmu.ifi.dbs.elki.database.query.DatabaseQuery;
+import de.lmu.ifi.dbs.elki.database.query.distance.DistanceQuery;
+import de.lmu.ifi.dbs.elki.database.query.knn.KNNQuery;
+import de.lmu.ifi.dbs.elki.database.relation.ProjectedView;
+import de.lmu.ifi.dbs.elki.database.relation.Relation;
+import de.lmu.ifi.dbs.elki.database.relation.RelationUtil;
+import de.lmu.ifi.dbs.elki.distance.distancefunction.DistanceFunction;
+import de.lmu.ifi.dbs.elki.distance.distancefunction.minkowski.EuclideanDistanceFunction;
+import de.lmu.ifi.dbs.elki.distance.distancefunction.minkowski.SquaredEuclideanDistanceFunction;
+import de.lmu.ifi.dbs.elki.index.AbstractRefiningIndex;
+import de.lmu.ifi.dbs.elki.index.IndexFactory;
+import de.lmu.ifi.dbs.elki.index.KNNIndex;
+import de.lmu.ifi.dbs.elki.logging.Logging;
+import de.lmu.ifi.dbs.elki.logging.statistics.LongStatistic;
+import de.lmu.ifi.dbs.elki.utilities.Alias;
+import de.lmu.ifi.dbs.elki.utilities.datastructures.heap.DoubleIntegerMaxHeap;
+import de.lmu.ifi.dbs.elki.utilities.documentation.Reference;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.AbstractParameterizer;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.OptionID;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.constraints.CommonConstraints;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.constraints.LessEqualConstraint;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameterization.Parameterization;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameters.IntParameter;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameters.ObjectParameter;
+import net.jafama.FastMath;
+
+/**
+ * Product quantization (PQ) index for approximate nearest neighbor search.
+ *
+ * The dimensions are split into {@code m} consecutive subspaces, and a
+ * codebook of up to 256 centroids is trained in each subspace with k-means.
+ * Every object is then stored as {@code m} bytes, the indexes of the nearest
+ * centroid in each subspace. Queries use the asymmetric distance computation:
+ * the squared distances of the (unquantized) query to all centroids are
+ * computed once into a lookup table, and the approximate distance of each
+ * object is the sum of {@code m} table entries. The best candidates are then
+ * re-ranked with the exact distances, unless re-ranking is disabled.
+ *
+ * In contrast to the {@link VAFile}, which quantizes every dimension
+ * separately, the size of the approximation does not grow with the
+ * dimensionality, but there are no lower bounds for pruning. The results are
+ * therefore approximate, and the index is not used if
+ * {@link DatabaseQuery#HINT_EXACT} is given.
+ *
+ * Reference:
+ * <p>
+ * H. Jégou, M. Douze, C. Schmid<br />
+ * Product Quantization for Nearest Neighbor Search<br />
+ * IEEE Transactions on Pattern Analysis and Machine Intelligence 33(1)
+ * </p>
+ *
+ * @author Erich Schubert
+ * @since 0.7.2
+ *
+ * @apiviz.has PQKNNQuery
+ *
+ * @param <V> Vector type
+ */
+@Reference(authors = "H. Jégou, M. Douze, C. Schmid", //
+    title = "Product Quantization for Nearest Neighbor Search", //
+    booktitle = "IEEE Transactions on Pattern Analysis and Machine Intelligence 33(1)", //
+    url = "http://dx.doi.org/10.1109/TPAMI.2010.57")
+public class ProductQuantizationIndex<V extends NumberVector> extends AbstractRefiningIndex<V> implements KNNIndex<V> {
+  /**
+   * Class logger.
+   */
+  private static final Logging LOG = Logging.getLogger(ProductQuantizationIndex.class);
+
+  /**
+   * K-means initialization for training the codebooks.
+   */
+  KMeansInitialization<? super V> initializer;
+
+  /**
+   * Maximum number of k-means iterations, 0 for no limit.
+   */
+  int maxiter;
+
+  /**
+   * Number of subspaces.
+   */
+  int numsub;
+
+  /**
+   * Maximum number of centroids per subspace.
+   */
+  int numcent;
+
+  /**
+   * Number of candidates to re-rank per requested neighbor.
+   */
+  int rerank;
+
+  /**
+   * First dimension of each subspace, with the dimensionality as last entry.
+   */
+  int[] offsets;
+
+  /**
+   * Codebooks, centroids of each subspace stored consecutively.
+   */
+  double[][] codebooks;
+
+  /**
+   * Object ids, in the same order as the codes.
+   */
+  ArrayDBIDs ids;
+
+  /**
+   * Compact codes, {@code m} bytes per object.
+   */
+  byte[] codes;
+
+  /**
+   * Constructor.
+   *
+   * @param relation Data relation
+   * @param initializer K-means initialization for training the codebooks
+   * @param maxiter Maximum number of k-means iterations, 0 for no limit
+   * @param numsub Number of subspaces (at most the dimensionality)
+   * @param numcent Maximum number of centroids per subspace (at most 256)
+   * @param rerank Number of candidates to re-rank per requested neighbor, 0
+   *        to return the approximate distances
+   */
+  public ProductQuantizationIndex(Relation<V> relation, KMeansInitialization<? super V> initializer, int maxiter, int numsub, int numcent, int rerank) {
+    super(relation);
+    if(numcent > 256 || numcent < 1) {
+      throw new IllegalArgumentException("Number of centroids must be between 1 and 256.");
+    }
+    this.initializer = initializer;
+    this.maxiter = maxiter;
+    this.numsub = numsub;
+    this.numcent = numcent;
+    this.rerank = rerank;
+  }
+
+  @Override
+  public void initialize() {
+    final int dim = RelationUtil.dimensionality(relation);
+    final int m = Math.max(1, Math.min(numsub, dim));
+    offsets = new int[m + 1];
+    for(int j = 0; j <= m; j++) {
+      offsets[j] = (int) (j * (long) dim / m);
+    }
+    ids = DBIDUtil.ensureArray(relation.getDBIDs());
+    codebooks = new double[m][];
+    final KMeans<V, ?> kmeans = new KMeansHamerly<>(SquaredEuclideanDistanceFunction.STATIC, Math.min(numcent, ids.size()), maxiter, initializer, false);
+    for(int j = 0; j < m; j++) {
+      codebooks[j] = trainCodebook(kmeans, offsets[j], offsets[j + 1]);
+    }
+    // Encode all objects.
+    codes = new byte[ids.size() * m];
+    int p = 0;
+    for(DBIDArrayIter it = ids.iter(); it.valid(); it.advance()) {
+      V vec = relation.get(it);
+      for(int j = 0; j < m; j++) {
+        codes[p++] = (byte) nearestCentroid(vec, offsets[j], offsets[j + 1], codebooks[j]);
+      }
+    }
+  }
+
+  /**
+   * Train the codebook of a single subspace.
+   *
+   * @param kmeans K-means algorithm
+   * @param start First dimension
+   * @param end End dimension (exclusive)
+   * @return Centroids, stored consecutively
+   */
+  private double[] trainCodebook(KMeans<V, ?> kmeans, int start, int end) {
+    final int sdim = end - start;
+    int[] dims = new int[sdim];
+    for(int d = 0; d < sdim; d++) {
+      dims[d] = start + d;
+    }
+    ProxyDatabase pdb = new ProxyDatabase(ids);
+    ProjectedView<V, V> view = new ProjectedView<>(relation, new NumericalFeatureSelection<V>(dims));
+    pdb.addRelation(view);
+    List<? extends Cluster<?>> clusters = kmeans.run(pdb, view).getAllClusters();
+    double[] codebook = new double[clusters.size() * sdim];
+    int c = 0;
+    for(Cluster<?> clus : clusters) {
+      System.arraycopy(((MeanModel) clus.getModel()).getMean(), 0, codebook, c, sdim);
+      c += sdim;
+    }
+    return codebook;
+  }
+
+  /**
+   * Find the nearest centroid within a subspace.
+   *
+   * @param vec Vector
+   * @param start First dimension
+   * @param end End dimension (exclusive)
+   * @param codebook Centroids
+   * @return Index of the nearest centroid
+   */
+  private static int nearestCentroid(NumberVector vec, int start, int end, double[] codebook) {
+    final int sdim = end - start;
+    double best = Double.POSITIVE_INFINITY;
+    int bestc = 0;
+    for(int c = 0, o = 0; o < codebook.length; c++, o += sdim) {
+      double dist = 0.;
+      for(int d = 0; d < sdim; d++) {
+        final double v = vec.doubleValue(start + d) - codebook[o + d];
+        dist += v * v;
+      }
+      if(dist < best) {
+        best = dist;
+        bestc = c;
+      }
+    }
+    return bestc;
+  }
+
+  /**
+   * Compute the squared distances of a query to all centroids.
+   *
+   * @param query Query vector
+   * @return Lookup table, {@code numcent} entries per subspace
+   */
+  private double[] lookupTable(NumberVector query) {
+    final int m = codebooks.length;
+    double[] table = new double[m * numcent];
+    for(int j = 0, t = 0; j < m; j++, t += numcent) {
+      final int start = offsets[j], sdim = offsets[j + 1] - start;
+      final double[] codebook = codebooks[j];
+      for(int c = 0, o = 0; o < codebook.length; c++, o += sdim) {
+        double dist = 0.;
+        for(int d = 0; d < sdim; d++) {
+          final double v = query.doubleValue(start + d) - codebook[o + d];
+          dist += v * v;
+        }
+        table[t + c] = dist;
+      }
+    }
+    return table;
+  }
+
+  @Override
+  public Logging getLogger() {
+    return LOG;
+  }
+
+  @Override
+  public void logStatistics() {
+    super.logStatistics();
+    if(codes != null) {
+      LOG.statistics(new LongStatistic(this.getClass().getName() + ".subspaces", codebooks.length));
+      LOG.statistics(new LongStatistic(this.getClass().getName() + ".codebytes", codes.length));
+    }
+  }
+
+  @Override
+  public String getLongName() {
+    return "Product quantization index";
+  }
+
+  @Override
+  public String getShortName() {
+    return "pq-index";
+  }
+
+  @Override
+  public KNNQuery<V> getKNNQuery(DistanceQuery<V> distanceQuery, Object... hints) {
+    for(Object hint : hints) {
+      if(DatabaseQuery.HINT_EXACT.equals(hint)) {
+        return null;
+      }
+    }
+    DistanceFunction<? super V> df = distanceQuery.getDistanceFunction();
+    if(df instanceof EuclideanDistanceFunction) {
+      return new PQKNNQuery(distanceQuery, false);
+    }
+    if(df instanceof SquaredEuclideanDistanceFunction) {
+      return new PQKNNQuery(distanceQuery, true);
+    }
+    // Not supported.
+    return null;
+  }
+
+  /**
+   * KNN query using asymmetric distance computation.
+   *
+   * @author Erich Schubert
+   */
+  public class PQKNNQuery extends AbstractRefiningIndex<V>.AbstractKNNQuery {
+    /**
+     * Flag for squared Euclidean distance.
+     */
+    final boolean squared;
+
+    /**
+     * Constructor.
+     *
+     * @param distanceQuery Distance query object
+     * @param squared Squared Euclidean distance
+     */
+    public PQKNNQuery(DistanceQuery<V> distanceQuery, boolean squared) {
+      super(distanceQuery);
+      this.squared = squared;
+    }
+
+    @Override
+    public KNNList getKNNForObject(V query, int k) {
+      final double[] table = lookupTable(query);
+      final byte[] codes = ProductQuantizationIndex.this.codes;
+      final int m = codebooks.length, size = ids.size();
+      final int numcand = rerank > 0 ? (int) Math.min((long) k * rerank, size) : k;
+      // Approximation step: keep the best candidates.
+      DoubleIntegerMaxHeap candidates = new DoubleIntegerMaxHeap(numcand + 1);
+      for(int i = 0, p = 0; i < size; i++) {
+        double dist = 0.;
+        for(int t = 0; t < table.length; t += numcent) {
+          dist += table[t + (codes[p++] & 0xFF)];
+        }
+        candidates.add(dist, i, numcand);
+      }
+      // Refinement step:
+      KNNHeap result = DBIDUtil.newHeap(k);
+      DBIDArrayIter it = ids.iter();
+      for(; !candidates.isEmpty(); candidates.poll()) {
+        it.seek(candidates.peekValue());
+        if(rerank > 0) {
+          result.insert(refine(it, query), it);
+        }
+        else {
+          final double dist = candidates.peekKey();
+          result.insert(squared ? dist : FastMath.sqrt(dist), it);
+        }
+      }
+      return result.toKNNList();
+    }
+  }
+
+  /**
+   * Index factory class.
+   *
+   * @author Erich Schubert
+   *
+   * @apiviz.stereotype factory
+   * @apiviz.has ProductQuantizationIndex
+   *
+   * @param <V> Vector type
+   */
+  @Alias({ "pq" })
+  public static class Factory<V extends NumberVector> implements IndexFactory<V, ProductQuantizationIndex<V>> {
+    /**
+     * K-means initialization for training the codebooks.
+     */
+    KMeansInitialization<? super V> initializer;
+
+    /**
+     * Maximum number of k-means iterations, 0 for no limit.
+     */
+    int maxiter;
+
+    /**
+     * Number of subspaces.
+     */
+    int numsub;
+
+    /**
+     * Maximum number of centroids per subspace.
+     */
+    int numcent;
+
+    /**
+     * Number of candidates to re-rank per requested neighbor.
+     */
+    int rerank;
+
+    /**
+     * Constructor.
+     *
+     * @param initializer K-means initialization for training the codebooks
+     * @param maxiter Maximum number of k-means iterations, 0 for no limit
+     * @param numsub Number of subspaces
+     * @param numcent Maximum number of centroids per subspace
+     * @param rerank Number of candidates to re-rank per requested neighbor
+     */
+    public Factory(KMeansInitialization<? super V> initializer, int maxiter, int numsub, int numcent, int rerank) {
+      super();
+      this.initializer = initializer;
+      this.maxiter = maxiter;
+      this.numsub = numsub;
+      this.numcent = numcent;
+      this.rerank = rerank;
+    }
+
+    @Override
+    public ProductQuantizationIndex<V> instantiate(Relation<V> relation) {
+      return new ProductQuantizationIndex<>(relation, initializer, maxiter, numsub, numcent, rerank);
+    }
+
+    @Override
+    public TypeInformation getInputTypeRestriction() {
+      return TypeUtil.NUMBER_VECTOR_FIELD;
+    }
+
+    /**
+     * Parameterization class.
+     *
+     * @author Erich Schubert
+     *
+     * @apiviz.exclude
+     */
+    public static class Parameterizer<V extends NumberVector> extends AbstractParameterizer {
+      /**
+       * Number of subspaces to quantize separately.
+       */
+      public static final OptionID SUBSPACES_ID = new OptionID("pq.subspaces", "Number of subspaces to quantize separately, at most the dimensionality.");
+
+      /**
+       * Number of centroids per subspace.
+       */
+      public static final OptionID CENTROIDS_ID = new OptionID("pq.centroids", "Number of centroids per subspace (at most 256, to fit into one byte).");
+
+      /**
+       * Number of candidates to re-rank.
+       */
+      public static final OptionID RERANK_ID = new OptionID("pq.rerank", "Number of candidates per requested neighbor to re-rank with exact distances, 0 to return approximate distances.");
+
+      /**
+       * K-means initialization for training the codebooks.
+       */
+      public static final OptionID INIT_ID = new OptionID("pq.kmeans.initialization", "K-means initialization used to train the codebooks.");
+
+      /**
+       * Maximum number of k-means iterations.
+       */
+      public static final OptionID MAXITER_ID = new OptionID("pq.kmeans.maxiter", "Maximum number of k-means iterations to train the codebooks, 0 for no limit.");
+
+      /**
+       * K-means initialization for training the codebooks.
+       */
+      KMeansInitialization<V> initializer;
+
+      /**
+       * Maximum number of k-means iterations, 0 for no limit.
+       */
+      int maxiter;
+
+      /**
+       * Number of subspaces.
+       */
+      int numsub;
+
+      /**
+       * Maximum number of centroids per subspace.
+       */
+      int numcent;
+
+      /**
+       * Number of candidates to re-rank per requested neighbor.
+       */
+      int rerank;
+
+      @Override
+      protected void makeOptions(Parameterization config) {
+        super.makeOptions(config);
+        IntParameter numsubP = new IntParameter(SUBSPACES_ID, 8) //
+            .addConstraint(CommonConstraints.GREATER_EQUAL_ONE_INT);
+        if(config.grab(numsubP)) {
+          numsub = numsubP.intValue();
+        }
+        IntParameter numcentP = new IntParameter(CENTROIDS_ID, 256) //
+            .addConstraint(CommonConstraints.GREATER_EQUAL_ONE_INT) //
+            .addConstraint(new LessEqualConstraint(256));
+        if(config.grab(numcentP)) {
+          numcent = numcentP.intValue();
+        }
+        IntParameter rerankP = new IntParameter(RERANK_ID, 10) //
+            .addConstraint(CommonConstraints.GREATER_EQUAL_ZERO_INT);
+        if(config.grab(rerankP)) {
+          rerank = rerankP.intValue();
+        }
+        ObjectParameter<KMeansInitialization<V>> initP = new ObjectParameter<>(INIT_ID, KMeansInitialization.class, RandomlyChosenInitialMeans.class);
+        if(config.grab(initP)) {
+          initializer = initP.instantiateClass(config);
+        }
+        IntParameter maxiterP = new IntParameter(MAXITER_ID, 0) //
+            .addConstraint(CommonConstraints.GREATER_EQUAL_ZERO_INT);
+        if(config.grab(maxiterP)) {
+          maxiter = maxiterP.intValue();
+        }
+      }
+
+      @Override
+      protected Factory<V> makeInstance() {
+        return new Factory<>(initializer, maxiter, numsub, numcent, rerank);
+      }
+    }
+  }
+}
@@ -0,0 +1,626 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2017
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.lmu.ifi.dbs.elki.persistent;
+
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import de.lmu.ifi.dbs.elki.logging.Logging;
+import de.lmu.ifi.dbs.elki.logging.statistics.LongStatistic;
+import de.lmu.ifi.dbs.elki.utilities.exceptions.AbortException;
+
+import it.unimi.dsi.fastutil.ints.Int2IntOpenHashMap;
+import it.unimi.dsi.fastutil.ints.Int2ObjectOpenHashMap;
+
+/**
+ * A concurrent page cache, using the CLOCK replacement strategy in
+ * independently locked shards.
+ * 
+ * Pages are assigned to shards by their page id, and each shard has its own
+ * lock, hash table and clock hand. Threads accessing different shards do not
+ * contend, unlike in the {@link LRUCache}, which synchronizes every access.
+ * CLOCK approximates LRU with a single reference bit per page, so a cache hit
+ * does not need to reorder any list.
+ * 
+ * The cache size is given in bytes, and divided evenly among the shards.
+ * Concurrent reads require a backing page file that supports concurrent
+ * reads, such as {@link PersistentPageFile} or {@link MappedPageFile}. Pages
+ * are read from the backing file outside of the shard lock, so a slow read
+ * does not block hits on other pages of the same shard. A read of a page
+ * that is already being loaded waits for the pending read instead of issuing
+ * a second one.
+ * 
+ * Optionally, the cache uses a pool of reader threads to load pages announced
+ * via {@link #prefetch} in the background, e.g. the next candidates of a
+ * best-first search.
+ * 
+ * @author Erich Schubert
+ * @since 0.7.2
+ * 
+ * @apiviz.uses PageFile
+ * 
+ * @param <P> Page type
+ */
+public class ClockCache<P extends Page> extends AbstractPageFile<P> {
+  /**
+   * Our class logger.
+   */
+  private static final Logging LOG = Logging.getLogger(ClockCache.class);
+
+  /**
+   * Maximum number of queued prefetch requests per thread. Further hints are
+   * ignored, as they likely would not complete in time.
+   */
+  private static final int MAX_QUEUED_PREFETCH = 16;
+
+  /**
+   * Cache size in bytes.
+   */
+  protected long cacheSizeBytes;
+
+  /**
+   * Requested number of shards.
+   */
+  protected int numShards;
+
+  /**
+   * The shards.
+   */
+  private Shard<P>[] shards;
+
+  /**
+   * Bit mask for selecting shards.
+   */
+  private int shardMask;
+
+  /**
+   * The underlying file of this cache. If an object is dropped it is written to
+   * the file.
+   */
+  protected PageFile<P> file;
+
+  /**
+   * Number of threads for prefetching, 0 to disable prefetching.
+   */
+  protected int prefetchThreads;
+
+  /**
+   * Reader threads for prefetching, may be {@code null}.
+   */
+  private ThreadPoolExecutor prefetcher;
+
+  /**
+   * Constructor.
+   * 
+   * @param cacheSizeBytes the maximum number of bytes for this cache
+   * @param numShards number of shards, will be rounded to a power of two
+   * @param file the underlying file of this cache, if a page is dropped it is
+   *        written to the file
+   */
+  public ClockCache(long cacheSizeBytes, int numShards, PageFile<P> file) {
+    this(cacheSizeBytes, numShards, 0, file);
+  }
+
+  /**
+   * Constructor.
+   * 
+   * @param cacheSizeBytes the maximum number of bytes for this cache
+   * @param numShards number of shards, will be rounded to a power of two
+   * @param prefetchThreads number of reader threads for prefetching, 0 to
+   *        disable prefetching
+   * @param file the underlying file of this cache, if a page is dropped it is
+   *        written to the file
+   */
+  public ClockCache(long cacheSizeBytes, int numShards, int prefetchThreads, PageFile<P> file) {
+    this.file = file;
+    this.cacheSizeBytes = cacheSizeBytes;
+    this.numShards = numShards;
+    this.prefetchThreads = prefetchThreads;
+  }
+
+  /**
+   * Get the shard of a page.
+   * 
+   * @param pageID Page id
+   * @return Shard
+   */
+  private Shard<P> shard(int pageID) {
+    // Spread consecutive page ids, then take the high bits.
+    return shards[((pageID * 0x9E3779B9) >>> 16) & shardMask];
+  }
+
+  @Override
+  public P readPage(int pageID) {
+    countRead();
+    Shard<P> shard = shard(pageID);
+    Load load;
+    synchronized(shard) {
+      P page = shard.get(pageID);
+      if(page != null) {
+        shard.hits++;
+        return page;
+      }
+      load = shard.pending.get(pageID);
+      if(load != null) {
+        shard.hits++; // Read already in progress.
+      }
+      else {
+        shard.misses++;
+        load = new Load(shard, pageID, true);
+        shard.pending.put(pageID, load);
+      }
+    }
+    // Read (or wait for the pending read) outside of the lock.
+    load.run(); // Also runs queued prefetches; no-op if already running.
+    try {
+      P page = load.get();
+      synchronized(shard) {
+        // Prefer the cached page, which may have been written meanwhile.
+        P cached = shard.get(pageID); // Also sets the reference bit.
+        return cached != null ? cached : page;
+      }
+    }
+    catch(InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new AbortException("Interrupted while reading page " + pageID, e);
+    }
+    catch(ExecutionException e) {
+      throw new AbortException("Reading page " + pageID + " failed.", e.getCause());
+    }
+  }
+
+  /**
+   * Start loading the page in a background thread, if prefetching is enabled
+   * and the page is not yet cached.
+   */
+  @Override
+  public void prefetch(int pageID) {
+    final ThreadPoolExecutor prefetcher = this.prefetcher;
+    if(prefetcher == null || prefetcher.getQueue().size() >= MAX_QUEUED_PREFETCH * prefetchThreads) {
+      return;
+    }
+    Shard<P> shard = shard(pageID);
+    synchronized(shard) {
+      if(shard.slots.containsKey(pageID) || shard.pending.containsKey(pageID)) {
+        return;
+      }
+      Load task = new Load(shard, pageID, false);
+      shard.pending.put(pageID, task);
+      shard.prefetches++;
+      prefetcher.execute(task);
+    }
+  }
+
+  @Override
+  protected void writePage(int pageID, P page) {
+    countWrite();
+    page.setDirty(true);
+    Shard<P> shard = shard(pageID);
+    synchronized(shard) {
+      shard.pending.remove(pageID);
+      shard.put(pageID, page, true, file);
+    }
+  }
+
+  @Override
+  public void deletePage(int pageID) {
+    countWrite();
+    Shard<P> shard = shard(pageID);
+    synchronized(shard) {
+      shard.pending.remove(pageID);
+      shard.remove(pageID);
+    }
+    file.deletePage(pageID);
+  }
+
+  @Override
+  public int setPageID(P page) {
+    return file.setPageID(page);
+  }
+
+  @Override
+  public int getNextPageID() {
+    return file.getNextPageID();
+  }
+
+  @Override
+  public void setNextPageID(int nextPageID) {
+    file.setNextPageID(nextPageID);
+  }
+
+  @Override
+  public int getPageSize() {
+    return file.getPageSize();
+  }
+
+  @SuppressWarnings("unchecked")
+  @Override
+  public boolean initialize(PageHeader header) {
+    boolean created = file.initialize(header);
+    final long cacheSize = cacheSizeBytes / header.getPageSize();
+    if(cacheSize <= 0) {
+      throw new AbortException("Invalid cache size: " + cacheSizeBytes + " / " + header.getPageSize() + " = " + cacheSize);
+    }
+    // Power of two, and at least one page per shard:
+    int n = Integer.highestOneBit(Math.max(1, numShards));
+    while(n > 1 && n > cacheSize) {
+      n >>>= 1;
+    }
+    final int perShard = (int) Math.min(Integer.MAX_VALUE - 8, cacheSize / n);
+    shards = new Shard[n];
+    for(int i = 0; i < n; i++) {
+      shards[i] = new Shard<>(perShard);
+    }
+    shardMask = n - 1;
+    if(prefetchThreads > 0) {
+      prefetcher = new ThreadPoolExecutor(prefetchThreads, prefetchThreads, 1L, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>());
+      prefetcher.allowCoreThreadTimeOut(true);
+    }
+    if(LOG.isDebugging()) {
+      LOG.debug("CLOCK cache size is " + cacheSize + " pages in " + n + " shards.");
+    }
+    return created;
+  }
+
+  @Override
+  public void close() {
+    if(prefetcher != null) {
+      prefetcher.shutdown();
+      try {
+        prefetcher.awaitTermination(1L, TimeUnit.MINUTES);
+      }
+      catch(InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+      prefetcher = null;
+    }
+    flush();
+    file.close();
+  }
+
+  /**
+   * Flushes this cache by writing all modified pages to the underlying file.
+   */
+  public void flush() {
+    for(Shard<P> shard : shards) {
+      synchronized(shard) {
+        shard.flush(file);
+      }
+    }
+  }
+
+  @Override
+  public void clear() {
+    for(Shard<P> shard : shards) {
+      synchronized(shard) {
+        shard.clear();
+      }
+    }
+  }
+
+  /**
+   * Get the number of cache hits.
+   * 
+   * @return Number of hits
+   */
+  public long getHits() {
+    long hits = 0;
+    for(Shard<P> shard : shards) {
+      synchronized(shard) {
+        hits += shard.hits;
+      }
+    }
+    return hits;
+  }
+
+  /**
+   * Get the number of prefetch reads issued.
+   * 
+   * @return Number of prefetches
+   */
+  public long getPrefetches() {
+    long prefetches = 0;
+    for(Shard<P> shard : shards) {
+      synchronized(shard) {
+        prefetches += shard.prefetches;
+      }
+    }
+    return prefetches;
+  }
+
+  /**
+   * Get the number of cache misses.
+   * 
+   * @return Number of misses
+   */
+  public long getMisses() {
+    long misses = 0;
+    for(Shard<P> shard : shards) {
+      synchronized(shard) {
+        misses += shard.misses;
+      }
+    }
+    return misses;
+  }
+
+  @Override
+  public void logStatistics() {
+    super.logStatistics();
+    if(LOG.isStatistics()) {
+      final String prefix = this.getClass().getName();
+      for(int i = 0; i < shards.length; i++) {
+        synchronized(shards[i]) {
+          LOG.statistics(new LongStatistic(prefix + ".shard" + i + ".hits", shards[i].hits));
+          LOG.statistics(new LongStatistic(prefix + ".shard" + i + ".misses", shards[i].misses));
+        }
+      }
+      LOG.statistics(new LongStatistic(prefix + ".hits", getHits()));
+      LOG.statistics(new LongStatistic(prefix + ".misses", getMisses()));
+      if(prefetchThreads > 0) {
+        LOG.statistics(new LongStatistic(prefix + ".prefetches", getPrefetches()));
+      }
+    }
+    file.logStatistics();
+  }
+
+  @Override
+  protected Logging getLogger() {
+    return LOG;
+  }
+
+  /**
+   * Pending read of a page, inserting the page into the cache when done. Used
+   * both for reads on demand and for prefetching. Prefetches run on the pool
+   * threads, so their reads are only counted by the backing page file, not by
+   * the query counters of the thread that issued them.
+   * 
+   * @author Erich Schubert
+   */
+  private class Load extends FutureTask<P> {
+    /**
+     * Shard of the page.
+     */
+    private final Shard<P> shard;
+
+    /**
+     * Page id.
+     */
+    private final int pageID;
+
+    /**
+     * Initial reference bit: set for reads on demand, but not for prefetches,
+     * so that unused prefetches are evicted first.
+     */
+    private final boolean ref;
+
+    /**
+     * Constructor.
+     * 
+     * @param shard Shard of the page
+     * @param pageID Page id
+     * @param ref Initial reference bit
+     */
+    Load(Shard<P> shard, int pageID, boolean ref) {
+      super(() -> file.readPage(pageID));
+      this.shard = shard;
+      this.pageID = pageID;
+      this.ref = ref;
+    }
+
+    @Override
+    protected void done() {
+      synchronized(shard) {
+        // Skip if the page was written, deleted or the cache cleared since.
+        if(shard.pending.get(pageID) != this) {
+          return;
+        }
+        shard.pending.remove(pageID);
+        try {
+          P page = get();
+          if(page != null && !shard.slots.containsKey(pageID)) {
+            shard.put(pageID, page, ref, file);
+          }
+        }
+        catch(InterruptedException | ExecutionException e) {
+          // Failed reads are reported to waiting readers only.
+        }
+      }
+    }
+  }
+
+  /**
+   * A single shard of the cache, managed by the CLOCK algorithm. All methods
+   * must be called while holding the lock of the shard.
+   * 
+   * @author Erich Schubert
+   * 
+   * @param <P> Page type
+   */
+  private static class Shard<P extends Page> {
+    /**
+     * Map from page ids to slots.
+     */
+    Int2IntOpenHashMap slots;
+
+    /**
+     * Pages currently being read or prefetched.
+     */
+    Int2ObjectOpenHashMap<ClockCache<P>.Load> pending = new Int2ObjectOpenHashMap<>();
+
+    /**
+     * Cached pages.
+     */
+    Object[] pages;
+
+    /**
+     * Page ids of the slots.
+     */
+    int[] ids;
+
+    /**
+     * Reference bits.
+     */
+    boolean[] referenced;
+
+    /**
+     * Number of slots in use.
+     */
+    int size;
+
+    /**
+     * Position of the clock hand.
+     */
+    int hand;
+
+    /**
+     * Hit and miss statistics.
+     */
+    long hits, misses, prefetches;
+
+    /**
+     * Constructor.
+     * 
+     * @param capacity Capacity
+     */
+    Shard(int capacity) {
+      slots = new Int2IntOpenHashMap(Math.min(capacity, 1024));
+      slots.defaultReturnValue(-1);
+      pages = new Object[capacity];
+      ids = new int[capacity];
+      referenced = new boolean[capacity];
+    }
+
+    /**
+     * Get a page.
+     * 
+     * @param pageID Page id
+     * @return Page, or {@code null}
+     */
+    @SuppressWarnings("unchecked")
+    P get(int pageID) {
+      final int slot = slots.get(pageID);
+      if(slot < 0) {
+        return null;
+      }
+      referenced[slot] = true;
+      return (P) pages[slot];
+    }
+
+    /**
+     * Add or replace a page, evicting a page if necessary.
+     * 
+     * @param pageID Page id
+     * @param page Page
+     * @param ref Initial value of the reference bit
+     * @param file Backing file for evicted pages
+     */
+    void put(int pageID, P page, boolean ref, PageFile<P> file) {
+      int slot = slots.get(pageID);
+      if(slot < 0) {
+        slot = size < pages.length ? size++ : evict(file);
+        slots.put(pageID, slot);
+        ids[slot] = pageID;
+      }
+      pages[slot] = page;
+      referenced[slot] = ref;
+    }
+
+    /**
+     * Find a victim slot: advance the clock hand, clearing reference bits,
+     * until an unreferenced slot is found.
+     * 
+     * @param file Backing file for modified pages
+     * @return Free slot
+     */
+    @SuppressWarnings("unchecked")
+    private int evict(PageFile<P> file) {
+      while(referenced[hand]) {
+        referenced[hand] = false;
+        hand = (hand + 1) % pages.length;
+      }
+      final int slot = hand;
+      hand = (hand + 1) % pages.length;
+      P victim = (P) pages[slot];
+      if(victim.isDirty()) {
+        file.writePage(victim);
+      }
+      slots.remove(ids[slot]);
+      return slot;
+    }
+
+    /**
+     * Remove a page, without writing it.
+     * 
+     * @param pageID Page id
+     */
+    void remove(int pageID) {
+      final int slot = slots.remove(pageID);
+      if(slot < 0) {
+        return;
+      }
+      // Move the last slot into the hole.
+      final int last = --size;
+      if(slot != last) {
+        pages[slot] = pages[last];
+        ids[slot] = ids[last];
+        referenced[slot] = referenced[last];
+        slots.put(ids[slot], slot);
+      }
+      pages[last] = null;
+      referenced[last] = false;
+      if(hand >= size) {
+        hand = 0;
+      }
+    }
+
+    /**
+     * Write all modified pages, and empty the shard.
+     * 
+     * @param file Backing file
+     */
+    @SuppressWarnings("unchecked")
+    void flush(PageFile<P> file) {
+      for(int i = 0; i < size; i++) {
+        P page = (P) pages[i];
+        if(page.isDirty()) {
+          file.writePage(page);
+        }
+      }
+      clear();
+    }
+
+    /**
+     * Empty the shard, without writing modified pages.
+     */
+    void clear() {
+      slots.clear();
+      pending.clear();
+      for(int i = 0; i < size; i++) {
+        pages[i] = null;
+        referenced[i] = false;
+      }
+      size = hand = 0;
+    }
+  }
+}
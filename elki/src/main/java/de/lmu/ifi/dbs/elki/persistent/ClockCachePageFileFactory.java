@@ -0,0 +1,174 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2017
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.lmu.ifi.dbs.elki.persistent;
+
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.AbstractParameterizer;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.OptionID;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.constraints.CommonConstraints;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameterization.Parameterization;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameters.IntParameter;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameters.LongParameter;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameters.ObjectParameter;
+
+/**
+ * Page file factory for concurrent CLOCK page caches.
+ * 
+ * @author Erich Schubert
+ * @since 0.7.2
+ * 
+ * @apiviz.has ClockCache
+ * @apiviz.composedOf PageFileFactory
+ * 
+ * @param <P> Page type
+ */
+public class ClockCachePageFileFactory<P extends Page> implements PageFileFactory<P> {
+  /**
+   * Inner page file factory.
+   */
+  private PageFileFactory<P> pageFileFactory;
+
+  /**
+   * Cache size, in bytes.
+   */
+  private long cacheSize;
+
+  /**
+   * Number of shards.
+   */
+  private int shards;
+
+  /**
+   * Number of prefetching threads.
+   */
+  private int prefetch;
+
+  /**
+   * Constructor.
+   * 
+   * @param pageFileFactory Inner page file
+   * @param cacheSize Size of cache, in bytes.
+   * @param shards Number of shards
+   * @param prefetch Number of prefetching threads, 0 to disable
+   */
+  public ClockCachePageFileFactory(PageFileFactory<P> pageFileFactory, long cacheSize, int shards, int prefetch) {
+    super();
+    this.cacheSize = cacheSize;
+    this.shards = shards;
+    this.prefetch = prefetch;
+    this.pageFileFactory = pageFileFactory;
+  }
+
+  @Override
+  public PageFile<P> newPageFile(Class<P> cls) {
+    PageFile<P> inner = pageFileFactory.newPageFile(cls);
+    return new ClockCache<>(cacheSize, shards, prefetch, inner);
+  }
+
+  @Override
+  public int getPageSize() {
+    return pageFileFactory.getPageSize();
+  }
+
+  /**
+   * Parameterization class.
+   * 
+   * @author Erich Schubert
+   * 
+   * @apiviz.exclude
+   */
+  public static class Parameterizer extends AbstractParameterizer {
+    /**
+     * Parameter to specify the number of shards, will be rounded down to a
+     * power of two.
+     * <p>
+     * Default value: 16
+     * </p>
+     * <p>
+     * Key: {@code -pagefile.shards}
+     * </p>
+     */
+    public static final OptionID SHARDS_ID = new OptionID("pagefile.shards", "The number of independently locked cache shards.");
+
+    /**
+     * Parameter to specify the number of threads for asynchronous prefetching
+     * of pages, 0 disables prefetching.
+     * <p>
+     * Default value: 0
+     * </p>
+     * <p>
+     * Key: {@code -pagefile.prefetch}
+     * </p>
+     */
+    public static final OptionID PREFETCH_ID = new OptionID("pagefile.prefetch", "The number of reader threads for prefetching pages, 0 to disable.");
+
+    /**
+     * Inner page file factory.
+     */
+    PageFileFactory<Page> pageFileFactory;
+
+    /**
+     * Cache size, in bytes.
+     */
+    protected long cacheSize;
+
+    /**
+     * Number of shards.
+     */
+    protected int shards;
+
+    /**
+     * Number of prefetching threads.
+     */
+    protected int prefetch;
+
+    @Override
+    protected void makeOptions(Parameterization config) {
+      super.makeOptions(config);
+      ObjectParameter<PageFileFactory<Page>> pffP = new ObjectParameter<>(LRUCachePageFileFactory.Parameterizer.PAGEFILE_ID, PageFileFactory.class, PersistentPageFileFactory.class);
+      if(config.grab(pffP)) {
+        pageFileFactory = pffP.instantiateClass(config);
+      }
+
+      LongParameter cacheSizeP = new LongParameter(LRUCachePageFileFactory.Parameterizer.CACHE_SIZE_ID);
+      cacheSizeP.addConstraint(CommonConstraints.GREATER_EQUAL_ONE_INT);
+      if(config.grab(cacheSizeP)) {
+        cacheSize = cacheSizeP.getValue();
+      }
+
+      IntParameter shardsP = new IntParameter(SHARDS_ID, 16) //
+          .addConstraint(CommonConstraints.GREATER_EQUAL_ONE_INT);
+      if(config.grab(shardsP)) {
+        shards = shardsP.intValue();
+      }
+
+      IntParameter prefetchP = new IntParameter(PREFETCH_ID, 0) //
+          .addConstraint(CommonConstraints.GREATER_EQUAL_ZERO_INT);
+      if(config.grab(prefetchP)) {
+        prefetch = prefetchP.intValue();
+      }
+    }
+
+    @Override
+    protected ClockCachePageFileFactory<Page> makeInstance() {
+      return new ClockCachePageFileFactory<>(pageFileFactory, cacheSize, shards, prefetch);
+    }
+  }
+}
@@ -27,6 +27,9 @@ import java.io.IOException;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
 import java.io.RandomAccessFile;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 
 import de.lmu.ifi.dbs.elki.index.tree.TreeIndexHeader;
 import de.lmu.ifi.dbs.elki.logging.Logging;
@@ -37,6 +40,12 @@ import de.lmu.ifi.dbs.elki.utilities.exceptions.AbortException;
  * <code>Page</code> interface. For convenience each page is represented by a
  * single file. All pages are stored in a specified directory.
  * 
+ * Pages implementing {@link ByteBufferPage} are stored in their flat binary
+ * encoding, all other pages using Java serialization. The encoding is recorded
+ * in a format marker in the last four bytes of the reserved header pages. Files
+ * written without this marker use Java serialization, and are still read (and
+ * written) using Java serialization.
+ * 
  * @author Elke Achtert
  * @since 0.2
  * 
@@ -61,6 +70,22 @@ public class PersistentPageFile<P extends ExternalizablePage> extends AbstractSt
    */
   private static final int FILLED_PAGE = 1;
 
+  /**
+   * Format marker of files written before the marker was introduced; these
+   * use Java serialization.
+   */
+  private static final int FORMAT_LEGACY = 0;
+
+  /**
+   * Format marker of files using Java serialization.
+   */
+  private static final int FORMAT_SERIALIZED = 0x454C5331;
+
+  /**
+   * Format marker of files using the flat binary encoding.
+   */
+  private static final int FORMAT_BINARY = 0x454C4231;
+
   /**
    * The file storing the pages.
    */
@@ -76,6 +101,12 @@ public class PersistentPageFile<P extends ExternalizablePage> extends AbstractSt
    */
   protected final Class<P> pageclass;
 
+  /**
+   * Whether the pages use the flat binary encoding. When reopening a file,
+   * this is determined by the format marker of the file.
+   */
+  private boolean binary;
+
   /**
    * Whether we are initializing from an existing file.
    */
@@ -90,6 +121,7 @@ public class PersistentPageFile<P extends ExternalizablePage> extends AbstractSt
   public PersistentPageFile(int pageSize, String fileName, Class<P> pageclass) {
     super(pageSize);
     this.pageclass = pageclass;
+    this.binary = ByteBufferPage.class.isAssignableFrom(pageclass);
     // init the file
     File f = new File(fileName);
 
@@ -111,19 +143,61 @@ public class PersistentPageFile<P extends ExternalizablePage> extends AbstractSt
    */
   @Override
   public P readPage(int pageID) {
+    countRead();
+    byte[] buffer = readBytes(pageID);
+    return binary ? bufferToPage(ByteBuffer.wrap(buffer)) : byteArrayToPage(buffer);
+  }
+
+  /**
+   * Read the raw bytes of a page.
+   * 
+   * @param pageID Page id
+   * @return Bytes
+   */
+  private byte[] readBytes(int pageID) {
     try {
-      countRead();
       long offset = ((long) (header.getReservedPages() + pageID)) * (long) pageSize;
       byte[] buffer = new byte[pageSize];
-      file.seek(offset);
-      file.read(buffer);
-      return byteArrayToPage(buffer);
+      readFully(ByteBuffer.wrap(buffer), offset);
+      return buffer;
     }
     catch(IOException e) {
       throw new RuntimeException("IOException occurred during reading of page " + pageID + "\n", e);
     }
   }
 
+  /**
+   * Read a buffer from the file, using positional reads which do not modify
+   * the file pointer and are safe for concurrent use.
+   * 
+   * @param buf Buffer to fill
+   * @param offset File offset
+   * @throws IOException on errors
+   */
+  private void readFully(ByteBuffer buf, long offset) throws IOException {
+    FileChannel channel = file.getChannel();
+    while(buf.hasRemaining()) {
+      int read = channel.read(buf, offset + buf.position());
+      if(read < 0) {
+        break; // Past the end of the file.
+      }
+    }
+  }
+
+  /**
+   * Write a buffer to the file, using positional writes.
+   * 
+   * @param buf Buffer to write
+   * @param offset File offset
+   * @throws IOException on errors
+   */
+  private void writeFully(ByteBuffer buf, long offset) throws IOException {
+    FileChannel channel = file.getChannel();
+    while(buf.hasRemaining()) {
+      channel.write(buf, offset + buf.position());
+    }
+  }
+
   /**
    * Deletes the node with the specified id from this file.
    * 
@@ -139,8 +213,7 @@ public class PersistentPageFile<P extends ExternalizablePage> extends AbstractSt
       countWrite();
       byte[] array = pageToByteArray(null);
       long offset = ((long) (header.getReservedPages() + pageID)) * (long) pageSize;
-      file.seek(offset);
-      file.write(array);
+      writeFully(ByteBuffer.wrap(array), offset);
     }
     catch(IOException e) {
       throw new RuntimeException(e);
@@ -160,8 +233,7 @@ public class PersistentPageFile<P extends ExternalizablePage> extends AbstractSt
       byte[] array = pageToByteArray(page);
       long offset = ((long) (header.getReservedPages() + pageID)) * (long) pageSize;
       assert offset >= 0 : header.getReservedPages() + " " + pageID + " " + pageSize + " " + offset;
-      file.seek(offset);
-      file.write(array);
+      writeFully(ByteBuffer.wrap(array), offset);
       page.setDirty(false);
     }
     catch(IOException e) {
@@ -196,6 +268,7 @@ public class PersistentPageFile<P extends ExternalizablePage> extends AbstractSt
   public void clear() {
     try {
       file.setLength(header.size());
+      writeFormat();
     }
     catch(IOException e) {
       throw new RuntimeException(e);
@@ -236,6 +309,32 @@ public class PersistentPageFile<P extends ExternalizablePage> extends AbstractSt
     }
   }
 
+  /**
+   * Reconstruct a page from its binary encoding.
+   * 
+   * @param buf Buffer, containing the page type and the page
+   * @return Page, or {@code null} for empty pages
+   */
+  private P bufferToPage(ByteBuffer buf) {
+    int type = buf.getInt(0);
+    if(type == EMPTY_PAGE) {
+      return null;
+    }
+    if(type != FILLED_PAGE) {
+      throw new IllegalArgumentException("Unknown type: " + type);
+    }
+    P page;
+    try {
+      page = pageclass.newInstance();
+    }
+    catch(InstantiationException | IllegalAccessException e) {
+      throw new AbortException("Error instanciating an index page", e);
+    }
+    buf.position(4);
+    ((ByteBufferPage) page).readFromByteBuffer(buf.slice());
+    return page;
+  }
+
   /**
    * Serializes an object into a byte array.
    * 
@@ -243,6 +342,20 @@ public class PersistentPageFile<P extends ExternalizablePage> extends AbstractSt
    * @return the byte array
    */
   private byte[] pageToByteArray(P page) {
+    if(binary) {
+      byte[] result = new byte[pageSize];
+      ByteBuffer buf = ByteBuffer.wrap(result);
+      buf.putInt(page == null ? EMPTY_PAGE : FILLED_PAGE);
+      if(page != null) {
+        try {
+          ((ByteBufferPage) page).writeToByteBuffer(buf.slice());
+        }
+        catch(BufferOverflowException e) {
+          throw new IllegalArgumentException("Size of page " + page + " is greater than specified pagesize: " + pageSize);
+        }
+      }
+      return result;
+    }
     try {
       if(page == null) {
         ByteArrayOutputStream baos = new ByteArrayOutputStream();
@@ -322,6 +435,7 @@ public class PersistentPageFile<P extends ExternalizablePage> extends AbstractSt
         // init the header
         this.header = header;
         header.readHeader(file);
+        readFormat();
 
         // reading empty nodes in Stack
         if(header instanceof TreeIndexHeader) {
@@ -342,9 +456,8 @@ public class PersistentPageFile<P extends ExternalizablePage> extends AbstractSt
             file.seek(offset);
             file.read(buffer);
 
-            ByteArrayInputStream bais = new ByteArrayInputStream(buffer);
-            ObjectInputStream ois = new ObjectInputStream(bais);
-            int type = ois.readInt();
+            int type = binary ? ByteBuffer.wrap(buffer).getInt(0) : //
+                new ObjectInputStream(new ByteArrayInputStream(buffer)).readInt();
             if(type == EMPTY_PAGE) {
               emptyPages.push(i);
             }
@@ -365,6 +478,7 @@ public class PersistentPageFile<P extends ExternalizablePage> extends AbstractSt
         // writing header
         this.header = header;
         header.writeHeader(file);
+        writeFormat();
       }
     }
     catch(IOException e) {
@@ -375,6 +489,57 @@ public class PersistentPageFile<P extends ExternalizablePage> extends AbstractSt
     return existed;
   }
 
+  /**
+   * Offset of the format marker, in the last four bytes of the reserved header
+   * pages.
+   * 
+   * @return Offset
+   */
+  private long formatOffset() {
+    return ((long) header.getReservedPages()) * (long) pageSize - 4;
+  }
+
+  /**
+   * Write the format marker.
+   * 
+   * @throws IOException on errors
+   */
+  private void writeFormat() throws IOException {
+    if(formatOffset() < header.size()) {
+      throw new AbortException("Page size " + pageSize + " is too small for the page file header.");
+    }
+    ByteBuffer buf = ByteBuffer.allocate(4);
+    buf.putInt(0, binary ? FORMAT_BINARY : FORMAT_SERIALIZED);
+    writeFully(buf, formatOffset());
+  }
+
+  /**
+   * Read the format marker, and choose the page encoding accordingly.
+   * 
+   * @throws IOException on errors
+   */
+  private void readFormat() throws IOException {
+    ByteBuffer buf = ByteBuffer.allocate(4);
+    readFully(buf, formatOffset());
+    final int format = buf.hasRemaining() ? FORMAT_LEGACY : buf.getInt(0);
+    switch(format){
+    case FORMAT_LEGACY:
+      LOG.debug("Page file without format marker, using Java serialization.");
+      // Fall through.
+    case FORMAT_SERIALIZED:
+      binary = false;
+      break;
+    case FORMAT_BINARY:
+      if(!ByteBufferPage.class.isAssignableFrom(pageclass)) {
+        throw new AbortException("Incompatible page file format: the file uses the binary page encoding, which " + pageclass.getName() + " does not support.");
+      }
+      binary = true;
+      break;
+    default:
+      throw new AbortException("Incompatible page file format: unknown format marker " + format + ".");
+    }
+  }
+
   @Override
   protected Logging getLogger() {
     return LOG;
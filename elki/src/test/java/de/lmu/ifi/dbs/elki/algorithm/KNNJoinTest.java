@@ -20,19 +20,29 @@
  */
 package de.lmu.ifi.dbs.elki.algorithm;
 
+import static org.junit.Assert.assertEquals;
+
+import java.util.List;
+
 import org.junit.Test;
 
 import de.lmu.ifi.dbs.elki.data.DoubleVector;
 import de.lmu.ifi.dbs.elki.data.NumberVector;
+import de.lmu.ifi.dbs.elki.data.SparseDoubleVector;
 import de.lmu.ifi.dbs.elki.data.type.TypeUtil;
+import de.lmu.ifi.dbs.elki.data.type.VectorFieldTypeInformation;
 import de.lmu.ifi.dbs.elki.database.Database;
 import de.lmu.ifi.dbs.elki.database.QueryUtil;
 import de.lmu.ifi.dbs.elki.database.StaticArrayDatabase;
+import de.lmu.ifi.dbs.elki.database.ids.ArrayDBIDs;
 import de.lmu.ifi.dbs.elki.database.ids.DBIDIter;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDUtil;
 import de.lmu.ifi.dbs.elki.database.ids.KNNList;
 import de.lmu.ifi.dbs.elki.database.query.distance.DistanceQuery;
 import de.lmu.ifi.dbs.elki.database.query.knn.KNNQuery;
+import de.lmu.ifi.dbs.elki.database.relation.MaterializedRelation;
 import de.lmu.ifi.dbs.elki.database.relation.Relation;
+import de.lmu.ifi.dbs.elki.database.relation.RelationUtil;
 import de.lmu.ifi.dbs.elki.distance.distancefunction.minkowski.EuclideanDistanceFunction;
 import de.lmu.ifi.dbs.elki.distance.distancefunction.minkowski.ManhattanDistanceFunction;
 import de.lmu.ifi.dbs.elki.index.tree.spatial.SpatialEntry;
@@ -101,6 +111,39 @@ public class KNNJoinTest {
     }
   }
 
+  /**
+   * Test the batch linear scan on a relation mixing sparse and dense vectors,
+   * of different dimensionality.
+   */
+  @Test
+  public void testMixedSparseDense() {
+    Database db = AbstractSimpleAlgorithmTest.makeSimpleDatabase(dataset, shoulds);
+    Relation<NumberVector> relation = db.getRelation(TypeUtil.NUMBER_VECTOR_FIELD);
+    final int dim = RelationUtil.dimensionality(relation);
+    MaterializedRelation<NumberVector> mixed = new MaterializedRelation<>(VectorFieldTypeInformation.typeRequest(NumberVector.class, dim, dim), relation.getDBIDs());
+    boolean sparse = false;
+    for(DBIDIter iditer = relation.iterDBIDs(); iditer.valid(); iditer.advance(), sparse = !sparse) {
+      NumberVector v = relation.get(iditer);
+      // Sparse vectors with a trailing zero dimension:
+      mixed.insert(iditer, sparse ? new SparseDoubleVector(new int[] { 0, 1 }, new double[] { v.doubleValue(0), v.doubleValue(1) }, dim + 1) : v);
+    }
+    KNNQuery<NumberVector> knnq = QueryUtil.getLinearScanKNNQuery(EuclideanDistanceFunction.STATIC.instantiate(mixed));
+    ArrayDBIDs ids = DBIDUtil.ensureArray(mixed.getDBIDs());
+    List<? extends KNNList> bulk = knnq.getKNNForBulkDBIDs(ids, 3);
+    int i = 0;
+    for(DBIDIter iditer = ids.iter(); iditer.valid(); iditer.advance(), i++) {
+      assertEquals("3NN distance", knnq.getKNNForDBID(iditer, 3).getKNNDistance(), bulk.get(i).getKNNDistance(), 1e-15);
+    }
+  }
+
+  /**
+   * Test the blocked join, without an index.
+   */
+  @Test
+  public void testKNNJoinNoIndex() {
+    doKNNJoin(new ListParameterization());
+  }
+
   /**
    * Test {@link RStarTree} using a file based database connection.
    */
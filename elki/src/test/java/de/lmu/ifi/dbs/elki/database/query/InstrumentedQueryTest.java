@@ -0,0 +1,118 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2017
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.lmu.ifi.dbs.elki.database.query;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import de.lmu.ifi.dbs.elki.algorithm.AbstractSimpleAlgorithmTest;
+import de.lmu.ifi.dbs.elki.data.NumberVector;
+import de.lmu.ifi.dbs.elki.data.type.TypeUtil;
+import de.lmu.ifi.dbs.elki.database.QueryUtil;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDIter;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDUtil;
+import de.lmu.ifi.dbs.elki.database.ids.DoubleDBIDList;
+import de.lmu.ifi.dbs.elki.database.ids.DoubleDBIDListIter;
+import de.lmu.ifi.dbs.elki.database.query.distance.DistanceQuery;
+import de.lmu.ifi.dbs.elki.database.query.distance.InstrumentedDistanceQuery;
+import de.lmu.ifi.dbs.elki.database.query.knn.InstrumentedKNNQuery;
+import de.lmu.ifi.dbs.elki.database.query.knn.KNNQuery;
+import de.lmu.ifi.dbs.elki.database.query.range.InstrumentedRangeQuery;
+import de.lmu.ifi.dbs.elki.database.query.range.RangeQuery;
+import de.lmu.ifi.dbs.elki.database.relation.Relation;
+import de.lmu.ifi.dbs.elki.distance.distancefunction.minkowski.EuclideanDistanceFunction;
+import de.lmu.ifi.dbs.elki.logging.statistics.QueryCounters;
+
+/**
+ * Unit test for the query instrumentation.
+ *
+ * @author Erich Schubert
+ * @since 0.7.2
+ */
+public class InstrumentedQueryTest {
+  public static final String filename = "elki/testdata/unittests/hierarchical-3d2d1d.csv";
+
+  @Test
+  public void testInstrumentation() {
+    Relation<NumberVector> rel = AbstractSimpleAlgorithmTest.makeSimpleDatabase(filename, -1).getRelation(TypeUtil.NUMBER_VECTOR_FIELD);
+    DistanceQuery<NumberVector> dq = rel.getDistanceQuery(EuclideanDistanceFunction.STATIC);
+    KNNQuery<NumberVector> plainKNN = QueryUtil.getLinearScanKNNQuery(dq);
+    RangeQuery<NumberVector> plainRange = QueryUtil.getLinearScanRangeQuery(dq);
+    QueryCounters.setEnabled(true);
+    try {
+      KNNQuery<NumberVector> knnq = rel.getKNNQuery(new InstrumentedDistanceQuery<>(dq), 10);
+      RangeQuery<NumberVector> rangeq = rel.getRangeQuery(dq, .1);
+      assertTrue("kNN query not instrumented.", knnq instanceof InstrumentedKNNQuery);
+      assertTrue("Range query not instrumented.", rangeq instanceof InstrumentedRangeQuery);
+      QueryStatistics knnstats = ((InstrumentedKNNQuery<NumberVector>) knnq).getStatistics();
+      QueryStatistics rangestats = ((InstrumentedRangeQuery<NumberVector>) rangeq).getStatistics();
+      knnstats.reset();
+      rangestats.reset();
+      long results = 0;
+      for(DBIDIter it = rel.iterDBIDs(); it.valid(); it.advance()) {
+        assertSameList(plainKNN.getKNNForDBID(it, 10), knnq.getKNNForDBID(it, 10));
+        DoubleDBIDList r = rangeq.getRangeForDBID(it, .1);
+        assertSameList(plainRange.getRangeForDBID(it, .1), r);
+        results += r.size();
+      }
+      final long n = rel.size();
+      assertEquals("Queries not counted.", n, knnstats.getQueries());
+      assertEquals("kNN results not counted.", n * 10, knnstats.getResults());
+      assertEquals("Range results not counted.", results, rangestats.getResults());
+      assertTrue("Distances not counted.", knnstats.getDistances() >= n * n);
+      assertTrue("Distances not counted.", rangestats.getDistances() >= n * n);
+      assertTrue("Heap inserts not counted.", knnstats.getHeapInserts() >= n * 10);
+      assertTrue("Latency not measured.", knnstats.getMaxNanos() > 0 && knnstats.getSlowest() != null);
+
+      // Counting distances of explicit distance computations:
+      final long before = QueryCounters.current().getDistances();
+      DistanceQuery<NumberVector> idq = new InstrumentedDistanceQuery<>(dq);
+      DBIDIter it = rel.iterDBIDs();
+      idq.distance(it, it);
+      assertEquals("Distance not counted.", before + 1, QueryCounters.current().getDistances());
+
+      String json = knnstats.toJSON();
+      assertTrue("JSON incomplete: " + json, json.contains("\"queries\":" + n));
+      assertTrue("JSON incomplete: " + json, json.contains("\"distanceComputations\":"));
+      assertTrue("JSON incomplete: " + json, json.contains("\"histogram\":[{"));
+    }
+    finally {
+      QueryCounters.setEnabled(false);
+    }
+    assertTrue("Query instrumented while disabled.", !(rel.getKNNQuery(dq, 10) instanceof InstrumentedKNNQuery));
+  }
+
+  /**
+   * Compare two result lists.
+   *
+   * @param expect Expected result
+   * @param actual Actual result
+   */
+  private static void assertSameList(DoubleDBIDList expect, DoubleDBIDList actual) {
+    assertEquals("Result sizes differ", expect.size(), actual.size());
+    for(DoubleDBIDListIter i1 = expect.iter(), i2 = actual.iter(); i1.valid(); i1.advance(), i2.advance()) {
+      assertEquals("Distances differ", i1.doubleValue(), i2.doubleValue(), 0.);
+      assertTrue("Results differ", DBIDUtil.equal(i1, i2));
+    }
+  }
+}
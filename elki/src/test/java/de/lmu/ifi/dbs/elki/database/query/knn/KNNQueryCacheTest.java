@@ -0,0 +1,140 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2017
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.lmu.ifi.dbs.elki.database.query.knn;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+
+import org.junit.Test;
+
+import de.lmu.ifi.dbs.elki.algorithm.AbstractSimpleAlgorithmTest;
+import de.lmu.ifi.dbs.elki.data.NumberVector;
+import de.lmu.ifi.dbs.elki.data.type.TypeUtil;
+import de.lmu.ifi.dbs.elki.database.AbstractDatabase;
+import de.lmu.ifi.dbs.elki.database.QueryUtil;
+import de.lmu.ifi.dbs.elki.database.ids.ArrayDBIDs;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDIter;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDUtil;
+import de.lmu.ifi.dbs.elki.database.ids.DoubleDBIDListIter;
+import de.lmu.ifi.dbs.elki.database.ids.KNNList;
+import de.lmu.ifi.dbs.elki.database.query.DatabaseQuery;
+import de.lmu.ifi.dbs.elki.database.query.distance.DistanceQuery;
+import de.lmu.ifi.dbs.elki.database.relation.ProxyView;
+import de.lmu.ifi.dbs.elki.database.relation.Relation;
+import de.lmu.ifi.dbs.elki.distance.distancefunction.minkowski.EuclideanDistanceFunction;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameterization.ListParameterization;
+
+/**
+ * Unit test for the kNN query cache.
+ *
+ * @author Erich Schubert
+ * @since 0.7.2
+ */
+public class KNNQueryCacheTest {
+  public static final String filename = "elki/testdata/unittests/hierarchical-3d2d1d.csv";
+
+  @Test
+  public void testCache() {
+    Relation<NumberVector> rel = AbstractSimpleAlgorithmTest.makeSimpleDatabase(filename, -1).getRelation(TypeUtil.NUMBER_VECTOR_FIELD);
+    DistanceQuery<NumberVector> dq = rel.getDistanceQuery(EuclideanDistanceFunction.STATIC);
+    KNNQuery<NumberVector> plain = QueryUtil.getLinearScanKNNQuery(dq);
+    KNNQueryCache cache = new KNNQueryCache(Long.MAX_VALUE);
+    assertSame("No-cache hint not honored.", plain, cache.wrap(rel, dq, plain, 10, DatabaseQuery.HINT_NO_CACHE));
+    assertSame("Cached without heavy use hint.", plain, cache.wrap(rel, dq, plain, 10));
+
+    KNNQuery<NumberVector> q10 = cache.wrap(rel, dq, plain, 10, DatabaseQuery.HINT_HEAVY_USE);
+    assertTrue("Query not cached.", q10 instanceof CachedKNNQuery);
+    final long base = cache.getMemoryUsage();
+    assertTrue("Storage not charged.", base > 0);
+    for(DBIDIter it = rel.iterDBIDs(); it.valid(); it.advance()) {
+      assertSameKNN(plain.getKNNForDBID(it, 10), q10.getKNNForDBID(it, 10));
+    }
+    final long used = cache.getMemoryUsage();
+    assertTrue("Nothing cached.", used > base);
+
+    // Smaller k must be served from the cache.
+    KNNQuery<NumberVector> q5 = cache.wrap(rel, dq, plain, 5, DatabaseQuery.HINT_BULK);
+    ArrayDBIDs ids = DBIDUtil.ensureArray(rel.getDBIDs());
+    List<? extends KNNList> bulk = q5.getKNNForBulkDBIDs(ids, 5);
+    int i = 0;
+    for(DBIDIter it = ids.iter(); it.valid(); it.advance(), i++) {
+      assertSameKNN(plain.getKNNForDBID(it, 5), bulk.get(i));
+    }
+    assertEquals("Cache was not reused.", used, cache.getMemoryUsage());
+
+    cache.invalidate(rel);
+    assertEquals("Cache not invalidated.", 0, cache.getMemoryUsage());
+  }
+
+  @Test
+  public void testBudget() {
+    Relation<NumberVector> rel = AbstractSimpleAlgorithmTest.makeSimpleDatabase(filename, -1).getRelation(TypeUtil.NUMBER_VECTOR_FIELD);
+    DistanceQuery<NumberVector> dq = rel.getDistanceQuery(EuclideanDistanceFunction.STATIC);
+    KNNQuery<NumberVector> plain = QueryUtil.getLinearScanKNNQuery(dq);
+    final long budget = 10000;
+    KNNQueryCache cache = new KNNQueryCache(budget);
+    KNNQuery<NumberVector> q = cache.wrap(rel, dq, plain, 10, DatabaseQuery.HINT_HEAVY_USE);
+    for(DBIDIter it = rel.iterDBIDs(); it.valid(); it.advance()) {
+      assertSameKNN(plain.getKNNForDBID(it, 10), q.getKNNForDBID(it, 10));
+      assertTrue("Budget exceeded.", cache.getMemoryUsage() <= budget);
+    }
+    assertTrue("Nothing cached.", cache.getMemoryUsage() > 0);
+  }
+
+  @Test
+  public void testParameter() {
+    assertEquals("Cache enabled by default.", 0, KNNQueryCache.STATIC.getMemoryBudget());
+    ListParameterization params = new ListParameterization();
+    params.addParameter(AbstractDatabase.Parameterizer.KNN_CACHE_ID, 1);
+    try {
+      Relation<NumberVector> rel = AbstractSimpleAlgorithmTest.makeSimpleDatabase(filename, -1, params).getRelation(TypeUtil.NUMBER_VECTOR_FIELD);
+      assertEquals("Budget not set.", 1L << 20, KNNQueryCache.STATIC.getMemoryBudget());
+      DistanceQuery<NumberVector> dq = rel.getDistanceQuery(EuclideanDistanceFunction.STATIC);
+      assertTrue("Materialized relation not cached.", rel.getKNNQuery(dq, 10, DatabaseQuery.HINT_HEAVY_USE) instanceof CachedKNNQuery);
+      // Views are not invalidated when their base relation changes.
+      Relation<NumberVector> view = new ProxyView<>(rel.getDBIDs(), rel);
+      DistanceQuery<NumberVector> vdq = view.getDistanceQuery(EuclideanDistanceFunction.STATIC);
+      assertFalse("View cached.", view.getKNNQuery(vdq, 10, DatabaseQuery.HINT_HEAVY_USE) instanceof CachedKNNQuery);
+    }
+    finally {
+      KNNQueryCache.STATIC.setMemoryBudget(0);
+      KNNQueryCache.STATIC.clear();
+    }
+  }
+
+  /**
+   * Compare two kNN lists.
+   *
+   * @param expect Expected result
+   * @param actual Actual result
+   */
+  private static void assertSameKNN(KNNList expect, KNNList actual) {
+    assertEquals("kNN sizes differ", expect.size(), actual.size());
+    for(DoubleDBIDListIter i1 = expect.iter(), i2 = actual.iter(); i1.valid(); i1.advance(), i2.advance()) {
+      assertEquals("kNN distances differ", i1.doubleValue(), i2.doubleValue(), 0.);
+      assertTrue("kNN differ", DBIDUtil.equal(i1, i2));
+    }
+  }
+}
@@ -0,0 +1,127 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2017
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.lmu.ifi.dbs.elki.database.relation;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import de.lmu.ifi.dbs.elki.algorithm.AbstractSimpleAlgorithmTest;
+import de.lmu.ifi.dbs.elki.data.NumberVector;
+import de.lmu.ifi.dbs.elki.data.PackedVectorStore;
+import de.lmu.ifi.dbs.elki.data.type.NoSupportedDataTypeException;
+import de.lmu.ifi.dbs.elki.data.type.TypeUtil;
+import de.lmu.ifi.dbs.elki.database.Database;
+import de.lmu.ifi.dbs.elki.database.QueryUtil;
+import de.lmu.ifi.dbs.elki.database.StaticArrayDatabase;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDIter;
+import de.lmu.ifi.dbs.elki.database.ids.DoubleDBIDListIter;
+import de.lmu.ifi.dbs.elki.database.ids.KNNList;
+import de.lmu.ifi.dbs.elki.database.query.distance.DistanceQuery;
+import de.lmu.ifi.dbs.elki.database.query.distance.VectorStoreDistanceQuery;
+import de.lmu.ifi.dbs.elki.database.query.knn.KNNQuery;
+import de.lmu.ifi.dbs.elki.datasource.AbstractDatabaseConnection;
+import de.lmu.ifi.dbs.elki.datasource.filter.FixedDBIDsFilter;
+import de.lmu.ifi.dbs.elki.distance.distancefunction.minkowski.EuclideanDistanceFunction;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameterization.ListParameterization;
+
+/**
+ * Unit test for packed vector storage.
+ *
+ * @author Erich Schubert
+ * @since 0.7.2
+ */
+public class PackedVectorRelationTest {
+  public static final String filename = "elki/testdata/unittests/hierarchical-3d2d1d.csv";
+
+  @Test
+  public void testRowMajor() {
+    doTest(PackedVectorStore.Layout.ROW_MAJOR, false, 0.);
+  }
+
+  @Test
+  public void testColumnMajor() {
+    doTest(PackedVectorStore.Layout.COLUMN_MAJOR, false, 0.);
+  }
+
+  @Test
+  public void testRowMajorFloat() {
+    doTest(PackedVectorStore.Layout.ROW_MAJOR, true, 1e-6);
+  }
+
+  /**
+   * Compare a packed relation to a regular relation.
+   *
+   * @param layout Memory layout
+   * @param singleprecision Use float
+   * @param tol Tolerance
+   */
+  private void doTest(PackedVectorStore.Layout layout, boolean singleprecision, double tol) {
+    Database plain = AbstractSimpleAlgorithmTest.makeSimpleDatabase(filename, -1);
+    ListParameterization params = new ListParameterization();
+    params.addParameter(AbstractDatabaseConnection.Parameterizer.FILTERS_ID, new FixedDBIDsFilter(1));
+    params.addParameter(StaticArrayDatabase.Parameterizer.PACKED_ID, layout);
+    if(singleprecision) {
+      params.addFlag(StaticArrayDatabase.Parameterizer.PACKED_FLOAT_ID);
+    }
+    Database packed = AbstractSimpleAlgorithmTest.makeSimpleDatabase(filename, -1, params);
+    Relation<NumberVector> rel1 = plain.getRelation(TypeUtil.NUMBER_VECTOR_FIELD);
+    Relation<NumberVector> rel2 = packed.getRelation(TypeUtil.NUMBER_VECTOR_FIELD);
+    assertTrue("Not a packed relation", rel2 instanceof VectorStoreRelation);
+    assertEquals("Size differs", rel1.size(), rel2.size());
+    final int dim = RelationUtil.dimensionality(rel1);
+    assertEquals("Dimensionality differs", dim, RelationUtil.dimensionality(rel2));
+    for(DBIDIter it = rel1.iterDBIDs(); it.valid(); it.advance()) {
+      NumberVector v1 = rel1.get(it), v2 = rel2.get(it);
+      for(int d = 0; d < dim; d++) {
+        assertEquals("Values differ", v1.doubleValue(d), v2.doubleValue(d), tol);
+      }
+    }
+    DistanceQuery<NumberVector> dq1 = rel1.getDistanceQuery(EuclideanDistanceFunction.STATIC);
+    DistanceQuery<NumberVector> dq2 = rel2.getDistanceQuery(EuclideanDistanceFunction.STATIC);
+    assertTrue("Distance query not dispatched to the store", dq2 instanceof VectorStoreDistanceQuery);
+    DBIDIter first = rel1.iterDBIDs();
+    for(DBIDIter it = rel1.iterDBIDs(); it.valid(); it.advance()) {
+      assertEquals("Distances differ", dq1.distance(first, it), dq2.distance(first, it), tol * 10);
+    }
+    KNNQuery<NumberVector> knn1 = QueryUtil.getKNNQuery(rel1, EuclideanDistanceFunction.STATIC, 10);
+    KNNQuery<NumberVector> knn2 = QueryUtil.getKNNQuery(rel2, EuclideanDistanceFunction.STATIC, 10);
+    for(DBIDIter it = rel1.iterDBIDs(); it.valid(); it.advance()) {
+      KNNList l1 = knn1.getKNNForDBID(it, 10), l2 = knn2.getKNNForDBID(it, 10);
+      assertEquals("kNN sizes differ", l1.size(), l2.size());
+      for(DoubleDBIDListIter i1 = l1.iter(), i2 = l2.iter(); i1.valid(); i1.advance(), i2.advance()) {
+        assertEquals("kNN distances differ", i1.doubleValue(), i2.doubleValue(), tol * 10);
+      }
+    }
+  }
+
+  /**
+   * Packed relations do not provide DoubleVectors, and no copy is made.
+   */
+  @Test(expected = NoSupportedDataTypeException.class)
+  public void testNoDoubleVectors() {
+    ListParameterization params = new ListParameterization();
+    params.addParameter(StaticArrayDatabase.Parameterizer.PACKED_ID, PackedVectorStore.Layout.ROW_MAJOR);
+    Database packed = AbstractSimpleAlgorithmTest.makeSimpleDatabase(filename, -1, params);
+    packed.getRelation(TypeUtil.DOUBLE_VECTOR_FIELD);
+  }
+}
@@ -0,0 +1,114 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2017
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.lmu.ifi.dbs.elki.datasource;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+import de.lmu.ifi.dbs.elki.algorithm.AbstractSimpleAlgorithmTest;
+import de.lmu.ifi.dbs.elki.data.DoubleVector;
+import de.lmu.ifi.dbs.elki.data.FloatVector;
+import de.lmu.ifi.dbs.elki.data.MappedVectorStore;
+import de.lmu.ifi.dbs.elki.data.NumberVector;
+import de.lmu.ifi.dbs.elki.data.type.TypeUtil;
+import de.lmu.ifi.dbs.elki.data.type.VectorFieldTypeInformation;
+import de.lmu.ifi.dbs.elki.database.Database;
+import de.lmu.ifi.dbs.elki.database.StaticArrayDatabase;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDIter;
+import de.lmu.ifi.dbs.elki.database.relation.Relation;
+import de.lmu.ifi.dbs.elki.database.relation.RelationUtil;
+import de.lmu.ifi.dbs.elki.database.relation.VectorStoreRelation;
+import de.lmu.ifi.dbs.elki.datasource.bundle.BundleWriter;
+import de.lmu.ifi.dbs.elki.datasource.bundle.MultipleObjectsBundle;
+
+/**
+ * Unit test for memory mapped bundle files.
+ *
+ * @author Erich Schubert
+ * @since 0.7.2
+ */
+public class MappedBundleDatabaseConnectionTest {
+  public static final String filename = "elki/testdata/unittests/hierarchical-3d2d1d.csv";
+
+  @Test
+  public void testDouble() throws IOException {
+    Relation<NumberVector> rel = AbstractSimpleAlgorithmTest.makeSimpleDatabase(filename, -1).getRelation(TypeUtil.NUMBER_VECTOR_FIELD);
+    final int dim = RelationUtil.dimensionality(rel);
+    List<DoubleVector> vecs = new ArrayList<>(rel.size());
+    for(DBIDIter it = rel.iterDBIDs(); it.valid(); it.advance()) {
+      vecs.add(DoubleVector.FACTORY.newNumberVector(rel.get(it)));
+    }
+    doTest(rel, MultipleObjectsBundle.makeSimple(new VectorFieldTypeInformation<>(DoubleVector.FACTORY, dim, DoubleVector.BYTE_SERIALIZER), vecs), 0.);
+  }
+
+  @Test
+  public void testFloat() throws IOException {
+    Relation<NumberVector> rel = AbstractSimpleAlgorithmTest.makeSimpleDatabase(filename, -1).getRelation(TypeUtil.NUMBER_VECTOR_FIELD);
+    final int dim = RelationUtil.dimensionality(rel);
+    List<FloatVector> vecs = new ArrayList<>(rel.size());
+    for(DBIDIter it = rel.iterDBIDs(); it.valid(); it.advance()) {
+      vecs.add(FloatVector.FACTORY.newNumberVector(rel.get(it)));
+    }
+    doTest(rel, MultipleObjectsBundle.makeSimple(new VectorFieldTypeInformation<>(FloatVector.FACTORY, dim, FloatVector.VARIABLE_SERIALIZER), vecs), 1e-6);
+  }
+
+  /**
+   * Write a bundle file, map it, and compare to the original relation.
+   *
+   * @param rel Original relation
+   * @param bundle Bundle to write
+   * @param tol Tolerance
+   * @throws IOException on IO errors
+   */
+  private void doTest(Relation<NumberVector> rel, MultipleObjectsBundle bundle, double tol) throws IOException {
+    File file = File.createTempFile("elki-mapped", ".bundle");
+    file.deleteOnExit();
+    try (FileOutputStream fos = new FileOutputStream(file); //
+        FileChannel channel = fos.getChannel()) {
+      new BundleWriter().writeBundleStream(bundle.asStream(), channel);
+    }
+    Database db = new StaticArrayDatabase(new MappedBundleDatabaseConnection(null, file), null);
+    db.initialize();
+    Relation<NumberVector> mapped = db.getRelation(TypeUtil.NUMBER_VECTOR_FIELD);
+    assertTrue("Not a vector store relation", mapped instanceof VectorStoreRelation);
+    assertTrue("Not memory mapped", ((VectorStoreRelation) mapped).getStore() instanceof MappedVectorStore);
+    assertEquals("Size differs", rel.size(), mapped.size());
+    final int dim = RelationUtil.dimensionality(rel);
+    assertEquals("Dimensionality differs", dim, RelationUtil.dimensionality(mapped));
+    for(DBIDIter it = rel.iterDBIDs(), it2 = mapped.iterDBIDs(); it.valid(); it.advance(), it2.advance()) {
+      NumberVector v1 = rel.get(it), v2 = mapped.get(it2);
+      double[] a2 = v2.toArray();
+      for(int d = 0; d < dim; d++) {
+        assertEquals("Values differ", v1.doubleValue(d), v2.doubleValue(d), tol);
+        assertEquals("Values differ", v1.doubleValue(d), a2[d], tol);
+      }
+    }
+  }
+}
@@ -20,12 +20,46 @@
  */
 package de.lmu.ifi.dbs.elki.index.idistance;
 
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
 import org.junit.Test;
 
+import de.lmu.ifi.dbs.elki.algorithm.AbstractSimpleAlgorithmTest;
 import de.lmu.ifi.dbs.elki.algorithm.clustering.kmeans.initialization.FarthestPointsInitialMeans;
+import de.lmu.ifi.dbs.elki.data.DoubleVector;
+import de.lmu.ifi.dbs.elki.data.VectorUtil;
+import de.lmu.ifi.dbs.elki.data.type.TypeUtil;
+import de.lmu.ifi.dbs.elki.database.AbstractDatabase;
+import de.lmu.ifi.dbs.elki.database.HashmapDatabase;
 import de.lmu.ifi.dbs.elki.database.StaticArrayDatabase;
+import de.lmu.ifi.dbs.elki.database.UpdatableDatabase;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDIter;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDUtil;
+import de.lmu.ifi.dbs.elki.database.ids.DoubleDBIDList;
+import de.lmu.ifi.dbs.elki.database.ids.DoubleDBIDListIter;
+import de.lmu.ifi.dbs.elki.database.ids.KNNList;
+import de.lmu.ifi.dbs.elki.database.ids.StaticDBIDs;
+import de.lmu.ifi.dbs.elki.database.query.distance.DistanceQuery;
+import de.lmu.ifi.dbs.elki.database.query.knn.KNNQuery;
+import de.lmu.ifi.dbs.elki.database.query.knn.LinearScanDistanceKNNQuery;
+import de.lmu.ifi.dbs.elki.database.query.range.LinearScanDistanceRangeQuery;
+import de.lmu.ifi.dbs.elki.database.query.range.RangeQuery;
+import de.lmu.ifi.dbs.elki.database.relation.Relation;
+import de.lmu.ifi.dbs.elki.datasource.InputStreamDatabaseConnection;
+import de.lmu.ifi.dbs.elki.datasource.bundle.MultipleObjectsBundle;
+import de.lmu.ifi.dbs.elki.datasource.parser.NumberVectorLabelParser;
 import de.lmu.ifi.dbs.elki.distance.distancefunction.minkowski.EuclideanDistanceFunction;
 import de.lmu.ifi.dbs.elki.index.AbstractIndexStructureTest;
+import de.lmu.ifi.dbs.elki.utilities.ClassGenericsUtil;
+import de.lmu.ifi.dbs.elki.utilities.datastructures.iterator.It;
 import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameterization.ListParameterization;
 
 /**
@@ -35,6 +69,11 @@ import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameterization.ListParamet
  * @since 0.4.0
  */
 public class IDistanceTest extends AbstractIndexStructureTest {
+  /**
+   * Data set for the dynamic test.
+   */
+  static final String DYNAMIC_DATASET = "elki/testdata/unittests/hierarchical-3d2d1d.csv";
+
   /**
    * Test {@link InMemoryIDistanceIndex}.
    */
@@ -47,4 +86,84 @@ public class IDistanceTest extends AbstractIndexStructureTest {
     spatparams.addParameter(InMemoryIDistanceIndex.Factory.Parameterizer.REFERENCE_ID, FarthestPointsInitialMeans.class);
     testExactEuclidean(spatparams, InMemoryIDistanceIndex.IDistanceKNNQuery.class, InMemoryIDistanceIndex.IDistanceRangeQuery.class);
   }
+
+  /**
+   * Test insertions, deletions (including all initial reference points) and
+   * repartitioning.
+   */
+  @Test
+  public void testDynamic() {
+    UpdatableDatabase db;
+    try (InputStream is = AbstractSimpleAlgorithmTest.open(DYNAMIC_DATASET)) {
+      ListParameterization params = new ListParameterization();
+      NumberVectorLabelParser<DoubleVector> parser = new NumberVectorLabelParser<>(DoubleVector.FACTORY);
+      params.addParameter(AbstractDatabase.Parameterizer.DATABASE_CONNECTION_ID, new InputStreamDatabaseConnection(is, new ArrayList<>(), parser));
+      params.addParameter(AbstractDatabase.Parameterizer.INDEX_ID, InMemoryIDistanceIndex.Factory.class);
+      params.addParameter(InMemoryIDistanceIndex.Factory.Parameterizer.K_ID, 4);
+      params.addParameter(InMemoryIDistanceIndex.Factory.Parameterizer.DISTANCE_ID, EuclideanDistanceFunction.class);
+      params.addParameter(InMemoryIDistanceIndex.Factory.Parameterizer.REFERENCE_ID, FarthestPointsInitialMeans.class);
+      db = ClassGenericsUtil.parameterizeOrAbort(HashmapDatabase.class, params);
+      db.initialize();
+    }
+    catch(IOException e) {
+      fail("Test data " + DYNAMIC_DATASET + " not found.");
+      return;
+    }
+    Relation<DoubleVector> rel = db.getRelation(TypeUtil.DOUBLE_VECTOR_FIELD);
+    It<InMemoryIDistanceIndex> idx = rel.getHierarchy().iterDescendants(rel).filter(InMemoryIDistanceIndex.class);
+    assertTrue("Index not found.", idx.valid());
+    InMemoryIDistanceIndex<?> index = idx.get();
+    DistanceQuery<DoubleVector> dq = db.getDistanceQuery(rel, EuclideanDistanceFunction.STATIC);
+    KNNQuery<DoubleVector> knnq = db.getKNNQuery(dq, 10);
+    RangeQuery<DoubleVector> rangeq = db.getRangeQuery(dq, .1);
+    assertTrue("Index not used for kNN: " + knnq.getClass(), knnq instanceof InMemoryIDistanceIndex.IDistanceKNNQuery);
+    assertTrue("Index not used for range: " + rangeq.getClass(), rangeq instanceof InMemoryIDistanceIndex.IDistanceRangeQuery);
+    StaticDBIDs initial = DBIDUtil.makeUnmodifiable(DBIDUtil.newArray(rel.getDBIDs()));
+
+    // Insert enough objects to split blocks:
+    Random random = new Random(0L);
+    List<DoubleVector> insertions = new ArrayList<>();
+    for(int i = 0; i < 3 * IDistancePartition.BLOCK_SIZE; i++) {
+      insertions.add(VectorUtil.randomVector(DoubleVector.FACTORY, 3, random));
+    }
+    db.insert(MultipleObjectsBundle.makeSimple(rel.getDataTypeInformation(), insertions));
+    compareQueries(rel, dq, knnq, rangeq);
+
+    // Delete the initial objects, which includes the reference points:
+    db.delete(initial);
+    assertEquals("Data set size", insertions.size(), rel.size());
+    compareQueries(rel, dq, knnq, rangeq);
+
+    index.repartition();
+    assertTrue("Imbalance", index.getImbalance() >= 1.);
+    compareQueries(rel, dq, knnq, rangeq);
+  }
+
+  /**
+   * Compare the index queries to linear scans for some objects.
+   *
+   * @param rel Relation
+   * @param dq Distance query
+   * @param knnq kNN query
+   * @param rangeq Range query
+   */
+  private void compareQueries(Relation<DoubleVector> rel, DistanceQuery<DoubleVector> dq, KNNQuery<DoubleVector> knnq, RangeQuery<DoubleVector> rangeq) {
+    KNNQuery<DoubleVector> linknn = new LinearScanDistanceKNNQuery<>(dq);
+    RangeQuery<DoubleVector> linrange = new LinearScanDistanceRangeQuery<>(dq);
+    int i = 0;
+    for(DBIDIter it = rel.iterDBIDs(); it.valid(); it.advance(), i++) {
+      if(i % 7 != 0) {
+        continue;
+      }
+      DoubleVector obj = rel.get(it);
+      KNNList expect = linknn.getKNNForObject(obj, 10), actual = knnq.getKNNForObject(obj, 10);
+      assertEquals("kNN sizes differ", expect.size(), actual.size());
+      for(DoubleDBIDListIter i1 = expect.iter(), i2 = actual.iter(); i1.valid(); i1.advance(), i2.advance()) {
+        assertEquals("kNN distances differ", i1.doubleValue(), i2.doubleValue(), 1e-15);
+      }
+      DoubleDBIDList expectr = linrange.getRangeForObject(obj, .1), actualr = rangeq.getRangeForObject(obj, .1);
+      assertEquals("Range query sizes differ", expectr.size(), actualr.size());
+      assertEquals("Range results differ", expectr.size(), DBIDUtil.intersectionSize(expectr, actualr));
+    }
+  }
 }
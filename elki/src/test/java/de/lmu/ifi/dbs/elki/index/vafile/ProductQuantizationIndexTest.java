@@ -0,0 +1,112 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2017
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.lmu.ifi.dbs.elki.index.vafile;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import de.lmu.ifi.dbs.elki.algorithm.clustering.kmeans.initialization.RandomlyChosenInitialMeans;
+import de.lmu.ifi.dbs.elki.data.NumberVector;
+import de.lmu.ifi.dbs.elki.database.QueryUtil;
+import de.lmu.ifi.dbs.elki.database.StaticArrayDatabase;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDIter;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDUtil;
+import de.lmu.ifi.dbs.elki.database.ids.DoubleDBIDListIter;
+import de.lmu.ifi.dbs.elki.database.ids.KNNList;
+import de.lmu.ifi.dbs.elki.database.query.DatabaseQuery;
+import de.lmu.ifi.dbs.elki.database.query.distance.DistanceQuery;
+import de.lmu.ifi.dbs.elki.database.query.knn.KNNQuery;
+import de.lmu.ifi.dbs.elki.database.relation.Relation;
+import de.lmu.ifi.dbs.elki.distance.distancefunction.minkowski.EuclideanDistanceFunction;
+import de.lmu.ifi.dbs.elki.distance.distancefunction.minkowski.ManhattanDistanceFunction;
+import de.lmu.ifi.dbs.elki.distance.distancefunction.minkowski.SquaredEuclideanDistanceFunction;
+import de.lmu.ifi.dbs.elki.index.AbstractIndexStructureTest;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameterization.ListParameterization;
+import de.lmu.ifi.dbs.elki.utilities.random.RandomFactory;
+
+/**
+ * Unit test for the product quantization index.
+ *
+ * @author Erich Schubert
+ * @since 0.7.2
+ */
+public class ProductQuantizationIndexTest extends AbstractIndexStructureTest {
+  /**
+   * Test {@link ProductQuantizationIndex} using a file based database
+   * connection.
+   */
+  @Test
+  public void testProductQuantization() {
+    ListParameterization params = new ListParameterization();
+    params.addParameter(StaticArrayDatabase.Parameterizer.INDEX_ID, ProductQuantizationIndex.Factory.class);
+    params.addParameter(ProductQuantizationIndex.Factory.Parameterizer.SUBSPACES_ID, 3);
+    testExactEuclidean(params, ProductQuantizationIndex.PQKNNQuery.class, null);
+  }
+
+  /**
+   * Test the recall with and without re-ranking.
+   */
+  @Test
+  public void testRecall() {
+    Relation<NumberVector> rel = makeRandomRelation(2000, 16);
+    DistanceQuery<NumberVector> dq = rel.getDistanceQuery(EuclideanDistanceFunction.STATIC);
+    KNNQuery<NumberVector> exact = QueryUtil.getLinearScanKNNQuery(dq);
+    ProductQuantizationIndex<NumberVector> approx = makeIndex(rel, 0);
+    ProductQuantizationIndex<NumberVector> reranked = makeIndex(rel, 10);
+    assertEquals("Codes not compact.", rel.size() * 4, reranked.codes.length);
+    KNNQuery<NumberVector> aq = approx.getKNNQuery(dq), rq = reranked.getKNNQuery(dq);
+    int afound = 0, rfound = 0, total = 0;
+    for(DBIDIter it = rel.iterDBIDs(); it.valid(); it.advance()) {
+      KNNList expect = exact.getKNNForDBID(it, 10);
+      KNNList alist = aq.getKNNForDBID(it, 10), rlist = rq.getKNNForDBID(it, 10);
+      afound += DBIDUtil.intersectionSize(expect, alist);
+      rfound += DBIDUtil.intersectionSize(expect, rlist);
+      total += expect.size();
+      // Re-ranked results have exact distances:
+      for(DoubleDBIDListIter ri = rlist.iter(); ri.valid(); ri.advance()) {
+        assertEquals("Distance not exact.", dq.distance(it, ri), ri.doubleValue(), 1e-15);
+      }
+    }
+    assertTrue("Recall too low: " + afound / (double) total, afound > .5 * total);
+    assertTrue("Re-ranking did not improve recall.", rfound > afound);
+    assertTrue("Recall too low: " + rfound / (double) total, rfound > .95 * total);
+    assertNull("Approximate index used for exact queries.", reranked.getKNNQuery(dq, DatabaseQuery.HINT_EXACT));
+    assertNull("Unsupported distance.", reranked.getKNNQuery(rel.getDistanceQuery(ManhattanDistanceFunction.STATIC)));
+    assertTrue("Squared Euclidean not supported.", reranked.getKNNQuery(rel.getDistanceQuery(SquaredEuclideanDistanceFunction.STATIC)) != null);
+  }
+
+  /**
+   * Build an index with four subspaces.
+   *
+   * @param rel Relation
+   * @param rerank Re-ranking factor
+   * @return Index
+   */
+  private static ProductQuantizationIndex<NumberVector> makeIndex(Relation<NumberVector> rel, int rerank) {
+    ProductQuantizationIndex<NumberVector> index = new ProductQuantizationIndex<>(rel, //
+        new RandomlyChosenInitialMeans<>(RandomFactory.get(0L)), 20, 4, 256, rerank);
+    index.initialize();
+    return index;
+  }
+}
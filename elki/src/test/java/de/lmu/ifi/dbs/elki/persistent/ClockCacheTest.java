@@ -0,0 +1,198 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2017
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.lmu.ifi.dbs.elki.persistent;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+import de.lmu.ifi.dbs.elki.database.StaticArrayDatabase;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDUtil;
+import de.lmu.ifi.dbs.elki.index.AbstractIndexStructureTest;
+import de.lmu.ifi.dbs.elki.index.PagedIndexFactory;
+import de.lmu.ifi.dbs.elki.index.tree.TreeIndexHeader;
+import de.lmu.ifi.dbs.elki.index.tree.metrical.mtreevariants.mtree.MTreeFactory;
+import de.lmu.ifi.dbs.elki.index.tree.metrical.mtreevariants.query.MetricalIndexKNNQuery;
+import de.lmu.ifi.dbs.elki.index.tree.metrical.mtreevariants.query.MetricalIndexRangeQuery;
+import de.lmu.ifi.dbs.elki.index.tree.spatial.SpatialPointLeafEntry;
+import de.lmu.ifi.dbs.elki.index.tree.spatial.rstarvariants.query.RStarTreeKNNQuery;
+import de.lmu.ifi.dbs.elki.index.tree.spatial.rstarvariants.query.RStarTreeRangeQuery;
+import de.lmu.ifi.dbs.elki.index.tree.spatial.rstarvariants.rstar.RStarTreeFactory;
+import de.lmu.ifi.dbs.elki.index.tree.spatial.rstarvariants.rstar.RStarTreeNode;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameterization.ListParameterization;
+
+/**
+ * Unit test for the concurrent CLOCK page cache.
+ *
+ * @author Erich Schubert
+ * @since 0.7.2
+ */
+public class ClockCacheTest extends AbstractIndexStructureTest {
+  /**
+   * Test an R*-tree with a cache much smaller than the tree.
+   *
+   * @throws IOException on errors
+   */
+  @Test
+  public void testRStarTree() throws IOException {
+    ListParameterization params = makeParameters(0);
+    params.addParameter(StaticArrayDatabase.Parameterizer.INDEX_ID, RStarTreeFactory.class);
+    testExactEuclidean(params, RStarTreeKNNQuery.class, RStarTreeRangeQuery.class);
+  }
+
+  /**
+   * Test an R*-tree with asynchronous prefetching.
+   *
+   * @throws IOException on errors
+   */
+  @Test
+  public void testRStarTreePrefetch() throws IOException {
+    ListParameterization params = makeParameters(2);
+    params.addParameter(StaticArrayDatabase.Parameterizer.INDEX_ID, RStarTreeFactory.class);
+    testExactEuclidean(params, RStarTreeKNNQuery.class, RStarTreeRangeQuery.class);
+  }
+
+  /**
+   * Test an M-tree with asynchronous prefetching.
+   *
+   * @throws IOException on errors
+   */
+  @Test
+  public void testMTreePrefetch() throws IOException {
+    ListParameterization params = makeParameters(2);
+    params.addParameter(StaticArrayDatabase.Parameterizer.INDEX_ID, MTreeFactory.class);
+    testExactEuclidean(params, MetricalIndexKNNQuery.class, MetricalIndexRangeQuery.class);
+  }
+
+  /**
+   * Test that prefetched pages are served as cache hits.
+   *
+   * @throws IOException on errors
+   */
+  @Test
+  public void testPrefetch() throws IOException {
+    File file = File.createTempFile("elki-clock", ".pages");
+    file.delete(); // Page file must not exist yet.
+    file.deleteOnExit();
+    final int pagesize = 256, num = 50, prefetch = 10;
+    PersistentPageFile<RStarTreeNode> inner = new PersistentPageFile<>(pagesize, file.getPath(), RStarTreeNode.class);
+    ClockCache<RStarTreeNode> cache = new ClockCache<>(20 * pagesize, 4, 2, inner);
+    cache.initialize(new TreeIndexHeader(pagesize, 5, 5, 2, 2));
+    for(int i = 0; i < num; i++) {
+      RStarTreeNode node = new RStarTreeNode(5, true);
+      node.addLeafEntry(new SpatialPointLeafEntry(DBIDUtil.importInteger(i), new double[] { i, -i }));
+      cache.writePage(cache.setPageID(node), node);
+    }
+    cache.flush();
+    final long hits = cache.getHits(), misses = cache.getMisses();
+    for(int i = 0; i < prefetch; i++) {
+      cache.prefetch(i);
+    }
+    assertEquals("Prefetches not issued.", prefetch, cache.getPrefetches());
+    for(int i = 0; i < prefetch; i++) {
+      RStarTreeNode node = cache.readPage(i);
+      assertEquals("Page id differs.", i, node.getPageID());
+      assertEquals("Coordinate differs.", -i, node.getEntry(0).getMin(1), 0.);
+    }
+    assertEquals("Prefetched pages not hit.", hits + prefetch, cache.getHits());
+    assertEquals("Prefetched pages missed.", misses, cache.getMisses());
+    cache.close();
+  }
+
+  /**
+   * Read pages concurrently, with a cache smaller than the file.
+   *
+   * @throws Exception on errors
+   */
+  @Test
+  public void testConcurrentReads() throws Exception {
+    File file = File.createTempFile("elki-clock", ".pages");
+    file.delete(); // Page file must not exist yet.
+    file.deleteOnExit();
+    final int pagesize = 256, num = 100, threads = 4, reads = 5000;
+    PersistentPageFile<RStarTreeNode> inner = new PersistentPageFile<>(pagesize, file.getPath(), RStarTreeNode.class);
+    final ClockCache<RStarTreeNode> cache = new ClockCache<>(10 * pagesize, 4, inner);
+    cache.initialize(new TreeIndexHeader(pagesize, 5, 5, 2, 2));
+    for(int i = 0; i < num; i++) {
+      RStarTreeNode node = new RStarTreeNode(5, true);
+      node.addLeafEntry(new SpatialPointLeafEntry(DBIDUtil.importInteger(i), new double[] { i, -i }));
+      cache.writePage(cache.setPageID(node), node);
+    }
+    cache.flush();
+    final long before = cache.getHits() + cache.getMisses();
+
+    final AtomicInteger errors = new AtomicInteger();
+    Thread[] workers = new Thread[threads];
+    for(int t = 0; t < threads; t++) {
+      final Random rnd = new Random(t);
+      workers[t] = new Thread() {
+        @Override
+        public void run() {
+          for(int i = 0; i < reads; i++) {
+            // Skewed access, to get both hits and misses.
+            final int id = rnd.nextBoolean() ? rnd.nextInt(5) : rnd.nextInt(num);
+            RStarTreeNode node = cache.readPage(id);
+            if(node == null || node.getPageID() != id || node.getEntry(0).getMin(0) != id) {
+              errors.incrementAndGet();
+            }
+          }
+        }
+      };
+      workers[t].start();
+    }
+    for(Thread w : workers) {
+      w.join();
+    }
+    assertEquals("Wrong pages read.", 0, errors.get());
+    assertEquals("Statistics lost reads.", threads * reads, cache.getHits() + cache.getMisses() - before);
+    assertTrue("No cache hits.", cache.getHits() > 0);
+    assertTrue("No cache misses.", cache.getMisses() > 0);
+    cache.close();
+  }
+
+  /**
+   * Parameters for a small cache over a mapped page file.
+   *
+   * @param prefetch Number of prefetching threads
+   * @return Parameters
+   * @throws IOException on errors
+   */
+  private static ListParameterization makeParameters(int prefetch) throws IOException {
+    File file = File.createTempFile("elki-clock", ".pages");
+    file.delete(); // Page file must not exist yet.
+    file.deleteOnExit();
+    ListParameterization params = new ListParameterization();
+    params.addParameter(PagedIndexFactory.Parameterizer.PAGEFILE_ID, ClockCachePageFileFactory.class);
+    params.addParameter(LRUCachePageFileFactory.Parameterizer.PAGEFILE_ID, MappedPageFileFactory.class);
+    params.addParameter(MappedPageFileFactory.Parameterizer.FILE_ID, file);
+    params.addParameter(LRUCachePageFileFactory.Parameterizer.CACHE_SIZE_ID, 8 * 300);
+    params.addParameter(ClockCachePageFileFactory.Parameterizer.SHARDS_ID, 4);
+    params.addParameter(ClockCachePageFileFactory.Parameterizer.PREFETCH_ID, prefetch);
+    params.addParameter(AbstractPageFileFactory.Parameterizer.PAGE_SIZE_ID, 300);
+    return params;
+  }
+}
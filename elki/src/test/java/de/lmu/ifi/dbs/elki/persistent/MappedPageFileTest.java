@@ -0,0 +1,158 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2017
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.lmu.ifi.dbs.elki.persistent;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import org.junit.Test;
+
+import de.lmu.ifi.dbs.elki.database.StaticArrayDatabase;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDUtil;
+import de.lmu.ifi.dbs.elki.index.AbstractIndexStructureTest;
+import de.lmu.ifi.dbs.elki.index.PagedIndexFactory;
+import de.lmu.ifi.dbs.elki.index.tree.metrical.mtreevariants.mtree.MTreeFactory;
+import de.lmu.ifi.dbs.elki.index.tree.metrical.mtreevariants.query.MetricalIndexKNNQuery;
+import de.lmu.ifi.dbs.elki.index.tree.metrical.mtreevariants.query.MetricalIndexRangeQuery;
+import de.lmu.ifi.dbs.elki.index.tree.spatial.SpatialPointLeafEntry;
+import de.lmu.ifi.dbs.elki.index.tree.spatial.rstarvariants.BinaryNodeFormat;
+import de.lmu.ifi.dbs.elki.index.tree.spatial.rstarvariants.query.RStarTreeKNNQuery;
+import de.lmu.ifi.dbs.elki.index.tree.spatial.rstarvariants.query.RStarTreeRangeQuery;
+import de.lmu.ifi.dbs.elki.index.tree.spatial.rstarvariants.rstar.RStarTreeFactory;
+import de.lmu.ifi.dbs.elki.index.tree.spatial.rstarvariants.rstar.RStarTreeNode;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameterization.ListParameterization;
+
+/**
+ * Unit test for the memory-mapped page file.
+ *
+ * @author Erich Schubert
+ * @since 0.7.2
+ */
+public class MappedPageFileTest extends AbstractIndexStructureTest {
+  /**
+   * Test an R*-tree (binary pages) in a mapped page file, which reads the
+   * encoded nodes directly from the mapping.
+   *
+   * @throws IOException on errors
+   */
+  @Test
+  public void testRStarTree() throws IOException {
+    ListParameterization params = makeParameters();
+    params.addParameter(StaticArrayDatabase.Parameterizer.INDEX_ID, RStarTreeFactory.class);
+    testExactEuclidean(params, RStarTreeKNNQuery.class, RStarTreeRangeQuery.class);
+  }
+
+  /**
+   * Test the R*-tree with a non-Euclidean distance, which reads the encoded
+   * entries through the flyweight entry view.
+   *
+   * @throws IOException on errors
+   */
+  @Test
+  public void testRStarTreeCosine() throws IOException {
+    ListParameterization params = makeParameters();
+    params.addParameter(StaticArrayDatabase.Parameterizer.INDEX_ID, RStarTreeFactory.class);
+    testExactCosine(params, RStarTreeKNNQuery.class, RStarTreeRangeQuery.class);
+  }
+
+  /**
+   * Test an M-tree (externalizable pages) in a mapped page file.
+   *
+   * @throws IOException on errors
+   */
+  @Test
+  public void testMTree() throws IOException {
+    ListParameterization params = makeParameters();
+    params.addParameter(StaticArrayDatabase.Parameterizer.INDEX_ID, MTreeFactory.class);
+    testExactEuclidean(params, MetricalIndexKNNQuery.class, MetricalIndexRangeQuery.class);
+  }
+
+  /**
+   * Test persistence across reopening, with segments of a few pages only.
+   *
+   * @throws IOException on errors
+   */
+  @Test
+  public void testReopen() throws IOException {
+    File file = File.createTempFile("elki-mapped", ".pages");
+    file.delete(); // Page file must not exist yet.
+    file.deleteOnExit();
+    final int pagesize = 256, num = 25;
+    MappedPageFile<RStarTreeNode> pf = new MappedPageFile<>(pagesize, file.getPath(), RStarTreeNode.class, 3 * pagesize);
+    pf.initialize(new DefaultPageHeader(pagesize));
+    for(int i = 0; i < num; i++) {
+      RStarTreeNode node = new RStarTreeNode(5, true);
+      node.addLeafEntry(new SpatialPointLeafEntry(DBIDUtil.importInteger(i), new double[] { i, -i }));
+      pf.writePage(pf.setPageID(node), node);
+    }
+    pf.deletePage(7);
+    pf.deletePage(num - 1);
+    pf.close();
+
+    pf = new MappedPageFile<>(pagesize, file.getPath(), RStarTreeNode.class, 3 * pagesize);
+    assertTrue("File not reopened.", pf.initialize(new DefaultPageHeader()));
+    assertEquals("Next page id.", num - 1, pf.getNextPageID());
+    for(int i = 0; i < num - 1; i++) {
+      RStarTreeNode node = pf.readPage(i);
+      if(i == 7) {
+        assertNull("Deleted page not empty.", node);
+        continue;
+      }
+      assertEquals("Page id differs.", i, node.getPageID());
+      assertEquals("Coordinate differs.", -i, node.getEntry(0).getMin(1), 0.);
+      ByteBuffer buf = pf.readPageBuffer(i);
+      assertEquals("Encoded page id differs.", i, BinaryNodeFormat.getPageID(buf));
+      assertEquals("Encoded object id differs.", i, BinaryNodeFormat.getEntryID(buf, 0));
+      assertEquals("Encoded coordinate differs.", -i, BinaryNodeFormat.getMax(buf, 0, 1), 0.);
+    }
+    assertNull("Deleted page not empty.", pf.readPageBuffer(7));
+    RStarTreeNode node = new RStarTreeNode(5, true);
+    assertEquals("Empty page not reused.", 7, pf.setPageID(node));
+    pf.clear();
+    assertEquals("Next page id not reset.", 0, pf.getNextPageID());
+    assertNull("Page not cleared.", pf.readPage(3));
+    assertEquals("Empty pages not reset.", 0, pf.setPageID(new RStarTreeNode(5, true)));
+    pf.close();
+  }
+
+  /**
+   * Parameters for a mapped page file with small segments.
+   *
+   * @return Parameters
+   * @throws IOException on errors
+   */
+  private static ListParameterization makeParameters() throws IOException {
+    File file = File.createTempFile("elki-mapped", ".pages");
+    file.delete(); // Page file must not exist yet.
+    file.deleteOnExit();
+    ListParameterization params = new ListParameterization();
+    params.addParameter(PagedIndexFactory.Parameterizer.PAGEFILE_ID, MappedPageFileFactory.class);
+    params.addParameter(MappedPageFileFactory.Parameterizer.FILE_ID, file);
+    params.addParameter(MappedPageFileFactory.Parameterizer.SEGMENT_SIZE_ID, 4 * 300);
+    params.addParameter(AbstractPageFileFactory.Parameterizer.PAGE_SIZE_ID, 300);
+    return params;
+  }
+}
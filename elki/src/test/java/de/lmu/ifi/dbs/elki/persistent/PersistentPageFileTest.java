@@ -0,0 +1,255 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2017
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.lmu.ifi.dbs.elki.persistent;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.io.ObjectStreamConstants;
+import java.io.RandomAccessFile;
+import java.util.Random;
+
+import org.junit.Test;
+
+import de.lmu.ifi.dbs.elki.data.ModifiableHyperBoundingBox;
+import de.lmu.ifi.dbs.elki.database.StaticArrayDatabase;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDUtil;
+import de.lmu.ifi.dbs.elki.index.AbstractIndexStructureTest;
+import de.lmu.ifi.dbs.elki.index.PagedIndexFactory;
+import de.lmu.ifi.dbs.elki.index.tree.TreeIndexHeader;
+import de.lmu.ifi.dbs.elki.index.tree.spatial.SpatialDirectoryEntry;
+import de.lmu.ifi.dbs.elki.index.tree.spatial.SpatialEntry;
+import de.lmu.ifi.dbs.elki.index.tree.spatial.SpatialPointLeafEntry;
+import de.lmu.ifi.dbs.elki.index.tree.spatial.rstarvariants.query.RStarTreeKNNQuery;
+import de.lmu.ifi.dbs.elki.index.tree.spatial.rstarvariants.query.RStarTreeRangeQuery;
+import de.lmu.ifi.dbs.elki.index.tree.spatial.rstarvariants.rstar.RStarTreeFactory;
+import de.lmu.ifi.dbs.elki.index.tree.spatial.rstarvariants.rstar.RStarTreeNode;
+import de.lmu.ifi.dbs.elki.utilities.exceptions.AbortException;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameterization.ListParameterization;
+
+/**
+ * Unit test for the disk based page file, using the binary R*-tree node
+ * encoding.
+ *
+ * @author Erich Schubert
+ * @since 0.7.2
+ */
+public class PersistentPageFileTest extends AbstractIndexStructureTest {
+  /**
+   * Dimensionality of the test nodes.
+   */
+  private static final int DIM = 3;
+
+  /**
+   * Test an R*-tree stored in a persistent page file.
+   *
+   * @throws IOException on errors
+   */
+  @Test
+  public void testRStarTree() throws IOException {
+    File file = File.createTempFile("elki-rstar", ".pages");
+    file.delete(); // Page file must not exist yet.
+    file.deleteOnExit();
+    ListParameterization spatparams = new ListParameterization();
+    spatparams.addParameter(StaticArrayDatabase.Parameterizer.INDEX_ID, RStarTreeFactory.class);
+    spatparams.addParameter(PagedIndexFactory.Parameterizer.PAGEFILE_ID, PersistentPageFileFactory.class);
+    spatparams.addParameter(PersistentPageFileFactory.Parameterizer.FILE_ID, file);
+    spatparams.addParameter(AbstractPageFileFactory.Parameterizer.PAGE_SIZE_ID, 300);
+    testExactEuclidean(spatparams, RStarTreeKNNQuery.class, RStarTreeRangeQuery.class);
+  }
+
+  /**
+   * Test writing, reading and deleting binary pages.
+   *
+   * @throws IOException on errors
+   */
+  @Test
+  public void testBinaryPages() throws IOException {
+    File file = File.createTempFile("elki-pages", ".pages");
+    file.delete(); // Page file must not exist yet.
+    file.deleteOnExit();
+    Random rnd = new Random(0L);
+    RStarTreeNode leaf = makeLeaf(rnd, 7), dir = makeDirectory(rnd, 3);
+
+    PersistentPageFile<RStarTreeNode> pf = new PersistentPageFile<>(512, file.getPath(), RStarTreeNode.class);
+    pf.initialize(new TreeIndexHeader(512, 5, 10, 2, 4));
+    pf.writePage(pf.setPageID(leaf), leaf);
+    pf.writePage(pf.setPageID(dir), dir);
+    assertSameNode(leaf, pf.readPage(leaf.getPageID()));
+    assertSameNode(dir, pf.readPage(dir.getPageID()));
+
+    pf.deletePage(leaf.getPageID());
+    assertNull("Deleted page not empty.", pf.readPage(leaf.getPageID()));
+    pf.close();
+
+    pf = new PersistentPageFile<>(512, file.getPath(), RStarTreeNode.class);
+    assertTrue("File not reopened.", pf.initialize(new TreeIndexHeader()));
+    assertSameNode(dir, pf.readPage(dir.getPageID()));
+    pf.close();
+  }
+
+  /**
+   * Test opening a file written before the format marker, using Java
+   * serialization for the R*-tree nodes.
+   *
+   * @throws IOException on errors
+   */
+  @Test
+  public void testLegacyFormat() throws IOException {
+    File file = File.createTempFile("elki-legacy", ".pages");
+    file.deleteOnExit();
+    final int pagesize = 512;
+    Random rnd = new Random(0L);
+    RStarTreeNode leaf = makeLeaf(rnd, 7), dir = makeDirectory(rnd, 3);
+    leaf.setPageID(0);
+    dir.setPageID(1);
+    TreeIndexHeader header = new TreeIndexHeader(pagesize, 5, 10, 2, 4);
+    header.setLargestPageID(2);
+    try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+      raf.setLength(0);
+      header.writeHeader(raf);
+      writeSerialized(raf, (long) header.getReservedPages() * pagesize, leaf);
+      writeSerialized(raf, (long) (header.getReservedPages() + 1) * pagesize, dir);
+    }
+
+    PersistentPageFile<RStarTreeNode> pf = new PersistentPageFile<>(pagesize, file.getPath(), RStarTreeNode.class);
+    assertTrue("File not reopened.", pf.initialize(new TreeIndexHeader()));
+    assertSameNode(leaf, pf.readPage(0));
+    assertSameNode(dir, pf.readPage(1));
+    // New pages must use the same encoding as the existing ones.
+    RStarTreeNode leaf2 = makeLeaf(rnd, 5);
+    pf.writePage(pf.setPageID(leaf2), leaf2);
+    assertEquals("Unexpected page id.", 2, leaf2.getPageID());
+    assertSameNode(leaf2, pf.readPage(2));
+    pf.close();
+
+    try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+      raf.seek((long) (header.getReservedPages() + 2) * pagesize);
+      assertEquals("Not written with Java serialization.", ObjectStreamConstants.STREAM_MAGIC, raf.readShort());
+    }
+  }
+
+  /**
+   * Test that a file with an unknown format marker is rejected.
+   *
+   * @throws IOException on errors
+   */
+  @Test(expected = AbortException.class)
+  public void testIncompatibleFormat() throws IOException {
+    File file = File.createTempFile("elki-pages", ".pages");
+    file.delete(); // Page file must not exist yet.
+    file.deleteOnExit();
+    TreeIndexHeader header = new TreeIndexHeader(512, 5, 10, 2, 4);
+    PersistentPageFile<RStarTreeNode> pf = new PersistentPageFile<>(512, file.getPath(), RStarTreeNode.class);
+    pf.initialize(header);
+    RStarTreeNode leaf = makeLeaf(new Random(0L), 7);
+    pf.writePage(pf.setPageID(leaf), leaf);
+    pf.close();
+    try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+      raf.seek((long) header.getReservedPages() * 512 - 4);
+      raf.writeInt(42);
+    }
+    new PersistentPageFile<>(512, file.getPath(), RStarTreeNode.class).initialize(new TreeIndexHeader());
+  }
+
+  /**
+   * Make a leaf node with random points.
+   *
+   * @param rnd Random generator
+   * @param n Number of entries
+   * @return Leaf node
+   */
+  private static RStarTreeNode makeLeaf(Random rnd, int n) {
+    RStarTreeNode leaf = new RStarTreeNode(10, true);
+    for(int i = 0; i < n; i++) {
+      double[] v = new double[DIM];
+      for(int d = 0; d < DIM; d++) {
+        v[d] = rnd.nextDouble();
+      }
+      leaf.addLeafEntry(new SpatialPointLeafEntry(DBIDUtil.importInteger(i * 3 + 1), v));
+    }
+    return leaf;
+  }
+
+  /**
+   * Make a directory node with random rectangles.
+   *
+   * @param rnd Random generator
+   * @param n Number of entries
+   * @return Directory node
+   */
+  private static RStarTreeNode makeDirectory(Random rnd, int n) {
+    RStarTreeNode dir = new RStarTreeNode(5, false);
+    for(int i = 0; i < n; i++) {
+      double[] min = new double[DIM], max = new double[DIM];
+      for(int d = 0; d < DIM; d++) {
+        min[d] = rnd.nextDouble();
+        max[d] = min[d] + rnd.nextDouble();
+      }
+      dir.addDirectoryEntry(new SpatialDirectoryEntry(i + 5, new ModifiableHyperBoundingBox(min, max)));
+    }
+    return dir;
+  }
+
+  /**
+   * Write a page using Java serialization, as done before the format marker.
+   *
+   * @param raf File
+   * @param offset Offset of the page
+   * @param page Page
+   * @throws IOException on errors
+   */
+  private static void writeSerialized(RandomAccessFile raf, long offset, RStarTreeNode page) throws IOException {
+    ByteArrayOutputStream baos = new ByteArrayOutputStream();
+    try (ObjectOutputStream oos = new ObjectOutputStream(baos)) {
+      oos.writeInt(1); // Filled page
+      page.writeExternal(oos);
+    }
+    raf.seek(offset);
+    raf.write(baos.toByteArray());
+  }
+
+  /**
+   * Compare two nodes.
+   *
+   * @param expect Expected node
+   * @param actual Actual node
+   */
+  private static void assertSameNode(RStarTreeNode expect, RStarTreeNode actual) {
+    assertEquals("Page id differs.", expect.getPageID(), actual.getPageID());
+    assertEquals("Leaf flag differs.", expect.isLeaf(), actual.isLeaf());
+    assertEquals("Capacity differs.", expect.getCapacity(), actual.getCapacity());
+    assertEquals("Size differs.", expect.getNumEntries(), actual.getNumEntries());
+    for(int i = 0; i < expect.getNumEntries(); i++) {
+      SpatialEntry e = expect.getEntry(i), a = actual.getEntry(i);
+      assertEquals("Entry differs.", e, a);
+      for(int d = 0; d < e.getDimensionality(); d++) {
+        assertEquals("Minimum differs.", e.getMin(d), a.getMin(d), 0.);
+        assertEquals("Maximum differs.", e.getMax(d), a.getMax(d), 0.);
+      }
+    }
+  }
+}